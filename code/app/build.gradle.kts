@@ -48,9 +48,10 @@ android {
 
 dependencies {
     implementation ("org.osmdroid:osmdroid-android:6.1.14")
-    implementation ("com.github.bumptech.glide:glide:4.15.1")
+    implementation ("com.github.bumptech.glide:glide:4.16.0")
+    implementation ("com.github.bumptech.glide:recyclerview-integration:4.16.0")
     implementation(libs.play.services.location)
-    annotationProcessor ("com.github.bumptech.glide:compiler:4.15.1")
+    annotationProcessor ("com.github.bumptech.glide:compiler:4.16.0")
 
     implementation(libs.androidx.recyclerview)
     implementation(libs.appcompat)
@@ -64,7 +65,6 @@ dependencies {
     testImplementation(libs.junit)
     implementation ("com.squareup.okhttp3:okhttp:4.9.0")
 
-    implementation("com.github.bumptech.glide:glide:4.16.0")
     implementation("androidx.constraintlayout:constraintlayout:2.2.1")
 
     androidTestImplementation(libs.ext.junit)
@@ -0,0 +1,120 @@
+package com.example.tangry;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.net.Uri;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.tangry.utils.ImageCompressor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks ImageCompressor on large synthetic photos, logging encode time and the peak heap
+ * growth (Java plus native, where bitmaps live) sampled while compressing.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageCompressorBenchmarkTest {
+    private static final String TAG = "ImageCompressorBench";
+    // A 64KB result should not need more than a few decoded frames of 1280px.
+    private static final long MAX_PEAK_BYTES = 40L * 1024 * 1024;
+
+    private Context context;
+    private File source;
+
+    @Before
+    public void setup() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+
+    @After
+    public void tearDown() {
+        if (source != null) {
+            source.delete();
+        }
+    }
+
+    @Test
+    public void testTwelveMegapixelPhoto() throws Exception {
+        runBenchmark(4000, 3000);
+    }
+
+    @Test
+    public void testPortraitFortyEightMegapixelPhoto() throws Exception {
+        runBenchmark(6000, 8000);
+    }
+
+    private void runBenchmark(int width, int height) throws Exception {
+        source = writeSyntheticPhoto(width, height);
+        Runtime.getRuntime().gc();
+        long baseline = usedHeap();
+        AtomicLong peak = new AtomicLong(baseline);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread sampler = new Thread(() -> {
+            while (running.get()) {
+                peak.accumulateAndGet(usedHeap(), Math::max);
+                SystemClock.sleep(2);
+            }
+        });
+        sampler.start();
+
+        long start = SystemClock.elapsedRealtime();
+        Uri result = ImageCompressor.getInstance().compressBlocking(context, Uri.fromFile(source));
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        running.set(false);
+        sampler.join();
+
+        File output = new File(result.getPath());
+        long peakGrowth = peak.get() - baseline;
+        Log.i(TAG, width + "x" + height + ": " + elapsed + " ms, peak heap +" + peakGrowth / 1024
+                + " KB, output " + output.length() + " bytes");
+        assertTrue(output.length() <= ImageCompressor.MAX_BYTES);
+        assertTrue("peak heap growth " + peakGrowth, peakGrowth < MAX_PEAK_BYTES);
+        output.delete();
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+    }
+
+    /**
+     * Draws noisy shapes so the JPEG is photo-like in size, then frees the bitmap before measuring.
+     */
+    private File writeSyntheticPhoto(int width, int height) throws Exception {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        Random random = new Random(42);
+        canvas.drawColor(Color.rgb(120, 160, 200));
+        for (int i = 0; i < 4000; i++) {
+            paint.setColor(Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            canvas.drawCircle(random.nextInt(width), random.nextInt(height), 5 + random.nextInt(120), paint);
+        }
+        File file = File.createTempFile("benchmark_photo", ".jpg", context.getCacheDir());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 95, out);
+        }
+        bitmap.recycle();
+        return file;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.tangry;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.tangry.repositories.ImageStorageRepository;
+import com.example.tangry.test.EmulatorTestHelper;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks against the Storage emulator (firebase emulators:start) that the download URLs the
+ * repository builds for its uploads, without a getDownloadUrl call, really serve the image.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageStorageEmulatorTest {
+    private static final byte[] IMAGE_BYTES = {1, 2, 3, 4, 5};
+
+    private static ImageStorageRepository repository;
+
+    private File localImage;
+    private String storagePath;
+
+    @BeforeClass
+    public static void setupClass() {
+        repository = EmulatorTestHelper.useStorageEmulator();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        localImage = new File(context.getCacheDir(), "upload-test-" + UUID.randomUUID() + ".jpg");
+        try (FileOutputStream out = new FileOutputStream(localImage)) {
+            out.write(IMAGE_BYTES);
+        }
+        storagePath = "upload-test-" + UUID.randomUUID() + "/images/image";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        localImage.delete();
+        Tasks.await(repository.deleteImage(storagePath), 5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testUploadedImageUrlServesTheImage() throws Exception {
+        TaskCompletionSource<String> uploaded = new TaskCompletionSource<>();
+        repository.uploadImage(Uri.fromFile(localImage), storagePath, uploaded::setResult, uploaded::setException);
+        String url = Tasks.await(uploaded.getTask(), 10, TimeUnit.SECONDS);
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+            try (InputStream in = connection.getInputStream()) {
+                byte[] body = new byte[IMAGE_BYTES.length + 1];
+                int read = 0;
+                int count;
+                while (read < body.length && (count = in.read(body, read, body.length - read)) != -1) {
+                    read += count;
+                }
+                assertEquals(IMAGE_BYTES.length, read);
+                for (int i = 0; i < IMAGE_BYTES.length; i++) {
+                    assertEquals(IMAGE_BYTES[i], body[i]);
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -9,6 +9,8 @@ import com.example.tangry.models.EmotionPost;
 import com.example.tangry.repositories.EmotionPostRepository;
 import com.example.tangry.repositories.UserRepository;
 import com.example.tangry.test.EmulatorTestHelper;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.*;
 
@@ -77,6 +79,7 @@ public class LeaderboardBadgeEmulatorTest {
     private static class TestUser {
         DocumentReference docRef;
         String uniqueUsername;
+        String email;
     }
 
     /**
@@ -108,6 +111,7 @@ public class LeaderboardBadgeEmulatorTest {
         TestUser testUser = new TestUser();
         testUser.docRef = docRef.get();
         testUser.uniqueUsername = uniqueUsername;
+        testUser.email = email;
         return testUser;
     }
 
@@ -269,6 +273,54 @@ public class LeaderboardBadgeEmulatorTest {
         assertEquals("Daily badge count should equal the number of unique dates", 1, dailyBadgeDates.size());
     }
 
+    @Test
+    public void testConcurrentPostRewardsAreAllApplied() throws InterruptedException, ExecutionException, TimeoutException {
+        TestUser testUser = createTestUser("rewardTestUser");
+
+        // Start all three at once; the transactions must not overwrite each other's counts.
+        CountDownLatch rewardLatch = new CountDownLatch(3);
+        List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 3; i++) {
+            userRepository.applyPostCreated(testUser.email, 5,
+                    aVoid -> rewardLatch.countDown(),
+                    e -> {
+                        errors.add(e);
+                        rewardLatch.countDown();
+                    });
+        }
+        assertTrue(rewardLatch.await(10, TimeUnit.SECONDS));
+        assertTrue("Rewards failed: " + errors, errors.isEmpty());
+
+        DocumentSnapshot snapshot = Tasks.await(testUser.docRef.get(), 5, TimeUnit.SECONDS);
+        assertEquals(3L, snapshot.getLong("postCount").longValue());
+        assertEquals(15L, snapshot.getLong("karma").longValue());
+        assertEquals(1L, snapshot.getLong("badges.goldBadges").longValue());
+        List<?> dailyBadgeDates = (List<?>) snapshot.get("badges.dailyBadgeDates");
+        assertNotNull(dailyBadgeDates);
+        assertEquals(1, dailyBadgeDates.size());
+    }
+
+    @Test
+    public void testCommentRewardsAwardSilverBadge() throws InterruptedException, ExecutionException, TimeoutException {
+        TestUser testUser = createTestUser("commentTestUser");
+
+        for (int i = 0; i < 3; i++) {
+            Tasks.await(commentReward(testUser.email), 5, TimeUnit.SECONDS);
+        }
+
+        DocumentSnapshot snapshot = Tasks.await(testUser.docRef.get(), 5, TimeUnit.SECONDS);
+        assertEquals(3L, snapshot.getLong("commentCount").longValue());
+        assertEquals(15L, snapshot.getLong("karma").longValue());
+        assertEquals(1L, snapshot.getLong("badges.silverBadges").longValue());
+        assertNull(snapshot.get("badges.dailyBadgeDates"));
+    }
+
+    private Task<Void> commentReward(String email) {
+        TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+        userRepository.applyCommentAdded(email, 5, source::setResult, source::setException);
+        return source.getTask();
+    }
+
     @Test
     public void testLeaderboardOrdering() throws InterruptedException, ExecutionException, TimeoutException {
         // Create three test users with fixed usernames for predictable ordering.
@@ -0,0 +1,112 @@
+package com.example.tangry;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.target.Target;
+import com.example.tangry.models.EmotionPost;
+import com.example.tangry.utils.ListImageLoader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the decoded bitmap of a list image loaded the way lists did before (unsized, ARGB_8888)
+ * with a load through ListImageLoader, logging decode time and bitmap bytes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ListImageLoaderBenchmarkTest {
+    private static final String TAG = "ListImageLoaderBench";
+
+    private Context context;
+    private File source;
+
+    @Before
+    public void setup() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+
+    @After
+    public void tearDown() {
+        if (source != null) {
+            source.delete();
+        }
+    }
+
+    @Test
+    public void testSizedLoadDecodesFewerBytes() throws Exception {
+        // The largest image an upload produces.
+        source = writeSyntheticPhoto(1280, 960);
+        EmotionPost post = new EmotionPost();
+        post.setImageUri(Uri.fromFile(source).toString());
+
+        long start = SystemClock.elapsedRealtime();
+        Bitmap unsized = Glide.with(context).asBitmap()
+                .load(Uri.fromFile(source))
+                .format(DecodeFormat.PREFER_ARGB_8888)
+                .override(Target.SIZE_ORIGINAL)
+                .diskCacheStrategy(DiskCacheStrategy.NONE)
+                .skipMemoryCache(true)
+                .submit().get();
+        long unsizedMs = SystemClock.elapsedRealtime() - start;
+
+        start = SystemClock.elapsedRealtime();
+        Drawable drawable = ListImageLoader.request(Glide.with(context), context, post)
+                .diskCacheStrategy(DiskCacheStrategy.NONE)
+                .skipMemoryCache(true)
+                .submit().get();
+        long sizedMs = SystemClock.elapsedRealtime() - start;
+        Bitmap sized = ((BitmapDrawable) drawable).getBitmap();
+
+        int[] size = ListImageLoader.moodImageSize(context);
+        Log.i(TAG, "unsized " + unsized.getAllocationByteCount() + " bytes in " + unsizedMs + " ms, sized "
+                + sized.getAllocationByteCount() + " bytes in " + sizedMs + " ms");
+        assertEquals(Bitmap.Config.RGB_565, sized.getConfig());
+        assertEquals(size[0], sized.getWidth());
+        assertEquals(size[1], sized.getHeight());
+        assertTrue(sized.getAllocationByteCount() < unsized.getAllocationByteCount() / 2);
+    }
+
+    /**
+     * Draws noisy shapes so the JPEG is photo-like.
+     */
+    private File writeSyntheticPhoto(int width, int height) throws Exception {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        Random random = new Random(42);
+        canvas.drawColor(Color.rgb(120, 160, 200));
+        for (int i = 0; i < 1000; i++) {
+            paint.setColor(Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            canvas.drawCircle(random.nextInt(width), random.nextInt(height), 5 + random.nextInt(60), paint);
+        }
+        File file = File.createTempFile("list_benchmark_photo", ".jpg", context.getCacheDir());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        }
+        bitmap.recycle();
+        return file;
+    }
+}
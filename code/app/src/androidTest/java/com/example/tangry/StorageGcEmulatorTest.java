@@ -0,0 +1,177 @@
+package com.example.tangry;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.tangry.models.UploadedImage;
+import com.example.tangry.repositories.ImageStorageRepository;
+import com.example.tangry.test.EmulatorTestHelper;
+import com.example.tangry.utils.StorageGcService;
+import com.example.tangry.utils.StorageSweeper;
+import com.example.tangry.utils.StorageUrls;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageException;
+import com.google.firebase.storage.StorageReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the storage garbage collector against the Firestore and Storage emulators
+ * (firebase emulators:start). Objects are written under a unique folder so other data in the
+ * emulators is never touched.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StorageGcEmulatorTest {
+    private static ImageStorageRepository repository;
+
+    private FirebaseFirestore db;
+    private String root;
+    private DocumentReference post;
+
+    @BeforeClass
+    public static void setupClass() {
+        EmulatorTestHelper.useFirebaseEmulators();
+        repository = EmulatorTestHelper.useStorageEmulator();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        db = FirebaseFirestore.getInstance();
+        root = "gc-test-" + UUID.randomUUID();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (post != null) {
+            Tasks.await(post.delete());
+        }
+        for (String name : Arrays.asList("images/kept", "thumbnails/kept")) {
+            Tasks.await(repository.deleteImage(root + "/" + name));
+        }
+    }
+
+    @Test
+    public void testDeletesOnlyUnreferencedObjects() throws Exception {
+        upload("images/kept");
+        upload("thumbnails/kept");
+        upload("images/orphan");
+        upload("thumbnails/orphan");
+        Map<String, Object> data = new HashMap<>();
+        data.put("imageUri", urlOf("images/kept"));
+        data.put("thumbnailUri", urlOf("thumbnails/kept"));
+        post = Tasks.await(db.collection("emotions").add(data));
+
+        StorageSweeper sweeper = new StorageSweeper(
+                new StorageGcService.FirebaseBackend(db, repository),
+                Arrays.asList(root + "/images", root + "/thumbnails"), 1, 1, 10, 0, Thread::sleep);
+        StorageSweeper.Result result = sweeper.sweep(null, 10, System.currentTimeMillis() + 60_000,
+                () -> false);
+
+        assertTrue(result.passComplete);
+        assertEquals(4, result.scanned);
+        assertEquals(2, result.deleted);
+        assertTrue(exists("images/kept"));
+        assertTrue(exists("thumbnails/kept"));
+        assertFalse(exists("images/orphan"));
+        assertFalse(exists("thumbnails/orphan"));
+    }
+
+    @Test
+    public void testKeepsObjectsWithinGracePeriod() throws Exception {
+        upload("images/kept");
+
+        StorageSweeper sweeper = new StorageSweeper(
+                new StorageGcService.FirebaseBackend(db, repository),
+                Arrays.asList(root + "/images"), 10, 10, 10, TimeUnit.DAYS.toMillis(1), Thread::sleep);
+        StorageSweeper.Result result = sweeper.sweep(null, 10, System.currentTimeMillis(), () -> false);
+
+        assertEquals(1, result.kept);
+        assertEquals(0, result.deleted);
+        assertTrue(exists("images/kept"));
+    }
+
+    @Test
+    public void testSweptImageIsNotReusedFromUrlCache() throws Exception {
+        upload("images/orphan");
+        upload("thumbnails/orphan");
+        // Caches both URLs, as an earlier post of the same picture would have.
+        TaskCompletionSource<Void> cached = new TaskCompletionSource<>();
+        repository.findStoredImage(root + "/images/orphan", root + "/thumbnails/orphan",
+                existing -> cached.setResult(null), cached::setException);
+        Tasks.await(cached.getTask());
+        post = Tasks.await(db.collection("emotions").add(
+                Collections.singletonMap("imageUri", urlOf("images/kept"))));
+
+        StorageSweeper sweeper = new StorageSweeper(
+                new StorageGcService.FirebaseBackend(db, repository),
+                Arrays.asList(root + "/images", root + "/thumbnails"), 10, 10, 10, 0, Thread::sleep);
+        sweeper.sweep(null, 10, System.currentTimeMillis() + 60_000, () -> false);
+        assertFalse(exists("images/orphan"));
+
+        TaskCompletionSource<UploadedImage> found = new TaskCompletionSource<>();
+        repository.findStoredImage(root + "/images/orphan", root + "/thumbnails/orphan",
+                found::setResult, found::setException);
+        UploadedImage existing = Tasks.await(found.getTask());
+        assertNull(existing.getImageUrl());
+        assertNull(existing.getThumbnailUrl());
+    }
+
+    @Test
+    public void testOnlyOneClientHoldsTheSweepLease() throws Exception {
+        // Far in the future, so leases left by real runs in the emulator do not interfere.
+        long now = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(3650);
+        StorageGcService.SweepLease first = new StorageGcService.SweepLease(db, root + "-a");
+        StorageGcService.SweepLease second = new StorageGcService.SweepLease(db, root + "-b");
+
+        assertTrue(first.acquire(now, TimeUnit.DAYS.toMillis(1)));
+        first.finish("0:token");
+        assertFalse(second.acquire(now + 1000, TimeUnit.DAYS.toMillis(1)));
+
+        // A released lease, or one past its period, can be taken and resumes from the checkpoint.
+        first.release();
+        assertTrue(second.acquire(now + 2000, TimeUnit.DAYS.toMillis(1)));
+        assertEquals("0:token", second.getCheckpoint());
+        second.finish(null);
+        second.release();
+    }
+
+    private void upload(String name) throws Exception {
+        StorageReference ref = FirebaseStorage.getInstance().getReference().child(root + "/" + name);
+        Tasks.await(ref.putBytes(new byte[]{1, 2, 3}));
+    }
+
+    private String urlOf(String name) {
+        return StorageUrls.downloadUrl("http://10.0.2.2:9199",
+                FirebaseStorage.getInstance().getReference().getBucket(), root + "/" + name, "token");
+    }
+
+    private boolean exists(String name) throws Exception {
+        try {
+            Tasks.await(repository.getImageMetadata(root + "/" + name));
+            return true;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof StorageException && ((StorageException) e.getCause()).getErrorCode()
+                    == StorageException.ERROR_OBJECT_NOT_FOUND) {
+                return false;
+            }
+            throw e;
+        }
+    }
+}
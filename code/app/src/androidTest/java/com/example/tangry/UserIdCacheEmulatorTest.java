@@ -0,0 +1,88 @@
+package com.example.tangry;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.tangry.models.UserStats;
+import com.example.tangry.repositories.UserRepository;
+import com.example.tangry.test.EmulatorTestHelper;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that UserRepository resolves users to document ids through its cache against the
+ * Firestore emulator (firebase emulators:start), including after a rename.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserIdCacheEmulatorTest {
+    private FirebaseFirestore db;
+    private UserRepository userRepository;
+    private DocumentReference userDoc;
+    private String username;
+    private String email;
+
+    @BeforeClass
+    public static void setupClass() {
+        EmulatorTestHelper.useFirebaseEmulators();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        db = FirebaseFirestore.getInstance();
+        userRepository = new UserRepository(db, "users");
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        username = "idCacheUser" + suffix;
+        email = username + "@example.com";
+        TaskCompletionSource<DocumentReference> saved = new TaskCompletionSource<>();
+        userRepository.saveUsernameToFirestore(username, email, saved::setResult, saved::setException);
+        userDoc = Tasks.await(saved.getTask(), 5, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Tasks.await(userDoc.delete(), 5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testResolvesEmailAndUsernameToDocumentId() throws Exception {
+        assertEquals(userDoc.getId(), Tasks.await(userRepository.resolveUserIdByEmail(email), 5, TimeUnit.SECONDS));
+        assertEquals(userDoc.getId(), Tasks.await(userRepository.resolveUserIdByUsername(username), 5, TimeUnit.SECONDS));
+        assertNull(Tasks.await(userRepository.resolveUserIdByUsername(username + "-missing"), 5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testConcurrentLookupsShareOneQuery() throws Exception {
+        // A fresh repository has nothing cached, so both calls see the same lookup in flight.
+        UserRepository fresh = new UserRepository(db, "users");
+        Task<String> first = fresh.resolveUserIdByEmail(email);
+        Task<String> second = fresh.resolveUserIdByEmail(email);
+        assertSame(first, second);
+        assertEquals(userDoc.getId(), Tasks.await(first, 5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRenameUpdatesCachedUsername() throws Exception {
+        String newUsername = username + "Renamed";
+        TaskCompletionSource<Void> renamed = new TaskCompletionSource<>();
+        userRepository.updateUsername(email, newUsername, renamed::setResult, renamed::setException);
+        Tasks.await(renamed.getTask(), 5, TimeUnit.SECONDS);
+
+        TaskCompletionSource<UserStats> stats = new TaskCompletionSource<>();
+        userRepository.getUserStatsByUsername(newUsername, stats::setResult, stats::setException);
+        assertNotNull(Tasks.await(stats.getTask(), 5, TimeUnit.SECONDS));
+        assertNull(Tasks.await(userRepository.resolveUserIdByUsername(username), 5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.tangry;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.tangry.repositories.UserRepository;
+import com.example.tangry.test.EmulatorTestHelper;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks against the Firestore emulator (firebase emulators:start) that a user document written
+ * before the search fields existed is repaired and then found by the indexed search.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserSearchFieldsEmulatorTest {
+    private FirebaseFirestore db;
+    private UserRepository userRepository;
+    private DocumentReference userDoc;
+    private String username;
+    private String email;
+
+    @BeforeClass
+    public static void setupClass() {
+        EmulatorTestHelper.useFirebaseEmulators();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        db = FirebaseFirestore.getInstance();
+        userRepository = new UserRepository(db, "users");
+        username = "LegacyUser" + UUID.randomUUID().toString().substring(0, 8);
+        email = username + "@example.com";
+        // Written the way registration did before the search fields existed.
+        Map<String, Object> data = new HashMap<>();
+        data.put("username", username);
+        data.put("email", email);
+        userDoc = Tasks.await(db.collection("users").add(data), 5, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Tasks.await(userDoc.delete(), 5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testEnsureSearchFieldsMakesLegacyUserSearchable() throws Exception {
+        assertTrue(search(username.substring(2)).isEmpty());
+
+        TaskCompletionSource<Boolean> ensured = new TaskCompletionSource<>();
+        userRepository.ensureSearchFields(email, ensured::setResult, ensured::setException);
+        assertTrue(Tasks.await(ensured.getTask(), 5, TimeUnit.SECONDS));
+
+        DocumentSnapshot doc = Tasks.await(userDoc.get(), 5, TimeUnit.SECONDS);
+        assertEquals(username.toLowerCase(), doc.getString("usernameLower"));
+        assertTrue(search(username.substring(2)).contains(username));
+
+        TaskCompletionSource<Boolean> again = new TaskCompletionSource<>();
+        userRepository.ensureSearchFields(email, again::setResult, again::setException);
+        assertFalse(Tasks.await(again.getTask(), 5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBackfillIsRecordedForTheProject() throws Exception {
+        TaskCompletionSource<Integer> backfilled = new TaskCompletionSource<>();
+        userRepository.backfillSearchFields(backfilled::setResult, backfilled::setException);
+        assertTrue(Tasks.await(backfilled.getTask(), 10, TimeUnit.SECONDS) >= 1);
+        assertTrue(search(username.substring(2)).contains(username));
+
+        // Any other client now skips the migration and uses the indexed search.
+        UserRepository otherClient = new UserRepository(db, "users");
+        TaskCompletionSource<Boolean> done = new TaskCompletionSource<>();
+        otherClient.isSearchFieldBackfillDone(done::setResult, done::setException);
+        assertTrue(Tasks.await(done.getTask(), 5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testScanFindsLegacyUser() throws Exception {
+        TaskCompletionSource<List<String>> results = new TaskCompletionSource<>();
+        userRepository.searchUsersByScan(username.substring(2).toUpperCase(), results::setResult, results::setException);
+        assertTrue(Tasks.await(results.getTask(), 5, TimeUnit.SECONDS).contains(username));
+    }
+
+    private List<String> search(String query) throws Exception {
+        TaskCompletionSource<List<String>> results = new TaskCompletionSource<>();
+        userRepository.searchUsersBySubstring(query, results::setResult, results::setException);
+        return Tasks.await(results.getTask(), 5, TimeUnit.SECONDS);
+    }
+}
@@ -3,11 +3,14 @@ package com.example.tangry.test;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.FirebaseFirestoreSettings;
 import com.google.firebase.auth.FirebaseAuth;
+import com.example.tangry.repositories.ImageStorageRepository;
 
 public class EmulatorTestHelper {
     private static final String EMULATOR_HOST = "10.0.2.2";
     private static final int FIRESTORE_PORT = 8080;
     private static final int AUTH_PORT = 9099;
+    private static final int STORAGE_PORT = 9199;
+    private static boolean storageEmulatorSet = false;
 
     public static void useFirebaseEmulators() {
         // Configure Firestore
@@ -22,4 +25,15 @@ public class EmulatorTestHelper {
         FirebaseAuth auth = FirebaseAuth.getInstance();
         auth.useEmulator(EMULATOR_HOST, AUTH_PORT);
     }
+
+    public static synchronized ImageStorageRepository useStorageEmulator() {
+        // Configure Storage, including the download URLs the repository builds
+        ImageStorageRepository repository = ImageStorageRepository.getInstance();
+        // Storage can only be pointed at the emulator before its first use, once per process
+        if (!storageEmulatorSet) {
+            repository.useEmulator(EMULATOR_HOST, STORAGE_PORT);
+            storageEmulatorSet = true;
+        }
+        return repository;
+    }
 }
\ No newline at end of file
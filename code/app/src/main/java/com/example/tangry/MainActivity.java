@@ -16,7 +16,13 @@ import androidx.navigation.ui.AppBarConfiguration;
 import androidx.navigation.ui.NavigationUI;
 
 import com.example.tangry.databinding.ActivityMainBinding;
+import com.example.tangry.repositories.UserRepository;
+import com.example.tangry.utils.ImageCompressor;
 import com.example.tangry.utils.OfflineSyncManager;
+import com.example.tangry.utils.SearchFieldBackfill;
+import com.example.tangry.utils.StorageGcService;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -31,6 +37,9 @@ public class MainActivity extends AppCompatActivity {
         setContentView(binding.getRoot());
 
         OfflineSyncManager syncManager = OfflineSyncManager.getInstance(this);
+        StorageGcService.schedule(this);
+        ImageCompressor.getInstance().cleanUpOnStartup(this);
+        UserRepository.getInstance(this);
 
         // Set up the primary toolbar.
         MaterialToolbar primaryToolbar = findViewById(R.id.toolbar_primary);
@@ -89,6 +98,8 @@ public class MainActivity extends AppCompatActivity {
      * and navigates to the home destination.
      */
     public void onLoginSuccess() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        SearchFieldBackfill.runOnLogin(this, user != null ? user.getEmail() : null);
         binding.navView.setVisibility(View.VISIBLE);
         findViewById(R.id.fab).setVisibility(View.VISIBLE);
         navController.navigate(R.id.navigation_home);
@@ -6,31 +6,30 @@
  * visual representation of different emotion types with appropriate colors and icons.
  * 
  * Key features:
- * - Implements Filterable to support searching/filtering posts by content
+ * - Applies search results from PostSearchEngine as precomputed DiffUtil updates
  * - Dynamic visual styling based on emotion type (colors, icons)
- * - Handles image loading via Glide for post attachments
+ * - Handles image loading via Glide for post attachments, sized to the mood image
  * - Displays formatted timestamps, location data, and social context
  * - Indicates privacy status of posts
  * - Supports click interactions through callback interface
  */
 package com.example.tangry.adapters;
 
-import android.net.Uri;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
-import android.widget.Filter;
-import android.widget.Filterable;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
 import com.example.tangry.models.EmotionPost;
 import com.example.tangry.R;
+import com.example.tangry.utils.ListImageLoader;
 import com.example.tangry.utils.TimeUtils;
 
 import java.util.ArrayList;
@@ -38,9 +37,10 @@ import java.util.List;
 
 /**
  * Adapter class for displaying EmotionPost objects in a RecyclerView.
- * Implements Filterable to support searching.
+ * Search filtering is done off the main thread by PostSearchEngine and applied through
+ * {@link #applySearchResults(List, DiffUtil.DiffResult)}.
  */
-public class EmotionPostAdapter extends RecyclerView.Adapter<EmotionPostAdapter.PostViewHolder> implements Filterable {
+public class EmotionPostAdapter extends RecyclerView.Adapter<EmotionPostAdapter.PostViewHolder> {
 
     /**
      * Callback interface for handling click events on EmotionPost items.
@@ -56,7 +56,6 @@ public class EmotionPostAdapter extends RecyclerView.Adapter<EmotionPostAdapter.
     }
 
     private List<EmotionPost> posts;
-    private List<EmotionPost> allPosts; // Store the original list for filtering
     private OnItemClickListener listener;
 
     /**
@@ -67,7 +66,6 @@ public class EmotionPostAdapter extends RecyclerView.Adapter<EmotionPostAdapter.
      */
     public EmotionPostAdapter(List<EmotionPost> posts, OnItemClickListener listener) {
         this.posts = (posts != null) ? posts : new ArrayList<>();
-        this.allPosts = new ArrayList<>(this.posts); // Initialize allPosts
         this.listener = listener;
     }
 
@@ -78,10 +76,21 @@ public class EmotionPostAdapter extends RecyclerView.Adapter<EmotionPostAdapter.
      */
     public void setPosts(List<EmotionPost> posts) {
         this.posts = (posts != null) ? posts : new ArrayList<>();
-        this.allPosts = new ArrayList<>(this.posts); // Keep a copy of all posts for filtering
         notifyDataSetChanged();
     }
 
+    /**
+     * Replaces the displayed posts with search results and dispatches the precomputed changes.
+     * The list and its diff are applied together so the adapter never exposes a half-updated state.
+     *
+     * @param results the posts to display
+     * @param diff    the changes from the currently displayed posts to results
+     */
+    public void applySearchResults(List<EmotionPost> results, DiffUtil.DiffResult diff) {
+        this.posts = new ArrayList<>(results);
+        diff.dispatchUpdatesTo(this);
+    }
+
     /**
      * Called when RecyclerView needs a new PostViewHolder.
      *
@@ -115,56 +124,23 @@ public class EmotionPostAdapter extends RecyclerView.Adapter<EmotionPostAdapter.
     }
 
     /**
-     * Returns the total number of items in the data set held by the adapter.
+     * Returns the post at a position, e.g. for preloading its image.
      *
-     * @return the number of EmotionPost items
+     * @param position the position of the item within the adapter's data set
+     * @return the post, or null if the position is out of range
      */
-    @Override
-    public int getItemCount() {
-        return (posts != null) ? posts.size() : 0;
+    public EmotionPost getPostAt(int position) {
+        return (position >= 0 && position < getItemCount()) ? posts.get(position) : null;
     }
 
     /**
-     * Returns a filter that can be used to constrain data with a filtering pattern.
+     * Returns the total number of items in the data set held by the adapter.
      *
-     * @return a filter for this adapter
+     * @return the number of EmotionPost items
      */
     @Override
-    public Filter getFilter() {
-        return new Filter() {
-            @Override
-            protected FilterResults performFiltering(CharSequence constraint) {
-                List<EmotionPost> filteredList = new ArrayList<>();
-
-                if (constraint == null || constraint.length() == 0) {
-                    filteredList.addAll(allPosts);
-                } else {
-                    String filterPattern = constraint.toString().toLowerCase().trim();
-
-                    for (EmotionPost post : allPosts) {
-                        // Filter criteria - check emotion type, explanation, location, social situation
-                        if ((post.getEmotion() != null && post.getEmotion().toLowerCase().contains(filterPattern)) ||
-                                (post.getExplanation() != null && post.getExplanation().toLowerCase().contains(filterPattern)) ||
-                                (post.getLocation() != null && post.getLocation().toLowerCase().contains(filterPattern)) ||
-                                (post.getSocialSituation() != null && post.getSocialSituation().toLowerCase().contains(filterPattern)) ||
-                                (post.getUsername() != null && post.getUsername().toLowerCase().contains(filterPattern))) {
-                            filteredList.add(post);
-                        }
-                    }
-                }
-
-                FilterResults results = new FilterResults();
-                results.values = filteredList;
-                return results;
-            }
-
-            @Override
-            protected void publishResults(CharSequence constraint, FilterResults results) {
-                posts.clear();
-                posts.addAll((List<EmotionPost>) results.values);
-                notifyDataSetChanged();
-            }
-        };
+    public int getItemCount() {
+        return (posts != null) ? posts.size() : 0;
     }
 
     /**
@@ -232,8 +208,7 @@ public class EmotionPostAdapter extends RecyclerView.Adapter<EmotionPostAdapter.
 
             if (post.getImageUri() != null && !post.getImageUri().isEmpty()) {
                 moodImage.setVisibility(View.VISIBLE);
-                Glide.with(itemView.getContext())
-                        .load(Uri.parse(post.getImageUri()))
+                ListImageLoader.request(Glide.with(itemView), itemView.getContext(), post)
                         .into(moodImage);
             } else {
                 moodImage.setVisibility(View.GONE);
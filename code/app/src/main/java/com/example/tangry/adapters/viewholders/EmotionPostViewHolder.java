@@ -14,7 +14,6 @@
 package com.example.tangry.adapters.viewholders;
 
 import android.content.Context;
-import android.net.Uri;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -26,6 +25,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.bumptech.glide.Glide;
 import com.example.tangry.R;
 import com.example.tangry.models.EmotionPost;
+import com.example.tangry.utils.ListImageLoader;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -95,8 +95,7 @@ public class EmotionPostViewHolder extends RecyclerView.ViewHolder {
 
         // Load mood image using Glide (or show a placeholder)
         if (post.getImageUri() != null && !post.getImageUri().isEmpty()) {
-            Glide.with(context)
-                    .load(Uri.parse(post.getImageUri()))
+            ListImageLoader.request(Glide.with(itemView), context, post)
                     .into(moodImage);
         } else {
             moodImage.setImageResource(R.drawable.ic_placeholder);
@@ -24,12 +24,20 @@ import com.google.firebase.firestore.Query;
 import com.google.firebase.Timestamp;
 
 import android.content.Context;
+import android.net.Uri;
+import com.example.tangry.utils.GeocoderUtility;
+import com.example.tangry.utils.ImageHelper;
+import com.example.tangry.utils.MoodSearchIndex;
 import com.example.tangry.utils.NetworkMonitor;
 import com.example.tangry.utils.OfflineSyncManager;
 
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.OnFailureListener;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Objects;
 
@@ -151,7 +159,16 @@ public class EmotionPostController {
         NetworkMonitor networkMonitor = new NetworkMonitor(context);
 
         if (networkMonitor.isConnected()) {
-            createPost(post, onSuccess, onFailure);
+            createPost(post,
+                    docRef -> {
+                        // Offline creates are indexed by OfflineSyncManager once they have an id
+                        if (docRef != null) {
+                            post.setPostId(docRef.getId());
+                            MoodSearchIndex.getInstance(context).indexPost(post);
+                        }
+                        onSuccess.onSuccess(docRef);
+                    },
+                    onFailure);
         } else {
             syncManager.addPendingCreate(post);
             onSuccess.onSuccess(null); // Return null document reference since we're offline
@@ -165,7 +182,14 @@ public class EmotionPostController {
             NetworkMonitor networkMonitor = new NetworkMonitor(context);
 
             if (networkMonitor.isConnected()) {
-                updateEmotionPost(postId, post, onSuccess, onFailure);
+                updateEmotionPost(postId, post,
+                        () -> {
+                            indexUpdatedPost(context, postId, post);
+                            if (onSuccess != null) {
+                                onSuccess.run();
+                            }
+                        },
+                        onFailure);
             } else {
                 // Create defensive copy with null checks
                 String emotion = post.getEmotion() != null ? post.getEmotion() : "";
@@ -192,11 +216,17 @@ public class EmotionPostController {
                         isPublic);
 
                 // Add timestamp and other metadata
+                postCopy.setThumbnailUri(post.getThumbnailUri());
+                postCopy.setOfflineImagePending(post.isOfflineImagePending());
                 if (post.getTimestamp() != null) {
                     postCopy.setTimestamp(post.getTimestamp());
                 }
+                if (post.hasCoordinates()) {
+                    postCopy.setCoordinates(post.getLat(), post.getLng());
+                }
 
                 syncManager.addPendingUpdate(postId, postCopy);
+                indexUpdatedPost(context, postId, postCopy);
                 if (onSuccess != null) {
                     onSuccess.run();
                 }
@@ -216,12 +246,20 @@ public class EmotionPostController {
 
         if (networkMonitor.isConnected()) {
             // We're online - proceed with normal delete
-            deleteEmotionPost(postId, onSuccess, onFailure);
+            deleteEmotionPost(postId,
+                    () -> {
+                        MoodSearchIndex.getInstance(context).removePost(postId);
+                        if (onSuccess != null) {
+                            onSuccess.run();
+                        }
+                    },
+                    onFailure);
         } else {
             // We're offline - queue for later and provide immediate feedback
             try {
                 // Just store the post ID for deletion without any image handling
                 syncManager.addPendingDelete(postId);
+                MoodSearchIndex.getInstance(context).removePost(postId);
 
                 // Provide immediate success feedback to user
                 if (onSuccess != null) {
@@ -238,6 +276,134 @@ public class EmotionPostController {
         }
     }
 
+    /**
+     * Saves a new post. A picked image is compressed and uploaded first, or copied to the cache
+     * for a later upload when offline, and the address is geocoded in the background if the post
+     * has no coordinates yet. Runs on the application context, so the post is saved even if the
+     * calling screen is closed meanwhile; the callbacks should only give feedback.
+     *
+     * @param context    any context; the application context is used
+     * @param post       the post to save
+     * @param localImage the picked image to attach, or null for none
+     * @param onSuccess  receives the new document, or null if the post was queued offline
+     * @param onFailure  callback for failure scenario
+     */
+    public void savePost(Context context, EmotionPost post, Uri localImage,
+                         OnSuccessListener<DocumentReference> onSuccess, OnFailureListener onFailure) {
+        Context appContext = context.getApplicationContext();
+        attachImage(appContext, post, localImage, "offline_image_",
+                () -> resolveCoordinates(appContext, post,
+                        () -> createPostWithOfflineSupport(appContext, post, onSuccess, onFailure)),
+                onFailure);
+    }
+
+    /**
+     * Saves an edited post. A newly picked image replaces the old one, which is deleted from
+     * Storage once the new one is uploaded, and the address is geocoded if the post has no
+     * coordinates, e.g. because the address changed. Like savePost, it completes even if the
+     * calling screen is closed meanwhile.
+     *
+     * @param context   any context; the application context is used
+     * @param postId    the Firestore document ID of the post
+     * @param post      the edited post
+     * @param newImage  the newly picked image, or null to keep the current one
+     * @param onSuccess callback invoked once the update is written or queued offline
+     * @param onFailure callback for failure scenario
+     */
+    public void saveEditedPost(Context context, String postId, EmotionPost post, Uri newImage,
+                               Runnable onSuccess, OnFailureListener onFailure) {
+        Context appContext = context.getApplicationContext();
+        String oldImageUrl = post.getImageUri();
+        String oldThumbnailUrl = post.getThumbnailUri();
+        attachImage(appContext, post, newImage, "offline_image_" + postId + "_", () -> {
+            if (newImage != null && !post.isOfflineImagePending()) {
+                // The update continues even if deletion fails
+                ImageHelper.deleteUnsharedImage(oldImageUrl, () -> { });
+                ImageHelper.deleteUnsharedImage(oldThumbnailUrl, () -> { });
+            }
+            resolveCoordinates(appContext, post,
+                    () -> updateEmotionPostWithOfflineSupport(appContext, postId, post, onSuccess, onFailure));
+        }, onFailure);
+    }
+
+    /**
+     * Compresses a picked image and stores it on the post: the uploaded image and thumbnail URLs
+     * when online, or a copy in the cache directory marked as pending upload when offline.
+     */
+    private void attachImage(Context appContext, EmotionPost post, Uri localImage, String offlinePrefix,
+                             Runnable onAttached, OnFailureListener onFailure) {
+        if (localImage == null) {
+            onAttached.run();
+            return;
+        }
+        ImageHelper.compressImageAsync(localImage, appContext, processedUri -> {
+            if (!new NetworkMonitor(appContext).isConnected()) {
+                try {
+                    Uri localCopy = copyToCache(appContext, processedUri, offlinePrefix);
+                    post.setImageUri(localCopy.toString());
+                    post.setThumbnailUri(null);
+                    post.setOfflineImagePending(true);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error saving image locally", e);
+                    onFailure.onFailure(e);
+                    return;
+                }
+                onAttached.run();
+                return;
+            }
+            ImageHelper.uploadImage(appContext, processedUri, uploaded -> {
+                post.setImageUri(uploaded.getImageUrl());
+                post.setThumbnailUri(uploaded.getThumbnailUrl());
+                onAttached.run();
+            }, onFailure);
+        }, onFailure);
+    }
+
+    /**
+     * Copies an image into the app's cache directory so it can be uploaded once back online.
+     */
+    private Uri copyToCache(Context appContext, Uri imageUri, String prefix) throws IOException {
+        File localImageFile = new File(appContext.getCacheDir(),
+                prefix + System.currentTimeMillis() + ".jpg");
+        try (InputStream inputStream = appContext.getContentResolver().openInputStream(imageUri);
+             FileOutputStream outputStream = new FileOutputStream(localImageFile)) {
+            if (inputStream == null) {
+                throw new IOException("Cannot open image: " + imageUri);
+            }
+            byte[] buffer = new byte[1024];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, bytesRead);
+            }
+        }
+        return Uri.fromFile(localImageFile);
+    }
+
+    /**
+     * Stores the coordinates of the post's address on it before it is written. Posts without an
+     * address, with coordinates already, or whose address cannot be resolved are left as is.
+     */
+    private void resolveCoordinates(Context appContext, EmotionPost post, Runnable onResolved) {
+        if (!post.hasLocation() || post.hasCoordinates()) {
+            onResolved.run();
+            return;
+        }
+        GeocoderUtility.getGeoPointFromAddressAsync(appContext, post.getLocation(), point -> {
+            if (point != null) {
+                post.setCoordinates(point.getLatitude(), point.getLongitude());
+            }
+            onResolved.run();
+        });
+    }
+
+    /**
+     * Refreshes the on-device search index entry for an edited post.
+     */
+    private void indexUpdatedPost(Context context, String postId, EmotionPost post) {
+        post.setPostId(postId);
+        MoodSearchIndex.getInstance(context).indexPost(post);
+    }
+
     /**
      * Retrieves a Firestore Query for the current user's posts with optional emotion filters
      * and recent time filter.
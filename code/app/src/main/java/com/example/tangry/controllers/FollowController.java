@@ -16,13 +16,17 @@ package com.example.tangry.controllers;
 
 import androidx.annotation.NonNull;
 
+import com.example.tangry.repositories.UserRepository;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -35,12 +39,14 @@ import java.util.Map;
 public class FollowController {
 
     private final FirebaseFirestore db;
+    private final UserRepository userRepository;
 
     /**
      * Constructs a new FollowController and initializes the Firestore instance.
      */
     public FollowController() {
         db = FirebaseFirestore.getInstance();
+        userRepository = UserRepository.getInstance();
     }
 
     /**
@@ -107,8 +113,9 @@ public class FollowController {
 
     /**
      * Accepts a follow request by marking it as accepted and updating the involved user documents.
-     * First updates the follow request document, then updates the follower list of the current user,
-     * and finally updates the followings list of the sender.
+     * Both users are resolved to their document ids, through the UserRepository cache, which
+     * checks that each cached document still carries the username, and the request, the follower
+     * list of the current user and the followings list of the sender are then written in one batch.
      *
      * @param request         The FollowRequest to accept.
      * @param successListener Listener called when the operation is successful.
@@ -123,44 +130,26 @@ public class FollowController {
             failureListener.onFailure(new Exception("Current user not logged in"));
             return;
         }
-        // First, update the follow request document.
-        db.collection("followrequests").document(request.id)
-                .update("accepted", true)
-                .addOnSuccessListener(aVoid -> {
-                    // Update current user's "followers" array.
-                    db.collection("users")
-                            .whereEqualTo("username", currentUser)
-                            .limit(1)
-                            .get()
-                            .addOnSuccessListener(querySnapshot -> {
-                                if (querySnapshot.isEmpty()) {
-                                    failureListener.onFailure(new Exception("Current user document not found"));
-                                    return;
-                                }
-                                String currentUserDocId = querySnapshot.getDocuments().get(0).getId();
-                                db.collection("users").document(currentUserDocId)
-                                        .update("followers", FieldValue.arrayUnion(request.from))
-                                        .addOnSuccessListener(aVoid1 -> {
-                                            // Update sender's "followings" array.
-                                            db.collection("users")
-                                                    .whereEqualTo("username", request.from)
-                                                    .limit(1)
-                                                    .get()
-                                                    .addOnSuccessListener(senderQuery -> {
-                                                        if (senderQuery.isEmpty()) {
-                                                            failureListener.onFailure(new Exception("Sender user document not found"));
-                                                            return;
-                                                        }
-                                                        String senderDocId = senderQuery.getDocuments().get(0).getId();
-                                                        db.collection("users").document(senderDocId)
-                                                                .update("followings", FieldValue.arrayUnion(currentUser))
-                                                                .addOnSuccessListener(aVoid2 -> successListener.onSuccess(null))
-                                                                .addOnFailureListener(failureListener);
-                                                    })
-                                                    .addOnFailureListener(failureListener);
-                                        })
-                                        .addOnFailureListener(failureListener);
-                            })
+        Task<String> currentUserId = userRepository.resolveUserIdByUsername(currentUser);
+        Task<String> senderId = userRepository.resolveUserIdByUsername(request.from);
+        Tasks.whenAllSuccess(currentUserId, senderId)
+                .addOnSuccessListener(ids -> {
+                    if (ids.get(0) == null) {
+                        failureListener.onFailure(new Exception("Current user document not found"));
+                        return;
+                    }
+                    if (ids.get(1) == null) {
+                        failureListener.onFailure(new Exception("Sender user document not found"));
+                        return;
+                    }
+                    WriteBatch batch = db.batch();
+                    batch.update(db.collection("followrequests").document(request.id), "accepted", true);
+                    batch.update(db.collection("users").document((String) ids.get(0)),
+                            "followers", FieldValue.arrayUnion(request.from));
+                    batch.update(db.collection("users").document((String) ids.get(1)),
+                            "followings", FieldValue.arrayUnion(currentUser));
+                    batch.commit()
+                            .addOnSuccessListener(successListener)
                             .addOnFailureListener(failureListener);
                 })
                 .addOnFailureListener(failureListener);
@@ -184,7 +173,7 @@ public class FollowController {
 
     /**
      * Loads the current follow status for a user.
-     * Retrieves the user's followings list by querying the user's document based on email,
+     * Retrieves the user's followings list from the user's document, found by email,
      * and retrieves the list of sent follow requests by querying the followrequests collection.
      *
      * @param currentEmail    The current user's email address.
@@ -196,18 +185,9 @@ public class FollowController {
                                  OnSuccessListener<FollowStatus> successListener,
                                  OnFailureListener failureListener) {
         FollowStatus status = new FollowStatus();
-        db.collection("users")
-                .whereEqualTo("email", currentEmail)
-                .limit(1)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    if (!querySnapshot.isEmpty()) {
-                        DocumentSnapshot doc = querySnapshot.getDocuments().get(0);
-                        List<String> followingList = (List<String>) doc.get("followings");
-                        status.setFollowings(followingList != null ? followingList : new ArrayList<>());
-                    } else {
-                        status.setFollowings(new ArrayList<>());
-                    }
+        userRepository.getFriendsList(currentEmail,
+                followingList -> {
+                    status.setFollowings(followingList != null ? followingList : new ArrayList<>());
                     // Next, get sent follow requests.
                     db.collection("followrequests")
                             .whereEqualTo("from", currentUsername)
@@ -224,8 +204,8 @@ public class FollowController {
                                 successListener.onSuccess(status);
                             })
                             .addOnFailureListener(failureListener);
-                })
-                .addOnFailureListener(failureListener);
+                },
+                failureListener);
     }
 
     /**
@@ -88,41 +88,32 @@ public class UserController {
 
 
     /**
-     * Increments the user's post count and awards a gold badge for every 3 posts.
+     * Rewards the user for a new post: karma, post count, gold badge and daily badge, written
+     * together in one transaction.
      *
-     * @param email     the user's email address
-     * @param onSuccess callback invoked upon successful update
-     * @param onFailure callback invoked if the update fails
-     */
-    public void incrementPostCount(String email,
-                                   OnSuccessListener<Void> onSuccess,
-                                   OnFailureListener onFailure) {
-        repository.updatePostCount(email, onSuccess, onFailure);
-    }
-
-    /**
-     * Increments the user's comment count and awards a silver badge for every 3 comments.
-     *
-     * @param email     the user's email address
-     * @param onSuccess callback invoked upon successful update
-     * @param onFailure callback invoked if the update fails
+     * @param email          the user's email address
+     * @param karmaIncrement the karma earned by the post
+     * @param onSuccess      callback invoked upon successful update
+     * @param onFailure      callback invoked if the update fails
      */
-    public void incrementCommentCount(String email,
-                                      OnSuccessListener<Void> onSuccess,
-                                      OnFailureListener onFailure) {
-        repository.updateCommentCount(email, onSuccess, onFailure);
+    public void recordPostCreated(String email, int karmaIncrement,
+                                  OnSuccessListener<Void> onSuccess,
+                                  OnFailureListener onFailure) {
+        repository.applyPostCreated(email, karmaIncrement, onSuccess, onFailure);
     }
 
     /**
-     * Awards a daily badge if the user hasn't received one for today.
+     * Rewards the user for a new comment: karma, comment count and silver badge, written together
+     * in one transaction.
      *
-     * @param email     the user's email address
-     * @param onSuccess callback invoked upon successful update
-     * @param onFailure callback invoked if the update fails
+     * @param email          the user's email address
+     * @param karmaIncrement the karma earned by the comment
+     * @param onSuccess      callback invoked upon successful update
+     * @param onFailure      callback invoked if the update fails
      */
-    public void updateDailyBadge(String email,
-                                 OnSuccessListener<Void> onSuccess,
-                                 OnFailureListener onFailure) {
-        repository.updateDailyBadge(email, onSuccess, onFailure);
+    public void recordCommentAdded(String email, int karmaIncrement,
+                                   OnSuccessListener<Void> onSuccess,
+                                   OnFailureListener onFailure) {
+        repository.applyCommentAdded(email, karmaIncrement, onSuccess, onFailure);
     }
 }
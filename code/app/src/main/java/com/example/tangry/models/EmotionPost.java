@@ -9,7 +9,9 @@
  * - Stores user emotion data with explanations, images, and contextual information
  * - Implements validation logic for emotion types and post requirements
  * - Supports location tagging and social situation classification
+ * - Stores resolved coordinates and a geohash so maps never geocode at read time
  * - Handles both online and offline image storage scenarios
+ * - Keeps a thumbnail URL next to the full image URL for lists
  * - Maintains privacy settings (public/private) for each post
  * - Includes comment functionality for social interaction
  * - Implements Serializable for data transfer between components
@@ -20,6 +22,7 @@ package com.example.tangry.models;
 
 import android.util.Log;
 
+import com.example.tangry.utils.GeoHash;
 import com.google.firebase.Timestamp;
 
 import java.io.Serializable;
@@ -37,6 +40,7 @@ public class EmotionPost implements Serializable {
     private String emotion;
     private String explanation;
     private String imageUri;
+    private String thumbnailUri; // Small variant of imageUri for lists; null for older posts
     private String location;
     private String socialSituation;
     private String username;
@@ -44,6 +48,9 @@ public class EmotionPost implements Serializable {
     private String postId; // Firestore Document ID
     private List<Comment> comments = new ArrayList<>();
     private boolean isPublic = false; // Default to private
+    private Double lat; // Resolved when the post is written; null if the location is unknown
+    private Double lng;
+    private String geohash;
 
     // List of valid emotions
     public static final List<String> VALID_EMOTIONS = Arrays.asList(
@@ -129,6 +136,14 @@ public class EmotionPost implements Serializable {
         this.imageUri = imageUri;
     }
 
+    public String getThumbnailUri() {
+        return thumbnailUri;
+    }
+
+    public void setThumbnailUri(String thumbnailUri) {
+        this.thumbnailUri = thumbnailUri;
+    }
+
     public String getLocation() {
         return location;
     }
@@ -193,12 +208,73 @@ public class EmotionPost implements Serializable {
         this.isPublic = isPublic;
     }
 
+    public Double getLat() {
+        return lat;
+    }
+
+    public void setLat(Double lat) {
+        this.lat = lat;
+    }
+
+    public Double getLng() {
+        return lng;
+    }
+
+    public void setLng(Double lng) {
+        this.lng = lng;
+    }
+
+    public String getGeohash() {
+        return geohash;
+    }
+
+    public void setGeohash(String geohash) {
+        this.geohash = geohash;
+    }
+
+    /**
+     * Sets the post's coordinates and derives its geohash.
+     *
+     * @param lat the latitude in degrees
+     * @param lng the longitude in degrees
+     */
+    public void setCoordinates(double lat, double lng) {
+        this.lat = lat;
+        this.lng = lng;
+        this.geohash = GeoHash.encode(lat, lng, GeoHash.POST_PRECISION);
+    }
+
+    /**
+     * Clears the coordinates, e.g. when the location text is edited.
+     */
+    public void clearCoordinates() {
+        this.lat = null;
+        this.lng = null;
+        this.geohash = null;
+    }
+
+    /**
+     * Returns whether the post has resolved coordinates.
+     */
+    public boolean hasCoordinates() {
+        return lat != null && lng != null;
+    }
+
+    /**
+     * Returns whether the post has a location worth resolving. The private constructor stores the
+     * literal string "null" when no location was given.
+     */
+    public boolean hasLocation() {
+        return location != null && !location.trim().isEmpty() && !"null".equals(location);
+    }
+
     @Override
     public String toString() {
         return "EmotionPost{" +
                 "emotion='" + emotion + '\'' +
                 ", explanation='" + explanation + '\'' +
                 ", imageUri='" + imageUri + '\'' +
+                ", thumbnailUri='" + thumbnailUri + '\'' +
                 ", location='" + location + '\'' +
                 ", socialSituation='" + socialSituation + '\'' +
                 ", username='" + username + '\'' +
@@ -206,6 +282,8 @@ public class EmotionPost implements Serializable {
                 ", postId='" + postId + '\'' +
                 ", offlineImagePending=" + offlineImagePending +
                 ", isPublic=" + isPublic +
+                ", lat=" + lat +
+                ", lng=" + lng +
                 '}';
     }
 }
\ No newline at end of file
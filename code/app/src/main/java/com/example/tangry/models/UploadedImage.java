@@ -0,0 +1,45 @@
+/**
+ * UploadedImage.java
+ *
+ * This model class holds the download URLs of an uploaded post image: the full-size image shown on
+ * the post details screen and the small thumbnail shown in lists.
+ *
+ * Outstanding Issues:
+ * - The thumbnail URL is null when no thumbnail could be generated; callers fall back to the image.
+ */
+
+package com.example.tangry.models;
+
+public class UploadedImage {
+    private final String imageUrl;
+    private final String thumbnailUrl;
+
+    /**
+     * Constructs a new UploadedImage instance.
+     *
+     * @param imageUrl     the download URL of the full-size image
+     * @param thumbnailUrl the download URL of the thumbnail, or null if there is none
+     */
+    public UploadedImage(String imageUrl, String thumbnailUrl) {
+        this.imageUrl = imageUrl;
+        this.thumbnailUrl = thumbnailUrl;
+    }
+
+    /**
+     * Returns the download URL of the full-size image.
+     *
+     * @return the image URL
+     */
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    /**
+     * Returns the download URL of the thumbnail.
+     *
+     * @return the thumbnail URL, or null if there is none
+     */
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * DownloadUrlCache.java
+ *
+ * This file contains the memo of Firebase Storage download URLs by object path. Download URLs
+ * carry a token that stays valid until it is revoked, so once known, a URL is reused instead of
+ * being resolved again with getDownloadUrl.
+ *
+ * Key features:
+ * - Memory map in front of an optional SharedPreferences store that survives restarts
+ * - Entries are refreshable: invalidate drops one so the next lookup resolves it again
+ * - Bounded: the persisted store is cleared when it grows beyond MAX_PERSISTED_ENTRIES
+ *
+ * Outstanding Issues:
+ * - A revoked token is only noticed when a caller invalidates the entry.
+ */
+package com.example.tangry.repositories;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class DownloadUrlCache {
+    private static final int MAX_PERSISTED_ENTRIES = 500;
+
+    // Guarded by this.
+    private final Map<String, String> urlsByPath = new HashMap<>();
+    private SharedPreferences store;
+
+    /**
+     * Adds persistence, loading the URLs stored by earlier sessions.
+     *
+     * @param store the preferences to persist entries in
+     */
+    public synchronized void attachStore(SharedPreferences store) {
+        if (this.store != null) {
+            return;
+        }
+        this.store = store;
+        for (Map.Entry<String, ?> entry : store.getAll().entrySet()) {
+            if (entry.getValue() instanceof String && !urlsByPath.containsKey(entry.getKey())) {
+                urlsByPath.put(entry.getKey(), (String) entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the known download URL of an object.
+     *
+     * @param path the object path
+     * @return the URL, or null if it is not known
+     */
+    public synchronized String get(String path) {
+        return urlsByPath.get(path);
+    }
+
+    /**
+     * Records the download URL of an object.
+     *
+     * @param path the object path
+     * @param url  the download URL
+     */
+    public synchronized void put(String path, String url) {
+        urlsByPath.put(path, url);
+        if (store != null) {
+            SharedPreferences.Editor editor = store.edit();
+            // A rebuildable cache: dropping everything keeps the preferences file small.
+            if (store.getAll().size() >= MAX_PERSISTED_ENTRIES) {
+                editor.clear();
+            }
+            editor.putString(path, url).apply();
+        }
+    }
+
+    /**
+     * Forgets the URL of an object, e.g. after it was deleted or its token stopped working.
+     *
+     * @param path the object path
+     */
+    public synchronized void invalidate(String path) {
+        urlsByPath.remove(path);
+        if (store != null) {
+            store.edit().remove(path).apply();
+        }
+    }
+}
@@ -13,6 +13,9 @@
  * - Implements friend-specific post retrieval with privacy controls
  * - Supports limiting the number of posts per friend in feeds (3 most recent)
  * - Handles post synchronization between local models and remote database
+ * - Stores coordinates and a geohash on each post so map queries need no geocoding
+ * - Reads the recent posts of followed users in a geohash cell with range queries, for the map's
+ *   viewport loader, and each user's latest post with one limit(1) query per user
  * - Encapsulates all Firestore-specific operations behind a clean API
  * - Enables testability through dependency injection
  */
@@ -22,12 +25,17 @@ import android.util.Log;
 import com.example.tangry.datasource.FirebaseDataSource;
 import com.example.tangry.models.Comment;
 import com.example.tangry.models.EmotionPost;
+import com.example.tangry.utils.GeoHash;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
 import com.google.firebase.firestore.FieldValue;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -39,6 +47,8 @@ public class EmotionPostRepository {
     private static EmotionPostRepository instance;
     private FirebaseDataSource firebaseDataSource;
     private static final String TAG = "EmotionPostRepository";
+    // Firestore accepts at most this many values in one whereIn filter.
+    private static final int MAX_IN_VALUES = 30;
 
     /**
      * Constructs a new EmotionPostRepository using the default "emotions" collection.
@@ -84,10 +94,16 @@ public class EmotionPostRepository {
         data.put("emotion", post.getEmotion());
         data.put("explanation", post.getExplanation());
         data.put("imageUri", post.getImageUri());
+        data.put("thumbnailUri", post.getThumbnailUri());
         data.put("location", post.getLocation());
         data.put("socialSituation", post.getSocialSituation());
         data.put("username", post.getUsername());
         data.put("public", post.isPublic()); // Add the isPublic field
+        if (post.hasCoordinates()) {
+            data.put("lat", post.getLat());
+            data.put("lng", post.getLng());
+            data.put("geohash", post.getGeohash());
+        }
         data.put("timestamp", FieldValue.serverTimestamp());
         firebaseDataSource.saveData(data, successListener, failureListener);
     }
@@ -184,6 +200,88 @@ public class EmotionPostRepository {
                 .orderBy("timestamp", Query.Direction.DESCENDING);
     }
 
+    /**
+     * Retrieves the recent posts of the given users whose geohash starts with the given cell. Each
+     * query combines a range on the "geohash" field with the usernames and a lower timestamp bound,
+     * so only posts the map can show are downloaded. Usernames are queried in chunks of
+     * MAX_IN_VALUES. Posts without coordinates are never returned.
+     *
+     * @param cell      the geohash cell, e.g. one returned by GeoHash.cellsInBounds
+     * @param usernames the users whose posts are loaded
+     * @param since     the oldest post timestamp to include
+     * @param onSuccess receives the posts in the cell, with their post IDs set
+     * @param onFailure callback on failure
+     */
+    public void getPostsInGeohashCell(String cell, List<String> usernames, Timestamp since,
+                                      OnSuccessListener<List<EmotionPost>> onSuccess,
+                                      OnFailureListener onFailure) {
+        List<Task<QuerySnapshot>> queries = new ArrayList<>();
+        for (int start = 0; start < usernames.size(); start += MAX_IN_VALUES) {
+            List<String> chunk = usernames.subList(start, Math.min(start + MAX_IN_VALUES, usernames.size()));
+            queries.add(firebaseDataSource.getCollectionReference()
+                    .whereIn("username", new ArrayList<>(chunk))
+                    .whereGreaterThanOrEqualTo("timestamp", since)
+                    .orderBy("geohash")
+                    .startAt(cell)
+                    .endAt(cell + "\uf8ff")
+                    .get());
+        }
+        Tasks.whenAllSuccess(queries)
+                .addOnSuccessListener(snapshots -> {
+                    List<EmotionPost> posts = new ArrayList<>();
+                    for (Object snapshot : snapshots) {
+                        for (DocumentSnapshot doc : ((QuerySnapshot) snapshot).getDocuments()) {
+                            EmotionPost post = doc.toObject(EmotionPost.class);
+                            if (post != null && post.hasCoordinates()) {
+                                post.setPostId(doc.getId());
+                                posts.add(post);
+                            }
+                        }
+                    }
+                    onSuccess.onSuccess(posts);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Geohash range query failed for cell " + cell, e);
+                    onFailure.onFailure(e);
+                });
+    }
+
+    /**
+     * Sorts posts most recent first; posts without a timestamp keep their relative position.
+     *
+     * @param posts the posts to sort in place
+     */
+    public static void sortByTimestampDescending(List<EmotionPost> posts) {
+        posts.sort((p1, p2) -> {
+            if (p1.getTimestamp() == null || p2.getTimestamp() == null) {
+                return 0;
+            }
+            return p2.getTimestamp().compareTo(p1.getTimestamp());
+        });
+    }
+
+    /**
+     * Writes resolved coordinates and their geohash onto an existing post.
+     *
+     * @param postId    the document ID of the EmotionPost
+     * @param lat       the latitude in degrees
+     * @param lng       the longitude in degrees
+     * @param onSuccess callback on successful update
+     * @param onFailure callback on failure
+     */
+    public void updatePostCoordinates(String postId, double lat, double lng,
+                                      Runnable onSuccess, OnFailureListener onFailure) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("lat", lat);
+        data.put("lng", lng);
+        data.put("geohash", GeoHash.encode(lat, lng, GeoHash.POST_PRECISION));
+        firebaseDataSource.getCollectionReference()
+                .document(postId)
+                .update(data)
+                .addOnSuccessListener(aVoid -> onSuccess.run())
+                .addOnFailureListener(onFailure);
+    }
+
     /**
      * Adds a comment to an existing EmotionPost in Firestore.
      *
@@ -327,4 +425,51 @@ public class EmotionPostRepository {
                     });
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the most recent post of each user, public or private, for the map's one pin per user.
+     * Makes one limit(1) query per user and combines the results; users without posts are
+     * left out.
+     *
+     * @param usernames the users whose latest posts are loaded
+     * @param callback  callback to receive the combined list of posts
+     */
+    public void getLatestPostPerUser(List<String> usernames, OnPostsLoadedCallback callback) {
+        if (usernames.isEmpty()) {
+            callback.onPostsLoaded(new ArrayList<>());
+            return;
+        }
+
+        List<EmotionPost> latestPosts = new ArrayList<>();
+        final int[] completedQueries = {0};
+        final int totalQueries = usernames.size();
+
+        for (String username : usernames) {
+            firebaseDataSource.getCollectionReference()
+                    .whereEqualTo("username", username)
+                    .orderBy("timestamp", Query.Direction.DESCENDING)
+                    .limit(1)
+                    .get()
+                    .addOnSuccessListener(querySnapshot -> {
+                        for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
+                            EmotionPost post = doc.toObject(EmotionPost.class);
+                            if (post != null) {
+                                post.setPostId(doc.getId());
+                                latestPosts.add(post);
+                            }
+                        }
+                        completedQueries[0]++;
+                        if (completedQueries[0] >= totalQueries) {
+                            callback.onPostsLoaded(latestPosts);
+                        }
+                    })
+                    .addOnFailureListener(e -> {
+                        Log.e(TAG, "Error querying latest post for user: " + username, e);
+                        completedQueries[0]++;
+                        if (completedQueries[0] >= totalQueries) {
+                            callback.onPostsLoaded(latestPosts);
+                        }
+                    });
+        }
+    }
+}
@@ -2,10 +2,21 @@
  * ImageStorageRepository.java
  *
  * This repository class provides an abstraction layer for interacting with Firebase Storage.
- * It supports common image operations such as uploading images (with or without progress tracking),
- * retrieving download URLs, and deleting images. The class follows the singleton design pattern
+ * It supports common image operations such as uploading images (with or without progress tracking,
+ * or together with a list thumbnail), retrieving download URLs, and deleting images. The class follows the singleton design pattern
  * to ensure a single instance is used throughout the application.
  *
+ * Download URLs are kept in a DownloadUrlCache by storage path. Uploads attach their own download
+ * token, so their URL is known without a getDownloadUrl call, and lookups are memoized and
+ * coalesced so each path is resolved over the network at most once. An image is reused from its
+ * cached URL without a round trip; only uncached paths are checked against Storage, with a metadata
+ * update that also restarts the garbage collector's grace period. The collector re-checks
+ * references right before it deletes, and this device drops the cached URL of an image once one of
+ * its posts stops using it.
+ *
+ * Listing, metadata and awaitable deletes back the StorageGcService, which removes images that no
+ * post references any more.
+ *
  * Outstanding Issues:
  * - We considering implementing retry logic for network-related failures.
  * - Further customization for different storage buckets or advanced metadata handling might be added.
@@ -13,18 +24,36 @@
 
 package com.example.tangry.repositories;
 
+import android.content.Context;
 import android.net.Uri;
 import android.util.Log;
+import com.example.tangry.models.UploadedImage;
+import com.example.tangry.utils.StorageUrls;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.ListResult;
+import com.google.firebase.storage.StorageException;
+import com.google.firebase.storage.StorageMetadata;
 import com.google.firebase.storage.StorageReference;
 import com.google.firebase.storage.UploadTask;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
 import java.util.function.Consumer;
 
 public class ImageStorageRepository {
     private static final String TAG = "ImageStorageRepository";
+    private static final String URL_PREFS_NAME = "download_url_cache";
+    // Custom metadata written when a stored image is reused; it bumps the object's update time.
+    private static final String REUSED_AT_KEY = "reusedAt";
 
     private static ImageStorageRepository instance;
     private final FirebaseStorage storage;
+    private final DownloadUrlCache urlCache = new DownloadUrlCache();
+    // Only touched on the main thread, where Storage delivers its results.
+    private final Map<String, Task<Uri>> inFlight = new HashMap<>();
+    private String endpoint = StorageUrls.DEFAULT_ENDPOINT;
 
     /**
      * Private constructor for singleton instantiation.
@@ -35,7 +64,8 @@ public class ImageStorageRepository {
     }
 
     /**
-     * Returns the singleton instance of ImageStorageRepository.
+     * Returns the singleton instance of ImageStorageRepository. Download URLs are only memoized
+     * in memory until getInstance(Context) is called once.
      *
      * @return the ImageStorageRepository instance
      */
@@ -46,6 +76,20 @@ public class ImageStorageRepository {
         return instance;
     }
 
+    /**
+     * Returns the singleton instance of ImageStorageRepository, persisting download URLs on the
+     * device.
+     *
+     * @param context any context; the application context is used
+     * @return the ImageStorageRepository instance
+     */
+    public static synchronized ImageStorageRepository getInstance(Context context) {
+        ImageStorageRepository repository = getInstance();
+        repository.urlCache.attachStore(context.getApplicationContext()
+                .getSharedPreferences(URL_PREFS_NAME, Context.MODE_PRIVATE));
+        return repository;
+    }
+
     /**
      * Constructor for testing purposes that accepts a custom FirebaseStorage
      * instance.
@@ -56,6 +100,18 @@ public class ImageStorageRepository {
         storage = storageInstance;
     }
 
+    /**
+     * Points this repository at the local Storage emulator, including the download URLs it builds.
+     * Must be called before any other use of the FirebaseStorage instance.
+     *
+     * @param host the emulator host, e.g. 10.0.2.2 from the Android emulator
+     * @param port the emulator port
+     */
+    public void useEmulator(String host, int port) {
+        storage.useEmulator(host, port);
+        endpoint = "http://" + host + ":" + port;
+    }
+
     /**
      * Uploads an image to Firebase Storage.
      *
@@ -68,20 +124,10 @@ public class ImageStorageRepository {
      */
     public void uploadImage(Uri imageUri, String storagePath, Consumer<String> onSuccess,
             Consumer<Exception> onFailure) {
-        StorageReference imageRef = storage.getReference().child(storagePath);
-
-        imageRef.putFile(imageUri)
-                .addOnSuccessListener(taskSnapshot -> {
-                    // Get the download URL
-                    imageRef.getDownloadUrl()
-                            .addOnSuccessListener(uri -> {
-                                Log.d(TAG, "Image uploaded successfully: " + uri.toString());
-                                onSuccess.accept(uri.toString());
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e(TAG, "Failed to get download URL: " + e.getMessage());
-                                onFailure.accept(e);
-                            });
+        putWithToken(storagePath, imageUri)
+                .addOnSuccessListener(url -> {
+                    Log.d(TAG, "Image uploaded successfully: " + url);
+                    onSuccess.accept(url);
                 })
                 .addOnFailureListener(e -> {
                     Log.e(TAG, "Image upload failed: " + e.getMessage());
@@ -89,6 +135,62 @@ public class ImageStorageRepository {
                 });
     }
 
+    /**
+     * Uploads an image and its thumbnail to Firebase Storage in parallel.
+     *
+     * @param imageUri      the local URI of the full-size image
+     * @param thumbnailUri  the local URI of the thumbnail
+     * @param storagePath   the path in Firebase Storage for the full-size image
+     * @param thumbnailPath the path in Firebase Storage for the thumbnail
+     * @param onSuccess     callback that receives both download URLs upon success
+     * @param onFailure     callback that receives an Exception if either upload fails
+     */
+    public void uploadImageWithThumbnail(Uri imageUri, Uri thumbnailUri, String storagePath,
+            String thumbnailPath, Consumer<UploadedImage> onSuccess, Consumer<Exception> onFailure) {
+        Task<String> imageTask = putWithToken(storagePath, imageUri);
+        Task<String> thumbnailTask = putWithToken(thumbnailPath, thumbnailUri);
+
+        Tasks.whenAllSuccess(imageTask, thumbnailTask)
+                .addOnSuccessListener(results -> {
+                    Log.d(TAG, "Image and thumbnail uploaded successfully: " + imageTask.getResult());
+                    onSuccess.accept(new UploadedImage(imageTask.getResult(), thumbnailTask.getResult()));
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Image or thumbnail upload failed: " + e.getMessage());
+                    onFailure.accept(e);
+                });
+    }
+
+    /**
+     * Checks which of an image and its thumbnail are already stored. Known objects are answered
+     * from the URL cache; the others with one metadata update each, far cheaper than uploading.
+     * The update fails for missing objects and refreshes the update time of existing ones, so the
+     * collector's grace period protects an object from the moment it is reused rather than from
+     * its original upload.
+     *
+     * @param storagePath   the path in Firebase Storage of the full-size image
+     * @param thumbnailPath the path in Firebase Storage of the thumbnail
+     * @param onChecked     callback that receives the download URLs, null for missing objects
+     * @param onFailure     callback that receives an Exception if an object could not be checked
+     */
+    public void findStoredImage(String storagePath, String thumbnailPath,
+            Consumer<UploadedImage> onChecked, Consumer<Exception> onFailure) {
+        Task<Uri> imageTask = findStored(storagePath);
+        Task<Uri> thumbnailTask = findStored(thumbnailPath);
+
+        Tasks.whenAllComplete(imageTask, thumbnailTask).addOnCompleteListener(task -> {
+            Exception error = checkError(imageTask);
+            if (error == null) {
+                error = checkError(thumbnailTask);
+            }
+            if (error != null) {
+                onFailure.accept(error);
+                return;
+            }
+            onChecked.accept(new UploadedImage(urlOrNull(imageTask), urlOrNull(thumbnailTask)));
+        });
+    }
+
     /**
      * Uploads an image to Firebase Storage with progress tracking.
      *
@@ -108,9 +210,8 @@ public class ImageStorageRepository {
             Consumer<String> onSuccess,
             Consumer<Exception> onFailure) {
 
-        StorageReference imageRef = storage.getReference().child(storagePath);
-
-        UploadTask uploadTask = imageRef.putFile(imageUri);
+        String token = UUID.randomUUID().toString();
+        UploadTask uploadTask = storage.getReference().child(storagePath).putFile(imageUri, tokenMetadata(token));
 
         // Register progress listener
         uploadTask.addOnProgressListener(taskSnapshot -> {
@@ -118,16 +219,9 @@ public class ImageStorageRepository {
             progressListener.accept((int) progress);
         });
 
-        uploadTask.continueWithTask(task -> {
-            if (!task.isSuccessful()) {
-                throw task.getException();
-            }
-            // Continue with the task to get the download URL
-            return imageRef.getDownloadUrl();
-        }).addOnCompleteListener(task -> {
+        uploadTask.addOnCompleteListener(task -> {
             if (task.isSuccessful()) {
-                Uri downloadUri = task.getResult();
-                onSuccess.accept(downloadUri.toString());
+                onSuccess.accept(rememberUrl(storagePath, token));
             } else {
                 onFailure.accept(task.getException());
             }
@@ -135,7 +229,8 @@ public class ImageStorageRepository {
     }
 
     /**
-     * Retrieves the download URL for an image stored in Firebase Storage.
+     * Retrieves the download URL for an image stored in Firebase Storage. URLs are memoized, and
+     * concurrent requests for the same path share one network call.
      *
      * @param storagePath the path in Firebase Storage where the image is stored
      * @param onSuccess   callback that receives the download URL as a String upon
@@ -143,19 +238,48 @@ public class ImageStorageRepository {
      * @param onFailure   callback that receives an Exception upon failure
      */
     public void getImageUrl(String storagePath, Consumer<String> onSuccess, Consumer<Exception> onFailure) {
-        StorageReference imageRef = storage.getReference().child(storagePath);
-
-        imageRef.getDownloadUrl()
-                .addOnSuccessListener(uri -> {
-                    Log.d(TAG, "Got download URL: " + uri.toString());
-                    onSuccess.accept(uri.toString());
-                })
+        resolve(storagePath)
+                .addOnSuccessListener(uri -> onSuccess.accept(uri.toString()))
                 .addOnFailureListener(e -> {
                     Log.e(TAG, "Failed to get download URL: " + e.getMessage());
                     onFailure.accept(e);
                 });
     }
 
+    /**
+     * Drops the cached download URL of an image and resolves it again, e.g. after a load with a
+     * stored URL failed because its download token was revoked.
+     *
+     * @param storagePath the path in Firebase Storage where the image is stored
+     * @param onSuccess   callback that receives the fresh download URL
+     * @param onFailure   callback that receives an Exception upon failure
+     */
+    public void refreshImageUrl(String storagePath, Consumer<String> onSuccess, Consumer<Exception> onFailure) {
+        urlCache.invalidate(storagePath);
+        getImageUrl(storagePath, onSuccess, onFailure);
+    }
+
+    /**
+     * Drops the cached download URL of an image that may no longer be referenced, e.g. after the
+     * post using it was deleted, so a later reuse checks that it still exists.
+     *
+     * @param storagePath the path in Firebase Storage where the image is stored
+     */
+    public void forgetImageUrl(String storagePath) {
+        urlCache.invalidate(storagePath);
+    }
+
+    /**
+     * Returns the URL every download URL of an object starts with, whatever its token, e.g. to
+     * find the posts referencing it with a range query.
+     *
+     * @param storagePath the path in Firebase Storage
+     * @return the object URL
+     */
+    public String objectUrl(String storagePath) {
+        return StorageUrls.objectUrl(endpoint, storage.getReference().getBucket(), storagePath);
+    }
+
     /**
      * Deletes an image from Firebase Storage.
      *
@@ -165,6 +289,7 @@ public class ImageStorageRepository {
      */
     public void deleteImage(String storagePath, Runnable onSuccess, Consumer<Exception> onFailure) {
         StorageReference imageRef = storage.getReference().child(storagePath);
+        urlCache.invalidate(storagePath);
 
         imageRef.delete()
                 .addOnSuccessListener(aVoid -> {
@@ -176,4 +301,132 @@ public class ImageStorageRepository {
                     onFailure.accept(e);
                 });
     }
+
+    /**
+     * Lists one page of the objects under a folder. Used by the storage garbage collector.
+     *
+     * @param folder     the folder in Firebase Storage, e.g. "images"
+     * @param pageToken  the token from the previous page, or null for the first page
+     * @param maxResults the page size
+     * @return a task with the page of objects and the next page token
+     */
+    public Task<ListResult> listImages(String folder, String pageToken, int maxResults) {
+        StorageReference folderRef = storage.getReference().child(folder);
+        return pageToken == null ? folderRef.list(maxResults) : folderRef.list(maxResults, pageToken);
+    }
+
+    /**
+     * Retrieves the metadata of a stored image, e.g. its last update time.
+     *
+     * @param storagePath the path in Firebase Storage where the image is stored
+     * @return a task with the image metadata
+     */
+    public Task<StorageMetadata> getImageMetadata(String storagePath) {
+        return storage.getReference().child(storagePath).getMetadata();
+    }
+
+    /**
+     * Deletes an image from Firebase Storage, treating an already missing image as deleted.
+     * Unlike the callback variant this may be awaited from a background thread.
+     *
+     * @param storagePath the path in Firebase Storage where the image is stored
+     * @return a task that completes once the image is gone
+     */
+    public Task<Void> deleteImage(String storagePath) {
+        urlCache.invalidate(storagePath);
+        return storage.getReference().child(storagePath).delete()
+                .continueWith(task -> {
+                    if (!task.isSuccessful() && !isNotFound(task.getException())) {
+                        throw task.getException();
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Uploads a file with a download token of our own, so its URL can be built locally.
+     */
+    private Task<String> putWithToken(String storagePath, Uri fileUri) {
+        String token = UUID.randomUUID().toString();
+        return storage.getReference().child(storagePath).putFile(fileUri, tokenMetadata(token))
+                .continueWith(task -> {
+                    if (!task.isSuccessful()) {
+                        throw task.getException();
+                    }
+                    return rememberUrl(storagePath, token);
+                });
+    }
+
+    private StorageMetadata tokenMetadata(String token) {
+        return new StorageMetadata.Builder()
+                .setCustomMetadata(StorageUrls.DOWNLOAD_TOKENS_KEY, token)
+                .build();
+    }
+
+    private String rememberUrl(String storagePath, String token) {
+        String url = StorageUrls.downloadUrl(endpoint, storage.getReference().getBucket(), storagePath, token);
+        urlCache.put(storagePath, url);
+        return url;
+    }
+
+    /**
+     * Returns the cached download URL of a stored object, or marks an uncached object as reused
+     * and then resolves its URL. Fails with ERROR_OBJECT_NOT_FOUND if the object does not exist.
+     */
+    private Task<Uri> findStored(String storagePath) {
+        String cached = urlCache.get(storagePath);
+        if (cached != null) {
+            return Tasks.forResult(Uri.parse(cached));
+        }
+        StorageMetadata reused = new StorageMetadata.Builder()
+                .setCustomMetadata(REUSED_AT_KEY, String.valueOf(System.currentTimeMillis()))
+                .build();
+        return storage.getReference().child(storagePath).updateMetadata(reused)
+                .continueWithTask(task -> {
+                    if (!task.isSuccessful()) {
+                        return Tasks.forException(task.getException());
+                    }
+                    return resolve(storagePath);
+                });
+    }
+
+    /**
+     * Returns the download URL of a path from the cache, from a lookup already in flight, or
+     * from a new lookup whose result is cached.
+     */
+    private Task<Uri> resolve(String storagePath) {
+        String cached = urlCache.get(storagePath);
+        if (cached != null) {
+            return Tasks.forResult(Uri.parse(cached));
+        }
+        Task<Uri> pending = inFlight.get(storagePath);
+        if (pending != null) {
+            return pending;
+        }
+        Task<Uri> lookup = storage.getReference().child(storagePath).getDownloadUrl()
+                .addOnCompleteListener(task -> {
+                    inFlight.remove(storagePath);
+                    if (task.isSuccessful()) {
+                        urlCache.put(storagePath, task.getResult().toString());
+                    }
+                });
+        inFlight.put(storagePath, lookup);
+        return lookup;
+    }
+
+    private static Exception checkError(Task<Uri> task) {
+        if (task.isSuccessful() || isNotFound(task.getException())) {
+            return null;
+        }
+        return task.getException();
+    }
+
+    private static String urlOrNull(Task<Uri> task) {
+        return task.isSuccessful() ? task.getResult().toString() : null;
+    }
+
+    private static boolean isNotFound(Exception e) {
+        return e instanceof StorageException
+                && ((StorageException) e).getErrorCode() == StorageException.ERROR_OBJECT_NOT_FOUND;
+    }
 }
@@ -0,0 +1,118 @@
+/**
+ * UserIdCache.java
+ *
+ * This file contains the memo of user document ids by email and by username. User documents are
+ * keyed by generated ids, so without it every operation on a user starts with a whereEqualTo
+ * query just to find the document.
+ *
+ * Key features:
+ * - Memory map in front of an optional SharedPreferences store that survives restarts
+ * - Emails and usernames share one map under prefixed keys
+ * - Forgetting a document drops every key that points to it, e.g. after a rename
+ * - Bounded: the persisted store is cleared when it grows beyond MAX_PERSISTED_ENTRIES
+ *
+ * Outstanding Issues:
+ * - Entries are not validated here: UserRepository reads the document behind a cached username
+ *   before using it, and drops a cached email id only once a write to it fails with NOT_FOUND.
+ */
+package com.example.tangry.repositories;
+
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class UserIdCache {
+    private static final int MAX_PERSISTED_ENTRIES = 500;
+
+    // Guarded by this.
+    private final Map<String, String> idsByKey = new HashMap<>();
+    private SharedPreferences store;
+
+    /**
+     * Returns the cache key of a user field value.
+     *
+     * @param field the user document field, "email" or "username"
+     * @param value the field value
+     * @return the key
+     */
+    public static String key(String field, String value) {
+        return field + ":" + value;
+    }
+
+    /**
+     * Adds persistence, loading the ids stored by earlier sessions.
+     *
+     * @param store the preferences to persist entries in
+     */
+    public synchronized void attachStore(SharedPreferences store) {
+        if (this.store != null) {
+            return;
+        }
+        this.store = store;
+        for (Map.Entry<String, ?> entry : store.getAll().entrySet()) {
+            if (entry.getValue() instanceof String && !idsByKey.containsKey(entry.getKey())) {
+                idsByKey.put(entry.getKey(), (String) entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the known document id for a key.
+     *
+     * @param key a key built with key(field, value)
+     * @return the document id, or null if it is not known
+     */
+    public synchronized String get(String key) {
+        return idsByKey.get(key);
+    }
+
+    /**
+     * Records the document id for a key.
+     *
+     * @param key   a key built with key(field, value)
+     * @param docId the user document id
+     */
+    public synchronized void put(String key, String docId) {
+        if (docId.equals(idsByKey.put(key, docId))) {
+            return;
+        }
+        if (store != null) {
+            SharedPreferences.Editor editor = store.edit();
+            // A rebuildable cache: dropping everything keeps the preferences file small.
+            if (store.getAll().size() >= MAX_PERSISTED_ENTRIES) {
+                editor.clear();
+            }
+            editor.putString(key, docId).apply();
+        }
+    }
+
+    /**
+     * Forgets every key that resolves to a document, e.g. after it was renamed or deleted.
+     *
+     * @param docId the user document id
+     */
+    public synchronized void forgetDocument(String docId) {
+        List<String> stale = new ArrayList<>();
+        for (Map.Entry<String, String> entry : idsByKey.entrySet()) {
+            if (entry.getValue().equals(docId)) {
+                stale.add(entry.getKey());
+            }
+        }
+        if (stale.isEmpty()) {
+            return;
+        }
+        SharedPreferences.Editor editor = store != null ? store.edit() : null;
+        for (String key : stale) {
+            idsByKey.remove(key);
+            if (editor != null) {
+                editor.remove(key);
+            }
+        }
+        if (editor != null) {
+            editor.apply();
+        }
+    }
+}
@@ -11,29 +11,43 @@
  * - Tracks karma points and badge achievements (gold, silver, daily)
  * - Handles user statistics for the leaderboard and profile displays
  * - Supports friend relationship management through following/follower lists
- * - Implements achievements logic for post creation and commenting
- * - Provides user search functionality by username prefix
+ * - Applies the rewards of a post or comment (karma, counts, badges) in a single transaction
+ * - Provides user search functionality by username prefix and by substring via trigram tokens
  * - Tracks daily login rewards through badge system
  * - Encapsulates all Firestore user-related operations behind a clean API
+ * - Resolves emails and usernames to document ids through a persisted UserIdCache, coalescing
+ *   concurrent lookups, so user writes go straight to document(id); cached username ids are
+ *   checked against their document first, since usernames can move between accounts
  * - Enables testability through dependency injection
  */
 package com.example.tangry.repositories;
 
+import android.content.Context;
+
 import com.example.tangry.datasource.FirebaseDataSource;
 import com.example.tangry.models.UserStats;
+import com.example.tangry.utils.SearchGrams;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.Query.Direction;
 import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -45,6 +59,25 @@ public class UserRepository {
     private FirebaseDataSource firebaseDataSource;
     private FirebaseAuth mAuth;
     private static final String COLLECTION_NAME = "users";
+    private static final String FIELD_USERNAME_LOWER = "usernameLower";
+    private static final String FIELD_SEARCH_GRAMS = "searchGrams";
+    private static final String FIELD_UPDATED_AT = "updatedAt";
+    // Project-wide record of completed one-off migrations.
+    private static final String MIGRATIONS_COLLECTION = "meta";
+    private static final String MIGRATIONS_DOCUMENT = "migrations";
+    private static final String MIGRATION_SEARCH_FIELDS = "searchFields";
+    private static final int SEARCH_RESULT_LIMIT = 20;
+    // Candidates fetched per gram query page; some are dropped by client-side verification.
+    private static final int SEARCH_CANDIDATE_LIMIT = 50;
+    // Upper bound on the gram query pages read for one search.
+    private static final int SEARCH_MAX_PAGES = 5;
+    // A gold badge for every third post, a silver badge for every third comment.
+    private static final int BADGE_INTERVAL = 3;
+    private static final String ID_PREFS_NAME = "user_id_cache";
+
+    private final UserIdCache idCache = new UserIdCache();
+    // Only touched on the main thread, where Firestore delivers its results.
+    private final Map<String, Task<String>> inFlight = new HashMap<>();
 
     /**
      * Private constructor initializes the FirebaseDataSource with the "usernames" collection.
@@ -71,7 +104,50 @@ public class UserRepository {
     }
 
     /**
-     * Searches for usernames that start with the provided prefix.
+     * Returns the singleton instance of UserRepository, persisting resolved user document ids on
+     * the device.
+     *
+     * @param context any context; the application context is used
+     * @return the UserRepository instance
+     */
+    public static synchronized UserRepository getInstance(Context context) {
+        UserRepository repository = getInstance();
+        repository.idCache.attachStore(context.getApplicationContext()
+                .getSharedPreferences(ID_PREFS_NAME, Context.MODE_PRIVATE));
+        return repository;
+    }
+
+    /**
+     * Resolves a username to the id of its user document. Usernames can be renamed or taken over
+     * on another device, so a cached id is only returned after its document is read and still
+     * carries the username; otherwise the entry is dropped and the username queried again.
+     *
+     * @param username the username
+     * @return a task yielding the document id, or null if no user has the username
+     */
+    public Task<String> resolveUserIdByUsername(String username) {
+        if (idCache.get(UserIdCache.key("username", username)) == null) {
+            return resolveUserId("username", username);
+        }
+        return fetchUser("username", username)
+                .continueWith(task -> {
+                    DocumentSnapshot doc = task.getResult();
+                    return doc != null ? doc.getId() : null;
+                });
+    }
+
+    /**
+     * Resolves an email address to the id of its user document.
+     *
+     * @param email the email address
+     * @return a task yielding the document id, or null if no user has the email
+     */
+    public Task<String> resolveUserIdByEmail(String email) {
+        return resolveUserId("email", email);
+    }
+
+    /**
+     * Searches for usernames that start with the provided prefix, ignoring case.
      *
      * @param prefix            the username prefix
      * @param onSuccessListener callback invoked on a successful query with a QuerySnapshot
@@ -80,15 +156,281 @@ public class UserRepository {
     public void searchUsersByPrefix(String prefix,
                                     OnSuccessListener<QuerySnapshot> onSuccessListener,
                                     OnFailureListener onFailureListener) {
+        String normalized = SearchGrams.normalize(prefix);
         firebaseDataSource.getCollectionReference()
-                .orderBy("username")
-                .startAt(prefix)
-                .endAt(prefix + "\uf8ff")
+                .orderBy(FIELD_USERNAME_LOWER)
+                .startAt(normalized)
+                .endAt(normalized + "\uf8ff")
+                .limit(SEARCH_RESULT_LIMIT)
                 .get()
                 .addOnSuccessListener(onSuccessListener)
                 .addOnFailureListener(onFailureListener);
     }
 
+    /**
+     * Searches for usernames containing the query as a case-insensitive substring.
+     * Queries of three or more characters are answered with a whereArrayContains on the rarest
+     * trigram of the query, and the candidates are verified on the client. Candidates are read in
+     * alphabetical pages until SEARCH_RESULT_LIMIT matches are found, the results run out, or
+     * SEARCH_MAX_PAGES pages were read. Shorter queries fall back to a prefix search. Either way,
+     * the cost is bounded by the limits rather than by the number of registered users.
+     *
+     * @param query           the text to search for
+     * @param successListener callback invoked with the matching usernames, sorted alphabetically
+     * @param failureListener callback invoked if the query fails
+     */
+    public void searchUsersBySubstring(String query,
+                                       OnSuccessListener<List<String>> successListener,
+                                       OnFailureListener failureListener) {
+        String normalized = SearchGrams.normalize(query);
+        String gram = SearchGrams.rarestGram(SearchGrams.trigrams(normalized));
+        if (gram == null) {
+            searchUsersByPrefix(normalized,
+                    querySnapshot -> successListener.onSuccess(collectMatches(querySnapshot, normalized)),
+                    failureListener);
+            return;
+        }
+        searchGramPage(gram, normalized, null, new ArrayList<>(), 1, successListener, failureListener);
+    }
+
+    /**
+     * Reads one page of candidates containing the gram after the given document and continues
+     * with the next page while too few candidates matched.
+     */
+    private void searchGramPage(String gram, String normalizedQuery, DocumentSnapshot after,
+                                List<String> matches, int page,
+                                OnSuccessListener<List<String>> successListener,
+                                OnFailureListener failureListener) {
+        Query query = firebaseDataSource.getCollectionReference()
+                .whereArrayContains(FIELD_SEARCH_GRAMS, gram)
+                .orderBy(FIELD_USERNAME_LOWER)
+                .limit(SEARCH_CANDIDATE_LIMIT);
+        if (after != null) {
+            query = query.startAfter(after);
+        }
+        query.get()
+                .addOnSuccessListener(querySnapshot -> {
+                    addMatches(querySnapshot, normalizedQuery, matches);
+                    List<DocumentSnapshot> documents = querySnapshot.getDocuments();
+                    // Pages are alphabetical, so the first matches found are the ones to show
+                    if (matches.size() >= SEARCH_RESULT_LIMIT
+                            || documents.size() < SEARCH_CANDIDATE_LIMIT
+                            || page >= SEARCH_MAX_PAGES) {
+                        successListener.onSuccess(sortAndLimit(matches));
+                        return;
+                    }
+                    searchGramPage(gram, normalizedQuery, documents.get(documents.size() - 1),
+                            matches, page + 1, successListener, failureListener);
+                })
+                .addOnFailureListener(failureListener);
+    }
+
+    /**
+     * Searches for usernames containing the query by downloading every user and filtering on the
+     * client. Only used until backfillSearchFields has run, since users created before the search
+     * fields existed are invisible to the indexed searches.
+     *
+     * @param query           the text to search for
+     * @param successListener callback invoked with the matching usernames, sorted alphabetically
+     * @param failureListener callback invoked if the query fails
+     */
+    public void searchUsersByScan(String query,
+                                  OnSuccessListener<List<String>> successListener,
+                                  OnFailureListener failureListener) {
+        String normalized = SearchGrams.normalize(query);
+        firebaseDataSource.getCollectionReference()
+                .get()
+                .addOnSuccessListener(querySnapshot ->
+                        successListener.onSuccess(collectMatches(querySnapshot, normalized)))
+                .addOnFailureListener(failureListener);
+    }
+
+    /**
+     * Verifies candidate documents against the normalized query and returns the matching usernames.
+     */
+    private List<String> collectMatches(QuerySnapshot querySnapshot, String normalizedQuery) {
+        List<String> results = new ArrayList<>();
+        addMatches(querySnapshot, normalizedQuery, results);
+        return sortAndLimit(results);
+    }
+
+    /**
+     * Adds the usernames of the candidate documents that contain the normalized query.
+     */
+    private void addMatches(QuerySnapshot querySnapshot, String normalizedQuery, List<String> results) {
+        for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
+            String username = doc.getString("username");
+            if (username != null && SearchGrams.normalize(username).contains(normalizedQuery)) {
+                results.add(username);
+            }
+        }
+    }
+
+    /**
+     * Sorts usernames alphabetically and keeps the first SEARCH_RESULT_LIMIT.
+     */
+    private List<String> sortAndLimit(List<String> results) {
+        Collections.sort(results, String.CASE_INSENSITIVE_ORDER);
+        if (results.size() > SEARCH_RESULT_LIMIT) {
+            results = new ArrayList<>(results.subList(0, SEARCH_RESULT_LIMIT));
+        }
+        return results;
+    }
+
+    /**
+     * Retrieves user documents whose username was created or changed after the given time.
+     * Passing null retrieves every user, which is used to seed a local username cache.
+     *
+     * @param since           the time of the previous refresh, or null for a full load
+     * @param successListener callback invoked with the changed documents, oldest change first
+     * @param failureListener callback invoked if the query fails
+     */
+    public void getUsersUpdatedSince(Timestamp since,
+                                     OnSuccessListener<QuerySnapshot> successListener,
+                                     OnFailureListener failureListener) {
+        Query query = firebaseDataSource.getCollectionReference();
+        if (since != null) {
+            query = query.whereGreaterThan(FIELD_UPDATED_AT, since)
+                    .orderBy(FIELD_UPDATED_AT, Direction.ASCENDING);
+        }
+        query.get()
+                .addOnSuccessListener(successListener)
+                .addOnFailureListener(failureListener);
+    }
+
+    /**
+     * Builds the derived search fields stored alongside a username.
+     *
+     * @param username the username to index
+     * @return a map containing the lowercase username and its trigrams
+     */
+    public static Map<String, Object> buildSearchFields(String username) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(FIELD_USERNAME_LOWER, SearchGrams.normalize(username));
+        fields.put(FIELD_SEARCH_GRAMS, SearchGrams.trigrams(username));
+        return fields;
+    }
+
+    /**
+     * Renames the user identified by email and refreshes the derived search fields.
+     *
+     * @param email           the user's email address
+     * @param newUsername     the new username
+     * @param successListener callback invoked on a successful update
+     * @param failureListener callback invoked if the update fails
+     */
+    public void updateUsername(String email, String newUsername,
+                               OnSuccessListener<Void> successListener,
+                               OnFailureListener failureListener) {
+        withUserDocument("email", email, userRef -> {
+            Map<String, Object> updates = buildSearchFields(newUsername);
+            updates.put("username", newUsername);
+            updates.put(FIELD_UPDATED_AT, FieldValue.serverTimestamp());
+            userRef.update(updates)
+                    .addOnSuccessListener(aVoid -> {
+                        // Drops the old username along with the email, then records both again.
+                        idCache.forgetDocument(userRef.getId());
+                        idCache.put(UserIdCache.key("email", email), userRef.getId());
+                        idCache.put(UserIdCache.key("username", newUsername), userRef.getId());
+                        successListener.onSuccess(aVoid);
+                    })
+                    .addOnFailureListener(forgetIfMissing(userRef.getId(), failureListener));
+        }, failureListener);
+    }
+
+    /**
+     * Rewrites the search fields of the user identified by email if they are missing or no longer
+     * match the stored username, going through the same path as a rename.
+     *
+     * @param email           the user's email address
+     * @param successListener callback invoked with true if the fields were rewritten
+     * @param failureListener callback invoked if the user is missing or the update fails
+     */
+    public void ensureSearchFields(String email,
+                                   OnSuccessListener<Boolean> successListener,
+                                   OnFailureListener failureListener) {
+        fetchUser("email", email)
+                .addOnSuccessListener(doc -> {
+                    String username = doc != null ? doc.getString("username") : null;
+                    if (username == null) {
+                        failureListener.onFailure(new Exception("User not found."));
+                        return;
+                    }
+                    if (SearchGrams.normalize(username).equals(doc.getString(FIELD_USERNAME_LOWER))
+                            && doc.contains(FIELD_SEARCH_GRAMS)) {
+                        successListener.onSuccess(false);
+                        return;
+                    }
+                    updateUsername(email, username,
+                            aVoid -> successListener.onSuccess(true), failureListener);
+                })
+                .addOnFailureListener(failureListener);
+    }
+
+    /**
+     * One-off migration that adds the search fields to user documents created before they existed.
+     * Documents that already carry a "usernameLower" field are left untouched. Once every batch is
+     * written, the migration is recorded in meta/migrations so no client runs it again.
+     *
+     * @param successListener callback invoked with the number of documents updated
+     * @param failureListener callback invoked if the migration fails
+     */
+    public void backfillSearchFields(OnSuccessListener<Integer> successListener,
+                                     OnFailureListener failureListener) {
+        FirebaseFirestore db = firebaseDataSource.getDBDataSource();
+        firebaseDataSource.getCollectionReference()
+                .get()
+                .addOnSuccessListener(querySnapshot -> {
+                    List<Task<Void>> commits = new ArrayList<>();
+                    WriteBatch batch = db.batch();
+                    int updated = 0;
+                    for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
+                        String username = doc.getString("username");
+                        if (username == null || doc.contains(FIELD_USERNAME_LOWER)) {
+                            continue;
+                        }
+                        Map<String, Object> updates = buildSearchFields(username);
+                        updates.put(FIELD_UPDATED_AT, FieldValue.serverTimestamp());
+                        batch.update(doc.getReference(), updates);
+                        updated++;
+                        // Firestore batches are limited to 500 writes.
+                        if (updated % 500 == 0) {
+                            commits.add(batch.commit());
+                            batch = db.batch();
+                        }
+                    }
+                    commits.add(batch.commit());
+                    int total = updated;
+                    // Succeeds only if every batch was written, so a failed run is retried later.
+                    Tasks.whenAll(commits)
+                            .onSuccessTask(aVoid -> db.collection(MIGRATIONS_COLLECTION)
+                                    .document(MIGRATIONS_DOCUMENT)
+                                    .set(Collections.singletonMap(MIGRATION_SEARCH_FIELDS, true),
+                                            SetOptions.merge()))
+                            .addOnSuccessListener(aVoid -> successListener.onSuccess(total))
+                            .addOnFailureListener(failureListener);
+                })
+                .addOnFailureListener(failureListener);
+    }
+
+    /**
+     * Checks whether backfillSearchFields has completed for the project, on any client.
+     *
+     * @param successListener callback invoked with true once every user document carries the
+     *                        search fields
+     * @param failureListener callback invoked if the check fails
+     */
+    public void isSearchFieldBackfillDone(OnSuccessListener<Boolean> successListener,
+                                          OnFailureListener failureListener) {
+        firebaseDataSource.getDBDataSource()
+                .collection(MIGRATIONS_COLLECTION)
+                .document(MIGRATIONS_DOCUMENT)
+                .get()
+                .addOnSuccessListener(doc ->
+                        successListener.onSuccess(Boolean.TRUE.equals(doc.getBoolean(MIGRATION_SEARCH_FIELDS))))
+                .addOnFailureListener(failureListener);
+    }
+
     /**
      * Saves a username and email pair to Firestore.
      *
@@ -103,8 +445,14 @@ public class UserRepository {
         Map<String, Object> data = new HashMap<>();
         data.put("username", username);
         data.put("email", email);
+        data.putAll(buildSearchFields(username));
+        data.put(FIELD_UPDATED_AT, FieldValue.serverTimestamp());
 
-        firebaseDataSource.saveData(data, successListener, failureListener);
+        firebaseDataSource.saveData(data, documentReference -> {
+            idCache.put(UserIdCache.key("email", email), documentReference.getId());
+            idCache.put(UserIdCache.key("username", username), documentReference.getId());
+            successListener.onSuccess(documentReference);
+        }, failureListener);
     }
 
     /**
@@ -126,17 +474,8 @@ public class UserRepository {
     public void getUsernameFromEmail(String email,
                                      OnSuccessListener<String> successListener,
                                      OnFailureListener failureListener) {
-        firebaseDataSource.getCollectionReference()
-                .whereEqualTo("email", email)
-                .limit(1)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    if (!querySnapshot.isEmpty()) {
-                        successListener.onSuccess(querySnapshot.getDocuments().get(0).getString("username"));
-                    } else {
-                        successListener.onSuccess(null);
-                    }
-                })
+        fetchUser("email", email)
+                .addOnSuccessListener(doc -> successListener.onSuccess(doc != null ? doc.getString("username") : null))
                 .addOnFailureListener(failureListener);
     }
 
@@ -144,22 +483,10 @@ public class UserRepository {
     public void incrementKarmaByEmail(String email,
                                       OnSuccessListener<Void> successListener,
                                       OnFailureListener failureListener, int incrementAmount) {
-        firebaseDataSource.getCollectionReference()
-                .whereEqualTo("email", email)
-                .limit(1)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    if (!querySnapshot.isEmpty()) {
-                        String docId = querySnapshot.getDocuments().get(0).getId();
-                        firebaseDataSource.getCollectionReference().document(docId)
-                                .update("karma", FieldValue.increment(incrementAmount))
-                                .addOnSuccessListener(successListener)
-                                .addOnFailureListener(failureListener);
-                    } else {
-                        failureListener.onFailure(new Exception("User not found."));
-                    }
-                })
-                .addOnFailureListener(failureListener);
+        withUserDocument("email", email, userRef -> userRef
+                .update("karma", FieldValue.increment(incrementAmount))
+                .addOnSuccessListener(successListener)
+                .addOnFailureListener(forgetIfMissing(userRef.getId(), failureListener)), failureListener);
     }
 
 
@@ -174,209 +501,113 @@ public class UserRepository {
     public void getUserStats(String email,
                              OnSuccessListener<UserStats> onSuccess,
                              OnFailureListener onFailure) {
-        firebaseDataSource.getCollectionReference()
-                .whereEqualTo("email", email)
-                .limit(1)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    if (!querySnapshot.isEmpty()) {
-                        DocumentSnapshot doc = querySnapshot.getDocuments().get(0);
-                        // Get karma or default to 0
-                        long karma = doc.contains("karma") ? doc.getLong("karma") : 0L;
-
-                        // Get gold badges count or default to 0
-                        long goldBadges = doc.contains("badges.goldBadges") ? doc.getLong("badges.goldBadges") : 0L;
-
-                        // Get silver badges count or default to 0
-                        long silverBadges = doc.contains("badges.silverBadges") ? doc.getLong("badges.silverBadges") : 0L;
-
-                        // Get daily badge dates and calculate count
-                        int dailyBadgeCount = 0;
-                        if (doc.contains("badges.dailyBadgeDates")) {
-                            // Assuming dailyBadgeDates is stored as a List<String>
-                            List<String> dailyBadgeDates = (List<String>) doc.get("badges.dailyBadgeDates");
-                            dailyBadgeCount = (dailyBadgeDates != null) ? dailyBadgeDates.size() : 0;
-                        }
-
-                        UserStats stats = new UserStats(karma, goldBadges, silverBadges, dailyBadgeCount);
-                        onSuccess.onSuccess(stats);
-                    } else {
-                        onFailure.onFailure(new Exception("User not found."));
-                    }
-                })
-                .addOnFailureListener(onFailure);
+        getUserStats("email", email, onSuccess, onFailure);
     }
 
     public void getUserStatsByUsername(String username,
                                        OnSuccessListener<UserStats> onSuccess,
                                        OnFailureListener onFailure) {
-        firebaseDataSource.getCollectionReference()
-                .whereEqualTo("username", username)
-                .limit(1)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    if (!querySnapshot.isEmpty()) {
-                        DocumentSnapshot doc = querySnapshot.getDocuments().get(0);
-                        long karma = doc.contains("karma") ? doc.getLong("karma") : 0L;
-                        long goldBadges = doc.contains("badges.goldBadges") ? doc.getLong("badges.goldBadges") : 0L;
-                        long silverBadges = doc.contains("badges.silverBadges") ? doc.getLong("badges.silverBadges") : 0L;
-                        int dailyBadgeCount = 0;
-                        if (doc.contains("badges.dailyBadgeDates")) {
-                            List<String> dailyBadgeDates = (List<String>) doc.get("badges.dailyBadgeDates");
-                            dailyBadgeCount = (dailyBadgeDates != null) ? dailyBadgeDates.size() : 0;
-                        }
-                        onSuccess.onSuccess(new UserStats(karma, goldBadges, silverBadges, dailyBadgeCount));
-                    } else {
+        getUserStats("username", username, onSuccess, onFailure);
+    }
+
+    private void getUserStats(String field, String value,
+                              OnSuccessListener<UserStats> onSuccess,
+                              OnFailureListener onFailure) {
+        fetchUser(field, value)
+                .addOnSuccessListener(doc -> {
+                    if (doc == null) {
                         onFailure.onFailure(new Exception("User not found."));
+                        return;
+                    }
+                    // Get karma and badge counts or default to 0
+                    long karma = doc.contains("karma") ? doc.getLong("karma") : 0L;
+                    long goldBadges = doc.contains("badges.goldBadges") ? doc.getLong("badges.goldBadges") : 0L;
+                    long silverBadges = doc.contains("badges.silverBadges") ? doc.getLong("badges.silverBadges") : 0L;
+
+                    // Get daily badge dates and calculate count
+                    int dailyBadgeCount = 0;
+                    if (doc.contains("badges.dailyBadgeDates")) {
+                        // Assuming dailyBadgeDates is stored as a List<String>
+                        List<String> dailyBadgeDates = (List<String>) doc.get("badges.dailyBadgeDates");
+                        dailyBadgeCount = (dailyBadgeDates != null) ? dailyBadgeDates.size() : 0;
                     }
+                    onSuccess.onSuccess(new UserStats(karma, goldBadges, silverBadges, dailyBadgeCount));
                 })
                 .addOnFailureListener(onFailure);
     }
 
-
-
-
     /**
-     * Updates the user's post count and awards a gold badge for every 3 posts.
+     * Applies the rewards for a new post in one transaction: the karma, the post count, a gold
+     * badge for every third post and today's daily badge.
      *
-     * @param email           the user's email address
-     * @param onSuccess       callback invoked on success
-     * @param onFailure       callback invoked on failure
+     * @param email          the user's email address
+     * @param karmaIncrement the karma earned by the post
+     * @param onSuccess      callback invoked once all rewards are written
+     * @param onFailure      callback invoked if the user is missing or the transaction fails
      */
-    public void updatePostCount(String email,
-                                OnSuccessListener<Void> onSuccess,
-                                OnFailureListener onFailure) {
-        firebaseDataSource.getCollectionReference()
-                .whereEqualTo("email", email)
-                .limit(1)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    if (!querySnapshot.isEmpty()) {
-                        String docId = querySnapshot.getDocuments().get(0).getId();
-                        firebaseDataSource.getCollectionReference().document(docId)
-                                .get()
-                                .addOnSuccessListener(documentSnapshot -> {
-                                    long postCount = documentSnapshot.contains("postCount")
-                                            ? documentSnapshot.getLong("postCount")
-                                            : 0;
-                                    postCount++;
-
-                                    long goldBadges = 0;
-                                    if (documentSnapshot.contains("badges.goldBadges")) {
-                                        goldBadges = documentSnapshot.getLong("badges.goldBadges");
-                                    }
-                                    if (postCount % 3 == 0) {
-                                        goldBadges++;
-                                    }
-                                    Map<String, Object> updates = new HashMap<>();
-                                    updates.put("postCount", postCount);
-                                    updates.put("badges.goldBadges", goldBadges);
-                                    firebaseDataSource.getCollectionReference().document(docId)
-                                            .update(updates)
-                                            .addOnSuccessListener(onSuccess)
-                                            .addOnFailureListener(onFailure);
-                                })
-                                .addOnFailureListener(onFailure);
-                    } else {
-                        onFailure.onFailure(new Exception("User not found."));
-                    }
-                })
-                .addOnFailureListener(onFailure);
+    public void applyPostCreated(String email, int karmaIncrement,
+                                 OnSuccessListener<Void> onSuccess,
+                                 OnFailureListener onFailure) {
+        applyActivityRewards(email, "postCount", "badges.goldBadges", karmaIncrement, true,
+                onSuccess, onFailure);
     }
 
     /**
-     * Updates the user's comment count and awards a silver badge for every 3 comments.
+     * Applies the rewards for a new comment in one transaction: the karma, the comment count and
+     * a silver badge for every third comment.
      *
-     * @param email           the user's email address
-     * @param onSuccess       callback invoked on success
-     * @param onFailure       callback invoked on failure
+     * @param email          the user's email address
+     * @param karmaIncrement the karma earned by the comment
+     * @param onSuccess      callback invoked once all rewards are written
+     * @param onFailure      callback invoked if the user is missing or the transaction fails
      */
-    public void updateCommentCount(String email,
-                                   OnSuccessListener<Void> onSuccess,
-                                   OnFailureListener onFailure) {
-        firebaseDataSource.getCollectionReference()
-                .whereEqualTo("email", email)
-                .limit(1)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    if (!querySnapshot.isEmpty()) {
-                        String docId = querySnapshot.getDocuments().get(0).getId();
-                        firebaseDataSource.getCollectionReference().document(docId)
-                                .get()
-                                .addOnSuccessListener(documentSnapshot -> {
-                                    long commentCount = documentSnapshot.contains("commentCount")
-                                            ? documentSnapshot.getLong("commentCount")
-                                            : 0;
-                                    commentCount++;
-
-                                    long silverBadges = 0;
-                                    if (documentSnapshot.contains("badges.silverBadges")) {
-                                        silverBadges = documentSnapshot.getLong("badges.silverBadges");
-                                    }
-                                    if (commentCount % 3 == 0) {
-                                        silverBadges++;
-                                    }
-                                    Map<String, Object> updates = new HashMap<>();
-                                    updates.put("commentCount", commentCount);
-                                    updates.put("badges.silverBadges", silverBadges);
-                                    firebaseDataSource.getCollectionReference().document(docId)
-                                            .update(updates)
-                                            .addOnSuccessListener(onSuccess)
-                                            .addOnFailureListener(onFailure);
-                                })
-                                .addOnFailureListener(onFailure);
-                    } else {
-                        onFailure.onFailure(new Exception("User not found."));
-                    }
-                })
-                .addOnFailureListener(onFailure);
+    public void applyCommentAdded(String email, int karmaIncrement,
+                                  OnSuccessListener<Void> onSuccess,
+                                  OnFailureListener onFailure) {
+        applyActivityRewards(email, "commentCount", "badges.silverBadges", karmaIncrement, false,
+                onSuccess, onFailure);
     }
 
     /**
-     * Awards a daily badge if the user hasn't received one for today.
-     *
-     * @param email           the user's email address
-     * @param onSuccess       callback invoked on success
-     * @param onFailure       callback invoked on failure
+     * Finds the user document and increments its karma, an activity count and, on every third
+     * activity, a badge count. The transaction reads the document to decide the badge, so Firestore
+     * retries it whenever any other write to the user document commits in between, such as a
+     * follow update or another reward, not only a change to the count. The writes themselves are
+     * increments and an arrayUnion, which never overwrite a concurrent update.
      */
-    public void updateDailyBadge(String email,
-                                 OnSuccessListener<Void> onSuccess,
-                                 OnFailureListener onFailure) {
-        firebaseDataSource.getCollectionReference()
-                .whereEqualTo("email", email)
-                .limit(1)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    if (!querySnapshot.isEmpty()) {
-                        String docId = querySnapshot.getDocuments().get(0).getId();
-                        firebaseDataSource.getCollectionReference().document(docId)
-                                .get()
-                                .addOnSuccessListener(documentSnapshot -> {
-                                    List<String> dailyBadgeDates = (List<String>) documentSnapshot.get("badges.dailyBadgeDates");
-                                    if (dailyBadgeDates == null) {
-                                        dailyBadgeDates = new ArrayList<>();
-                                    }
-                                    String today = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-                                    if (!dailyBadgeDates.contains(today)) {
-                                        dailyBadgeDates.add(today);
-                                        Map<String, Object> updates = new HashMap<>();
-                                        updates.put("badges.dailyBadgeDates", dailyBadgeDates);
-                                        firebaseDataSource.getCollectionReference().document(docId)
-                                                .update(updates)
-                                                .addOnSuccessListener(onSuccess)
-                                                .addOnFailureListener(onFailure);
-                                    } else {
-                                        // Daily badge already awarded today.
-                                        onSuccess.onSuccess(null);
-                                    }
-                                })
-                                .addOnFailureListener(onFailure);
-                    } else {
-                        onFailure.onFailure(new Exception("User not found."));
-                    }
-                })
-                .addOnFailureListener(onFailure);
+    private void applyActivityRewards(String email, String countField, String badgeField,
+                                      int karmaIncrement, boolean awardDailyBadge,
+                                      OnSuccessListener<Void> onSuccess,
+                                      OnFailureListener onFailure) {
+        withUserDocument("email", email, userRef -> {
+            String today = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
+            Transaction.Function<Void> rewards = transaction -> {
+                DocumentSnapshot snapshot = transaction.get(userRef);
+                if (!snapshot.exists()) {
+                    throw new FirebaseFirestoreException("User not found.",
+                            FirebaseFirestoreException.Code.NOT_FOUND);
+                }
+                Long count = snapshot.getLong(countField);
+                long newCount = (count != null ? count : 0) + 1;
+                Map<String, Object> updates = new HashMap<>();
+                updates.put("karma", FieldValue.increment(karmaIncrement));
+                updates.put(countField, FieldValue.increment(1));
+                if (newCount % BADGE_INTERVAL == 0) {
+                    updates.put(badgeField, FieldValue.increment(1));
+                }
+                if (awardDailyBadge) {
+                    // arrayUnion adds today only once, however many posts are made.
+                    updates.put("badges.dailyBadgeDates", FieldValue.arrayUnion(today));
+                }
+                transaction.update(userRef, updates);
+                return null;
+            };
+            firebaseDataSource.getDBDataSource().runTransaction(rewards)
+                    .addOnSuccessListener(onSuccess)
+                    .addOnFailureListener(forgetIfMissing(userRef.getId(), onFailure));
+        }, onFailure);
     }
+
     /**
      * Retrieves the friends list for the user identified by email.
      * Users are considered friends if they follow each other.
@@ -389,28 +620,10 @@ public class UserRepository {
     public void getFriendsList(String email,
                                OnSuccessListener<List<String>> successListener,
                                OnFailureListener failureListener) {
-        firebaseDataSource.getCollectionReference()
-                .whereEqualTo("email", email)
-                .limit(1)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    if (!querySnapshot.isEmpty()) {
-                        DocumentSnapshot doc = querySnapshot.getDocuments().get(0);
-//                        List<String> followers = (List<String>) doc.get("followers");
+        fetchUser("email", email)
+                .addOnSuccessListener(doc -> {
+                    if (doc != null) {
                         List<String> followings = (List<String>) doc.get("followings");
-//                        if (followers == null) {
-//                            followers = new ArrayList<>();
-//                        }
-//                        if (followings == null) {
-//                            followings = new ArrayList<>();
-//                        }
-//                        // Calculate the intersection of followers and followings.
-//                        List<String> friends = new ArrayList<>();
-//                        for (String user : followers) {
-//                            if (followings.contains(user)) {
-//                                friends.add(user);
-//                            }
-//                        }
                         successListener.onSuccess(followings);
                     } else {
                         successListener.onSuccess(new ArrayList<>());
@@ -418,4 +631,108 @@ public class UserRepository {
                 })
                 .addOnFailureListener(failureListener);
     }
+
+    /**
+     * Returns the id of the user document whose field has the given value, from the cache, from a
+     * lookup already in flight, or from a new query whose result is cached. Users that do not
+     * exist are not cached, since they may sign up later.
+     */
+    private Task<String> resolveUserId(String field, String value) {
+        String key = UserIdCache.key(field, value);
+        String cached = idCache.get(key);
+        if (cached != null) {
+            return Tasks.forResult(cached);
+        }
+        Task<String> pending = inFlight.get(key);
+        if (pending != null) {
+            return pending;
+        }
+        Task<String> lookup = queryUser(field, value)
+                .continueWith(task -> {
+                    inFlight.remove(key);
+                    DocumentSnapshot doc = task.getResult();
+                    return doc != null ? doc.getId() : null;
+                });
+        inFlight.put(key, lookup);
+        return lookup;
+    }
+
+    /**
+     * Fetches the user document whose field has the given value, reading it directly when its id
+     * is cached. A cached id whose document was deleted or no longer matches is dropped and the
+     * user is queried again. The task yields null if no user matches.
+     */
+    private Task<DocumentSnapshot> fetchUser(String field, String value) {
+        String cached = idCache.get(UserIdCache.key(field, value));
+        if (cached == null) {
+            return queryUser(field, value);
+        }
+        return firebaseDataSource.getCollectionReference().document(cached).get()
+                .continueWithTask(task -> {
+                    DocumentSnapshot doc = task.getResult();
+                    if (doc.exists() && value.equals(doc.getString(field))) {
+                        return Tasks.forResult(doc);
+                    }
+                    idCache.forgetDocument(cached);
+                    return queryUser(field, value);
+                });
+    }
+
+    private Task<DocumentSnapshot> queryUser(String field, String value) {
+        return firebaseDataSource.getCollectionReference()
+                .whereEqualTo(field, value)
+                .limit(1)
+                .get()
+                .continueWith(task -> {
+                    QuerySnapshot querySnapshot = task.getResult();
+                    if (querySnapshot.isEmpty()) {
+                        return null;
+                    }
+                    DocumentSnapshot doc = querySnapshot.getDocuments().get(0);
+                    rememberUser(doc);
+                    return doc;
+                });
+    }
+
+    private void rememberUser(DocumentSnapshot doc) {
+        String email = doc.getString("email");
+        if (email != null) {
+            idCache.put(UserIdCache.key("email", email), doc.getId());
+        }
+        String username = doc.getString("username");
+        if (username != null) {
+            idCache.put(UserIdCache.key("username", username), doc.getId());
+        }
+    }
+
+    /**
+     * Resolves a user and hands its document to the action, or reports "User not found."
+     */
+    private void withUserDocument(String field, String value,
+                                  OnSuccessListener<DocumentReference> action,
+                                  OnFailureListener onFailure) {
+        resolveUserId(field, value)
+                .addOnSuccessListener(docId -> {
+                    if (docId == null) {
+                        onFailure.onFailure(new Exception("User not found."));
+                        return;
+                    }
+                    action.onSuccess(firebaseDataSource.getCollectionReference().document(docId));
+                })
+                .addOnFailureListener(onFailure);
+    }
+
+    /**
+     * Wraps a failure listener so that a write failing because the document is gone also drops
+     * the cached ids pointing to it.
+     */
+    private OnFailureListener forgetIfMissing(String docId, OnFailureListener onFailure) {
+        return e -> {
+            if (e instanceof FirebaseFirestoreException
+                    && ((FirebaseFirestoreException) e).getCode() == FirebaseFirestoreException.Code.NOT_FOUND) {
+                idCache.forgetDocument(docId);
+            }
+            onFailure.onFailure(e);
+        };
+    }
 }
\ No newline at end of file
@@ -0,0 +1,226 @@
+/**
+ * UsernameDirectory.java
+ *
+ * This file contains a locally cached dictionary of every username, used for typo-tolerant user
+ * lookup in the Add User screen. The dictionary is persisted on the device and refreshed by delta:
+ * only user documents whose "updatedAt" is newer than the last refresh are downloaded.
+ *
+ * Key features:
+ * - Implements singleton pattern so the cache is shared across screens
+ * - Persists the docId-to-username map and refresh checkpoint in SharedPreferences
+ * - Indexes lowercase usernames in a BK-tree built on a background thread
+ * - Returns ranked near matches within a small edit distance without any network round trip
+ * - Rebuilds the tree when a delta reveals a renamed user
+ */
+package com.example.tangry.repositories;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.tangry.utils.BkTree;
+import com.example.tangry.utils.SearchGrams;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class UsernameDirectory {
+    private static final String TAG = "UsernameDirectory";
+    private static final String PREFS_NAME = "username_directory_prefs";
+    private static final String USERNAMES_KEY = "usernames_by_doc_id";
+    private static final String SYNC_SECONDS_KEY = "last_sync_seconds";
+    private static final String SYNC_NANOS_KEY = "last_sync_nanos";
+    private static final long MIN_REFRESH_INTERVAL_MS = 60 * 1000;
+    // Used as the checkpoint when no loaded document has an updatedAt field yet.
+    private static final long CLOCK_SKEW_MARGIN_SECONDS = 5 * 60;
+
+    private static UsernameDirectory instance;
+
+    /**
+     * Callback receiving lookup results on the main thread.
+     */
+    public interface LookupCallback {
+        void onResults(List<String> usernames);
+    }
+
+    private final SharedPreferences sharedPreferences;
+    private final UserRepository userRepository;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Only touched on the executor thread.
+    private Map<String, String> usernamesByDocId;
+    private Map<String, List<String>> usernamesByLowercase;
+    private BkTree tree;
+
+    // Only touched on the main thread.
+    private Timestamp lastSync;
+    private long lastRefreshAttemptMs = 0;
+    private boolean refreshing = false;
+
+    private UsernameDirectory(Context context, UserRepository userRepository) {
+        this.sharedPreferences = context.getApplicationContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.userRepository = userRepository;
+        if (sharedPreferences.contains(SYNC_SECONDS_KEY)) {
+            lastSync = new Timestamp(sharedPreferences.getLong(SYNC_SECONDS_KEY, 0),
+                    sharedPreferences.getInt(SYNC_NANOS_KEY, 0));
+        }
+        executor.execute(this::loadFromDisk);
+    }
+
+    /**
+     * Returns the singleton instance of UsernameDirectory.
+     *
+     * @param context any context; the application context is retained
+     * @return the UsernameDirectory instance
+     */
+    public static synchronized UsernameDirectory getInstance(Context context) {
+        if (instance == null) {
+            instance = new UsernameDirectory(context, UserRepository.getInstance());
+        }
+        return instance;
+    }
+
+    /**
+     * Downloads usernames added or changed since the last refresh and merges them into the cache.
+     * Calls made within a minute of the previous refresh are ignored. Must be called on the main thread.
+     */
+    public void refresh() {
+        long now = System.currentTimeMillis();
+        if (refreshing || now - lastRefreshAttemptMs < MIN_REFRESH_INTERVAL_MS) {
+            return;
+        }
+        refreshing = true;
+        lastRefreshAttemptMs = now;
+        Timestamp since = lastSync;
+        userRepository.getUsersUpdatedSince(since,
+                querySnapshot -> {
+                    Map<String, String> changed = new HashMap<>();
+                    Timestamp newest = since;
+                    for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
+                        String username = doc.getString("username");
+                        if (username != null) {
+                            changed.put(doc.getId(), username);
+                        }
+                        Timestamp updatedAt = doc.getTimestamp("updatedAt");
+                        if (updatedAt != null && (newest == null || updatedAt.compareTo(newest) > 0)) {
+                            newest = updatedAt;
+                        }
+                    }
+                    if (newest == null) {
+                        newest = new Timestamp(Timestamp.now().getSeconds() - CLOCK_SKEW_MARGIN_SECONDS, 0);
+                    }
+                    lastSync = newest;
+                    refreshing = false;
+                    Timestamp checkpoint = newest;
+                    executor.execute(() -> merge(changed, checkpoint));
+                },
+                e -> {
+                    Log.e(TAG, "Failed to refresh username directory", e);
+                    refreshing = false;
+                });
+    }
+
+    /**
+     * Finds cached usernames within maxDistance edits of the query, ignoring case.
+     *
+     * @param query       the typed username
+     * @param maxDistance the largest allowed edit distance
+     * @param limit       the maximum number of results
+     * @param callback    receives the usernames, closest first, on the main thread
+     */
+    public void findSimilar(String query, int maxDistance, int limit, LookupCallback callback) {
+        String normalized = SearchGrams.normalize(query);
+        executor.execute(() -> {
+            Set<String> results = new LinkedHashSet<>();
+            for (BkTree.Match match : tree.search(normalized, maxDistance)) {
+                List<String> originals = usernamesByLowercase.get(match.getWord());
+                if (originals != null) {
+                    results.addAll(originals);
+                }
+                if (results.size() >= limit) {
+                    break;
+                }
+            }
+            List<String> ranked = new ArrayList<>(results);
+            if (ranked.size() > limit) {
+                ranked = new ArrayList<>(ranked.subList(0, limit));
+            }
+            List<String> delivered = ranked;
+            mainHandler.post(() -> callback.onResults(delivered));
+        });
+    }
+
+    private void loadFromDisk() {
+        String json = sharedPreferences.getString(USERNAMES_KEY, null);
+        usernamesByDocId = new HashMap<>();
+        if (json != null) {
+            Type type = new TypeToken<HashMap<String, String>>() {
+            }.getType();
+            Map<String, String> stored = new Gson().fromJson(json, type);
+            if (stored != null) {
+                usernamesByDocId.putAll(stored);
+            }
+        }
+        rebuildTree();
+        Log.d(TAG, "Loaded " + usernamesByDocId.size() + " cached usernames");
+    }
+
+    private void merge(Map<String, String> changed, Timestamp checkpoint) {
+        boolean renamed = false;
+        for (Map.Entry<String, String> entry : changed.entrySet()) {
+            String previous = usernamesByDocId.put(entry.getKey(), entry.getValue());
+            if (previous != null && !previous.equals(entry.getValue())) {
+                renamed = true;
+            }
+        }
+        if (renamed) {
+            // BK-trees do not support removal, so drop stale names by rebuilding.
+            rebuildTree();
+        } else {
+            for (String username : changed.values()) {
+                addToTree(username);
+            }
+        }
+        sharedPreferences.edit()
+                .putString(USERNAMES_KEY, new Gson().toJson(usernamesByDocId))
+                .putLong(SYNC_SECONDS_KEY, checkpoint.getSeconds())
+                .putInt(SYNC_NANOS_KEY, checkpoint.getNanoseconds())
+                .apply();
+    }
+
+    private void rebuildTree() {
+        tree = new BkTree();
+        usernamesByLowercase = new HashMap<>();
+        for (String username : usernamesByDocId.values()) {
+            addToTree(username);
+        }
+    }
+
+    private void addToTree(String username) {
+        String key = SearchGrams.normalize(username);
+        List<String> originals = usernamesByLowercase.get(key);
+        if (originals == null) {
+            originals = new ArrayList<>();
+            usernamesByLowercase.put(key, originals);
+            tree.add(key);
+        }
+        if (!originals.contains(username)) {
+            originals.add(username);
+        }
+    }
+}
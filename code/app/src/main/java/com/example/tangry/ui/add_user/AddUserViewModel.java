@@ -6,18 +6,25 @@ package com.example.tangry.ui.add_user;
  * ViewModel that manages data for the AddUserFragment.
  * Handles user searches, follow requests, and tracks follow status
  * (already following or pending requests). Communicates with Firestore
- * through the FollowController.
+ * through the FollowController, and uses the cached UsernameDirectory to
+ * suggest near matches for misspelled usernames.
  */
 
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.ViewModel;
 
 import com.example.tangry.controllers.FollowController;
 import com.example.tangry.controllers.FollowController.FollowStatus;
+import com.example.tangry.repositories.UserRepository;
+import com.example.tangry.repositories.UsernameDirectory;
+import com.example.tangry.utils.SearchFieldBackfill;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -26,16 +33,32 @@ import java.util.List;
  * ViewModel for managing user interactions in the Add User screen.
  * It handles searching users, sending follow requests, and tracking follow statuses.
  */
-public class AddUserViewModel extends ViewModel {
+public class AddUserViewModel extends AndroidViewModel {
+
+    // Largest edit distance for which a cached username is offered as a near match.
+    private static final int MAX_TYPO_DISTANCE = 2;
+    private static final int MAX_SUGGESTIONS = 10;
 
     private final MutableLiveData<List<String>> searchResults = new MutableLiveData<>(new ArrayList<>());
     private final MutableLiveData<List<String>> followings = new MutableLiveData<>(new ArrayList<>());
     private final MutableLiveData<List<String>> sentFollowRequests = new MutableLiveData<>(new ArrayList<>());
     private final MutableLiveData<String> message = new MutableLiveData<>();
 
-    private final FirebaseFirestore db = FirebaseFirestore.getInstance();
+    private final UserRepository userRepository = UserRepository.getInstance();
+    private final UsernameDirectory usernameDirectory;
     private final FollowController followController = new FollowController();
 
+    /**
+     * Creates the ViewModel and starts a delta refresh of the cached username directory.
+     *
+     * @param application the application, used to access the on-device username cache.
+     */
+    public AddUserViewModel(@NonNull Application application) {
+        super(application);
+        usernameDirectory = UsernameDirectory.getInstance(application);
+        usernameDirectory.refresh();
+    }
+
     /**
      * Gets the LiveData for the list of usernames found from a search.
      *
@@ -97,34 +120,38 @@ public class AddUserViewModel extends ViewModel {
 
     /**
      * Searches for a user by their username.
-     * Performs substring matching rather than exact matching.
+     * Performs case-insensitive substring matching through the trigram index on user documents,
+     * so only candidate users are downloaded rather than the whole collection. Usernames from the
+     * local cache within two edits of the query are appended, so a typo still finds the user.
+     * Until the search field migration has completed on any client, all users are scanned instead.
      * On success, updates the searchResults LiveData and sets a message if no user is found.
      *
      * @param query the username to search for.
      */
     public void searchUser(String query) {
-        // Get all users and filter client-side for substring matches
-        db.collection("users")
-                .orderBy("username")
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    List<String> results = new ArrayList<>();
-
-                    // Perform case-insensitive substring matching
-                    String lowercaseQuery = query.toLowerCase();
-                    for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
-                        String username = doc.getString("username");
-                        if (username != null && username.toLowerCase().contains(lowercaseQuery)) {
-                            results.add(username);
+        usernameDirectory.refresh();
+        OnSuccessListener<List<String>> onResults = results ->
+                usernameDirectory.findSimilar(query, MAX_TYPO_DISTANCE, MAX_SUGGESTIONS, nearMatches -> {
+                    List<String> combined = new ArrayList<>(results);
+                    for (String username : nearMatches) {
+                        if (!combined.contains(username)) {
+                            combined.add(username);
                         }
                     }
-
-                    searchResults.setValue(results);
-                    if (results.isEmpty()) {
+                    searchResults.setValue(combined);
+                    if (combined.isEmpty()) {
                         message.setValue("No user found containing: " + query);
                     }
-                })
-                .addOnFailureListener(e -> message.setValue("Error searching user: " + e.getMessage()));
+                });
+        OnFailureListener onError = e -> message.setValue("Error searching user: " + e.getMessage());
+        SearchFieldBackfill.isDone(getApplication(), done -> {
+            if (done) {
+                userRepository.searchUsersBySubstring(query, onResults, onError);
+            } else {
+                // Users created before the search fields existed are only found by a full scan.
+                userRepository.searchUsersByScan(query, onResults, onError);
+            }
+        });
     }
 
     /**
@@ -13,7 +13,6 @@ import android.app.AlertDialog;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.location.Address;
-import android.location.Geocoder;
 import android.net.Uri;
 import android.os.Bundle;
 import android.text.Editable;
@@ -46,24 +45,21 @@ import com.example.tangry.R;
 import com.example.tangry.controllers.EmotionPostController;
 import com.example.tangry.controllers.UserController;
 import com.example.tangry.models.EmotionPost;
+import com.example.tangry.utils.AddressAutocomplete;
+import com.example.tangry.utils.GeocoderUtility;
 import com.example.tangry.utils.ImageCaptureUtil;
-import com.example.tangry.utils.ImageHelper;
-import com.example.tangry.utils.NetworkMonitor;
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationServices;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.DocumentReference;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import org.osmdroid.util.GeoPoint;
+
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 
 public class CreateEmotionPostFragment extends Fragment {
     private static final String TAG = "CreateEmotionPostFragment";
@@ -92,6 +88,12 @@ public class CreateEmotionPostFragment extends Fragment {
 
     private Uri cameraImageUri; // To store the camera image URI
 
+    // Coordinates of the last suggestion picked or current location used, and the text it produced
+    private GeoPoint selectedPoint;
+    private String selectedPointAddress;
+    private List<Address> lastSuggestions = new ArrayList<>();
+    private AddressAutocomplete addressAutocomplete;
+
     private static final List<String> VALID_SOCIAL_SITUATIONS = Arrays.asList(
             "Select social situation", "Alone", "With one other person", "With two to several people", "With a crowd");
 
@@ -143,6 +145,7 @@ public class CreateEmotionPostFragment extends Fragment {
         saveButton.setOnClickListener(v -> saveMoodEvent());
 
         // Setup location auto-complete suggestions
+        addressAutocomplete = new AddressAutocomplete(requireContext(), this::showAddressSuggestions);
         locationInput.setThreshold(1);
         locationInput.addTextChangedListener(new TextWatcher() {
             @Override
@@ -151,8 +154,11 @@ public class CreateEmotionPostFragment extends Fragment {
             }
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                if (s.length() >= 3) {
-                    fetchAddressSuggestions(s.toString());
+                if (s.toString().equals(selectedPointAddress)) {
+                    // Filled in from a suggestion or the current location; nothing to look up
+                    addressAutocomplete.cancel();
+                } else {
+                    addressAutocomplete.onQueryChanged(s.toString());
                 }
             }
             @Override
@@ -161,42 +167,46 @@ public class CreateEmotionPostFragment extends Fragment {
             }
         });
 
+        // Remember the coordinates of a picked suggestion so the post can store them
+        locationInput.setOnItemClickListener((parent, itemView, position, id) -> {
+            String picked = (String) parent.getItemAtPosition(position);
+            for (Address addr : lastSuggestions) {
+                if (picked.equals(addr.getAddressLine(0))) {
+                    selectedPoint = new GeoPoint(addr.getLatitude(), addr.getLongitude());
+                    selectedPointAddress = picked;
+                    break;
+                }
+            }
+        });
+
         // New: Set up the "Use Current Location" button listener
         btnUseCurrentLocation.setOnClickListener(v -> useCurrentLocation());
     }
 
     /**
-     * Fetches address suggestions (up to 5) in a background thread and updates
-     * the AutoCompleteTextView adapter on the UI thread.
+     * Shows the latest address suggestions from the autocomplete engine in the location dropdown.
      */
-    private void fetchAddressSuggestions(final String query) {
-        new Thread(() -> {
-            try {
-                // Use Android's built-in Geocoder
-                Geocoder geoCoder = new Geocoder(getContext(), Locale.getDefault());
-                List<Address> addresses = geoCoder.getFromLocationName(query, 5);
-                final List<String> suggestions = new ArrayList<>();
-                if (addresses != null && !addresses.isEmpty()) {
-                    for (Address addr : addresses) {
-                        String addressLine = addr.getAddressLine(0);
-                        if (addressLine != null && !addressLine.isEmpty()) {
-                            suggestions.add(addressLine);
-                        }
-                    }
-                }
-                // Update the adapter on the UI thread
-                if (getActivity() != null) {
-                    getActivity().runOnUiThread(() -> {
-                        ArrayAdapter<String> adapter = new ArrayAdapter<>(getContext(),
-                                android.R.layout.simple_dropdown_item_1line, suggestions);
-                        locationInput.setAdapter(adapter);
-                        adapter.notifyDataSetChanged();
-                    });
-                }
-            } catch (IOException e) {
-                Log.e(TAG, "Error fetching address suggestions", e);
-            }
-        }).start();
+    private void showAddressSuggestions(String query, List<Address> addresses) {
+        if (!isAdded()) {
+            return;
+        }
+        List<String> suggestions = new ArrayList<>();
+        for (Address addr : addresses) {
+            suggestions.add(addr.getAddressLine(0));
+        }
+        lastSuggestions = addresses;
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(requireContext(),
+                android.R.layout.simple_dropdown_item_1line, suggestions);
+        locationInput.setAdapter(adapter);
+        adapter.notifyDataSetChanged();
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (addressAutocomplete != null) {
+            addressAutocomplete.shutdown();
+        }
     }
 
     /**
@@ -212,25 +222,21 @@ public class CreateEmotionPostFragment extends Fragment {
         }
         fusedLocationClient.getLastLocation().addOnSuccessListener(location -> {
             if (location != null) {
-                Geocoder geocoder = new Geocoder(getContext(), Locale.getDefault());
-                try {
-                    List<Address> addresses = geocoder.getFromLocation(
-                            location.getLatitude(), location.getLongitude(), 1);
-                    if (addresses != null && !addresses.isEmpty()) {
-                        String addressLine = addresses.get(0).getAddressLine(0);
-                        if (addressLine != null && !addressLine.isEmpty()) {
-                            locationInput.setText(addressLine);
-                            Toast.makeText(getContext(), "Location updated", Toast.LENGTH_SHORT).show();
-                        } else {
-                            Toast.makeText(getContext(), "No address found", Toast.LENGTH_SHORT).show();
-                        }
+                // Reverse-geocode off the main thread; repeated lookups are served from the cache
+                GeocoderUtility.getAddressLineAsync(requireContext(),
+                        location.getLatitude(), location.getLongitude(), addressLine -> {
+                    if (!isAdded()) {
+                        return;
+                    }
+                    if (addressLine != null && !addressLine.isEmpty()) {
+                        locationInput.setText(addressLine);
+                        selectedPoint = new GeoPoint(location.getLatitude(), location.getLongitude());
+                        selectedPointAddress = addressLine;
+                        Toast.makeText(getContext(), "Location updated", Toast.LENGTH_SHORT).show();
                     } else {
                         Toast.makeText(getContext(), "No address found", Toast.LENGTH_SHORT).show();
                     }
-                } catch (IOException e) {
-                    Log.e(TAG, "Error reverse geocoding current location", e);
-                    Toast.makeText(getContext(), "Error retrieving location", Toast.LENGTH_SHORT).show();
-                }
+                });
             } else {
                 Toast.makeText(getContext(), "Current location not available", Toast.LENGTH_SHORT).show();
             }
@@ -289,22 +295,41 @@ public class CreateEmotionPostFragment extends Fragment {
     public void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
         if (resultCode == Activity.RESULT_OK) {
+            if (requestCode == ImageCaptureUtil.CAMERA_REQUEST && cameraImageUri != null) {
+                // Shrink the capture right away so the full-size JPEG does not stay on the device.
+                ImageCaptureUtil.processCapture(requireContext(), cameraImageUri, uri -> {
+                    if (isAdded()) {
+                        showSelectedImage(uri);
+                    }
+                }, e -> {
+                    Log.e(TAG, "Error processing captured image", e);
+                    if (isAdded()) {
+                        Toast.makeText(getContext(), "Error processing image.", Toast.LENGTH_SHORT).show();
+                    }
+                });
+                return;
+            }
             Uri uri = null;
             if (requestCode == ImageCaptureUtil.PICK_IMAGE_REQUEST && data != null) {
                 uri = data.getData();
-            } else if (requestCode == ImageCaptureUtil.CAMERA_REQUEST) {
-                uri = cameraImageUri;
             }
             if (uri != null) {
-                this.imageUri = uri.toString();
-                imageAttachment.setImageURI(uri);
-                Log.d(TAG, "Image selected/captured: " + uri.toString());
+                showSelectedImage(uri);
             } else {
                 Log.e(TAG, "Image URI is null");
             }
         }
     }
 
+    /**
+     * Remembers the selected or captured image and shows it as the attachment preview.
+     */
+    private void showSelectedImage(Uri uri) {
+        this.imageUri = uri.toString();
+        imageAttachment.setImageURI(uri);
+        Log.d(TAG, "Image selected/captured: " + uri.toString());
+    }
+
     /**
      * Validates input fields and initiates the process of saving a new emotion post.
      */
@@ -322,124 +347,42 @@ public class CreateEmotionPostFragment extends Fragment {
                     }
                     final String finalSocialSituation = socialSituation;
 
-                    if (imageUri != null) {
-                        try {
-                            Uri processedUri = ImageHelper.compressImage(Uri.parse(imageUri), getContext());
-                            NetworkMonitor networkMonitor = new NetworkMonitor(getContext());
-                            if (!networkMonitor.isConnected()) {
-                                handleOfflineImageUpload(processedUri, emotion, explanation,
-                                        location, finalSocialSituation, username);
-                            } else {
-                                uploadImage(processedUri, emotion, explanation, location,
-                                        finalSocialSituation, username);
-                            }
-                        } catch (IOException e) {
-                            Log.e(TAG, "Error processing image", e);
-                            Toast.makeText(getContext(), "Error processing image.", Toast.LENGTH_SHORT).show();
-                        }
-                    } else {
-                        createEmotionPost(emotion, explanation, null, location, finalSocialSituation, username);
-                    }
+                    createEmotionPost(emotion, explanation, imageUri != null ? Uri.parse(imageUri) : null,
+                            location, finalSocialSituation, username);
                 },
                 e -> Toast.makeText(getContext(), "Failed to get username.", Toast.LENGTH_SHORT).show());
     }
 
     /**
-     * Handles offline image upload by saving the image locally and creating an emotion post with a pending flag.
+     * Creates an EmotionPost object and saves it using the EmotionPostController, which also
+     * compresses and uploads the picked image.
      */
-    private void handleOfflineImageUpload(Uri imageUri, String emotion, String explanation,
-                                          String location, String socialSituation, String username) {
-        try {
-            File cacheDir = getContext().getCacheDir();
-            File localImageFile = new File(cacheDir,
-                    "offline_image_" + System.currentTimeMillis() + ".jpg");
-            InputStream inputStream = getContext().getContentResolver().openInputStream(imageUri);
-            FileOutputStream outputStream = new FileOutputStream(localImageFile);
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-            }
-            inputStream.close();
-            outputStream.close();
-            Uri localUri = Uri.fromFile(localImageFile);
-
-            // Get the public status from checkbox
-            boolean isPublic = publicCheckbox.isChecked();
-
-            EmotionPost post = EmotionPost.create(emotion, explanation, localUri.toString(),
-                    location, socialSituation, username, isPublic);
-            post.setOfflineImagePending(true);
-
-            emotionPostController.createPostWithOfflineSupport(
-                    getContext(),
-                    post,
-                    (DocumentReference docRef) -> {
-                        Toast.makeText(getContext(),
-                                "Post saved locally and will upload when online",
-                                Toast.LENGTH_SHORT).show();
-                        NavController navController = NavHostFragment.findNavController(this);
-                        navController.popBackStack(R.id.navigation_home, false);
-                    },
-                    e -> {
-                        Toast.makeText(getContext(), "Error saving post: " + e.getMessage(),
-                                Toast.LENGTH_SHORT).show();
-                        Log.e(TAG, "Error saving post", e);
-                    });
-        } catch (IOException e) {
-            Log.e(TAG, "Error saving image locally", e);
-            Toast.makeText(getContext(), "Failed to save image locally: " + e.getMessage(),
-                    Toast.LENGTH_SHORT).show();
-        }
-    }
-
-    /**
-     * Uploads an image using ImageHelper and creates an emotion post upon successful upload.
-     */
-    private void uploadImage(Uri imageUri, String emotion, String explanation,
-                             String location, String socialSituation, String username) {
-        ImageHelper.uploadImage(imageUri,
-                downloadUri -> createEmotionPost(emotion, explanation, downloadUri.toString(),
-                        location, socialSituation, username),
-                e -> {
-                    Toast.makeText(getContext(), "Upload failed: " + e.getMessage(),
-                            Toast.LENGTH_SHORT).show();
-                    Log.e(TAG, "Image upload failed", e);
-                });
-    }
-
-    /**
-     * Creates an EmotionPost object and saves it to Firestore using the EmotionPostController.
-     */
-    private void createEmotionPost(String emotion, String explanation, String imageUrl,
+    private void createEmotionPost(String emotion, String explanation, Uri localImage,
                                    String location, String socialSituation, String username) {
         try {
             // Get the public status from checkbox
             boolean isPublic = publicCheckbox.isChecked();
 
-            EmotionPost post = EmotionPost.create(emotion, explanation, imageUrl,
+            // The local image only passes validation here; the controller replaces it with the upload
+            EmotionPost post = EmotionPost.create(emotion, explanation,
+                    localImage != null ? localImage.toString() : null,
                     location, socialSituation, username, isPublic);
 
             Log.d(TAG, "Saving mood event: " + post.toString() + ", public: " + isPublic);
 
-            emotionPostController.createPostWithOfflineSupport(
-                    getContext(),
-                    post,
+            // Saved by the controller even if this screen is closed meanwhile; only feedback needs it.
+            applySelectedPoint(post);
+            emotionPostController.savePost(requireContext(), post, localImage,
                     (DocumentReference docRef) -> {
                         String email = FirebaseAuth.getInstance().getCurrentUser().getEmail();
                         if (docRef != null) {
                             int incrementAmount = calculateKarmaIncrement(post);
-                            usernameController.incrementKarma(email,
-                                    aVoid -> Log.d(TAG, "User karma incremented by " + incrementAmount),
-                                    e -> Log.e(TAG, "Error incrementing karma", e),
-                                    incrementAmount);
-                            usernameController.incrementPostCount(email,
-                                    aVoid -> {
-                                        usernameController.updateDailyBadge(email,
-                                                aVoid2 -> Log.d(TAG, "Daily badge updated for " + email),
-                                                e -> Log.e(TAG, "Failed to update daily badge", e));
-                                    },
-                                    e -> Log.e(TAG, "Failed to update post count", e));
+                            usernameController.recordPostCreated(email, incrementAmount,
+                                    aVoid -> Log.d(TAG, "Post rewards applied, karma +" + incrementAmount),
+                                    e -> Log.e(TAG, "Failed to apply post rewards", e));
+                        }
+                        if (!isAdded()) {
+                            return;
                         }
                         Toast.makeText(getContext(),
                                 docRef != null ? "Post created successfully!" : "Post will be uploaded when online",
@@ -448,15 +391,27 @@ public class CreateEmotionPostFragment extends Fragment {
                         navController.popBackStack(R.id.navigation_home, false);
                     },
                     e -> {
-                        Toast.makeText(getContext(), "Error creating post: " + e.getMessage(),
-                                Toast.LENGTH_SHORT).show();
                         Log.e(TAG, "Error creating post", e);
+                        if (isAdded()) {
+                            Toast.makeText(getContext(), "Error creating post: " + e.getMessage(),
+                                    Toast.LENGTH_SHORT).show();
+                        }
                     });
         } catch (IllegalArgumentException e) {
             Toast.makeText(getContext(), e.getMessage(), Toast.LENGTH_SHORT).show();
         }
     }
 
+    /**
+     * Stores the coordinates of the picked suggestion or current location on the post when its
+     * address still matches. Other addresses are geocoded by EmotionPostController.savePost.
+     */
+    private void applySelectedPoint(EmotionPost post) {
+        if (post.hasLocation() && selectedPoint != null && post.getLocation().equals(selectedPointAddress)) {
+            post.setCoordinates(selectedPoint.getLatitude(), selectedPoint.getLongitude());
+        }
+    }
+
     private int calculateKarmaIncrement(EmotionPost post) {
         int karma = 0;
         if (post.getImageUri() == null) {
@@ -14,11 +14,8 @@ package com.example.tangry.ui.home;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.ParcelFileDescriptor;
-import android.provider.MediaStore;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -42,17 +39,9 @@ import com.example.tangry.controllers.EmotionPostController;
 import com.example.tangry.models.EmotionPost;
 import com.example.tangry.utils.ImageCaptureUtil;
 import com.example.tangry.utils.NetworkMonitor;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
 import com.google.gson.Gson;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
-import java.util.UUID;
 
 public class EditEmotionFragment extends Fragment {
     private static final String TAG = "EditEmotionFragment";
@@ -203,69 +192,43 @@ public class EditEmotionFragment extends Fragment {
         }
 
         // At this point, validation passed - update the post object
+        boolean locationChanged = !location.equals(updatedPost.getLocation());
         updatedPost.setExplanation(explanation);
         updatedPost.setLocation(location);
         updatedPost.setSocialSituation(socialSituation);
         updatedPost.setEmotion(emotion);
         updatedPost.setPublic(isPublic);
 
-        // Check if we have a new image (from user selection) vs. existing image URI
-        if (isNewImageSelected && imageUri != null && !imageUri.isEmpty()) {
-            try {
-                Uri processedUri = checkAndCompressImage(Uri.parse(imageUri));
-                uploadImage(processedUri);
-            } catch (IOException e) {
-                Log.e(TAG, "Error processing image", e);
-                Toast.makeText(getContext(), "Error processing image.", Toast.LENGTH_SHORT).show();
-            }
-        } else {
-            // No new image or using existing image URI, proceed to update the post
-            // without trying to reprocess the image
-            updatePostInFirestore(null);
+        if (locationChanged) {
+            // Stored coordinates belong to the old address; the controller resolves the new one
+            updatedPost.clearCoordinates();
         }
+        saveUpdatedPost();
     }
 
     /**
-     * Updates the emotion post in Firestore. If a new image URL is provided, it
-     * replaces the old one.
-     * Also attempts to delete the previous image from Firebase Storage.
-     *
-     * @param imageUrl The new image URL, or null if unchanged.
+     * Writes the updated post through the EmotionPostController, which also compresses and
+     * uploads a newly selected image and deletes the previous one. The save completes even if
+     * this screen is closed meanwhile; only the feedback needs the fragment.
      */
-    private void updatePostInFirestore(String imageUrl) {
-        // Handle previous image deletion if needed
-        if (imageUrl != null && updatedPost.getImageUri() != null &&
-                !updatedPost.getImageUri().isEmpty() &&
-                updatedPost.getImageUri().startsWith("https://firebasestorage")) {
-            try {
-                StorageReference oldImageRef = FirebaseStorage.getInstance()
-                        .getReferenceFromUrl(updatedPost.getImageUri());
-                oldImageRef.delete().addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Old image deleted successfully");
-                }).addOnFailureListener(e -> {
-                    Log.e(TAG, "Error deleting old image", e);
-                    // Continue update even if deletion fails.
-                });
-            } catch (IllegalArgumentException e) {
-                Log.e(TAG, "Invalid old image storage URL", e);
-            }
-        }
-
-        // Update the post with the new image URL if available.
-        if (imageUrl != null) {
-            updatedPost.setImageUri(imageUrl);
-        }
+    private void saveUpdatedPost() {
+        // Only a new selection is uploaded; an existing image URI is kept as is
+        Uri newImage = isNewImageSelected && imageUri != null && !imageUri.isEmpty()
+                ? Uri.parse(imageUri) : null;
 
         // Check network connectivity
         NetworkMonitor networkMonitor = new NetworkMonitor(getContext());
         boolean isConnected = networkMonitor.isConnected();
 
-        // Save the updated post to Firestore with offline support.
-        emotionPostController.updateEmotionPostWithOfflineSupport(
-                getContext(),
+        emotionPostController.saveEditedPost(
+                requireContext(),
                 postId,
                 updatedPost,
+                newImage,
                 () -> {
+                    if (!isAdded()) {
+                        return;
+                    }
                     // Show appropriate message based on connectivity
                     if (!isConnected) {
                         Toast.makeText(getContext(),
@@ -280,126 +243,11 @@ public class EditEmotionFragment extends Fragment {
                     navController.popBackStack(R.id.navigation_home, true);
                 },
                 e -> {
-                    Toast.makeText(getContext(), "Failed to update: " + e.getMessage(),
-                            Toast.LENGTH_SHORT).show();
                     Log.e(TAG, "Failed to update post", e);
-                });
-    }
-
-    /**
-     * Compresses an image if its size exceeds 64KB by reducing quality and scaling
-     * down dimensions.
-     *
-     * @param originalUri The original URI of the selected image.
-     * @return The URI of the compressed image.
-     * @throws IOException If the compression fails.
-     */
-    private Uri checkAndCompressImage(Uri originalUri) throws IOException {
-        ParcelFileDescriptor pfd = getActivity().getContentResolver().openFileDescriptor(originalUri, "r");
-        long fileSize = pfd.getStatSize();
-        pfd.close();
-
-        if (fileSize <= 65536) { // 64KB
-            return originalUri;
-        }
-
-        Bitmap originalBitmap = MediaStore.Images.Media.getBitmap(getActivity().getContentResolver(), originalUri);
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-
-        int quality = 80;
-        do {
-            outputStream.reset();
-            originalBitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
-            quality -= 10;
-        } while (outputStream.size() > 65536 && quality > 0);
-
-        if (outputStream.size() > 65536) {
-            float scale = 0.8f;
-            while (outputStream.size() > 65536 && scale > 0.1f) {
-                int newWidth = (int) (originalBitmap.getWidth() * scale);
-                int newHeight = (int) (originalBitmap.getHeight() * scale);
-                Bitmap scaledBitmap = Bitmap.createScaledBitmap(originalBitmap, newWidth, newHeight, true);
-                outputStream.reset();
-                scaledBitmap.compress(Bitmap.CompressFormat.JPEG, 70, outputStream);
-                scale -= 0.1f;
-            }
-        }
-
-        if (outputStream.size() > 65536) {
-            throw new IOException("Could not compress image to under 64KB.");
-        }
-
-        File cacheDir = getContext().getCacheDir();
-        File tempFile = File.createTempFile("compressed_image", ".jpg", cacheDir);
-        FileOutputStream fos = new FileOutputStream(tempFile);
-        fos.write(outputStream.toByteArray());
-        fos.close();
-
-        return Uri.fromFile(tempFile);
-    }
-
-    /**
-     * Uploads an image to Firebase Storage and updates the post with the download
-     * URL upon success.
-     *
-     * @param imageUri The URI of the image to upload.
-     */
-    private void uploadImage(Uri imageUri) {
-        Log.d(TAG, "Uploading image: " + imageUri);
-
-        // Check network connectivity first
-        NetworkMonitor networkMonitor = new NetworkMonitor(getContext());
-        if (!networkMonitor.isConnected()) {
-            // We're offline - store the image locally and update post
-            try {
-                // Copy the image to app's local storage for offline use
-                File cacheDir = getContext().getCacheDir();
-                File localImageFile = new File(cacheDir,
-                        "offline_image_" + postId + "_" + System.currentTimeMillis() + ".jpg");
-
-                InputStream inputStream = getContext().getContentResolver().openInputStream(imageUri);
-                FileOutputStream outputStream = new FileOutputStream(localImageFile);
-                byte[] buffer = new byte[1024];
-                int bytesRead;
-
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
-                }
-
-                inputStream.close();
-                outputStream.close();
-
-                // Create a local URI that can be used later
-                Uri localUri = Uri.fromFile(localImageFile);
-
-                // Store this local image path in the post and update
-                updatedPost.setImageUri(localUri.toString());
-                updatedPost.setOfflineImagePending(true);
-
-                // Update post with local image reference
-                updatePostInFirestore(localUri.toString());
-
-            } catch (IOException e) {
-                Log.e(TAG, "Error saving image locally", e);
-                Toast.makeText(getContext(), "Failed to save image locally: " + e.getMessage(),
-                        Toast.LENGTH_SHORT).show();
-            }
-            return;
-        }
-
-        // We're online - proceed with normal Firebase Storage upload
-        StorageReference storageRef = FirebaseStorage.getInstance().getReference();
-        StorageReference imageRef = storageRef.child("images/" + UUID.randomUUID().toString());
-
-        imageRef.putFile(imageUri)
-                .addOnSuccessListener(taskSnapshot -> imageRef.getDownloadUrl().addOnSuccessListener(uri -> {
-                    String downloadUrl = uri.toString();
-                    updatePostInFirestore(downloadUrl);
-                }))
-                .addOnFailureListener(e -> {
-                    Toast.makeText(getContext(), "Upload failed: " + e.getMessage(),
-                            Toast.LENGTH_SHORT).show();
-                    Log.e(TAG, "Image upload failed", e);
+                    if (isAdded()) {
+                        Toast.makeText(getContext(), "Failed to update: " + e.getMessage(),
+                                Toast.LENGTH_SHORT).show();
+                    }
                 });
     }
 
@@ -447,37 +295,40 @@ public class EditEmotionFragment extends Fragment {
             if (requestCode == ImageCaptureUtil.PICK_IMAGE_REQUEST && data != null) {
                 // Handle gallery selection
                 uri = data.getData();
-            } else if (requestCode == ImageCaptureUtil.CAMERA_REQUEST) {
-                // Handle camera photo - we already have the URI in cameraImageUri
-                uri = cameraImageUri;
-
-                // Debug log to verify camera URI is valid
-                Log.d(TAG, "Camera image URI: " + uri);
+            } else if (requestCode == ImageCaptureUtil.CAMERA_REQUEST && cameraImageUri != null) {
+                // Handle camera photo - shrink the capture right away so the full-size JPEG does
+                // not stay on the device
+                Log.d(TAG, "Camera image URI: " + cameraImageUri);
+                ImageCaptureUtil.processCapture(requireContext(), cameraImageUri, compressedUri -> {
+                    if (isAdded()) {
+                        showSelectedImage(compressedUri);
+                    }
+                }, e -> {
+                    Log.e(TAG, "Error processing captured image", e);
+                    if (isAdded()) {
+                        Toast.makeText(getContext(), "Error processing image.", Toast.LENGTH_SHORT).show();
+                    }
+                });
+                return;
             }
 
             if (uri != null) {
-                imageUri = uri.toString();
-                isNewImageSelected = true; // Mark as newly selected
-
-                try {
-                    // Load the image using content resolver to ensure it's properly loaded
-                    Bitmap bitmap = MediaStore.Images.Media.getBitmap(requireActivity().getContentResolver(), uri);
-                    imageAttachment.setImageBitmap(bitmap);
-
-                    // Also try with setImageURI as backup
-                    if (bitmap == null) {
-                        imageAttachment.setImageURI(uri);
-                    }
-
-                    Log.d(TAG, "Image set successfully from: " + uri.toString());
-                } catch (IOException e) {
-                    Log.e(TAG, "Error loading image from URI: " + uri, e);
-                    // Fallback to direct URI setting
-                    imageAttachment.setImageURI(uri);
-                }
+                showSelectedImage(uri);
             } else {
                 Log.e(TAG, "Image URI is null after camera/gallery selection");
             }
         }
     }
+
+    /**
+     * Marks an image as newly selected and shows it as the attachment preview.
+     */
+    private void showSelectedImage(Uri uri) {
+        imageUri = uri.toString();
+        isNewImageSelected = true; // Mark as newly selected
+
+        // Glide decodes a downsampled preview off the main thread.
+        Glide.with(requireContext()).load(uri).into(imageAttachment);
+        Log.d(TAG, "Image set successfully from: " + uri.toString());
+    }
 }
\ No newline at end of file
@@ -25,6 +25,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.navigation.Navigation;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -35,6 +36,8 @@ import com.example.tangry.models.EmotionPost;
 import com.example.tangry.repositories.EmotionPostRepository;
 import com.example.tangry.repositories.UserRepository;
 import com.example.tangry.utils.FilterBottomSheetDialog;
+import com.example.tangry.utils.ListImageLoader;
+import com.example.tangry.utils.PostSearchEngine;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.Query;
@@ -57,6 +60,7 @@ public class FriendMoodsFragment extends Fragment {
     private boolean filterRecent = false;
     private TextView emptyStateText;
     private EditText searchInput;
+    private PostSearchEngine searchEngine;
 
     @Nullable
     @Override
@@ -84,6 +88,8 @@ public class FriendMoodsFragment extends Fragment {
                     .navigate(R.id.action_homeFragment_to_postDetailsFragment, bundle);
         });
         recyclerView.setAdapter(adapter);
+        ListImageLoader.attachPreloader(this, recyclerView, adapter::getPostAt);
+        searchEngine = new PostSearchEngine(this::onSearchResults);
 
         // Set up filter button
         ImageButton filterBtn = root.findViewById(R.id.btn_filter);
@@ -102,14 +108,14 @@ public class FriendMoodsFragment extends Fragment {
         // Handle search action when user presses search on keyboard
         searchInput.setOnEditorActionListener((v, actionId, event) -> {
             if (actionId == EditorInfo.IME_ACTION_SEARCH) {
-                performSearch(searchInput.getText().toString());
+                searchEngine.searchNow(searchInput.getText().toString());
                 hideKeyboard();
                 return true;
             }
             return false;
         });
 
-        // Real-time filtering as user types
+        // Debounced filtering as user types
         searchInput.addTextChangedListener(new TextWatcher() {
             @Override
             public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
@@ -119,23 +125,22 @@ public class FriendMoodsFragment extends Fragment {
 
             @Override
             public void afterTextChanged(Editable s) {
-                performSearch(s.toString());
+                searchEngine.search(s.toString());
             }
         });
     }
 
-    private void performSearch(String query) {
-        if (adapter != null) {
-            adapter.getFilter().filter(query);
-
-            // Show empty state if filtered list is empty
-            if (adapter.getItemCount() == 0) {
-                emptyStateText.setText("No posts match your search");
-                showEmptyState();
-            } else {
-                emptyStateText.setVisibility(View.GONE);
-                recyclerView.setVisibility(View.VISIBLE);
-            }
+    /**
+     * Applies the latest search results and updates the empty state once filtering has finished.
+     */
+    private void onSearchResults(String query, List<EmotionPost> results, DiffUtil.DiffResult diff) {
+        adapter.applySearchResults(results, diff);
+        if (!results.isEmpty()) {
+            emptyStateText.setVisibility(View.GONE);
+            recyclerView.setVisibility(View.VISIBLE);
+        } else {
+            emptyStateText.setText(query.trim().isEmpty() ? "No posts to display" : "No posts match your search");
+            showEmptyState();
         }
     }
 
@@ -197,24 +202,23 @@ public class FriendMoodsFragment extends Fragment {
                     // Hide loading indicator if you added one
                     // loadingIndicator.setVisibility(View.GONE);
 
-                    if (posts.isEmpty()) {
-                        emptyStateText.setText("No posts to display");
-                        showEmptyState();
-                    } else {
-                        emptyStateText.setVisibility(View.GONE);
-                        recyclerView.setVisibility(View.VISIBLE);
-                    }
-
-                    adapter.setPosts(posts);
-
-                    // Re-apply search if there's text in the search field
-                    if (searchInput.getText().length() > 0) {
-                        performSearch(searchInput.getText().toString());
+                    // Re-indexes the posts and re-applies the current search text
+                    if (searchEngine != null) {
+                        searchEngine.setPosts(posts);
                     }
                 }
         );
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (searchEngine != null) {
+            searchEngine.shutdown();
+            searchEngine = null;
+        }
+    }
+
     private void showEmptyState() {
         emptyStateText.setVisibility(View.VISIBLE);
         recyclerView.setVisibility(View.GONE);
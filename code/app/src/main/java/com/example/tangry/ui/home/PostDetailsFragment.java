@@ -42,11 +42,10 @@ import com.example.tangry.controllers.EmotionPostController;
 import com.example.tangry.controllers.UserController;
 import com.example.tangry.models.Comment;
 import com.example.tangry.models.EmotionPost;
+import com.example.tangry.utils.ImageHelper;
 import com.example.tangry.utils.NetworkMonitor;
 import com.example.tangry.utils.TimeUtils;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
 import com.google.gson.Gson;
 
 import java.util.ArrayList;
@@ -164,16 +163,10 @@ public class PostDetailsFragment extends Fragment {
                                         commentAdapter.notifyItemInserted(commentList.size() - 1);
                                         commentInput.setText("");
                                         int commentKarma = 5;
-                                        userController.incrementKarma(email,
-                                                aVoid -> Log.d("PostDetails", "Karma incremented by " + commentKarma + " for commenting."),
-                                                e -> Log.e("PostDetails", "Failed to increment karma after comment", e),
-                                                commentKarma);
-
-                                        // --- New Badge Functionality for Comments ---
-                                        // Update the user's comment count and award a silver badge for every 3 comments.
-                                        userController.incrementCommentCount(email,
-                                                aVoid -> Log.d("PostDetails", "User comment count incremented (silver badge updated)"),
-                                                e -> Log.e("PostDetails", "Failed to update comment count for badge", e));
+                                        // Karma, comment count and the silver badge for every 3 comments, in one transaction.
+                                        userController.recordCommentAdded(email, commentKarma,
+                                                aVoid -> Log.d("PostDetails", "Comment rewards applied, karma +" + commentKarma),
+                                                e -> Log.e("PostDetails", "Failed to apply comment rewards", e));
                                     },
                                     e -> Log.e("PostDetails", "Failed to add comment", e));
                         },
@@ -208,10 +201,17 @@ public class PostDetailsFragment extends Fragment {
         reasonText.setText(post.getExplanation().isEmpty() ? "No Explanation" : post.getExplanation());
         timeText.setText(TimeUtils.getTimeAgo(post.getTimestamp().toDate()));
 
-        // Load mood image if available
+        // Load the full mood image if available, showing the list thumbnail (likely cached) meanwhile
         if (post.getImageUri() != null) {
             Glide.with(requireContext())
                     .load(Uri.parse(post.getImageUri()))
+                    .thumbnail(Glide.with(requireContext()).load(ImageHelper.listImageUrl(post)))
+                    .listener(ImageHelper.refreshUrlOnFailure(post.getImageUri(), freshUrl -> {
+                        // The stored URL's token was revoked; show the image with a fresh one
+                        if (isAdded()) {
+                            Glide.with(this).load(freshUrl).into(moodImage);
+                        }
+                    }))
                     .into(moodImage);
         } else {
             moodImage.setVisibility(View.GONE);
@@ -303,23 +303,8 @@ public class PostDetailsFragment extends Fragment {
      */
     private void deletePost() {
         if (postId != null) {
-            if (post.getImageUri() != null && !post.getImageUri().isEmpty()) {
-                try {
-                    StorageReference imageRef = FirebaseStorage.getInstance().getReferenceFromUrl(post.getImageUri());
-                    imageRef.delete().addOnSuccessListener(aVoid -> {
-                        Log.d("PostDetails", "Image deleted successfully");
-                        deletePostFromFirestore();
-                    }).addOnFailureListener(e -> {
-                        Log.e("PostDetails", "Error deleting image", e);
-                        deletePostFromFirestore();
-                    });
-                } catch (IllegalArgumentException e) {
-                    Log.e("PostDetails", "Invalid storage URL", e);
-                    deletePostFromFirestore();
-                }
-            } else {
-                deletePostFromFirestore();
-            }
+            ImageHelper.deleteUnsharedImage(post.getThumbnailUri(), () -> { });
+            ImageHelper.deleteUnsharedImage(post.getImageUri(), this::deletePostFromFirestore);
         }
     }
 
@@ -2,6 +2,8 @@ package com.example.tangry.ui.home;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -17,6 +19,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.navigation.Navigation;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -25,6 +28,10 @@ import com.example.tangry.adapters.EmotionPostAdapter;
 import com.example.tangry.controllers.EmotionPostController;
 import com.example.tangry.models.EmotionPost;
 import com.example.tangry.utils.FilterBottomSheetDialog;
+import com.example.tangry.utils.ListImageLoader;
+import com.example.tangry.utils.MoodSearchIndex;
+import com.example.tangry.utils.MoodTextIndex;
+import com.example.tangry.utils.PostSearchEngine;
 import com.google.android.material.bottomsheet.BottomSheetDialog;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.DocumentSnapshot;
@@ -39,10 +46,13 @@ import java.util.List;
  *
  * This fragment displays the current user's mood posts.
  * It now uses a dedicated filter button in the layout instead of using the toolbar for filtering.
+ * The search box ranks posts with the on-device BM25 index (MoodSearchIndex) and then appends
+ * the remaining substring matches.
  */
 public class YourMoodFragment extends Fragment {
 
     private static final String TAG = "YourMoodFragment";
+    private static final int MAX_RANKED_RESULTS = 50;
     private RecyclerView recyclerView;
     private EmotionPostAdapter adapter;
     private EmotionPostController emotionPostController;
@@ -50,6 +60,7 @@ public class YourMoodFragment extends Fragment {
     private List<String> selectedEmotions = new ArrayList<>();
     private boolean filterRecent = false;
     private TextView emptyStateText;
+    private PostSearchEngine searchEngine;
 
     @Nullable
     @Override
@@ -79,6 +90,16 @@ public class YourMoodFragment extends Fragment {
                     .navigate(R.id.action_homeFragment_to_postDetailsFragment, bundle);
         });
         recyclerView.setAdapter(adapter);
+        ListImageLoader.attachPreloader(this, recyclerView, adapter::getPostAt);
+        // Phrase searches are ranked by the on-device BM25 index of the user's history.
+        MoodSearchIndex moodIndex = MoodSearchIndex.getInstance(requireContext());
+        searchEngine = new PostSearchEngine(this::onSearchResults, query -> {
+            List<String> ids = new ArrayList<>();
+            for (MoodTextIndex.Result result : moodIndex.searchBlocking(query, MAX_RANKED_RESULTS)) {
+                ids.add(result.getDocId());
+            }
+            return ids;
+        });
 
         // Set up filter button
         ImageButton filterBtn = root.findViewById(R.id.btn_filter);
@@ -88,7 +109,7 @@ public class YourMoodFragment extends Fragment {
         EditText searchInput = root.findViewById(R.id.search_input);
         searchInput.setOnEditorActionListener((v, actionId, event) -> {
             if (actionId == EditorInfo.IME_ACTION_SEARCH) {
-                performSearch(searchInput.getText().toString());
+                searchEngine.searchNow(searchInput.getText().toString());
                 // Hide keyboard
                 InputMethodManager imm = (InputMethodManager) requireActivity().getSystemService(Context.INPUT_METHOD_SERVICE);
                 imm.hideSoftInputFromWindow(searchInput.getWindowToken(), 0);
@@ -97,16 +118,46 @@ public class YourMoodFragment extends Fragment {
             return false;
         });
 
+        // Debounced filtering as user types
+        searchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                searchEngine.search(s.toString());
+            }
+        });
+
         // Initial data load
         loadPosts();
 
         return root;
     }
 
-    private void performSearch(String query) {
-        // Assuming your adapter has a filter method
-        if (adapter != null) {
-            adapter.getFilter().filter(query);
+    /**
+     * Applies the latest search results and updates the empty state once filtering has finished.
+     */
+    private void onSearchResults(String query, List<EmotionPost> results, DiffUtil.DiffResult diff) {
+        adapter.applySearchResults(results, diff);
+        if (results.isEmpty()) {
+            emptyStateText.setVisibility(View.VISIBLE);
+            recyclerView.setVisibility(View.GONE);
+        } else {
+            emptyStateText.setVisibility(View.GONE);
+            recyclerView.setVisibility(View.VISIBLE);
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (searchEngine != null) {
+            searchEngine.shutdown();
+            searchEngine = null;
         }
     }
 
@@ -134,6 +185,7 @@ public class YourMoodFragment extends Fragment {
                 filterRecent
         );
 
+        boolean unfiltered = selectedEmotions.isEmpty() && !filterRecent;
         query.addSnapshotListener((value, error) -> {
             if (error != null) {
                 Log.e(TAG, "Error loading posts", error);
@@ -151,15 +203,22 @@ public class YourMoodFragment extends Fragment {
                 }
             }
 
-            if (posts.isEmpty()) {
-                emptyStateText.setVisibility(View.VISIBLE);
-                recyclerView.setVisibility(View.GONE);
-            } else {
-                emptyStateText.setVisibility(View.GONE);
-                recyclerView.setVisibility(View.VISIBLE);
+            // Keep the on-device full-text index in step with the server copy. Only an unfiltered
+            // server snapshot is the complete history, so only then are missing posts removed.
+            if (getContext() != null) {
+                MoodSearchIndex moodIndex = MoodSearchIndex.getInstance(getContext());
+                boolean complete = unfiltered && value != null && !value.getMetadata().isFromCache();
+                if (complete) {
+                    moodIndex.syncPosts(posts);
+                } else {
+                    moodIndex.indexPosts(posts);
+                }
             }
 
-            adapter.setPosts(posts);
+            // Re-indexes the posts and re-applies the current search text
+            if (searchEngine != null) {
+                searchEngine.setPosts(posts);
+            }
         });
     }
 
@@ -0,0 +1,74 @@
+/**
+ * HeatmapOverlay.java
+ *
+ * Draws the emotion heatmap as one bitmap stretched over its latitude/longitude box. The bitmap
+ * holds one pixel per geohash cell (see EmotionHeatmap) and is drawn with bilinear filtering, so
+ * neighbouring cells blend into a smooth heatmap at the cost of a single drawBitmap per frame.
+ *
+ * Key features:
+ * - One bitmap draw per frame regardless of the number of posts
+ * - Projects only the raster's two corners each frame
+ * - Recycles the previous bitmap when a new raster is set
+ */
+package com.example.tangry.ui.map;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Point;
+import android.graphics.RectF;
+
+import androidx.annotation.Nullable;
+
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Overlay;
+
+public class HeatmapOverlay extends Overlay {
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final GeoPoint reusedGeoPoint = new GeoPoint(0.0, 0.0);
+    private final Point reusedPoint = new Point();
+    private final RectF destination = new RectF();
+    // Only touched on the main thread.
+    private Bitmap raster;
+    private BoundingBox bounds;
+
+    /**
+     * Replaces the drawn raster. The overlay takes ownership of the bitmap.
+     *
+     * @param bitmap    the raster, or null to draw nothing
+     * @param rasterBox the area the raster covers
+     */
+    public void setRaster(@Nullable Bitmap bitmap, @Nullable BoundingBox rasterBox) {
+        if (raster != null && raster != bitmap) {
+            raster.recycle();
+        }
+        raster = bitmap;
+        bounds = rasterBox;
+    }
+
+    /**
+     * Recycles the raster. Call once the overlay is removed from the map.
+     */
+    public void release() {
+        setRaster(null, null);
+    }
+
+    @Override
+    public void draw(Canvas canvas, MapView mapView, boolean shadow) {
+        if (shadow || raster == null) {
+            return;
+        }
+        Projection projection = mapView.getProjection();
+        reusedGeoPoint.setCoords(bounds.getLatNorth(), bounds.getLonWest());
+        projection.toPixels(reusedGeoPoint, reusedPoint);
+        float left = reusedPoint.x;
+        float top = reusedPoint.y;
+        reusedGeoPoint.setCoords(bounds.getLatSouth(), bounds.getLonEast());
+        projection.toPixels(reusedGeoPoint, reusedPoint);
+        destination.set(left, top, reusedPoint.x, reusedPoint.y);
+        canvas.drawBitmap(raster, null, destination, paint);
+    }
+}
@@ -4,7 +4,7 @@
  * Fragment that displays emotion posts on a map.
  * Uses OSMDroid to show a map with custom markers representing posts,
  * colored by emotion type. Supports filtering, user location tracking,
- * and showing post details when markers are tapped.
+ * an emotion heatmap mode, time-slider playback, and showing post details when markers are tapped.
  */
 package com.example.tangry.ui.map;
 
@@ -14,9 +14,7 @@ import com.google.firebase.auth.FirebaseUser;
 import android.Manifest;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.GradientDrawable;
 import android.graphics.drawable.LayerDrawable;
@@ -36,22 +34,19 @@ import androidx.appcompat.app.AlertDialog;
 
 import com.example.tangry.R;
 import com.example.tangry.controllers.EmotionPostController;
-import com.example.tangry.models.Emotion;
 import com.example.tangry.models.EmotionPost;
-import com.example.tangry.models.EmotionProvider;
 import com.example.tangry.repositories.EmotionPostRepository;
 import com.example.tangry.repositories.UserRepository;
+import com.example.tangry.utils.EmotionHeatmap;
 import com.example.tangry.utils.FilterBottomSheetDialog;
-import com.example.tangry.utils.GeocoderUtility;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.Query;
+import com.example.tangry.utils.GeoHash;
+import com.example.tangry.utils.GridClusterer;
+import com.example.tangry.utils.ImageHelper;
+import com.example.tangry.utils.PostCoordinateBackfill;
 
-import org.osmdroid.config.Configuration;
 import org.osmdroid.events.MapListener;
 import org.osmdroid.events.ScrollEvent;
 import org.osmdroid.events.ZoomEvent;
-import org.osmdroid.tileprovider.tilesource.OnlineTileSourceBase;
-import org.osmdroid.tileprovider.tilesource.XYTileSource;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.CustomZoomButtonsController;
@@ -63,14 +58,34 @@ import org.osmdroid.views.overlay.mylocation.MyLocationNewOverlay;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class MapFragment extends Fragment {
 
     private static final String TAG = "MapFragment";
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 100;
     private static final double DEFAULT_ZOOM = 15.0;
+    private static final double MAP_RADIUS_KM = 5.0;
+    // Markers closer than this on screen are merged into one cluster marker.
+    private static final int CLUSTER_CELL_DP = 64;
+    private static final int MAX_CLUSTER_ZOOM = 20;
+    // Above this many visible pins, Marker overlays are replaced by PinOverlay's single draw pass.
+    private static final int MAX_MARKER_PINS = 40;
+    // Heatmap cells are 7-character geohashes (about 150 m); the raster is at most this many pixels wide.
+    private static final int HEATMAP_PRECISION = 7;
+    private static final int HEATMAP_MAX_SIDE = 256;
+    // The "recent" filter keeps the past week, as in EmotionPostController.getFilteredPostsQuery.
+    private static final long RECENT_WINDOW_MS = TimeUnit.DAYS.toMillis(7);
+    // Playback covers the past day (or week with the recent filter); a post stays on the map for the trail.
+    private static final long PLAYBACK_DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long PLAYBACK_DAY_TRAIL_MS = TimeUnit.HOURS.toMillis(3);
+    private static final long PLAYBACK_WEEK_TRAIL_MS = TimeUnit.DAYS.toMillis(1);
     // Fallback location (set to Edmonton)
     private static final GeoPoint FALLBACK_LOCATION = new GeoPoint(53.535999, -113.500205);
 
@@ -78,6 +93,38 @@ public class MapFragment extends Fragment {
     private MyLocationNewOverlay myLocationOverlay;
     private EmotionPostController emotionPostController;
     private EmotionPostRepository repository;
+    private MarkerIconCache markerIconCache;
+    private PinOverlay pinOverlay;
+    private ViewportPostLoader viewportLoader;
+    // Usernames whose posts are shown (friends plus the current user); null until loaded.
+    private Set<String> validUsers;
+    // The most recent post of each valid user, wherever it lies; null until loaded. Pins are
+    // chosen from these, never from the partial set of posts loaded for the viewport.
+    private List<EmotionPost> latestPosts;
+    private Marker noPostsMarker;
+
+    // Clustering runs on a background thread; the clusterer's methods are only called on that thread.
+    private final ExecutorService clusterExecutor = Executors.newSingleThreadExecutor();
+    private GridClusterer<EmotionPost> clusterer;
+    // Only touched on the main thread.
+    private final List<Marker> postMarkers = new ArrayList<>();
+    private List<GridClusterer.Cluster<EmotionPost>> renderedClusters = new ArrayList<>();
+    private int clusterGeneration = 0;
+    private int renderedZoom = -1;
+
+    // Heatmap mode shows every loaded post aggregated per cell instead of one pin per user.
+    private final ExecutorService heatmapExecutor = Executors.newSingleThreadExecutor();
+    private EmotionHeatmap heatmap = new EmotionHeatmap(HEATMAP_PRECISION);
+    private HeatmapOverlay heatmapOverlay;
+    // Only touched on the main thread.
+    private final Map<String, Integer> heatmapColors = new HashMap<>();
+    private boolean heatmapMode = false;
+    private int heatmapGeneration = 0;
+
+    // Playback mode replaces the pins with a time slider over the loaded posts.
+    private PinOverlay playbackOverlay;
+    private MoodPlayback moodPlayback;
+    private boolean playbackMode = false;
 
     // Filter variables
     private List<String> selectedEmotions = new ArrayList<>();
@@ -85,10 +132,17 @@ public class MapFragment extends Fragment {
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        // Set OSMDroid configuration (ensure you have set your user agent)
-        Configuration.getInstance().setUserAgentValue(getActivity().getPackageName());
+        // Set OSMDroid configuration (user agent and the offline tile cache)
+        MapTiles.configure(requireContext());
         View view = inflater.inflate(R.layout.fragment_map, container, false);
         mapView = view.findViewById(R.id.map);
+        markerIconCache = new MarkerIconCache(requireContext());
+        clusterer = new GridClusterer<>(dpToPx(CLUSTER_CELL_DP), MAX_CLUSTER_ZOOM);
+        pinOverlay = new PinOverlay(markerIconCache,
+                index -> onClusterTapped(renderedClusters.get(index), renderedZoom));
+        heatmapOverlay = new HeatmapOverlay();
+        mapView.getOverlays().add(heatmapOverlay);
+        mapView.getOverlays().add(pinOverlay);
 
         // Disable map repetition
         mapView.setHorizontalMapRepetitionEnabled(false);
@@ -99,9 +153,7 @@ public class MapFragment extends Fragment {
         mapView.getZoomController().setVisibility(CustomZoomButtonsController.Visibility.NEVER);
 
         // Set the tile source
-        OnlineTileSourceBase tileSource = new XYTileSource("CartoDB Voyager",
-                0, 20, 256, ".png", new String[] {"https://basemaps.cartocdn.com/rastertiles/voyager/"});
-        mapView.setTileSource(tileSource);
+        mapView.setTileSource(MapTiles.createTileSource());
         mapView.getController().setZoom(DEFAULT_ZOOM);
 
         // Setup custom zoom buttons
@@ -118,14 +170,48 @@ public class MapFragment extends Fragment {
             btnFilter.setOnClickListener(v -> showFilterDialog());
         }
 
+        // Setup heatmap toggle button
+        ImageButton btnHeatmap = view.findViewById(R.id.btn_heatmap);
+        if (btnHeatmap != null) {
+            btnHeatmap.setOnClickListener(v -> toggleHeatmap());
+        }
+
+        // Setup time-slider playback
+        playbackOverlay = new PinOverlay(markerIconCache, index -> showPostDetails(moodPlayback.getPost(index)));
+        moodPlayback = new MoodPlayback(mapView, playbackOverlay, view.findViewById(R.id.playback_seek),
+                view.findViewById(R.id.btn_playback_play), view.findViewById(R.id.playback_time));
+        ImageButton btnPlayback = view.findViewById(R.id.btn_playback);
+        if (btnPlayback != null) {
+            btnPlayback.setOnClickListener(v -> {
+                if (playbackMode) {
+                    stopPlayback();
+                } else {
+                    startPlayback();
+                }
+            });
+        }
+
 
 
-        // Optional: set a MapListener (if needed)
+        // Load posts for the visible area as it moves, and recluster when the zoom crosses a whole level
         mapView.setMapListener(new MapListener() {
             @Override
-            public boolean onScroll(ScrollEvent event) { return false; }
+            public boolean onScroll(ScrollEvent event) {
+                viewportLoader.onViewportChanged(mapView.getBoundingBox());
+                if (playbackMode) {
+                    moodPlayback.refresh();
+                }
+                return false;
+            }
             @Override
-            public boolean onZoom(ZoomEvent event) { return false; }
+            public boolean onZoom(ZoomEvent event) {
+                reclusterForZoom((int) Math.floor(event.getZoomLevel()));
+                viewportLoader.onViewportChanged(mapView.getBoundingBox());
+                if (playbackMode) {
+                    moodPlayback.refresh();
+                }
+                return false;
+            }
         });
 
         // Check location permissions
@@ -142,6 +228,7 @@ public class MapFragment extends Fragment {
         // Initialize controllers and repository
         emotionPostController = new EmotionPostController();
         repository = EmotionPostRepository.getInstance();
+        viewportLoader = new ViewportPostLoader(repository, this::renderVisiblePosts);
 
         // Load posts and add markers
         loadFollowedMoodEventPins();
@@ -165,33 +252,26 @@ public class MapFragment extends Fragment {
                         currentLocation = FALLBACK_LOCATION;
                     }
                     mapView.getController().animateTo(currentLocation);
-                    setMapBoundaries(currentLocation, 5.0);
+                    setMapBoundaries(currentLocation, MAP_RADIUS_KM);
+                    // Download this area's tiles for offline use next time the device is idle on Wi-Fi
+                    TilePrefetchService.schedule(getActivity(), currentLocation.getLatitude(),
+                            currentLocation.getLongitude(), MAP_RADIUS_KM);
                 });
             }
         });
     }
 
     private void setMapBoundaries(GeoPoint center, double radiusKm) {
-        double lat = center.getLatitude();
-        double lon = center.getLongitude();
-        double latOffset = radiusKm / 111.0;
-        double lonOffset = radiusKm / (111.0 * Math.cos(Math.toRadians(lat)));
-        BoundingBox bb = new BoundingBox(
-                lat + latOffset,
-                lon + lonOffset,
-                lat - latOffset,
-                lon - lonOffset
-        );
+        BoundingBox bb = MapTiles.boundsAround(center.getLatitude(), center.getLongitude(), radiusKm);
         mapView.setScrollableAreaLimitDouble(bb);
         double currentZoom = mapView.getZoomLevelDouble();
         mapView.setMinZoomLevel(currentZoom);
     }
 
     /**
-     * Loads posts from the current user and friends (including private posts),
-     * then for each valid user, only the most recent overall post is considered.
-     * If a filter is active (i.e. selectedEmotions is not empty) and that post’s emotion
-     * is not in the filter, no marker is added for that user.
+     * Loads the friends list, then each shown user's latest post for the pins and the posts in
+     * the visible area for the heatmap and playback, and backfills the shown users' legacy posts. Viewport posts are fetched per geohash cell
+     * by ViewportPostLoader as the map moves; both are rendered by renderVisiblePosts.
      */
     private void loadFollowedMoodEventPins() {
         FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
@@ -203,96 +283,28 @@ public class MapFragment extends Fragment {
         // Retrieve friends list asynchronously from UserRepository.
         UserRepository.getInstance().getFriendsList(currentUserEmail,
                 friendsList -> {
+                    if (getView() == null) {
+                        return;
+                    }
                     // Combine friends with the current user's username.
-                    List<String> validUsers = new ArrayList<>(friendsList);
+                    Set<String> users = new HashSet<>(friendsList);
                     String currentUsername = getCurrentUsername();
                     if (currentUsername != null && !currentUsername.equalsIgnoreCase("unknown")) {
-                        validUsers.add(currentUsername);
-                    }
-                    // Use the overall posts query (all posts, ordered by timestamp descending)
-                    Query query = repository.getPostsQuery();
-
-                    // *** Clear previous Marker overlays before adding new ones ***
-                    List<org.osmdroid.views.overlay.Overlay> markersToRemove = new ArrayList<>();
-                    for (org.osmdroid.views.overlay.Overlay overlay : mapView.getOverlays()) {
-                        if (overlay instanceof Marker) {
-                            markersToRemove.add(overlay);
-                        }
+                        users.add(currentUsername);
                     }
-                    mapView.getOverlays().removeAll(markersToRemove);
-
-                    query.get().addOnSuccessListener(querySnapshot -> {
-                        Map<String, EmotionPost> latestEventPerUser = new HashMap<>();
-                        GeoPoint currentLocation = myLocationOverlay.getMyLocation();
-                        if (currentLocation == null ||
-                                currentLocation.getLatitude() < 53.4 ||
-                                currentLocation.getLatitude() > 53.7) {
-                            currentLocation = FALLBACK_LOCATION;
-                        }
-                        Log.d(TAG, "Filtering posts using location: " +
-                                currentLocation.getLatitude() + ", " + currentLocation.getLongitude());
-
-                        // Loop through posts (ordered by timestamp descending)
-                        for (DocumentSnapshot document : querySnapshot.getDocuments()) {
-                            EmotionPost post = document.toObject(EmotionPost.class);
-                            if (post != null &&
-                                    post.getLocation() != null &&
-                                    !post.getLocation().trim().isEmpty()) {
-                                String username = post.getUsername();
-                                if (username == null) {
-                                    Log.d(TAG, "Skipping post with null username.");
-                                    continue;
-                                }
-                                // Only consider posts from valid users.
-                                if (!validUsers.contains(username)) {
-                                    Log.d(TAG, "Skipping post from " + username + " (not current user or friend).");
-                                    continue;
-                                }
-                                // If we haven't yet recorded a post for this user, this is their most recent post.
-                                if (!latestEventPerUser.containsKey(username)) {
-                                    // If a filter is active and this post's emotion is not in the filter, skip it.
-                                    if (!selectedEmotions.isEmpty() && !selectedEmotions.contains(post.getEmotion())) {
-                                        Log.d(TAG, "Skipping " + username + "'s post due to emotion filter.");
-                                        continue;
-                                    }
-                                    latestEventPerUser.put(username, post);
-                                    Log.d(TAG, "Added post from " + username);
-                                }
-                            }
-                        }
-
-                        // If no qualifying posts, add a dummy marker.
-                        if (latestEventPerUser.isEmpty()) {
-                            Log.d(TAG, "No qualifying posts found; adding dummy marker at fallback.");
-                            Marker dummyMarker = new Marker(mapView);
-                            dummyMarker.setPosition(FALLBACK_LOCATION);
-                            dummyMarker.setTitle("No Posts Found");
-                            mapView.getOverlays().add(dummyMarker);
-                        } else {
-                            // Create markers for each qualifying post using our custom marker view.
-                            for (EmotionPost post : latestEventPerUser.values()) {
-                                GeoPoint point = GeocoderUtility.getGeoPointFromAddress(getContext(), post.getLocation());
-                                if (point == null) {
-                                    Log.d(TAG, "Geocoder returned null for post from " + post.getUsername() + ". Skipping marker.");
-                                    continue;
-                                }
-                                // For friend posts (not current user), check distance.
-                                if (!post.getUsername().equalsIgnoreCase(currentUsername)) {
-                                    double distance = distanceInKm(currentLocation, point);
-                                    Log.d(TAG, "Post from " + post.getUsername() + " is " + distance + " km away.");
-                                    if (distance > 5.0) {
-                                        Log.d(TAG, "Skipping post from " + post.getUsername() + " (distance " + distance + " km > 5 km)");
-                                        continue;
-                                    }
-                                }
-                                Marker marker = createCustomMarker(post, point);
-                                mapView.getOverlays().add(marker);
-                            }
+                    validUsers = users;
+                    viewportLoader.setUsernames(users);
+                    loadLatestPosts();
+                    loadVisiblePosts();
+
+                    // Older posts only carry an address; resolve their coordinates once and redraw
+                    PostCoordinateBackfill.runIfNeeded(requireContext(), users, updatedCount -> {
+                        if (updatedCount > 0 && getView() != null) {
+                            viewportLoader.invalidate();
+                            loadLatestPosts();
+                            loadVisiblePosts();
                         }
-                        mapView.invalidate();
-                    }).addOnFailureListener(e ->
-                            Toast.makeText(getContext(), "Failed to load posts: " + e.getMessage(), Toast.LENGTH_SHORT).show()
-                    );
+                    });
                 },
                 e -> {
                     Log.e(TAG, "Error loading friends list", e);
@@ -301,6 +313,219 @@ public class MapFragment extends Fragment {
         );
     }
 
+    /**
+     * Fetches the most recent post of every valid user with one limit(1) query each, and keeps
+     * them for the pins until the view is recreated or coordinates are backfilled.
+     */
+    private void loadLatestPosts() {
+        repository.getLatestPostPerUser(new ArrayList<>(validUsers), posts -> {
+            if (getView() == null) {
+                return;
+            }
+            latestPosts = posts;
+            renderVisiblePosts(viewportLoader.getLoadedPosts());
+        });
+    }
+
+    /**
+     * Loads the posts for the current viewport, waiting for the first layout if the map has no
+     * size yet.
+     */
+    private void loadVisiblePosts() {
+        if (mapView.isLayoutOccurred()) {
+            viewportLoader.loadNow(mapView.getBoundingBox());
+        } else {
+            mapView.addOnFirstLayoutListener((v, left, top, right, bottom) ->
+                    viewportLoader.loadNow(mapView.getBoundingBox()));
+        }
+    }
+
+    /**
+     * Renders one pin per valid user (friends and the current user, including private posts):
+     * the user's most recent post overall, shown only if it lies within MAP_RADIUS_KM of the
+     * user's location and matches the emotion and recent filters. In heatmap mode every
+     * qualifying post loaded for the viewport is aggregated into the heatmap and no pins are shown.
+     *
+     * @param posts the posts loaded for the viewport, most recent first
+     */
+    private void renderVisiblePosts(List<EmotionPost> posts) {
+        if (validUsers == null || getView() == null || playbackMode) {
+            return;
+        }
+        GeoPoint currentLocation = getCenterLocation();
+        long now = System.currentTimeMillis();
+
+        List<EmotionPost> pinnedPosts = new ArrayList<>();
+        List<EmotionPost> heatmapPosts = new ArrayList<>();
+        if (heatmapMode) {
+            for (EmotionPost post : posts) {
+                if (passesFilters(post, currentLocation, now)) {
+                    heatmapPosts.add(post);
+                }
+            }
+        } else if (latestPosts != null) {
+            for (EmotionPost post : latestPosts) {
+                if (post.hasCoordinates() && passesFilters(post, currentLocation, now)) {
+                    pinnedPosts.add(post);
+                }
+            }
+        }
+
+        // If no qualifying posts, show a dummy marker.
+        if (noPostsMarker != null) {
+            mapView.getOverlays().remove(noPostsMarker);
+            noPostsMarker = null;
+        }
+        boolean loaded = heatmapMode || latestPosts != null;
+        if (loaded && pinnedPosts.isEmpty() && heatmapPosts.isEmpty()) {
+            Log.d(TAG, "No qualifying posts found; adding dummy marker at fallback.");
+            noPostsMarker = new Marker(mapView);
+            noPostsMarker.setPosition(FALLBACK_LOCATION);
+            noPostsMarker.setTitle("No Posts Found");
+            mapView.getOverlays().add(noPostsMarker);
+        }
+        showClusteredPosts(pinnedPosts);
+        if (heatmapMode) {
+            showHeatmap(heatmapPosts);
+        }
+        mapView.invalidate();
+    }
+
+    /**
+     * Returns the user's location, or the fallback location if it is unknown or outside Edmonton.
+     */
+    private GeoPoint getCenterLocation() {
+        GeoPoint currentLocation = myLocationOverlay != null ? myLocationOverlay.getMyLocation() : null;
+        if (currentLocation == null ||
+                currentLocation.getLatitude() < 53.4 ||
+                currentLocation.getLatitude() > 53.7) {
+            currentLocation = FALLBACK_LOCATION;
+        }
+        return currentLocation;
+    }
+
+    /**
+     * Returns whether a post should be shown: it is from a valid user, matches the emotion and
+     * recent filters, and lies within MAP_RADIUS_KM of the given location.
+     */
+    private boolean passesFilters(EmotionPost post, GeoPoint center, long now) {
+        if (post.getUsername() == null || !validUsers.contains(post.getUsername())) {
+            return false;
+        }
+        // If a filter is active and this post's emotion is not in the filter, skip it.
+        if (!selectedEmotions.isEmpty() && !selectedEmotions.contains(post.getEmotion())) {
+            return false;
+        }
+        if (filterRecent && (post.getTimestamp() == null
+                || post.getTimestamp().toDate().getTime() < now - RECENT_WINDOW_MS)) {
+            return false;
+        }
+        return GeoHash.distanceKm(center.getLatitude(), center.getLongitude(),
+                post.getLat(), post.getLng()) <= MAP_RADIUS_KM;
+    }
+
+    /**
+     * Replaces the pins with a time slider over the loaded posts of the past day, or of the past
+     * week when the recent filter is on. Restarts the session if playback is already shown.
+     */
+    private void startPlayback() {
+        if (validUsers == null || getView() == null) {
+            return;
+        }
+        if (heatmapMode) {
+            toggleHeatmap();
+        }
+        if (!playbackMode) {
+            playbackMode = true;
+            showClusteredPosts(new ArrayList<>());
+            if (noPostsMarker != null) {
+                mapView.getOverlays().remove(noPostsMarker);
+                noPostsMarker = null;
+            }
+            mapView.getOverlays().add(playbackOverlay);
+            getView().findViewById(R.id.playback_panel).setVisibility(View.VISIBLE);
+        }
+
+        GeoPoint center = getCenterLocation();
+        long now = System.currentTimeMillis();
+        long span = filterRecent ? RECENT_WINDOW_MS : PLAYBACK_DAY_MS;
+        List<EmotionPost> windowPosts = new ArrayList<>();
+        for (EmotionPost post : viewportLoader.getLoadedPosts()) {
+            if (post.getTimestamp() != null && post.getTimestamp().toDate().getTime() >= now - span
+                    && passesFilters(post, center, now)) {
+                windowPosts.add(post);
+            }
+        }
+        moodPlayback.start(windowPosts, now - span, now,
+                filterRecent ? PLAYBACK_WEEK_TRAIL_MS : PLAYBACK_DAY_TRAIL_MS);
+    }
+
+    /**
+     * Leaves playback and shows the latest pin per user again.
+     */
+    private void stopPlayback() {
+        if (!playbackMode) {
+            return;
+        }
+        playbackMode = false;
+        moodPlayback.stop();
+        mapView.getOverlays().remove(playbackOverlay);
+        if (getView() != null) {
+            getView().findViewById(R.id.playback_panel).setVisibility(View.GONE);
+        }
+        renderVisiblePosts(viewportLoader.getLoadedPosts());
+    }
+
+    /**
+     * Switches between pins (latest post per user) and the heatmap of the past week's loaded posts.
+     */
+    private void toggleHeatmap() {
+        stopPlayback();
+        heatmapMode = !heatmapMode;
+        if (!heatmapMode) {
+            // Drop in-flight rasters and start from an empty aggregate next time.
+            heatmapGeneration++;
+            heatmapOverlay.setRaster(null, null);
+            heatmap = new EmotionHeatmap(HEATMAP_PRECISION);
+        }
+        renderVisiblePosts(viewportLoader.getLoadedPosts());
+    }
+
+    /**
+     * Aggregates the posts into the heatmap on the background thread and shows the resulting
+     * raster. Only posts that changed since the last call are recounted.
+     */
+    private void showHeatmap(List<EmotionPost> posts) {
+        List<EmotionHeatmap.Item> items = new ArrayList<>(posts.size());
+        for (EmotionPost post : posts) {
+            if (!heatmapColors.containsKey(post.getEmotion())) {
+                heatmapColors.put(post.getEmotion(), markerIconCache.getColor(post.getEmotion()));
+            }
+            items.add(new EmotionHeatmap.Item(post.getPostId(), post.getLat(), post.getLng(), post.getEmotion()));
+        }
+        Map<String, Integer> colors = new HashMap<>(heatmapColors);
+        int token = ++heatmapGeneration;
+        EmotionHeatmap target = heatmap;
+        heatmapExecutor.execute(() -> {
+            target.update(items);
+            EmotionHeatmap.Raster raster = target.rasterize(colors, Color.GRAY, HEATMAP_MAX_SIDE);
+            Bitmap bitmap = raster == null ? null
+                    : Bitmap.createBitmap(raster.pixels, raster.width, raster.height, Bitmap.Config.ARGB_8888);
+            BoundingBox box = raster == null ? null
+                    : new BoundingBox(raster.north, raster.east, raster.south, raster.west);
+            mapView.post(() -> {
+                if (token != heatmapGeneration || getView() == null) {
+                    if (bitmap != null) {
+                        bitmap.recycle();
+                    }
+                    return;
+                }
+                heatmapOverlay.setRaster(bitmap, box);
+                mapView.invalidate();
+            });
+        });
+    }
+
     /**
      * Shows a filter dialog so that the user can choose which emotion(s) to display.
      */
@@ -309,81 +534,148 @@ public class MapFragment extends Fragment {
                 (emotions, recent) -> {
                     selectedEmotions = emotions;
                     filterRecent = recent;
-                    loadFollowedMoodEventPins();
+                    // Filtering is done on the loaded posts; nothing needs to be fetched again.
+                    if (playbackMode) {
+                        startPlayback();
+                    } else {
+                        renderVisiblePosts(viewportLoader.getLoadedPosts());
+                    }
                 }).show(getChildFragmentManager(), "filter_dialog");
     }
 
     /**
-     * Creates a custom marker for a given post and location.
-     * This method inflates the custom layout (marker_custom.xml) which contains:
-     * - An ImageView for the pin (with a tintable background)
-     * - An ImageView for the emoji
-     * - A TextView for the username displayed below the pin
-     *
-     * @param post  the EmotionPost object (for username and emotion)
-     * @param point the GeoPoint where the marker should be placed
-     * @return a Marker with the custom icon
+     * Clusters the given posts for the current zoom on the background thread and replaces the
+     * post markers with the result.
      */
-    private Marker createCustomMarker(EmotionPost post, GeoPoint point) {
-        Marker marker = new Marker(mapView);
-        marker.setPosition(point);
-
-        // Inflate the custom marker layout.
-        View markerView = LayoutInflater.from(getContext()).inflate(R.layout.marker_custom, null);
+    private void showClusteredPosts(List<EmotionPost> posts) {
+        List<GridClusterer.Item<EmotionPost>> items = new ArrayList<>(posts.size());
+        for (EmotionPost post : posts) {
+            items.add(new GridClusterer.Item<>(post.getLat(), post.getLng(), post.getEmotion(), post));
+        }
+        int zoom = (int) Math.floor(mapView.getZoomLevelDouble());
+        int token = ++clusterGeneration;
+        GridClusterer<EmotionPost> target = clusterer;
+        clusterExecutor.execute(() -> {
+            target.setItems(items);
+            List<GridClusterer.Cluster<EmotionPost>> clusters = target.clustersAt(zoom);
+            mapView.post(() -> applyClusters(clusters, zoom, token));
+        });
+    }
 
-        // Set the username text.
-        android.widget.TextView usernameText = markerView.findViewById(R.id.marker_username);
-        if (usernameText != null) {
-            usernameText.setText(post.getUsername());
-        } else {
-            Log.e(TAG, "Marker layout missing TextView with ID marker_username!");
+    /**
+     * Re-renders the current posts for a new zoom level. Levels already computed are memoized by
+     * the clusterer, so zooming back and forth is cheap.
+     */
+    private void reclusterForZoom(int zoom) {
+        if (zoom == renderedZoom) {
+            return;
         }
+        int token = ++clusterGeneration;
+        GridClusterer<EmotionPost> target = clusterer;
+        clusterExecutor.execute(() -> {
+            List<GridClusterer.Cluster<EmotionPost>> clusters = target.clustersAt(zoom);
+            mapView.post(() -> applyClusters(clusters, zoom, token));
+        });
+    }
 
-        // Set the emoji image.
-        android.widget.ImageView emojiImage = markerView.findViewById(R.id.marker_emoji);
-        if (emojiImage != null) {
-            int emojiResId = getIconForEmotion(post.getEmotion());
-            emojiImage.setImageResource(emojiResId);
+    /**
+     * Replaces the drawn posts with the given clusters. A few visible clusters become Marker
+     * overlays; beyond MAX_MARKER_PINS they are all drawn by the single PinOverlay instead.
+     */
+    private void applyClusters(List<GridClusterer.Cluster<EmotionPost>> clusters, int zoom, int token) {
+        if (token != clusterGeneration || getView() == null) {
+            return;
+        }
+        mapView.getOverlays().removeAll(postMarkers);
+        postMarkers.clear();
+        renderedClusters = clusters;
+        renderedZoom = zoom;
+
+        BoundingBox visible = mapView.getBoundingBox();
+        int visibleCount = 0;
+        for (GridClusterer.Cluster<EmotionPost> cluster : clusters) {
+            if (visible.contains(cluster.getLatitude(), cluster.getLongitude())) {
+                visibleCount++;
+            }
+        }
+        if (visibleCount > MAX_MARKER_PINS) {
+            PinOverlay.PinBatch batch = new PinOverlay.PinBatch(clusters.size());
+            for (GridClusterer.Cluster<EmotionPost> cluster : clusters) {
+                if (cluster.size() == 1) {
+                    EmotionPost post = cluster.getPayloads().get(0);
+                    batch.add(post.getLat(), post.getLng(), post.getEmotion(), post.getUsername(), 1);
+                } else {
+                    batch.add(cluster.getLatitude(), cluster.getLongitude(), cluster.getDominantCategory(),
+                            String.valueOf(cluster.size()), cluster.size());
+                }
+            }
+            pinOverlay.setPins(batch);
         } else {
-            Log.e(TAG, "Marker layout missing ImageView with ID marker_emoji!");
+            pinOverlay.clear();
+            for (GridClusterer.Cluster<EmotionPost> cluster : clusters) {
+                if (cluster.size() == 1) {
+                    EmotionPost post = cluster.getPayloads().get(0);
+                    postMarkers.add(createCustomMarker(post, new GeoPoint(post.getLat(), post.getLng())));
+                } else {
+                    postMarkers.add(createClusterMarker(cluster, zoom));
+                }
+            }
+            mapView.getOverlays().addAll(postMarkers);
         }
+        mapView.invalidate();
+    }
 
-        // Set the pin background image and tint.
-        android.widget.ImageView pinImage = markerView.findViewById(R.id.marker_pin);
-        if (pinImage != null) {
-            int emotionColor = getColorForEmotion(post.getEmotion());
-            pinImage.setColorFilter(emotionColor);
+    /**
+     * Shows the post of a single-post cluster, or zooms in on a larger cluster.
+     */
+    private void onClusterTapped(GridClusterer.Cluster<EmotionPost> cluster, int zoom) {
+        if (cluster.size() == 1) {
+            showPostDetails(cluster.getPayloads().get(0));
         } else {
-            Log.e(TAG, "Marker layout missing ImageView with ID marker_pin!");
+            GeoPoint center = new GeoPoint(cluster.getLatitude(), cluster.getLongitude());
+            mapView.getController().animateTo(center, zoom + 2.0, 400L);
         }
+    }
 
-        // Convert the custom view to a bitmap.
-        Bitmap markerBitmap = createBitmapFromView(markerView);
-        marker.setIcon(new BitmapDrawable(getResources(), markerBitmap));
-        // Anchor the marker so that the bottom center of the bitmap is the location point.
+    /**
+     * Creates a marker standing for several posts. It shows the dominant emotion's pin with the
+     * number of posts, and zooms in on the cluster when tapped.
+     */
+    private Marker createClusterMarker(GridClusterer.Cluster<EmotionPost> cluster, int zoom) {
+        Marker marker = new Marker(mapView);
+        GeoPoint center = new GeoPoint(cluster.getLatitude(), cluster.getLongitude());
+        marker.setPosition(center);
+        marker.setIcon(markerIconCache.getClusterIcon(cluster.getDominantCategory(), cluster.size()));
         marker.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_BOTTOM);
-        // Set a click listener to show post details.
         marker.setOnMarkerClickListener((m, mapView) -> {
-            showPostDetails(post);
+            onClusterTapped(cluster, zoom);
             return true;
         });
-        Log.d(TAG, "Adding marker for " + post.getUsername() + " at " +
-                point.getLatitude() + ", " + point.getLongitude());
         return marker;
     }
 
     /**
-     * Converts a View to a Bitmap.
+     * Creates a custom marker for a given post and location. The pin and emoji for the post's
+     * emotion are rendered once by MarkerIconCache and shared; only the username label is drawn
+     * per marker.
+     *
+     * @param post  the EmotionPost object (for username and emotion)
+     * @param point the GeoPoint where the marker should be placed
+     * @return a Marker with the custom icon
      */
-    private Bitmap createBitmapFromView(View view) {
-        view.measure(View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
-                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
-        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
-        Bitmap bitmap = Bitmap.createBitmap(view.getMeasuredWidth(), view.getMeasuredHeight(),
-                Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        view.draw(canvas);
-        return bitmap;
+    private Marker createCustomMarker(EmotionPost post, GeoPoint point) {
+        Marker marker = new Marker(mapView);
+        marker.setPosition(point);
+        Drawable icon = markerIconCache.getIcon(post.getEmotion(), post.getUsername());
+        marker.setIcon(icon);
+        // Anchor the pin tip, above the username label, on the location point, as PinOverlay does.
+        marker.setAnchor(Marker.ANCHOR_CENTER, MarkerIconCache.tipAnchorV(icon));
+        // Set a click listener to show post details.
+        marker.setOnMarkerClickListener((m, mapView) -> {
+            showPostDetails(post);
+            return true;
+        });
+        return marker;
     }
 
     /**
@@ -404,37 +696,6 @@ public class MapFragment extends Fragment {
         return "unknown";
     }
 
-    private double distanceInKm(GeoPoint point1, GeoPoint point2) {
-        return point1.distanceToAsDouble(point2) / 1000.0;
-    }
-
-    /**
-     * Returns the icon resource ID for a given emotion name.
-     */
-    private int getIconForEmotion(String emotionName) {
-        List<Emotion> emotions = EmotionProvider.getSampleEmotions();
-        for (Emotion e : emotions) {
-            if (e.getName().equalsIgnoreCase(emotionName)) {
-                return e.getIconResId();
-            }
-        }
-        return R.drawable.ic_angry_selector; // fallback icon.
-    }
-
-    /**
-     * Returns the color for a given emotion using its textColorResId.
-     */
-    private int getColorForEmotion(String emotionName) {
-        List<Emotion> emotions = EmotionProvider.getSampleEmotions();
-        for (Emotion e : emotions) {
-            if (e.getName().equalsIgnoreCase(emotionName)) {
-                return ContextCompat.getColor(getContext(), e.getTextColorResId());
-            }
-        }
-        // Fallback color if not found
-        return ContextCompat.getColor(getContext(), android.R.color.holo_red_dark);
-    }
-
     /**
      * Displays a dialog with details for a post.
      */
@@ -452,8 +713,14 @@ public class MapFragment extends Fragment {
         // If an image URI is available, load it into the ImageView using Glide.
         if (post.getImageUri() != null && !post.getImageUri().trim().isEmpty()) {
             ivPostImage.setVisibility(View.VISIBLE);
+            String imageUrl = ImageHelper.listImageUrl(post);
             Glide.with(getContext())
-                    .load(post.getImageUri())
+                    .load(imageUrl)
+                    .listener(ImageHelper.refreshUrlOnFailure(imageUrl, freshUrl -> {
+                        if (isAdded()) {
+                            Glide.with(this).load(freshUrl).into(ivPostImage);
+                        }
+                    }))
                     .into(ivPostImage);
         } else {
             ivPostImage.setVisibility(View.GONE);
@@ -486,6 +753,30 @@ public class MapFragment extends Fragment {
         }
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // Detach the markers before recycling the pin bitmaps they draw.
+        viewportLoader.release();
+        moodPlayback.stop();
+        playbackMode = false;
+        clusterGeneration++;
+        heatmapGeneration++;
+        postMarkers.clear();
+        renderedClusters = new ArrayList<>();
+        mapView.getOverlays().clear();
+        mapView.onDetach();
+        heatmapOverlay.release();
+        markerIconCache.release();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        clusterExecutor.shutdownNow();
+        heatmapExecutor.shutdownNow();
+    }
+
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions,
                                            @NonNull int[] grantResults) {
@@ -0,0 +1,74 @@
+/**
+ * MapTiles.java
+ *
+ * Shared configuration for the map's raster tiles, used by both MapFragment and the offline
+ * prefetch job so that they agree on the tile source, the tile cache and the area the user may
+ * scroll to.
+ *
+ * Key features:
+ * - Keeps osmdroid's SQLite tile cache in app-private storage with a size cap
+ * - Creates the CartoDB Voyager tile source
+ * - Computes the bounding box the map is confined to around the user's location
+ */
+package com.example.tangry.ui.map;
+
+import android.content.Context;
+
+import org.osmdroid.config.Configuration;
+import org.osmdroid.config.IConfigurationProvider;
+import org.osmdroid.tileprovider.tilesource.OnlineTileSourceBase;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+import org.osmdroid.util.BoundingBox;
+
+import java.io.File;
+
+public final class MapTiles {
+    public static final String TILE_SOURCE_NAME = "CartoDB Voyager";
+    public static final String TILE_BASE_URL = "https://basemaps.cartocdn.com/rastertiles/voyager/";
+    public static final String TILE_EXTENSION = ".png";
+    public static final int MIN_ZOOM = 0;
+    public static final int MAX_ZOOM = 20;
+    // The SQLite tile cache is trimmed back to TRIM once it grows past MAX.
+    private static final long TILE_CACHE_MAX_BYTES = 100L * 1024 * 1024;
+    private static final long TILE_CACHE_TRIM_BYTES = 80L * 1024 * 1024;
+
+    private MapTiles() {
+    }
+
+    /**
+     * Points osmdroid at the app's tile cache. Must be called before a MapView is inflated.
+     *
+     * @param context any context
+     */
+    public static void configure(Context context) {
+        IConfigurationProvider config = Configuration.getInstance();
+        config.setUserAgentValue(context.getPackageName());
+        File base = new File(context.getFilesDir(), "osmdroid");
+        config.setOsmdroidBasePath(base);
+        config.setOsmdroidTileCache(new File(base, "tiles"));
+        config.setTileFileSystemCacheMaxBytes(TILE_CACHE_MAX_BYTES);
+        config.setTileFileSystemCacheTrimBytes(TILE_CACHE_TRIM_BYTES);
+    }
+
+    /**
+     * Creates the tile source used by the map.
+     */
+    public static OnlineTileSourceBase createTileSource() {
+        return new XYTileSource(TILE_SOURCE_NAME, MIN_ZOOM, MAX_ZOOM, 256, TILE_EXTENSION,
+                new String[] {TILE_BASE_URL});
+    }
+
+    /**
+     * Returns the box extending radiusKm north, south, east and west of a point.
+     */
+    public static BoundingBox boundsAround(double latitude, double longitude, double radiusKm) {
+        double latOffset = radiusKm / 111.0;
+        double lonOffset = radiusKm / (111.0 * Math.cos(Math.toRadians(latitude)));
+        return new BoundingBox(
+                latitude + latOffset,
+                longitude + lonOffset,
+                latitude - latOffset,
+                longitude - lonOffset
+        );
+    }
+}
@@ -0,0 +1,341 @@
+/**
+ * MarkerIconCache.java
+ *
+ * Renders the map's emotion pins once per emotion and shares them across markers.
+ * Previously every marker inflated, measured and drew marker_custom.xml into its own bitmap;
+ * now the pin and emoji are rasterized once per emotion and each marker only carries a light
+ * drawable that draws the shared bitmap plus its username label.
+ *
+ * Key features:
+ * - One pin bitmap per emotion, rendered lazily from marker_custom.xml
+ * - Per-marker drawables that draw the shared bitmap and the username text without allocating bitmaps
+ * - Cluster icons: the dominant emotion's pin with a member-count badge
+ * - Constant-time emotion lookups instead of rebuilding and scanning the emotion list
+ * - Shared paints for PinOverlay, which draws many pins in a single pass
+ * - Explicit release of the bitmaps when the map view is destroyed
+ */
+package com.example.tangry.ui.map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.util.TypedValue;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.example.tangry.R;
+import com.example.tangry.models.Emotion;
+import com.example.tangry.models.EmotionProvider;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+public class MarkerIconCache {
+    private static final String FALLBACK_EMOTION = "angry";
+    private static final float LABEL_TEXT_SP = 10f;
+    private static final float LABEL_GAP_DP = 4f;
+    private static final float BADGE_TEXT_SP = 11f;
+    private static final float BADGE_PADDING_DP = 4f;
+
+    private final Context context;
+    private final Map<String, Emotion> emotionsByName = new HashMap<>();
+    private final Map<String, Bitmap> pinsByEmotion = new HashMap<>();
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float labelGapPx;
+    private final Paint badgePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint badgeTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float badgePaddingPx;
+
+    /**
+     * Creates a cache for the given context. Must be used on the main thread.
+     *
+     * @param context the context used to inflate and style the pins
+     */
+    public MarkerIconCache(Context context) {
+        this.context = context;
+        for (Emotion emotion : EmotionProvider.getSampleEmotions()) {
+            emotionsByName.put(emotion.getName().toLowerCase(Locale.ROOT), emotion);
+        }
+        labelPaint.setColor(ContextCompat.getColor(context, android.R.color.black));
+        labelPaint.setTextAlign(Paint.Align.CENTER);
+        labelPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, LABEL_TEXT_SP,
+                context.getResources().getDisplayMetrics()));
+        labelGapPx = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, LABEL_GAP_DP,
+                context.getResources().getDisplayMetrics());
+        badgePaint.setColor(ContextCompat.getColor(context, android.R.color.black));
+        badgeTextPaint.setColor(ContextCompat.getColor(context, android.R.color.white));
+        badgeTextPaint.setTextAlign(Paint.Align.CENTER);
+        badgeTextPaint.setFakeBoldText(true);
+        badgeTextPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, BADGE_TEXT_SP,
+                context.getResources().getDisplayMetrics()));
+        badgePaddingPx = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, BADGE_PADDING_DP,
+                context.getResources().getDisplayMetrics());
+    }
+
+    /**
+     * Returns a marker icon for the emotion with the username drawn below the pin.
+     *
+     * @param emotionName the post's emotion; unknown emotions use the fallback pin
+     * @param username    the label to draw, or null for a pin without a label
+     * @return a new drawable sharing the cached pin bitmap
+     */
+    public Drawable getIcon(String emotionName, @Nullable String username) {
+        return new LabeledPinDrawable(getPin(emotionName), username != null ? username : "", labelPaint, labelGapPx);
+    }
+
+    /**
+     * Returns a cluster icon: the pin of the cluster's dominant emotion with a count badge.
+     *
+     * @param dominantEmotion the most common emotion in the cluster
+     * @param count           the number of posts in the cluster
+     * @return a new drawable sharing the cached pin bitmap
+     */
+    public Drawable getClusterIcon(String dominantEmotion, int count) {
+        return new ClusterPinDrawable(getPin(dominantEmotion), String.valueOf(count),
+                badgePaint, badgeTextPaint, badgePaddingPx);
+    }
+
+    /**
+     * Returns the shared pin bitmap for an emotion, rendering it on first use.
+     *
+     * @param emotionName the emotion name, case-insensitive
+     * @return the pin bitmap; callers must not recycle it
+     */
+    public Bitmap getPin(String emotionName) {
+        String key = resolveKey(emotionName);
+        Bitmap pin = pinsByEmotion.get(key);
+        if (pin == null) {
+            pin = renderPin(emotionsByName.get(key));
+            pinsByEmotion.put(key, pin);
+        }
+        return pin;
+    }
+
+    /**
+     * Returns the color associated with an emotion.
+     *
+     * @param emotionName the emotion name, case-insensitive
+     * @return the resolved color
+     */
+    public int getColor(String emotionName) {
+        Emotion emotion = emotionsByName.get(resolveKey(emotionName));
+        return ContextCompat.getColor(context, emotion.getTextColorResId());
+    }
+
+    // Shared paints and metrics for PinOverlay, which draws the same pins without drawables.
+    Paint getLabelPaint() {
+        return labelPaint;
+    }
+
+    /**
+     * Returns the vertical Marker anchor that puts the icon's pin tip on the marker position, as
+     * PinOverlay does. A labeled pin has its label below the tip, so its bottom is not the tip.
+     *
+     * @param icon an icon returned by getIcon or getClusterIcon
+     * @return the anchor, as a fraction of the icon height from its top
+     */
+    static float tipAnchorV(Drawable icon) {
+        if (icon instanceof LabeledPinDrawable) {
+            return ((LabeledPinDrawable) icon).getTipAnchorV();
+        }
+        return 1.0f;
+    }
+
+    float getLabelGapPx() {
+        return labelGapPx;
+    }
+
+    Paint getBadgePaint() {
+        return badgePaint;
+    }
+
+    Paint getBadgeTextPaint() {
+        return badgeTextPaint;
+    }
+
+    float getBadgePaddingPx() {
+        return badgePaddingPx;
+    }
+
+    /**
+     * Recycles every cached bitmap. Markers using icons from this cache must no longer be drawn.
+     */
+    public void release() {
+        for (Bitmap pin : pinsByEmotion.values()) {
+            pin.recycle();
+        }
+        pinsByEmotion.clear();
+    }
+
+    private String resolveKey(String emotionName) {
+        String key = emotionName != null ? emotionName.toLowerCase(Locale.ROOT) : FALLBACK_EMOTION;
+        return emotionsByName.containsKey(key) ? key : FALLBACK_EMOTION;
+    }
+
+    private Bitmap renderPin(Emotion emotion) {
+        View markerView = LayoutInflater.from(context).inflate(R.layout.marker_custom, null);
+        // The label is drawn per marker, so render only the pin and emoji here.
+        markerView.findViewById(R.id.marker_username).setVisibility(View.GONE);
+        ImageView emojiImage = markerView.findViewById(R.id.marker_emoji);
+        emojiImage.setImageResource(emotion.getIconResId());
+        ImageView pinImage = markerView.findViewById(R.id.marker_pin);
+        pinImage.setColorFilter(ContextCompat.getColor(context, emotion.getTextColorResId()));
+
+        markerView.measure(View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        markerView.layout(0, 0, markerView.getMeasuredWidth(), markerView.getMeasuredHeight());
+        Bitmap bitmap = Bitmap.createBitmap(markerView.getMeasuredWidth(), markerView.getMeasuredHeight(),
+                Bitmap.Config.ARGB_8888);
+        markerView.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+
+    /**
+     * Draws a shared pin bitmap with a text label centered below it.
+     */
+    static class LabeledPinDrawable extends Drawable {
+        private final Bitmap pin;
+        private final String label;
+        private final Paint labelPaint;
+        private final float labelBaseline;
+        private final int width;
+        private final int height;
+        private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        LabeledPinDrawable(Bitmap pin, String label, Paint labelPaint, float labelGap) {
+            this.pin = pin;
+            this.label = label;
+            this.labelPaint = labelPaint;
+            Paint.FontMetrics metrics = labelPaint.getFontMetrics();
+            this.labelBaseline = pin.getHeight() + labelGap - metrics.ascent;
+            this.width = Math.max(pin.getWidth(), (int) Math.ceil(labelPaint.measureText(label)));
+            this.height = label.isEmpty() ? pin.getHeight()
+                    : pin.getHeight() + (int) Math.ceil(labelGap + metrics.descent - metrics.ascent);
+        }
+
+        @Override
+        public void draw(@NonNull Canvas canvas) {
+            Rect bounds = getBounds();
+            float scaleX = bounds.width() / (float) width;
+            float scaleY = bounds.height() / (float) height;
+            canvas.save();
+            canvas.translate(bounds.left, bounds.top);
+            canvas.scale(scaleX, scaleY);
+            canvas.drawBitmap(pin, (width - pin.getWidth()) / 2f, 0, bitmapPaint);
+            if (!label.isEmpty()) {
+                canvas.drawText(label, width / 2f, labelBaseline, labelPaint);
+            }
+            canvas.restore();
+        }
+
+        /**
+         * Returns the pin tip's distance from the top as a fraction of the height.
+         */
+        float getTipAnchorV() {
+            return pin.getHeight() / (float) height;
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return width;
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return height;
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+            bitmapPaint.setAlpha(alpha);
+        }
+
+        @Override
+        public void setColorFilter(@Nullable ColorFilter colorFilter) {
+            bitmapPaint.setColorFilter(colorFilter);
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+    }
+
+    /**
+     * Draws a shared pin bitmap with a round count badge over its top-right corner.
+     */
+    static class ClusterPinDrawable extends Drawable {
+        private final Bitmap pin;
+        private final String countText;
+        private final Paint badgePaint;
+        private final Paint badgeTextPaint;
+        private final float badgeRadius;
+        private final float textOffset;
+        private final int width;
+        private final int height;
+        private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        ClusterPinDrawable(Bitmap pin, String countText, Paint badgePaint, Paint badgeTextPaint, float padding) {
+            this.pin = pin;
+            this.countText = countText;
+            this.badgePaint = badgePaint;
+            this.badgeTextPaint = badgeTextPaint;
+            Paint.FontMetrics metrics = badgeTextPaint.getFontMetrics();
+            float textHeight = metrics.descent - metrics.ascent;
+            this.badgeRadius = Math.max(badgeTextPaint.measureText(countText), textHeight) / 2 + padding;
+            this.textOffset = -(metrics.ascent + metrics.descent) / 2;
+            // The badge overhangs the pin by half its size on the right; the bottom stays the pin tip.
+            this.width = pin.getWidth() + (int) Math.ceil(badgeRadius);
+            this.height = pin.getHeight();
+        }
+
+        @Override
+        public void draw(@NonNull Canvas canvas) {
+            Rect bounds = getBounds();
+            canvas.save();
+            canvas.translate(bounds.left, bounds.top);
+            canvas.scale(bounds.width() / (float) width, bounds.height() / (float) height);
+            canvas.drawBitmap(pin, (width - pin.getWidth()) / 2f, 0, bitmapPaint);
+            float cx = width - badgeRadius;
+            canvas.drawCircle(cx, badgeRadius, badgeRadius, badgePaint);
+            canvas.drawText(countText, cx, badgeRadius + textOffset, badgeTextPaint);
+            canvas.restore();
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return width;
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return height;
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+            bitmapPaint.setAlpha(alpha);
+        }
+
+        @Override
+        public void setColorFilter(@Nullable ColorFilter colorFilter) {
+            bitmapPaint.setColorFilter(colorFilter);
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+    }
+}
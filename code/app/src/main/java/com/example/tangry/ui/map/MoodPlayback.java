@@ -0,0 +1,226 @@
+/**
+ * MoodPlayback.java
+ *
+ * Drives the map's time-slider playback of friends' moods. The posts of the playback window are
+ * indexed once in a TimeBucketIndex and loaded once into a PinOverlay, all hidden. Moving the
+ * slider, or each animation frame, looks up the latest post per user in the trailing window before
+ * the slider time and only flips the visibility of the pins that changed since the last frame.
+ *
+ * Key features:
+ * - One index build and one pin batch per playback session; no queries while scrubbing
+ * - Slider steps are one-hour buckets; playback advances one bucket per frame
+ * - Diff updates: only pins whose visibility changed are touched
+ * - Limits lookups to the visible area through the index's geohash cells
+ */
+package com.example.tangry.ui.map;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ImageButton;
+import android.widget.SeekBar;
+import android.widget.TextView;
+
+import com.example.tangry.models.EmotionPost;
+import com.example.tangry.utils.TimeBucketIndex;
+
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.views.MapView;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class MoodPlayback {
+    private static final long FRAME_MS = 150;
+    // Index cells are 6-character geohashes, roughly 1.2 km by 0.6 km.
+    private static final int CELL_PRECISION = 6;
+    private static final long STEP_MS = TimeBucketIndex.BUCKET_MS;
+
+    private final MapView mapView;
+    private final PinOverlay overlay;
+    private final SeekBar seekBar;
+    private final ImageButton playButton;
+    private final TextView timeLabel;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("EEE HH:mm", Locale.getDefault());
+    private final Runnable frame = this::advance;
+
+    // All fields below are only touched on the main thread.
+    private List<EmotionPost> posts = new ArrayList<>();
+    private TimeBucketIndex index;
+    private long startMillis;
+    private long trailMs;
+    private BitSet shown = new BitSet();
+    private boolean playing = false;
+
+    /**
+     * Creates a playback controller and wires up its controls.
+     *
+     * @param mapView    the map, used for the visible area and redraws
+     * @param overlay    the overlay dedicated to playback pins
+     * @param seekBar    the time slider
+     * @param playButton toggles automatic playback
+     * @param timeLabel  shows the slider time
+     */
+    public MoodPlayback(MapView mapView, PinOverlay overlay, SeekBar seekBar, ImageButton playButton,
+                        TextView timeLabel) {
+        this.mapView = mapView;
+        this.overlay = overlay;
+        this.seekBar = seekBar;
+        this.playButton = playButton;
+        this.timeLabel = timeLabel;
+        seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar bar, int progress, boolean fromUser) {
+                if (index != null) {
+                    showAt(timeAt(progress));
+                }
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar bar) {
+                pause();
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar bar) {
+            }
+        });
+        playButton.setOnClickListener(v -> {
+            if (playing) {
+                pause();
+            } else {
+                play();
+            }
+        });
+    }
+
+    /**
+     * Starts a playback session over the given posts, replacing any previous session. The slider
+     * starts at the end of the window.
+     *
+     * @param windowPosts the posts to play back; each must have a timestamp and coordinates
+     * @param start       the start of the window in epoch milliseconds
+     * @param end         the end of the window in epoch milliseconds
+     * @param trail       how long a post stays on the map after it was made
+     */
+    public void start(List<EmotionPost> windowPosts, long start, long end, long trail) {
+        pause();
+        posts = new ArrayList<>(windowPosts);
+        startMillis = start;
+        trailMs = trail;
+
+        int size = posts.size();
+        long[] times = new long[size];
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        int[] users = new int[size];
+        Map<String, Integer> userKeys = new HashMap<>();
+        PinOverlay.PinBatch batch = new PinOverlay.PinBatch(size);
+        for (int i = 0; i < size; i++) {
+            EmotionPost post = posts.get(i);
+            times[i] = post.getTimestamp().toDate().getTime();
+            latitudes[i] = post.getLat();
+            longitudes[i] = post.getLng();
+            Integer key = userKeys.get(post.getUsername());
+            if (key == null) {
+                key = userKeys.size();
+                userKeys.put(post.getUsername(), key);
+            }
+            users[i] = key;
+            batch.add(post.getLat(), post.getLng(), post.getEmotion(), post.getUsername(), 1);
+        }
+        index = new TimeBucketIndex(times, latitudes, longitudes, users, CELL_PRECISION);
+        overlay.setPins(batch);
+        overlay.setAllPinsVisible(false);
+        shown = new BitSet(size);
+
+        int steps = (int) Math.max(1, (end - start + STEP_MS - 1) / STEP_MS);
+        seekBar.setMax(steps);
+        if (seekBar.getProgress() == steps) {
+            showAt(timeAt(steps));
+        } else {
+            seekBar.setProgress(steps);
+        }
+    }
+
+    /**
+     * Ends the session and removes its pins.
+     */
+    public void stop() {
+        pause();
+        index = null;
+        posts = new ArrayList<>();
+        shown = new BitSet();
+        overlay.clear();
+    }
+
+    /**
+     * Re-evaluates the current slider time, e.g. after the map was scrolled.
+     */
+    public void refresh() {
+        if (index != null) {
+            showAt(timeAt(seekBar.getProgress()));
+        }
+    }
+
+    /**
+     * Returns the post behind a pin of the playback overlay.
+     */
+    public EmotionPost getPost(int pinIndex) {
+        return posts.get(pinIndex);
+    }
+
+    private void play() {
+        if (index == null) {
+            return;
+        }
+        if (seekBar.getProgress() >= seekBar.getMax()) {
+            seekBar.setProgress(0);
+        }
+        playing = true;
+        playButton.setImageResource(android.R.drawable.ic_media_pause);
+        handler.postDelayed(frame, FRAME_MS);
+    }
+
+    private void pause() {
+        playing = false;
+        handler.removeCallbacks(frame);
+        playButton.setImageResource(android.R.drawable.ic_media_play);
+    }
+
+    private void advance() {
+        int next = seekBar.getProgress() + 1;
+        seekBar.setProgress(next);
+        if (next >= seekBar.getMax()) {
+            pause();
+        } else {
+            handler.postDelayed(frame, FRAME_MS);
+        }
+    }
+
+    private long timeAt(int progress) {
+        return startMillis + progress * STEP_MS;
+    }
+
+    private void showAt(long time) {
+        BoundingBox visible = mapView.getBoundingBox();
+        BitSet next = index.latestPerGroup(time - trailMs, time, visible.getLatSouth(), visible.getLonWest(),
+                visible.getLatNorth(), visible.getLonEast());
+        BitSet changed = (BitSet) next.clone();
+        changed.xor(shown);
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+            overlay.setPinVisible(i, next.get(i));
+        }
+        shown = next;
+        timeLabel.setText(timeFormat.format(new Date(time)));
+        if (!changed.isEmpty()) {
+            mapView.invalidate();
+        }
+    }
+}
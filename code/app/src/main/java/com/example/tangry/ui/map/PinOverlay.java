@@ -0,0 +1,289 @@
+/**
+ * PinOverlay.java
+ *
+ * Draws many mood pins in a single overlay pass. With one osmdroid Marker per pin, every pin is
+ * its own overlay object with its own drawable, bounds bookkeeping and hit test, so draw time and
+ * garbage grow with the number of pins. This overlay keeps all pins in flat primitive arrays and
+ * draws them in one loop with shared paints and the per-emotion pin bitmaps of MarkerIconCache.
+ *
+ * Key features:
+ * - Pins are stored as parallel arrays of coordinates, emotion codes, label indices and counts
+ * - Emotion names and labels are interned into small tables; pins refer to them by index
+ * - One draw loop with shared paints, off-screen culling and no per-frame allocations
+ * - Cluster pins draw a count badge; badge widths are measured once per label and cached
+ * - Tap hit testing through a grid index over the pins drawn in the last frame
+ * - Per-pin visibility flags, so playback can show and hide pins without rebuilding the batch
+ *
+ * Outstanding Issues:
+ * - Pins are not individually accessible to screen readers, unlike Marker overlays.
+ */
+package com.example.tangry.ui.map;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Point;
+import android.view.MotionEvent;
+
+import androidx.annotation.Nullable;
+
+import com.example.tangry.utils.PointGridIndex;
+
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Overlay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PinOverlay extends Overlay {
+
+    /**
+     * Callback invoked on the main thread when a pin is tapped.
+     */
+    public interface OnPinTapListener {
+        /**
+         * @param pinIndex the index of the pin in the batch passed to setPins
+         */
+        void onPinTapped(int pinIndex);
+    }
+
+    /**
+     * A growable set of pins in flat arrays. It has no Android dependencies and may be filled on
+     * any thread before being handed to setPins on the main thread.
+     */
+    public static class PinBatch {
+        private double[] latitudes;
+        private double[] longitudes;
+        private int[] emotionCodes;
+        private int[] labelIndices;
+        private int[] counts;
+        private int size = 0;
+        private final List<String> emotions = new ArrayList<>();
+        private final Map<String, Integer> emotionCodesByName = new HashMap<>();
+        private final List<String> labels = new ArrayList<>();
+        private final Map<String, Integer> labelIndicesByText = new HashMap<>();
+
+        public PinBatch(int capacity) {
+            int initial = Math.max(1, capacity);
+            latitudes = new double[initial];
+            longitudes = new double[initial];
+            emotionCodes = new int[initial];
+            labelIndices = new int[initial];
+            counts = new int[initial];
+        }
+
+        /**
+         * Appends a pin. Pins added later are drawn on top of earlier ones.
+         *
+         * @param emotion the emotion whose pin is drawn
+         * @param label   the username drawn below a single pin, or the count text of a cluster
+         * @param count   the number of posts the pin stands for; above one a count badge is drawn
+         */
+        public void add(double latitude, double longitude, String emotion, @Nullable String label, int count) {
+            if (size == latitudes.length) {
+                int capacity = size * 2;
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+                emotionCodes = Arrays.copyOf(emotionCodes, capacity);
+                labelIndices = Arrays.copyOf(labelIndices, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+            }
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            emotionCodes[size] = intern(emotion, emotions, emotionCodesByName);
+            labelIndices[size] = label == null || label.isEmpty() ? -1 : intern(label, labels, labelIndicesByText);
+            counts[size] = count;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private static int intern(String value, List<String> table, Map<String, Integer> indexes) {
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = table.size();
+                table.add(value);
+                indexes.put(value, index);
+            }
+            return index;
+        }
+    }
+
+    private final MarkerIconCache icons;
+    private final OnPinTapListener listener;
+    private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final float labelBaselineOffset;
+    private final float badgeTextHeight;
+    private final float badgeTextOffset;
+
+    // All fields below are only touched on the main thread.
+    private PinBatch pins = new PinBatch(1);
+    private Bitmap[] glyphs = new Bitmap[0];
+    private String[] labels = new String[0];
+    private float[] badgeRadii = new float[0];
+    private boolean[] hidden = new boolean[0];
+    private float pinWidth;
+    private float pinHeight;
+    // Screen positions of the pins drawn in the last frame, in draw order, for hit testing.
+    private float[] drawnXs = new float[0];
+    private float[] drawnYs = new float[0];
+    private int[] drawnPins = new int[0];
+    private int drawnCount = 0;
+    private final PointGridIndex hitIndex;
+    private final GeoPoint reusedGeoPoint = new GeoPoint(0.0, 0.0);
+    private final Point reusedPoint = new Point();
+
+    /**
+     * Creates an empty overlay.
+     *
+     * @param icons    the cache providing the pin bitmaps and shared paints
+     * @param listener notified when a pin is tapped
+     */
+    public PinOverlay(MarkerIconCache icons, OnPinTapListener listener) {
+        this.icons = icons;
+        this.listener = listener;
+        Paint.FontMetrics labelMetrics = icons.getLabelPaint().getFontMetrics();
+        labelBaselineOffset = icons.getLabelGapPx() - labelMetrics.ascent;
+        Paint.FontMetrics badgeMetrics = icons.getBadgeTextPaint().getFontMetrics();
+        badgeTextHeight = badgeMetrics.descent - badgeMetrics.ascent;
+        badgeTextOffset = -(badgeMetrics.ascent + badgeMetrics.descent) / 2;
+        Bitmap samplePin = icons.getPin(null);
+        hitIndex = new PointGridIndex(Math.max(1, samplePin.getWidth()));
+    }
+
+    /**
+     * Replaces the drawn pins. The batch must not be modified afterwards.
+     *
+     * @param batch the pins to draw
+     */
+    public void setPins(PinBatch batch) {
+        pins = batch;
+        glyphs = new Bitmap[batch.emotions.size()];
+        pinWidth = 0;
+        pinHeight = 0;
+        for (int code = 0; code < glyphs.length; code++) {
+            glyphs[code] = icons.getPin(batch.emotions.get(code));
+            pinWidth = Math.max(pinWidth, glyphs[code].getWidth());
+            pinHeight = Math.max(pinHeight, glyphs[code].getHeight());
+        }
+        labels = batch.labels.toArray(new String[0]);
+        // Measured on first use as a badge.
+        badgeRadii = new float[labels.length];
+        Arrays.fill(badgeRadii, -1f);
+        if (drawnXs.length < batch.size) {
+            drawnXs = new float[batch.size];
+            drawnYs = new float[batch.size];
+            drawnPins = new int[batch.size];
+        }
+        hidden = new boolean[batch.size];
+        drawnCount = 0;
+    }
+
+    /**
+     * Shows or hides one pin. Call invalidate on the map view afterwards.
+     *
+     * @param pinIndex the index of the pin in the batch passed to setPins
+     * @param visible  whether the pin is drawn and tappable
+     */
+    public void setPinVisible(int pinIndex, boolean visible) {
+        hidden[pinIndex] = !visible;
+    }
+
+    /**
+     * Shows or hides every pin. Call invalidate on the map view afterwards.
+     */
+    public void setAllPinsVisible(boolean visible) {
+        Arrays.fill(hidden, !visible);
+    }
+
+    /**
+     * Removes every pin.
+     */
+    public void clear() {
+        setPins(new PinBatch(1));
+    }
+
+    @Override
+    public void draw(Canvas canvas, MapView mapView, boolean shadow) {
+        drawnCount = 0;
+        if (shadow || pins.size == 0) {
+            return;
+        }
+        Projection projection = mapView.getProjection();
+        int width = mapView.getWidth();
+        int height = mapView.getHeight();
+        for (int i = 0; i < pins.size; i++) {
+            if (hidden[i]) {
+                continue;
+            }
+            reusedGeoPoint.setCoords(pins.latitudes[i], pins.longitudes[i]);
+            projection.toPixels(reusedGeoPoint, reusedPoint);
+            float x = reusedPoint.x;
+            float y = reusedPoint.y;
+            // The pin sits above its point and the label below it, so allow a pin's size on each side.
+            if (x < -pinWidth || x > width + pinWidth || y < -pinHeight || y > height + pinHeight) {
+                continue;
+            }
+            drawPin(canvas, i, x, y);
+            drawnXs[drawnCount] = x;
+            drawnYs[drawnCount] = y;
+            drawnPins[drawnCount] = i;
+            drawnCount++;
+        }
+        hitIndex.build(drawnXs, drawnYs, drawnCount, 0, 0, width, height);
+    }
+
+    @Override
+    public boolean onSingleTapConfirmed(MotionEvent event, MapView mapView) {
+        if (drawnCount == 0) {
+            return false;
+        }
+        // A pin is anchored at its bottom center, so it covers taps up to pinHeight above its point.
+        float x = event.getX();
+        float y = event.getY();
+        int hit = hitIndex.findLast(x - pinWidth / 2, y, x + pinWidth / 2, y + pinHeight);
+        if (hit < 0) {
+            return false;
+        }
+        listener.onPinTapped(drawnPins[hit]);
+        return true;
+    }
+
+    private void drawPin(Canvas canvas, int i, float x, float y) {
+        Bitmap glyph = glyphs[pins.emotionCodes[i]];
+        float left = x - glyph.getWidth() / 2f;
+        float top = y - glyph.getHeight();
+        canvas.drawBitmap(glyph, left, top, bitmapPaint);
+        int label = pins.labelIndices[i];
+        if (label < 0) {
+            return;
+        }
+        if (pins.counts[i] > 1) {
+            float radius = badgeRadius(label);
+            // Same placement as MarkerIconCache's cluster icon: overhanging the pin's top-right corner.
+            float cx = left + glyph.getWidth() - radius / 2;
+            float cy = top + radius;
+            canvas.drawCircle(cx, cy, radius, icons.getBadgePaint());
+            canvas.drawText(labels[label], cx, cy + badgeTextOffset, icons.getBadgeTextPaint());
+        } else {
+            canvas.drawText(labels[label], x, y + labelBaselineOffset, icons.getLabelPaint());
+        }
+    }
+
+    private float badgeRadius(int label) {
+        float radius = badgeRadii[label];
+        if (radius < 0) {
+            float textWidth = icons.getBadgeTextPaint().measureText(labels[label]);
+            radius = Math.max(textWidth, badgeTextHeight) / 2 + icons.getBadgePaddingPx();
+            badgeRadii[label] = radius;
+        }
+        return radius;
+    }
+}
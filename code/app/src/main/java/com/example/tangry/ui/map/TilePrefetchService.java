@@ -0,0 +1,155 @@
+/**
+ * TilePrefetchService.java
+ *
+ * Background job that downloads the map tiles of the area the user is confined to (see
+ * MapFragment.setMapBoundaries) into osmdroid's SQLite tile cache, so the map opens from local
+ * tiles and keeps working offline. It only runs on unmetered networks while the device is idle.
+ *
+ * Key features:
+ * - Scheduled through JobScheduler with unmetered-network and device-idle constraints
+ * - Resumes an interrupted run by skipping tiles that are already cached
+ * - Caps the bytes downloaded per run; the cache itself is capped in MapTiles
+ * - Remembers the completed area so revisiting it does not schedule another job
+ *
+ * Outstanding Issues:
+ * - Only zoom levels up to PREFETCH_MAX_ZOOM are prefetched; deeper zooms would be hundreds of
+ *   thousands of tiles for the area and are cached as they are viewed instead.
+ */
+package com.example.tangry.ui.map;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.tangry.utils.GeoHash;
+import com.example.tangry.utils.TileDownloader;
+import com.example.tangry.utils.TilePrefetcher;
+
+import org.osmdroid.tileprovider.modules.SqlTileWriter;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.MapTileIndex;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class TilePrefetchService extends JobService {
+    private static final String TAG = "TilePrefetchService";
+    private static final int JOB_ID = 3801;
+    private static final String PREFS_NAME = "tile_prefetch_prefs";
+    private static final String KEY_LAT = "lat";
+    private static final String KEY_LNG = "lng";
+    private static final String KEY_RADIUS_KM = "radius_km";
+    private static final String KEY_COMPLETED_AREA = "completed_area";
+    // Areas whose centers share a ~1 km geohash cell count as the same area.
+    private static final int AREA_PRECISION = 6;
+    private static final int PREFETCH_MIN_ZOOM = 13;
+    private static final int PREFETCH_MAX_ZOOM = 16;
+    private static final long MAX_BYTES_PER_RUN = 40L * 1024 * 1024;
+    private static final long TILE_EXPIRY_MS = TimeUnit.DAYS.toMillis(30);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile boolean stopped = false;
+
+    /**
+     * Schedules a prefetch of the area around a point unless that area was already completed.
+     *
+     * @param context   any context; the application context is used
+     * @param latitude  the center of the area
+     * @param longitude the center of the area
+     * @param radiusKm  the distance from the center to each edge of the area
+     */
+    public static void schedule(Context context, double latitude, double longitude, double radiusKm) {
+        Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (GeoHash.encode(latitude, longitude, AREA_PRECISION).equals(prefs.getString(KEY_COMPLETED_AREA, null))) {
+            return;
+        }
+        prefs.edit()
+                .putLong(KEY_LAT, Double.doubleToRawLongBits(latitude))
+                .putLong(KEY_LNG, Double.doubleToRawLongBits(longitude))
+                .putLong(KEY_RADIUS_KM, Double.doubleToRawLongBits(radiusKm))
+                .apply();
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(appContext, TilePrefetchService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresDeviceIdle(true)
+                .build();
+        JobScheduler scheduler = appContext.getSystemService(JobScheduler.class);
+        if (scheduler != null) {
+            scheduler.schedule(job);
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (!prefs.contains(KEY_LAT)) {
+            return false;
+        }
+        double latitude = Double.longBitsToDouble(prefs.getLong(KEY_LAT, 0));
+        double longitude = Double.longBitsToDouble(prefs.getLong(KEY_LNG, 0));
+        double radiusKm = Double.longBitsToDouble(prefs.getLong(KEY_RADIUS_KM, 0));
+        stopped = false;
+        executor.execute(() -> {
+            boolean complete = prefetch(latitude, longitude, radiusKm);
+            if (complete) {
+                prefs.edit()
+                        .putString(KEY_COMPLETED_AREA, GeoHash.encode(latitude, longitude, AREA_PRECISION))
+                        .apply();
+            }
+            // An incomplete run is retried in the next idle window and resumes where it stopped.
+            jobFinished(params, !complete && !stopped);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        stopped = true;
+        return true;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        executor.shutdown();
+    }
+
+    private boolean prefetch(double latitude, double longitude, double radiusKm) {
+        MapTiles.configure(this);
+        ITileSource source = MapTiles.createTileSource();
+        SqlTileWriter writer = new SqlTileWriter();
+        try {
+            TileDownloader downloader = new TileDownloader(MapTiles.TILE_BASE_URL, MapTiles.TILE_EXTENSION,
+                    getPackageName());
+            TilePrefetcher prefetcher = new TilePrefetcher(downloader, new TilePrefetcher.TileStore() {
+                @Override
+                public boolean contains(int zoom, int x, int y) {
+                    return writer.exists(source, MapTileIndex.getTileIndex(zoom, x, y));
+                }
+
+                @Override
+                public boolean put(int zoom, int x, int y, byte[] data) {
+                    return writer.saveFile(source, MapTileIndex.getTileIndex(zoom, x, y),
+                            new ByteArrayInputStream(data), System.currentTimeMillis() + TILE_EXPIRY_MS);
+                }
+            });
+            BoundingBox area = MapTiles.boundsAround(latitude, longitude, radiusKm);
+            TilePrefetcher.Result result = prefetcher.prefetch(area.getLatSouth(), area.getLonWest(),
+                    area.getLatNorth(), area.getLonEast(), PREFETCH_MIN_ZOOM, PREFETCH_MAX_ZOOM,
+                    MAX_BYTES_PER_RUN, () -> stopped);
+            Log.d(TAG, "Prefetched " + result.downloaded + " tiles (" + result.bytes + " bytes), skipped "
+                    + result.skipped + ", failed " + result.failed + ", complete " + result.complete);
+            return result.complete;
+        } finally {
+            writer.onDetach();
+        }
+    }
+}
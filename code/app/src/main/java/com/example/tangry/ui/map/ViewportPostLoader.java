@@ -0,0 +1,218 @@
+/**
+ * ViewportPostLoader.java
+ *
+ * Loads map posts for whatever part of the map is on screen. The visible bounding box is split
+ * into geohash cells; each cell is fetched once with a range query and kept while it stays near
+ * the viewport. Scrolling or zooming only fetches cells that are not loaded yet, and cells far
+ * outside the viewport are evicted, so reads and memory stay proportional to what is on screen.
+ * Only the past week's posts of the shown users are fetched, filtered on the server.
+ *
+ * Key features:
+ * - Debounces viewport changes so a fling or pinch triggers a single load
+ * - Treats a cell as loaded when it or any enclosing cell has been fetched
+ * - Replaces finer loaded cells when a coarser enclosing cell arrives after zooming out
+ * - Evicts cells that no longer intersect the viewport grown by one screen on each side
+ * - Reports the merged posts of all loaded cells, most recent first, on the main thread
+ */
+package com.example.tangry.ui.map;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.tangry.models.EmotionPost;
+import com.example.tangry.repositories.EmotionPostRepository;
+import com.example.tangry.utils.GeoHash;
+import com.google.firebase.Timestamp;
+
+import org.osmdroid.util.BoundingBox;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class ViewportPostLoader {
+    private static final String TAG = "ViewportPostLoader";
+    private static final long DEBOUNCE_MS = 300;
+    // Upper bound on the cells (and therefore range queries) covering one viewport.
+    private static final int MAX_VIEWPORT_CELLS = 12;
+    // The longest span the map shows loaded posts for: the heatmap and week-long playback.
+    public static final long POST_WINDOW_MS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * Callback invoked on the main thread whenever the set of loaded posts changes.
+     */
+    public interface Listener {
+        void onPostsChanged(List<EmotionPost> posts);
+    }
+
+    private final EmotionPostRepository repository;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // All fields below are only touched on the main thread.
+    private final Map<String, List<EmotionPost>> loadedCells = new HashMap<>();
+    private final Set<String> pendingCells = new HashSet<>();
+    private BoundingBox viewport;
+    private List<String> usernames;
+    private Runnable pendingLoad;
+    private boolean released = false;
+
+    public ViewportPostLoader(EmotionPostRepository repository, Listener listener) {
+        this.repository = repository;
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the users whose posts are loaded. Loading starts once they are set; changing them
+     * drops every loaded cell.
+     *
+     * @param usernames the shown users, e.g. the followed users and the current user
+     */
+    public void setUsernames(Collection<String> usernames) {
+        List<String> sorted = new ArrayList<>(usernames);
+        Collections.sort(sorted);
+        if (!sorted.equals(this.usernames)) {
+            this.usernames = sorted;
+            invalidate();
+        }
+    }
+
+    /**
+     * Schedules a load for the given viewport after the debounce delay, replacing any pending one.
+     *
+     * @param box the visible bounding box
+     */
+    public void onViewportChanged(BoundingBox box) {
+        if (pendingLoad != null) {
+            mainHandler.removeCallbacks(pendingLoad);
+        }
+        pendingLoad = () -> loadNow(box);
+        mainHandler.postDelayed(pendingLoad, DEBOUNCE_MS);
+    }
+
+    /**
+     * Loads the cells covering the given viewport right away and evicts distant cells.
+     *
+     * @param box the visible bounding box
+     */
+    public void loadNow(BoundingBox box) {
+        pendingLoad = null;
+        if (released || usernames == null) {
+            return;
+        }
+        viewport = box;
+        boolean evicted = evictDistantCells();
+        for (String cell : GeoHash.cellsInBounds(box.getLatSouth(), box.getLonWest(),
+                box.getLatNorth(), box.getLonEast(), MAX_VIEWPORT_CELLS)) {
+            if (!isCovered(cell)) {
+                fetch(cell);
+            }
+        }
+        if (evicted) {
+            listener.onPostsChanged(getLoadedPosts());
+        }
+    }
+
+    /**
+     * Drops every loaded cell so the next viewport change fetches fresh data.
+     */
+    public void invalidate() {
+        loadedCells.clear();
+        pendingCells.clear();
+    }
+
+    /**
+     * Returns the posts of every loaded cell, most recent first.
+     */
+    public List<EmotionPost> getLoadedPosts() {
+        Map<String, EmotionPost> postsById = new LinkedHashMap<>();
+        for (List<EmotionPost> posts : loadedCells.values()) {
+            for (EmotionPost post : posts) {
+                postsById.put(post.getPostId(), post);
+            }
+        }
+        List<EmotionPost> merged = new ArrayList<>(postsById.values());
+        EmotionPostRepository.sortByTimestampDescending(merged);
+        return merged;
+    }
+
+    /**
+     * Cancels pending work and ignores results still in flight. Call from onDestroyView.
+     */
+    public void release() {
+        released = true;
+        if (pendingLoad != null) {
+            mainHandler.removeCallbacks(pendingLoad);
+            pendingLoad = null;
+        }
+        loadedCells.clear();
+        pendingCells.clear();
+    }
+
+    private void fetch(String cell) {
+        pendingCells.add(cell);
+        Timestamp since = new Timestamp(new Date(System.currentTimeMillis() - POST_WINDOW_MS));
+        repository.getPostsInGeohashCell(cell, usernames, since,
+                posts -> {
+                    if (released || !pendingCells.remove(cell)) {
+                        return;
+                    }
+                    // A coarser cell supersedes any finer cells loaded inside it.
+                    Iterator<String> loaded = loadedCells.keySet().iterator();
+                    while (loaded.hasNext()) {
+                        if (loaded.next().startsWith(cell)) {
+                            loaded.remove();
+                        }
+                    }
+                    loadedCells.put(cell, posts);
+                    Log.d(TAG, "Loaded " + posts.size() + " posts in cell " + cell);
+                    listener.onPostsChanged(getLoadedPosts());
+                },
+                e -> {
+                    // Leave the cell unloaded so the next viewport change retries it.
+                    pendingCells.remove(cell);
+                    Log.e(TAG, "Failed to load posts in cell " + cell, e);
+                });
+    }
+
+    private boolean isCovered(String cell) {
+        for (int length = 1; length <= cell.length(); length++) {
+            String prefix = cell.substring(0, length);
+            if (loadedCells.containsKey(prefix) || pendingCells.contains(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean evictDistantCells() {
+        double latMargin = viewport.getLatNorth() - viewport.getLatSouth();
+        double lngMargin = viewport.getLonEast() - viewport.getLonWest();
+        double south = viewport.getLatSouth() - latMargin;
+        double north = viewport.getLatNorth() + latMargin;
+        double west = viewport.getLonWest() - lngMargin;
+        double east = viewport.getLonEast() + lngMargin;
+        boolean evicted = false;
+        Iterator<String> cells = loadedCells.keySet().iterator();
+        while (cells.hasNext()) {
+            double[] bounds = GeoHash.decodeBounds(cells.next());
+            boolean intersects = bounds[0] <= north && bounds[2] >= south
+                    && bounds[1] <= east && bounds[3] >= west;
+            if (!intersects) {
+                cells.remove();
+                evicted = true;
+            }
+        }
+        return evicted;
+    }
+}
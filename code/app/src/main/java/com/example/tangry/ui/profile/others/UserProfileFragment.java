@@ -25,6 +25,7 @@ import com.example.tangry.models.UserStats;
 import com.example.tangry.databinding.FragmentUserProfileBinding;
 import com.example.tangry.models.EmotionPost;
 import com.example.tangry.repositories.EmotionPostRepository;
+import com.example.tangry.utils.ListImageLoader;
 import com.google.gson.Gson;
 import java.util.List;
 
@@ -105,6 +106,7 @@ public class UserProfileFragment extends Fragment {
                     .navigate(R.id.action_userProfileFragment_to_postDetailsFragment, bundle);
         });
         binding.postsRecyclerView.setAdapter(adapter);
+        ListImageLoader.attachPreloader(this, binding.postsRecyclerView, adapter::getPostAt);
 
         // Load the user's posts.
         EmotionPostRepository.getInstance().getPostsByUser(profileUsername)
@@ -17,6 +17,7 @@ import android.widget.TextView;
 import com.example.tangry.R;
 import com.example.tangry.controllers.UserController;
 import com.example.tangry.models.UserStats;
+import com.example.tangry.utils.MoodSearchIndex;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import androidx.annotation.NonNull;
@@ -91,6 +92,7 @@ public class PersonalProfileFragment extends Fragment {
             v.getContext()
                     .getSharedPreferences("LoginPrefs", v.getContext().MODE_PRIVATE)
                     .edit().clear().apply();
+            MoodSearchIndex.getInstance(v.getContext()).clear();
 
             FirebaseAuth.getInstance().signOut();
 
@@ -0,0 +1,222 @@
+/**
+ * AddressAutocomplete.java
+ *
+ * This file contains the address suggestion engine behind the location field of the create-post
+ * screen. It replaces one geocoder thread per keystroke with a debounced, cancellable lookup
+ * pipeline whose results can never be overwritten by an older, slower lookup.
+ *
+ * Key features:
+ * - Debounces query changes so fast typing triggers a single lookup
+ * - Cancels the in-flight lookup when the query changes; only the latest lookup is published
+ * - Runs geocoder calls on a single background thread with a bounded queue
+ * - Caches recent results and answers a longer query by filtering a shorter query's results
+ * - Delivers suggestions on the main thread
+ */
+package com.example.tangry.utils;
+
+import android.content.Context;
+import android.location.Address;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class AddressAutocomplete {
+
+    /**
+     * Callback receiving suggestions for the latest query on the main thread.
+     */
+    public interface SuggestionListener {
+        /**
+         * Called when suggestions are available for the most recent query.
+         *
+         * @param query       the query that produced these suggestions
+         * @param suggestions the matching addresses; each has a non-empty first address line
+         */
+        void onSuggestions(String query, List<Address> suggestions);
+    }
+
+    public static final int MIN_QUERY_LENGTH = 3;
+    private static final int MAX_RESULTS = 5;
+    private static final long DEFAULT_DEBOUNCE_MS = 300;
+    private static final int MAX_CACHED_QUERIES = 32;
+
+    private final Context appContext;
+    private final SuggestionListener listener;
+    private final long debounceMs;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // One worker and at most one queued lookup; older queued lookups are discarded.
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1), new ThreadPoolExecutor.DiscardOldestPolicy());
+
+    // All fields below are only touched on the main thread.
+    private final LinkedHashMap<String, List<Address>> cache =
+            new LinkedHashMap<String, List<Address>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<Address>> eldest) {
+                    return size() > MAX_CACHED_QUERIES;
+                }
+            };
+    private int generation = 0;
+    private Runnable pendingLookup;
+    private Future<?> inFlight;
+    private boolean shutdown = false;
+
+    /**
+     * Creates an autocomplete engine with the default debounce delay.
+     *
+     * @param context  any context; the application context is retained
+     * @param listener receives suggestions on the main thread
+     */
+    public AddressAutocomplete(@NonNull Context context, @NonNull SuggestionListener listener) {
+        this(context, listener, DEFAULT_DEBOUNCE_MS);
+    }
+
+    /**
+     * Creates an autocomplete engine.
+     *
+     * @param context    any context; the application context is retained
+     * @param listener   receives suggestions on the main thread
+     * @param debounceMs delay after the last query change before a lookup runs
+     */
+    public AddressAutocomplete(@NonNull Context context, @NonNull SuggestionListener listener, long debounceMs) {
+        this.appContext = context.getApplicationContext();
+        this.listener = listener;
+        this.debounceMs = debounceMs;
+    }
+
+    /**
+     * Schedules a lookup for the given text after the debounce delay, replacing any pending or
+     * running lookup. Queries shorter than MIN_QUERY_LENGTH only cancel outstanding work.
+     * Must be called on the main thread.
+     *
+     * @param text the current contents of the location field
+     */
+    public void onQueryChanged(String text) {
+        cancel();
+        if (shutdown || text == null || text.trim().length() < MIN_QUERY_LENGTH) {
+            return;
+        }
+        String query = text.trim();
+        int token = generation;
+        pendingLookup = () -> lookup(query, token);
+        mainHandler.postDelayed(pendingLookup, debounceMs);
+    }
+
+    /**
+     * Cancels any pending or running lookup so that no further suggestions are published for it,
+     * e.g. when the field is filled in programmatically. Must be called on the main thread.
+     */
+    public void cancel() {
+        generation++;
+        if (pendingLookup != null) {
+            mainHandler.removeCallbacks(pendingLookup);
+            pendingLookup = null;
+        }
+        if (inFlight != null) {
+            inFlight.cancel(true);
+            inFlight = null;
+        }
+    }
+
+    /**
+     * Cancels outstanding work and stops the background executor. Call from onDestroyView.
+     */
+    public void shutdown() {
+        cancel();
+        shutdown = true;
+        executor.shutdownNow();
+    }
+
+    private void lookup(String query, int token) {
+        pendingLookup = null;
+        String key = query.toLowerCase(Locale.ROOT);
+        List<Address> cached = cache.get(key);
+        if (cached != null) {
+            listener.onSuggestions(query, cached);
+            return;
+        }
+
+        // A longer query can only narrow a shorter one, so filter the closest cached prefix.
+        String prefix = longestCachedPrefix(key);
+        if (prefix != null) {
+            List<Address> prefixResults = cache.get(prefix);
+            List<Address> filtered = filter(prefixResults, key);
+            if (!filtered.isEmpty() && prefixResults.size() < MAX_RESULTS) {
+                // The shorter query was not truncated, so its narrowed results stand on their own.
+                cache.put(key, filtered);
+                listener.onSuggestions(query, filtered);
+                return;
+            }
+            if (!filtered.isEmpty()) {
+                // Show the narrowed list right away; the lookup below may find more.
+                listener.onSuggestions(query, filtered);
+            }
+            // An empty filter usually means the geocoder spells the address differently, so ask it.
+        }
+
+        inFlight = executor.submit(() -> {
+            List<Address> addresses = GeocoderUtility.geocodeUncached(appContext, query);
+            if (addresses == null || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            List<Address> suggestions = new ArrayList<>();
+            for (Address address : addresses) {
+                String line = address.getAddressLine(0);
+                if (line != null && !line.isEmpty()) {
+                    suggestions.add(address);
+                }
+            }
+            mainHandler.post(() -> {
+                if (shutdown) {
+                    return;
+                }
+                cache.put(key, suggestions);
+                if (token == generation) {
+                    inFlight = null;
+                    listener.onSuggestions(query, suggestions);
+                }
+            });
+        });
+    }
+
+    private String longestCachedPrefix(String key) {
+        for (int end = key.length() - 1; end >= MIN_QUERY_LENGTH; end--) {
+            String prefix = key.substring(0, end);
+            if (cache.containsKey(prefix)) {
+                return prefix;
+            }
+        }
+        return null;
+    }
+
+    // Keeps the addresses whose first line contains every whitespace-separated token of the query.
+    private static List<Address> filter(List<Address> addresses, String key) {
+        String[] tokens = key.split("\\s+");
+        List<Address> filtered = new ArrayList<>();
+        for (Address address : addresses) {
+            String line = address.getAddressLine(0).toLowerCase(Locale.ROOT);
+            boolean matches = true;
+            for (String token : tokens) {
+                if (!line.contains(token)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                filtered.add(address);
+            }
+        }
+        return filtered;
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * BkTree.java
+ *
+ * This file contains a Burkhard-Keller tree over strings using Levenshtein distance. It answers
+ * "which words are within edit distance k of the query" by visiting only the subtrees whose edge
+ * distance can satisfy the triangle inequality, so typo-tolerant lookups over thousands of
+ * usernames touch a small fraction of the words.
+ *
+ * Key features:
+ * - Incremental insertion; duplicate words are ignored
+ * - Ranked lookup by distance, then alphabetically
+ * - Distance computation with a row-minimum cutoff once the bound is exceeded
+ *
+ * Outstanding Issues:
+ * - Not thread-safe; callers must confine access to a single thread or publish a finished tree.
+ */
+package com.example.tangry.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BkTree {
+
+    /**
+     * A word found by {@link #search(String, int)} together with its distance from the query.
+     */
+    public static class Match {
+        private final String word;
+        private final int distance;
+
+        Match(String word, int distance) {
+            this.word = word;
+            this.distance = distance;
+        }
+
+        public String getWord() {
+            return word;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    private static class Node {
+        final String word;
+        final Map<Integer, Node> children = new HashMap<>();
+
+        Node(String word) {
+            this.word = word;
+        }
+    }
+
+    private Node root;
+    private int size = 0;
+
+    /**
+     * Adds a word to the tree.
+     *
+     * @param word the word to add
+     * @return true if the word was not already present
+     */
+    public boolean add(String word) {
+        if (root == null) {
+            root = new Node(word);
+            size++;
+            return true;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(node.word, word, Integer.MAX_VALUE);
+            if (distance == 0) {
+                return false;
+            }
+            Node child = node.children.get(distance);
+            if (child == null) {
+                node.children.put(distance, new Node(word));
+                size++;
+                return true;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Returns the number of distinct words in the tree.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds every word within maxDistance edits of the query.
+     *
+     * @param query       the word to look up
+     * @param maxDistance the largest allowed edit distance
+     * @return the matches, closest first and alphabetically within the same distance
+     */
+    public List<Match> search(String query, int maxDistance) {
+        List<Match> matches = new ArrayList<>();
+        if (root == null) {
+            return matches;
+        }
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = distance(node.word, query, Integer.MAX_VALUE);
+            if (distance <= maxDistance) {
+                matches.add(new Match(node.word, distance));
+            }
+            // Triangle inequality: only children whose edge is within maxDistance of d can match.
+            for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                if (Math.abs(child.getKey() - distance) <= maxDistance) {
+                    pending.push(child.getValue());
+                }
+            }
+        }
+        Collections.sort(matches, (m1, m2) -> m1.distance != m2.distance
+                ? Integer.compare(m1.distance, m2.distance)
+                : m1.word.compareTo(m2.word));
+        return matches;
+    }
+
+    /**
+     * Computes the Levenshtein distance between two strings, giving up early once every cell in a
+     * row exceeds the bound.
+     *
+     * @param a     the first string
+     * @param b     the second string
+     * @param bound the distance beyond which the exact value is not needed
+     * @return the edit distance, or a value greater than bound if it exceeds bound
+     */
+    public static int distance(String a, String b, int bound) {
+        if (Math.abs(a.length() - b.length()) > bound) {
+            return bound == Integer.MAX_VALUE ? bound : bound + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > bound) {
+                return bound + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * ContentHash.java
+ *
+ * This utility class names stored images by their content. Images are uploaded under the SHA-256
+ * of their compressed bytes, so the same picture posted or edited in twice maps to one object.
+ *
+ * Key features:
+ * - Streams the input through the digest in a fixed buffer
+ * - Recognizes content-addressed object names, which may be shared between posts
+ */
+package com.example.tangry.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class ContentHash {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int HASH_HEX_LENGTH = 64;
+
+    /**
+     * Returns the lowercase hex SHA-256 of everything the stream yields. The stream is not closed.
+     *
+     * @param in the content to hash
+     * @return 64 lowercase hex characters
+     * @throws IOException if the stream cannot be read
+     */
+    public static String sha256Hex(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Returns whether a storage object name is a content hash, meaning other posts may share it.
+     *
+     * @param name the last segment of a storage path
+     * @return true for 64 lowercase hex characters
+     */
+    public static boolean isContentAddressed(String name) {
+        if (name == null || name.length() != HASH_HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
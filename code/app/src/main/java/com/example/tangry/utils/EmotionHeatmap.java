@@ -0,0 +1,291 @@
+/**
+ * EmotionHeatmap.java
+ *
+ * This file contains the aggregation behind the map's heatmap mode. Posts are counted into
+ * per-geohash-cell emotion histograms, and the histograms are rasterized into a small ARGB image,
+ * one pixel per cell, whose color mixes the cell's emotion colors and whose opacity grows with
+ * the number of posts. The map scales that image over the area in a single bitmap draw, so the
+ * cost of the heatmap no longer depends on how many posts it shows.
+ *
+ * Key features:
+ * - Incremental updates: only posts added, removed or changed since the last update are recounted
+ * - Geohash cells of a fixed precision form a regular latitude/longitude grid, so each cell is a pixel
+ * - Colors are count-weighted mixes of the emotion colors of a cell
+ * - Large areas are downsampled so the raster never exceeds a maximum side length
+ * - Has no Android dependencies
+ *
+ * Outstanding Issues:
+ * - Not thread-safe; callers must confine access to a single thread.
+ */
+package com.example.tangry.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+public class EmotionHeatmap {
+
+    private static final int MIN_ALPHA = 70;
+    private static final int MAX_ALPHA = 200;
+
+    /**
+     * A post to aggregate.
+     */
+    public static class Item {
+        private final String id;
+        private final double latitude;
+        private final double longitude;
+        private final String category;
+
+        public Item(String id, double latitude, double longitude, String category) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.category = category;
+        }
+    }
+
+    /**
+     * An ARGB image covering a latitude/longitude box; row 0 is the northern edge.
+     */
+    public static class Raster {
+        public final int[] pixels;
+        public final int width;
+        public final int height;
+        public final double south;
+        public final double west;
+        public final double north;
+        public final double east;
+
+        Raster(int[] pixels, int width, int height, double south, double west, double north, double east) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.south = south;
+            this.west = west;
+            this.north = north;
+            this.east = east;
+        }
+    }
+
+    private static class Entry {
+        final String cell;
+        final int category;
+
+        Entry(String cell, int category) {
+            this.cell = cell;
+            this.category = category;
+        }
+    }
+
+    private static class Cell {
+        final int column;
+        final int row;
+        int[] counts;
+        int total;
+
+        Cell(int column, int row, int categories) {
+            this.column = column;
+            this.row = row;
+            this.counts = new int[categories];
+        }
+    }
+
+    private final int precision;
+    private final double cellLat;
+    private final double cellLng;
+    private final List<String> categories = new ArrayList<>();
+    private final Map<String, Integer> categoryIndexes = new HashMap<>();
+    private final Map<String, Entry> entriesById = new HashMap<>();
+    private final Map<String, Cell> cells = new LinkedHashMap<>();
+
+    /**
+     * Creates an empty heatmap.
+     *
+     * @param precision the geohash length of a cell, e.g. 7 for cells of about 150 m
+     */
+    public EmotionHeatmap(int precision) {
+        this.precision = precision;
+        // A geohash alternates longitude and latitude bits, starting with longitude.
+        int bits = precision * 5;
+        this.cellLng = 360.0 / (1L << ((bits + 1) / 2));
+        this.cellLat = 180.0 / (1L << (bits / 2));
+    }
+
+    /**
+     * Makes the heatmap reflect exactly the given items, recounting only the differences from the
+     * previous update.
+     *
+     * @param items the posts to show
+     * @return true if any cell changed
+     */
+    public boolean update(Collection<Item> items) {
+        boolean changed = false;
+        Set<String> seen = new HashSet<>();
+        for (Item item : items) {
+            seen.add(item.id);
+            String cell = GeoHash.encode(item.latitude, item.longitude, precision);
+            int category = categoryIndex(item.category);
+            Entry previous = entriesById.get(item.id);
+            if (previous != null && previous.cell.equals(cell) && previous.category == category) {
+                continue;
+            }
+            if (previous != null) {
+                decrement(previous);
+            }
+            Entry entry = new Entry(cell, category);
+            entriesById.put(item.id, entry);
+            increment(entry);
+            changed = true;
+        }
+        if (entriesById.size() > seen.size()) {
+            for (Map.Entry<String, Entry> entry : new ArrayList<>(entriesById.entrySet())) {
+                if (!seen.contains(entry.getKey())) {
+                    entriesById.remove(entry.getKey());
+                    decrement(entry.getValue());
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the number of non-empty cells.
+     */
+    public int cellCount() {
+        return cells.size();
+    }
+
+    /**
+     * Returns the number of posts per category in a cell.
+     *
+     * @param cell a geohash of this heatmap's precision
+     * @return the counts by category; empty if the cell has no posts
+     */
+    public Map<String, Integer> histogram(String cell) {
+        Map<String, Integer> histogram = new LinkedHashMap<>();
+        Cell stats = cells.get(cell);
+        if (stats != null) {
+            for (int i = 0; i < stats.counts.length; i++) {
+                if (stats.counts[i] > 0) {
+                    histogram.put(categories.get(i), stats.counts[i]);
+                }
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Rasterizes the cells. The raster has a transparent one-pixel border so scaled drawing fades
+     * out at the edges.
+     *
+     * @param colors       the RGB color of each category
+     * @param defaultColor the color of categories missing from {@code colors}
+     * @param maxSide      the maximum width and height in pixels; larger areas are downsampled
+     * @return the raster, or null if there are no posts
+     */
+    public Raster rasterize(Map<String, Integer> colors, int defaultColor, int maxSide) {
+        if (cells.isEmpty()) {
+            return null;
+        }
+        int minColumn = Integer.MAX_VALUE;
+        int maxColumn = Integer.MIN_VALUE;
+        int minRow = Integer.MAX_VALUE;
+        int maxRow = Integer.MIN_VALUE;
+        for (Cell cell : cells.values()) {
+            minColumn = Math.min(minColumn, cell.column);
+            maxColumn = Math.max(maxColumn, cell.column);
+            minRow = Math.min(minRow, cell.row);
+            maxRow = Math.max(maxRow, cell.row);
+        }
+        int inner = Math.max(maxColumn - minColumn + 1, maxRow - minRow + 1);
+        int factor = Math.max(1, (inner + maxSide - 3) / (maxSide - 2));
+        int width = (maxColumn - minColumn) / factor + 3;
+        int height = (maxRow - minRow) / factor + 3;
+
+        int[] categoryColors = new int[categories.size()];
+        for (int i = 0; i < categoryColors.length; i++) {
+            Integer color = colors.get(categories.get(i));
+            categoryColors[i] = color != null ? color : defaultColor;
+        }
+        int[] totals = new int[width * height];
+        float[] reds = new float[width * height];
+        float[] greens = new float[width * height];
+        float[] blues = new float[width * height];
+        int maxTotal = 0;
+        for (Cell cell : cells.values()) {
+            int pixel = ((maxRow - cell.row) / factor + 1) * width + (cell.column - minColumn) / factor + 1;
+            for (int i = 0; i < cell.counts.length; i++) {
+                int count = cell.counts[i];
+                if (count > 0) {
+                    reds[pixel] += count * ((categoryColors[i] >> 16) & 0xff);
+                    greens[pixel] += count * ((categoryColors[i] >> 8) & 0xff);
+                    blues[pixel] += count * (categoryColors[i] & 0xff);
+                }
+            }
+            totals[pixel] += cell.total;
+            maxTotal = Math.max(maxTotal, totals[pixel]);
+        }
+
+        int[] pixels = new int[width * height];
+        for (int p = 0; p < pixels.length; p++) {
+            int total = totals[p];
+            if (total == 0) {
+                continue;
+            }
+            double intensity = Math.sqrt(total / (double) maxTotal);
+            int alpha = (int) Math.round(MIN_ALPHA + (MAX_ALPHA - MIN_ALPHA) * intensity);
+            int red = Math.round(reds[p] / total);
+            int green = Math.round(greens[p] / total);
+            int blue = Math.round(blues[p] / total);
+            pixels[p] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+        }
+
+        double west = (minColumn - factor) * cellLng - 180;
+        double north = (maxRow + 1 + factor) * cellLat - 90;
+        return new Raster(pixels, width, height, north - height * factor * cellLat, west,
+                north, west + width * factor * cellLng);
+    }
+
+    private int categoryIndex(String category) {
+        Integer index = categoryIndexes.get(category);
+        if (index == null) {
+            index = categories.size();
+            categories.add(category);
+            categoryIndexes.put(category, index);
+        }
+        return index;
+    }
+
+    private void increment(Entry entry) {
+        Cell cell = cells.get(entry.cell);
+        if (cell == null) {
+            double[] bounds = GeoHash.decodeBounds(entry.cell);
+            cell = new Cell((int) Math.round((bounds[1] + 180) / cellLng),
+                    (int) Math.round((bounds[0] + 90) / cellLat), categories.size());
+            cells.put(entry.cell, cell);
+        }
+        if (cell.counts.length <= entry.category) {
+            cell.counts = Arrays.copyOf(cell.counts, categories.size());
+        }
+        cell.counts[entry.category]++;
+        cell.total++;
+    }
+
+    private void decrement(Entry entry) {
+        Cell cell = Objects.requireNonNull(cells.get(entry.cell));
+        cell.counts[entry.category]--;
+        cell.total--;
+        if (cell.total == 0) {
+            cells.remove(entry.cell);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * GeoHash.java
+ *
+ * This utility class encodes latitude/longitude pairs as base-32 geohash strings. Posts store a
+ * geohash next to their coordinates at write time, so that nearby posts share a common prefix and
+ * can be found with Firestore range queries instead of geocoding addresses at read time.
+ *
+ * Key features:
+ * - Encodes coordinates and decodes geohash cells back to their bounds
+ * - Computes the small set of geohash cells covering a box, one range query per cell
+ * - Computes great-circle distances
+ *
+ * Outstanding Issues:
+ * - Cells near the poles and the antimeridian are not specially handled.
+ */
+
+package com.example.tangry.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class GeoHash {
+
+    /** Precision stored on posts; a 9-character cell is roughly 5 m across. */
+    public static final int POST_PRECISION = 9;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    /**
+     * Encodes a coordinate as a geohash of the given length.
+     *
+     * @param latitude  the latitude in degrees
+     * @param longitude the longitude in degrees
+     * @param precision the number of base-32 characters to produce
+     * @return the geohash string
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int value = 0;
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLng + maxLng) / 2;
+                if (longitude >= mid) {
+                    value = (value << 1) | 1;
+                    minLng = mid;
+                } else {
+                    value = value << 1;
+                    maxLng = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    value = (value << 1) | 1;
+                    minLat = mid;
+                } else {
+                    value = value << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(value));
+                bit = 0;
+                value = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Decodes a geohash into the bounds of its cell.
+     *
+     * @param geohash the geohash to decode
+     * @return {minLat, minLng, maxLat, maxLng}
+     * @throws IllegalArgumentException if the geohash contains a character outside the base-32 alphabet
+     */
+    public static double[] decodeBounds(String geohash) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        boolean evenBit = true;
+        for (int i = 0; i < geohash.length(); i++) {
+            int value = BASE32.indexOf(geohash.charAt(i));
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid geohash: " + geohash);
+            }
+            for (int shift = 4; shift >= 0; shift--) {
+                int bitValue = (value >> shift) & 1;
+                if (evenBit) {
+                    double mid = (minLng + maxLng) / 2;
+                    if (bitValue == 1) {
+                        minLng = mid;
+                    } else {
+                        maxLng = mid;
+                    }
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if (bitValue == 1) {
+                        minLat = mid;
+                    } else {
+                        maxLat = mid;
+                    }
+                }
+                evenBit = !evenBit;
+            }
+        }
+        return new double[]{minLat, minLng, maxLat, maxLng};
+    }
+
+    /**
+     * Returns the geohash cells that together cover a latitude/longitude box, at the longest
+     * precision whose covering needs at most maxCells cells. Only continent-sized boxes fall back
+     * to single-character cells regardless of the budget.
+     *
+     * @param minLat   the southern edge in degrees
+     * @param minLng   the western edge in degrees
+     * @param maxLat   the northern edge in degrees
+     * @param maxLng   the eastern edge in degrees
+     * @param maxCells the largest number of cells to return
+     * @return the distinct covering cells
+     */
+    public static List<String> cellsInBounds(double minLat, double minLng, double maxLat, double maxLng, int maxCells) {
+        int precision = POST_PRECISION;
+        while (precision > 1 && cellCount(minLat, maxLat, minLng, maxLng, precision) > maxCells) {
+            precision--;
+        }
+        int lngBits = (5 * precision + 1) / 2;
+        int latBits = 5 * precision / 2;
+        double lngSpan = 360.0 / (1L << lngBits);
+        double latSpan = 180.0 / (1L << latBits);
+
+        // Encode the center of every cell in the grid spanned by the bounding box.
+        Set<String> cells = new LinkedHashSet<>();
+        for (long i = cellIndex(minLat + 90, latSpan, latBits); i <= cellIndex(maxLat + 90, latSpan, latBits); i++) {
+            for (long j = cellIndex(minLng + 180, lngSpan, lngBits); j <= cellIndex(maxLng + 180, lngSpan, lngBits); j++) {
+                cells.add(encode(-90 + (i + 0.5) * latSpan, -180 + (j + 0.5) * lngSpan, precision));
+            }
+        }
+        return new ArrayList<>(cells);
+    }
+
+    /**
+     * Computes the great-circle distance between two coordinates.
+     *
+     * @return the distance in kilometres
+     */
+    public static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static long cellCount(double minLat, double maxLat, double minLng, double maxLng, int precision) {
+        int lngBits = (5 * precision + 1) / 2;
+        int latBits = 5 * precision / 2;
+        double lngSpan = 360.0 / (1L << lngBits);
+        double latSpan = 180.0 / (1L << latBits);
+        long rows = cellIndex(maxLat + 90, latSpan, latBits) - cellIndex(minLat + 90, latSpan, latBits) + 1;
+        long cols = cellIndex(maxLng + 180, lngSpan, lngBits) - cellIndex(minLng + 180, lngSpan, lngBits) + 1;
+        return rows * cols;
+    }
+
+    private static long cellIndex(double offset, double span, int bits) {
+        // The last cell is closed on its upper edge, matching encode().
+        return Math.min((long) Math.floor(offset / span), (1L << bits) - 1);
+    }
+}
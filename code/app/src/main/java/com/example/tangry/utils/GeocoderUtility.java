@@ -8,21 +8,60 @@ import android.util.Log;
 import org.osmdroid.util.GeoPoint;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.Consumer;
 
 public class GeocoderUtility { // Renamed to avoid confusion with Android's Geocoder
     private static final String TAG = "GeocoderUtil";
 
     /**
      * Returns a GeoPoint based on the provided address string.
-     * Requests up to 5 results and uses the first match.
+     * Results are served from GeocodingCache when possible. Blocks while a lookup is needed,
+     * so this must not be called on the main thread.
      *
      * @param context  the application context
      * @param location the address string to geocode
      * @return a GeoPoint representing the location, or null if not found or if the service is not present.
      */
     public static GeoPoint getGeoPointFromAddress(Context context, String location) {
+        return GeocodingCache.getInstance(context).getGeoPointBlocking(location);
+    }
+
+    /**
+     * Geocodes an address on a background thread and delivers the result on the main thread.
+     * Used when a post is written, so that readers never need to geocode.
+     *
+     * @param context  the application context
+     * @param location the address string to geocode
+     * @param callback receives the GeoPoint, or null if the address could not be resolved
+     */
+    public static void getGeoPointFromAddressAsync(Context context, String location,
+                                                   Consumer<GeoPoint> callback) {
+        GeocodingCache.getInstance(context).getGeoPoint(location, callback);
+    }
+
+    /**
+     * Reverse-geocodes coordinates on a background thread and delivers the first address line
+     * on the main thread.
+     *
+     * @param context   the application context
+     * @param latitude  the latitude in degrees
+     * @param longitude the longitude in degrees
+     * @param callback  receives the address line, or null if none was found
+     */
+    public static void getAddressLineAsync(Context context, double latitude, double longitude,
+                                           Consumer<String> callback) {
+        GeocodingCache.getInstance(context).getAddressLine(latitude, longitude, callback);
+    }
+
+    /**
+     * Performs a blocking forward lookup without any caching. Requests up to 5 results.
+     *
+     * @return the addresses found, an empty list if none matched, or null if the lookup failed
+     */
+    static List<Address> geocodeUncached(Context context, String location) {
         if (!Geocoder.isPresent()) {
             Log.e(TAG, "Geocoder service is not present on this device.");
             return null;
@@ -37,13 +76,33 @@ public class GeocoderUtility { // Renamed to avoid confusion with Android's Geoc
                 Log.d(TAG, "Address found for \"" + location + "\": " +
                         bestAddress.getAddressLine(0) + " (" +
                         bestAddress.getLatitude() + ", " + bestAddress.getLongitude() + ")");
-                return new GeoPoint(bestAddress.getLatitude(), bestAddress.getLongitude());
-            } else {
-                Log.e(TAG, "No addresses found for \"" + location + "\"");
+                return addresses;
             }
+            Log.e(TAG, "No addresses found for \"" + location + "\"");
+            return new ArrayList<>();
         } catch (IOException e) {
             Log.e(TAG, "Geocoding failed for \"" + location + "\"", e);
+            return null;
+        }
+    }
+
+    /**
+     * Performs a blocking reverse lookup without any caching.
+     *
+     * @return the addresses found, an empty list if none matched, or null if the lookup failed
+     */
+    static List<Address> reverseGeocodeUncached(Context context, double latitude, double longitude) {
+        if (!Geocoder.isPresent()) {
+            Log.e(TAG, "Geocoder service is not present on this device.");
+            return null;
+        }
+        Geocoder geoCoder = new Geocoder(context, Locale.getDefault());
+        try {
+            List<Address> addresses = geoCoder.getFromLocation(latitude, longitude, 1);
+            return addresses != null ? addresses : new ArrayList<>();
+        } catch (IOException e) {
+            Log.e(TAG, "Reverse geocoding failed for " + latitude + ", " + longitude, e);
+            return null;
         }
-        return null;
     }
 }
@@ -0,0 +1,365 @@
+/**
+ * GeocodingCache.java
+ *
+ * This file contains a two-tier cache in front of Android's Geocoder. Forward lookups
+ * (address to GeoPoint) and reverse lookups (coordinates to address line) are memoized in an
+ * in-memory LRU backed by a size-bounded store in the app's cache directory, so the same handful
+ * of addresses shared by a friend group are geocoded once rather than on every screen.
+ *
+ * Key features:
+ * - Implements singleton pattern so every screen shares one cache
+ * - Memory LRU in front of one small file per entry on disk
+ * - Expires successful lookups after 30 days and failed lookups after one day
+ * - Caches failures, so unresolvable addresses are not retried on every request
+ * - Coalesces concurrent requests for the same address into a single Geocoder call
+ * - Runs all lookups off the main thread and delivers results on the main thread
+ *
+ * Outstanding Issues:
+ * - Cached results do not follow changes to the device locale.
+ */
+package com.example.tangry.utils;
+
+import android.content.Context;
+import android.location.Address;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.osmdroid.util.GeoPoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public class GeocodingCache {
+    private static final String TAG = "GeocodingCache";
+    private static final String CACHE_DIR = "geocode_cache";
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_MEMORY_ENTRIES = 128;
+    private static final int MAX_DISK_ENTRIES = 1000;
+    private static final long HIT_TTL_MS = TimeUnit.DAYS.toMillis(30);
+    private static final long MISS_TTL_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long BLOCKING_TIMEOUT_SECONDS = 30;
+
+    private static GeocodingCache instance;
+
+    /**
+     * A cached lookup result. A miss records that the lookup found nothing.
+     */
+    private static class Entry {
+        final boolean found;
+        final double latitude;
+        final double longitude;
+        final String addressLine;
+        final long storedAt;
+
+        Entry(boolean found, double latitude, double longitude, String addressLine, long storedAt) {
+            this.found = found;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.addressLine = addressLine;
+            this.storedAt = storedAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - storedAt > (found ? HIT_TTL_MS : MISS_TTL_MS);
+        }
+    }
+
+    private final Context appContext;
+    private final File cacheDir;
+    // Owns the memory tier, the disk tier and the in-flight table.
+    private final ExecutorService cacheExecutor = Executors.newSingleThreadExecutor();
+    // Runs the blocking Geocoder calls so a slow lookup never delays cache hits.
+    private final ExecutorService geocodeExecutor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Only touched on the cache executor thread.
+    private final LinkedHashMap<String, Entry> memory =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_MEMORY_ENTRIES;
+                }
+            };
+    private final Map<String, List<Consumer<Entry>>> inFlight = new HashMap<>();
+    private int diskEntryCount = -1;
+
+    private GeocodingCache(Context context) {
+        this.appContext = context.getApplicationContext();
+        this.cacheDir = new File(appContext.getCacheDir(), CACHE_DIR);
+    }
+
+    /**
+     * Returns the singleton instance of GeocodingCache.
+     *
+     * @param context any context; the application context is retained
+     * @return the GeocodingCache instance
+     */
+    public static synchronized GeocodingCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new GeocodingCache(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Resolves an address to coordinates.
+     *
+     * @param address  the address to geocode
+     * @param callback receives the GeoPoint, or null if the address could not be resolved, on the main thread
+     */
+    public void getGeoPoint(String address, Consumer<GeoPoint> callback) {
+        lookup(forwardKey(address), () -> geocode(address),
+                entry -> mainHandler.post(() -> callback.accept(toGeoPoint(entry))));
+    }
+
+    /**
+     * Resolves an address to coordinates, blocking the calling thread. Must not be called on the
+     * main thread.
+     *
+     * @param address the address to geocode
+     * @return the GeoPoint, or null if the address could not be resolved
+     */
+    public GeoPoint getGeoPointBlocking(String address) {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Entry> result = new AtomicReference<>();
+        lookup(forwardKey(address), () -> geocode(address), entry -> {
+            result.set(entry);
+            done.countDown();
+        });
+        try {
+            if (!done.await(BLOCKING_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                Log.w(TAG, "Timed out geocoding \"" + address + "\"");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return toGeoPoint(result.get());
+    }
+
+    /**
+     * Resolves coordinates to a human-readable address line. Coordinates are rounded to about
+     * ten metres for caching.
+     *
+     * @param latitude  the latitude in degrees
+     * @param longitude the longitude in degrees
+     * @param callback  receives the address line, or null if none was found, on the main thread
+     */
+    public void getAddressLine(double latitude, double longitude, Consumer<String> callback) {
+        String key = String.format(Locale.ROOT, "rev:%.4f,%.4f", latitude, longitude);
+        lookup(key, () -> reverseGeocode(latitude, longitude),
+                entry -> mainHandler.post(() -> callback.accept(entry != null && entry.found ? entry.addressLine : null)));
+    }
+
+    private static String forwardKey(String address) {
+        return "fwd:" + address.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static GeoPoint toGeoPoint(Entry entry) {
+        return entry != null && entry.found ? new GeoPoint(entry.latitude, entry.longitude) : null;
+    }
+
+    private void lookup(String key, Supplier<Entry> resolver, Consumer<Entry> callback) {
+        cacheExecutor.execute(() -> {
+            Entry cached = read(key);
+            if (cached != null) {
+                callback.accept(cached);
+                return;
+            }
+            List<Consumer<Entry>> waiters = inFlight.get(key);
+            if (waiters != null) {
+                // An identical lookup is already running; share its result.
+                waiters.add(callback);
+                return;
+            }
+            waiters = new ArrayList<>();
+            waiters.add(callback);
+            inFlight.put(key, waiters);
+            geocodeExecutor.execute(() -> {
+                Entry resolved = resolver.get();
+                cacheExecutor.execute(() -> {
+                    if (resolved != null) {
+                        write(key, resolved);
+                    }
+                    for (Consumer<Entry> waiter : inFlight.remove(key)) {
+                        waiter.accept(resolved);
+                    }
+                });
+            });
+        });
+    }
+
+    /**
+     * Returns a fresh entry from memory or disk, promoting disk hits into memory.
+     */
+    private Entry read(String key) {
+        long now = System.currentTimeMillis();
+        Entry entry = memory.get(key);
+        if (entry == null) {
+            entry = readFromDisk(key);
+            if (entry != null) {
+                memory.put(key, entry);
+            }
+        }
+        if (entry != null && entry.isExpired(now)) {
+            memory.remove(key);
+            deleteFromDisk(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private void write(String key, Entry entry) {
+        memory.put(key, entry);
+        writeToDisk(key, entry);
+    }
+
+    // Returns null when the Geocoder is unavailable or fails with an I/O error, so that transient
+    // failures are not cached; an empty result is cached as a miss.
+    private Entry geocode(String address) {
+        List<Address> addresses = GeocoderUtility.geocodeUncached(appContext, address);
+        if (addresses == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (addresses.isEmpty()) {
+            return new Entry(false, 0, 0, null, now);
+        }
+        Address best = addresses.get(0);
+        return new Entry(true, best.getLatitude(), best.getLongitude(), best.getAddressLine(0), now);
+    }
+
+    private Entry reverseGeocode(double latitude, double longitude) {
+        List<Address> addresses = GeocoderUtility.reverseGeocodeUncached(appContext, latitude, longitude);
+        if (addresses == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        String addressLine = addresses.isEmpty() ? null : addresses.get(0).getAddressLine(0);
+        if (addressLine == null || addressLine.isEmpty()) {
+            return new Entry(false, latitude, longitude, null, now);
+        }
+        return new Entry(true, latitude, longitude, addressLine, now);
+    }
+
+    private File fileFor(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(String.format(Locale.ROOT, "%02x", b));
+            }
+            return new File(cacheDir, name.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    private Entry readFromDisk(String key) {
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF())) {
+                return null;
+            }
+            boolean found = in.readBoolean();
+            double latitude = in.readDouble();
+            double longitude = in.readDouble();
+            String addressLine = in.readBoolean() ? in.readUTF() : null;
+            long storedAt = in.readLong();
+            return new Entry(found, latitude, longitude, addressLine, storedAt);
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable geocode cache entry", e);
+            deleteFromDisk(key);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Log.e(TAG, "Could not create geocode cache directory");
+            return;
+        }
+        File file = fileFor(key);
+        boolean isNew = !file.exists();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(key);
+            out.writeBoolean(entry.found);
+            out.writeDouble(entry.latitude);
+            out.writeDouble(entry.longitude);
+            out.writeBoolean(entry.addressLine != null);
+            if (entry.addressLine != null) {
+                out.writeUTF(entry.addressLine);
+            }
+            out.writeLong(entry.storedAt);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write geocode cache entry", e);
+            return;
+        }
+        if (isNew) {
+            if (diskEntryCount < 0) {
+                File[] files = cacheDir.listFiles();
+                diskEntryCount = files == null ? 0 : files.length;
+            } else {
+                diskEntryCount++;
+            }
+            if (diskEntryCount > MAX_DISK_ENTRIES) {
+                trimDisk();
+            }
+        }
+    }
+
+    private void deleteFromDisk(String key) {
+        File file = fileFor(key);
+        if (file.exists() && file.delete() && diskEntryCount > 0) {
+            diskEntryCount--;
+        }
+    }
+
+    // Deletes the least recently written tenth of the entries.
+    private void trimDisk() {
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+        int target = MAX_DISK_ENTRIES * 9 / 10;
+        int remaining = files.length;
+        for (File file : files) {
+            if (remaining <= target) {
+                break;
+            }
+            if (file.delete()) {
+                remaining--;
+            }
+        }
+        diskEntryCount = remaining;
+        Log.d(TAG, "Trimmed geocode cache to " + remaining + " entries");
+    }
+}
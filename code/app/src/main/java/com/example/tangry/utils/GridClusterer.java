@@ -0,0 +1,236 @@
+/**
+ * GridClusterer.java
+ *
+ * This file contains a zoom-dependent grid clusterer for map markers. Points are projected to Web
+ * Mercator pixels and bucketed into square cells of a fixed on-screen size; every cell with more
+ * than one point becomes a single cluster. Because a cell at zoom z covers exactly the 2x2 cells
+ * below it at zoom z + 1, each coarser level is built by merging the finer one, and every level is
+ * memoized, so zooming only costs work proportional to the number of occupied cells.
+ *
+ * Key features:
+ * - Buckets points once at the finest zoom and merges cells upward for coarser zooms
+ * - Memoizes the clusters of every zoom level until the items change
+ * - Reports each cluster's centroid, members and dominant category (e.g. the most common emotion)
+ * - Has no Android dependencies
+ *
+ * Outstanding Issues:
+ * - Not thread-safe; callers must confine access to a single thread.
+ */
+package com.example.tangry.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class GridClusterer<T> {
+
+    private static final double TILE_SIZE_PX = 256.0;
+    private static final double MAX_MERCATOR_LAT = 85.05112878;
+
+    /**
+     * A point to cluster.
+     */
+    public static class Item<T> {
+        private final double latitude;
+        private final double longitude;
+        private final String category;
+        private final T payload;
+
+        public Item(double latitude, double longitude, String category, T payload) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.category = category;
+            this.payload = payload;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+    }
+
+    /**
+     * A group of items that fall into the same grid cell at some zoom level.
+     */
+    public static class Cluster<T> {
+        private final double latitude;
+        private final double longitude;
+        private final List<T> payloads;
+        private final String dominantCategory;
+
+        Cluster(double latitude, double longitude, List<T> payloads, String dominantCategory) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.payloads = payloads;
+            this.dominantCategory = dominantCategory;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        /**
+         * Returns the payloads of the member items, in the order the items were given.
+         */
+        public List<T> getPayloads() {
+            return payloads;
+        }
+
+        public int size() {
+            return payloads.size();
+        }
+
+        /**
+         * Returns the most common category among the members; ties go to the category that
+         * appeared first in the item list.
+         */
+        public String getDominantCategory() {
+            return dominantCategory;
+        }
+    }
+
+    /**
+     * Accumulates the members of one grid cell. Item indexes are kept sorted so clusters list
+     * their payloads in the original item order.
+     */
+    private static class Cell {
+        final List<Integer> itemIndexes = new ArrayList<>();
+        double sumLat;
+        double sumLng;
+
+        void add(Cell other) {
+            itemIndexes.addAll(other.itemIndexes);
+            sumLat += other.sumLat;
+            sumLng += other.sumLng;
+        }
+    }
+
+    private final double cellSizePx;
+    private final int maxZoom;
+    private List<Item<T>> items = Collections.emptyList();
+    private final Map<Integer, Map<Long, Cell>> cellsByZoom = new HashMap<>();
+    private final Map<Integer, List<Cluster<T>>> clustersByZoom = new HashMap<>();
+
+    /**
+     * Creates a clusterer.
+     *
+     * @param cellSizePx the on-screen size of a grid cell in pixels
+     * @param maxZoom    the finest zoom level that will be requested; higher zooms are clamped to it
+     */
+    public GridClusterer(double cellSizePx, int maxZoom) {
+        this.cellSizePx = cellSizePx;
+        this.maxZoom = maxZoom;
+    }
+
+    /**
+     * Replaces the items and forgets every memoized level.
+     *
+     * @param newItems the items to cluster
+     */
+    public void setItems(List<Item<T>> newItems) {
+        items = new ArrayList<>(newItems);
+        cellsByZoom.clear();
+        clustersByZoom.clear();
+    }
+
+    /**
+     * Returns the clusters for a zoom level. A cluster of size one represents a single item.
+     *
+     * @param zoom the map zoom level; clamped to [0, maxZoom]
+     * @return the clusters, in the order of their first member
+     */
+    public List<Cluster<T>> clustersAt(int zoom) {
+        int level = Math.max(0, Math.min(zoom, maxZoom));
+        List<Cluster<T>> clusters = clustersByZoom.get(level);
+        if (clusters == null) {
+            clusters = toClusters(cellsAt(level));
+            clustersByZoom.put(level, clusters);
+        }
+        return clusters;
+    }
+
+    private Map<Long, Cell> cellsAt(int level) {
+        Map<Long, Cell> cells = cellsByZoom.get(level);
+        if (cells != null) {
+            return cells;
+        }
+        if (level == maxZoom) {
+            cells = bucketItems();
+        } else {
+            // Merge each 2x2 block of the finer level into its parent cell.
+            cells = new LinkedHashMap<>();
+            for (Map.Entry<Long, Cell> child : cellsAt(level + 1).entrySet()) {
+                long key = child.getKey();
+                long parentKey = cellKey((int) (key >> 32) >> 1, (int) key >> 1);
+                Cell parent = cells.get(parentKey);
+                if (parent == null) {
+                    parent = new Cell();
+                    cells.put(parentKey, parent);
+                }
+                parent.add(child.getValue());
+            }
+            for (Cell cell : cells.values()) {
+                Collections.sort(cell.itemIndexes);
+            }
+        }
+        cellsByZoom.put(level, cells);
+        return cells;
+    }
+
+    private Map<Long, Cell> bucketItems() {
+        Map<Long, Cell> cells = new LinkedHashMap<>();
+        double worldSize = TILE_SIZE_PX * Math.pow(2, maxZoom);
+        for (int i = 0; i < items.size(); i++) {
+            Item<T> item = items.get(i);
+            double x = (item.longitude + 180) / 360 * worldSize;
+            double lat = Math.toRadians(Math.max(-MAX_MERCATOR_LAT, Math.min(MAX_MERCATOR_LAT, item.latitude)));
+            double y = (1 - Math.log(Math.tan(lat) + 1 / Math.cos(lat)) / Math.PI) / 2 * worldSize;
+            long key = cellKey((int) Math.floor(x / cellSizePx), (int) Math.floor(y / cellSizePx));
+            Cell cell = cells.get(key);
+            if (cell == null) {
+                cell = new Cell();
+                cells.put(key, cell);
+            }
+            cell.itemIndexes.add(i);
+            cell.sumLat += item.latitude;
+            cell.sumLng += item.longitude;
+        }
+        return cells;
+    }
+
+    private List<Cluster<T>> toClusters(Map<Long, Cell> cells) {
+        List<Cluster<T>> clusters = new ArrayList<>(cells.size());
+        for (Cell cell : cells.values()) {
+            List<T> payloads = new ArrayList<>(cell.itemIndexes.size());
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (int index : cell.itemIndexes) {
+                Item<T> item = items.get(index);
+                payloads.add(item.payload);
+                Integer previous = counts.get(item.category);
+                counts.put(item.category, previous == null ? 1 : previous + 1);
+            }
+            String dominant = null;
+            int dominantCount = 0;
+            for (Map.Entry<String, Integer> count : counts.entrySet()) {
+                // Strictly greater, so ties keep the category seen first.
+                if (count.getValue() > dominantCount) {
+                    dominant = count.getKey();
+                    dominantCount = count.getValue();
+                }
+            }
+            int n = cell.itemIndexes.size();
+            clusters.add(new Cluster<>(cell.sumLat / n, cell.sumLng / n, payloads, dominant));
+        }
+        return clusters;
+    }
+
+    private static long cellKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+}
@@ -4,6 +4,10 @@
  * Utility class that provides shared methods for camera and gallery image selection
  * across multiple fragments. This reduces code duplication and ensures consistent
  * behavior for image handling throughout the app.
+ *
+ * Camera captures are full-size JPEGs of several megabytes. processCapture turns a capture into
+ * an upright, compressed image in the staging directory and deletes the capture, so it is never
+ * decoded at full resolution and does not linger in app storage.
  */
 
 package com.example.tangry.utils;
@@ -23,6 +27,9 @@ import androidx.core.content.ContextCompat;
 import androidx.core.content.FileProvider;
 import androidx.fragment.app.Fragment;
 
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
@@ -34,6 +41,7 @@ public class ImageCaptureUtil {
     public static final int PICK_IMAGE_REQUEST = 1;
     public static final int CAMERA_REQUEST = 2;
     public static final int CAMERA_PERMISSION_REQUEST = 100;
+    public static final String CAPTURE_PREFIX = "JPEG_";
 
     /**
      * Shows a dialog allowing the user to choose between camera or gallery for
@@ -87,8 +95,8 @@ public class ImageCaptureUtil {
         File photoFile = null;
         try {
             String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-            String imageFileName = "JPEG_" + timeStamp + "_";
-            File storageDir = fragment.requireContext().getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+            String imageFileName = CAPTURE_PREFIX + timeStamp + "_";
+            File storageDir = getCaptureDir(fragment.requireContext());
             photoFile = File.createTempFile(imageFileName, ".jpg", storageDir);
         } catch (IOException ex) {
             Log.e(TAG, "Error creating image file", ex);
@@ -110,6 +118,41 @@ public class ImageCaptureUtil {
         return cameraImageUri;
     }
 
+    /**
+     * Returns the directory the camera writes captures into.
+     *
+     * @param context any context
+     * @return the directory, or null if external storage is unavailable
+     */
+    public static File getCaptureDir(Context context) {
+        return context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+    }
+
+    /**
+     * Compresses a camera capture into the staging directory, then deletes the capture. The
+     * callbacks run on the main thread.
+     *
+     * @param context    any context
+     * @param captureUri the Uri returned by openCamera
+     * @param onSuccess  receives the Uri of the upright, compressed image
+     * @param onFailure  receives the error; the capture is kept in that case
+     */
+    public static void processCapture(Context context, Uri captureUri, OnSuccessListener<Uri> onSuccess,
+                                      OnFailureListener onFailure) {
+        Context appContext = context.getApplicationContext();
+        ImageCompressor.getInstance().compress(appContext, captureUri, compressedUri -> {
+            // A capture small enough to upload as is comes back unchanged and must be kept.
+            if (!compressedUri.equals(captureUri)) {
+                try {
+                    appContext.getContentResolver().delete(captureUri, null, null);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Could not delete capture " + captureUri, e);
+                }
+            }
+            onSuccess.onSuccess(compressedUri);
+        }, onFailure);
+    }
+
     /**
      * Checks if the camera permission is granted, and requests it if not
      *
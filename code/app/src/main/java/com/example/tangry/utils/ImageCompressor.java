@@ -0,0 +1,401 @@
+/**
+ * ImageCompressor.java
+ *
+ * This file contains the engine that shrinks photos to the 64KB upload budget. It replaces the
+ * previous approach of decoding the full-resolution photo (often 12+ MP, about 50 MB of ARGB) and
+ * re-encoding it at linearly decreasing qualities and scales, which was duplicated in ImageHelper
+ * and EditEmotionFragment.
+ *
+ * Key features:
+ * - Reads the image bounds first and decodes with inSampleSize, so full resolution is never decoded
+ * - Applies the EXIF orientation in the same pass as the final scale, so output is always upright
+ * - Encodes lossy WebP alongside JPEG and keeps the smaller output; at the same byte budget WebP
+ *   usually holds a higher visual quality, which also makes it cheaper to decode in the feed
+ * - Binary-searches a shared quality level against the byte budget, encoding every format of a
+ *   level in parallel on a small pool
+ * - Downscales only when the quality floor does not fit, recycling each step
+ * - Encodes into one reused output buffer per format
+ * - Generates the small thumbnails that lists load instead of the full image
+ * - Runs on a background executor and reports results on the main thread
+ * - Writes results into a size-capped staging directory instead of leaving them in the cache
+ *   directory, and clears leftovers from earlier processes once at startup
+ *
+ * Outstanding Issues:
+ * - AVIF is not offered because Bitmap.compress has no AVIF encoder on the supported API levels.
+ * - Quality levels are matched across formats by a fixed offset, not by measuring each output.
+ */
+package com.example.tangry.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ImageCompressor {
+    private static final String TAG = "ImageCompressor";
+    public static final int MAX_BYTES = 64 * 1024;
+    // A 64KB JPEG cannot carry more detail than this, so larger photos are subsampled while decoding.
+    private static final int MAX_DECODE_EDGE = 1280;
+    // Quality levels on the JPEG scale. Below the floor artifacts become obvious, so the image is
+    // downscaled instead.
+    private static final int MIN_LEVEL = 50;
+    private static final int MAX_LEVEL = 90;
+    private static final float DOWNSCALE_STEP = 0.75f;
+    private static final int MIN_EDGE = 160;
+    // List rows are full width and about 200dp tall; 480px covers them on most screens.
+    private static final int THUMBNAIL_EDGE = 480;
+    private static final int THUMBNAIL_LEVEL = 70;
+    private static final String STAGING_DIR = "image_staging";
+    // Room for dozens of staged uploads; files are read right after they are written.
+    private static final long STAGING_MAX_BYTES = 4L * 1024 * 1024;
+    // Written directly into the cache directory before staging existed.
+    private static final String[] LEGACY_PREFIXES = {"compressed_image", "thumbnail"};
+
+    private static ImageCompressor instance;
+
+    /**
+     * The formats tried for every image.
+     */
+    private enum OutputFormat {
+        JPEG(Bitmap.CompressFormat.JPEG, ".jpg", 0),
+        // WebP at a given quality looks roughly like JPEG ten points higher.
+        WEBP(webpFormat(), ".webp", -10);
+
+        private final Bitmap.CompressFormat compressFormat;
+        private final String extension;
+        private final int qualityOffset;
+
+        OutputFormat(Bitmap.CompressFormat compressFormat, String extension, int qualityOffset) {
+            this.compressFormat = compressFormat;
+            this.extension = extension;
+            this.qualityOffset = qualityOffset;
+        }
+
+        int qualityFor(int level) {
+            return Math.max(0, Math.min(100, level + qualityOffset));
+        }
+    }
+
+    private static final OutputFormat[] FORMATS = OutputFormat.values();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ExecutorService encodePool = Executors.newFixedThreadPool(FORMATS.length);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Guarded by this; reset() keeps the grown capacity, so each buffer is allocated once.
+    private final ByteArrayOutputStream[] encodeBuffers = new ByteArrayOutputStream[FORMATS.length];
+    private final int[] encodedSizes = new int[FORMATS.length];
+    private int encodedLevel = -1;
+    // Guarded by this.
+    private StagingDirectory staging;
+    private final AtomicBoolean cleanedUp = new AtomicBoolean(false);
+
+    private ImageCompressor() {
+        for (int i = 0; i < FORMATS.length; i++) {
+            encodeBuffers[i] = new ByteArrayOutputStream(2 * MAX_BYTES);
+        }
+    }
+
+    public static synchronized ImageCompressor getInstance() {
+        if (instance == null) {
+            instance = new ImageCompressor();
+        }
+        return instance;
+    }
+
+    /**
+     * Deletes the staged files, camera captures and legacy cache files left by earlier processes.
+     * Runs once per process on the background executor, ahead of any compression queued later, so
+     * it never deletes a file this process is still using.
+     *
+     * @param context any context
+     */
+    public void cleanUpOnStartup(Context context) {
+        if (!cleanedUp.compareAndSet(false, true)) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            int deleted = staging(appContext).clear();
+            deleted += deleteFiles(appContext.getCacheDir(), LEGACY_PREFIXES);
+            deleted += deleteFiles(ImageCaptureUtil.getCaptureDir(appContext),
+                    new String[]{ImageCaptureUtil.CAPTURE_PREFIX});
+            Log.d(TAG, "Deleted " + deleted + " leftover image files");
+        });
+    }
+
+    /**
+     * Compresses an image on the background executor.
+     *
+     * @param context   any context
+     * @param imageUri  the image to compress
+     * @param onSuccess receives a Uri of an image under MAX_BYTES on the main thread
+     * @param onFailure receives the error on the main thread
+     */
+    public void compress(Context context, Uri imageUri, OnSuccessListener<Uri> onSuccess,
+                         OnFailureListener onFailure) {
+        Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            try {
+                Uri result = compressBlocking(appContext, imageUri);
+                mainHandler.post(() -> onSuccess.onSuccess(result));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Compression failed for " + imageUri, e);
+                mainHandler.post(() -> onFailure.onFailure(e));
+            }
+        });
+    }
+
+    /**
+     * Compresses an image on the calling thread. Upright images already under MAX_BYTES are
+     * returned as is; small images with an EXIF rotation or mirroring are re-encoded upright.
+     *
+     * @param context  any context
+     * @param imageUri the image to compress
+     * @return a Uri of an image under MAX_BYTES
+     * @throws IOException if the image cannot be read or compressed under MAX_BYTES
+     */
+    public synchronized Uri compressBlocking(Context context, Uri imageUri) throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(imageUri, "r")) {
+            long fileSize = pfd != null ? pfd.getStatSize() : -1;
+            if (fileSize >= 0 && fileSize <= MAX_BYTES && isUpright(resolver, imageUri)) {
+                return imageUri;
+            }
+        }
+
+        Bitmap bitmap = decodeSubsampled(resolver, imageUri, MAX_DECODE_EDGE);
+        try {
+            while (true) {
+                Bitmap target = bitmap;
+                encodedLevel = -1;
+                int level = ImageSizing.highestQualityWithin(MIN_LEVEL, MAX_LEVEL, MAX_BYTES,
+                        l -> encodeAll(target, l));
+                if (level >= 0) {
+                    if (encodedLevel != level) {
+                        encodeAll(target, level);
+                    }
+                    int chosen = ImageSizing.smallestWithin(encodedSizes, MAX_BYTES);
+                    Log.d(TAG, "Compressed to " + encodedSizes[chosen] + " bytes as " + FORMATS[chosen]
+                            + " at level " + level + ", " + target.getWidth() + "x" + target.getHeight());
+                    return writeToStaging(context, "compressed_image", chosen);
+                }
+                int width = Math.round(bitmap.getWidth() * DOWNSCALE_STEP);
+                int height = Math.round(bitmap.getHeight() * DOWNSCALE_STEP);
+                if (Math.max(width, height) < MIN_EDGE) {
+                    throw new IOException("Could not compress image to under 64KB.");
+                }
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+                bitmap.recycle();
+                bitmap = scaled;
+            }
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Generates a list thumbnail of an image on the background executor.
+     *
+     * @param context   any context
+     * @param imageUri  the image to shrink
+     * @param onSuccess receives the Uri of the thumbnail file on the main thread
+     * @param onFailure receives the error on the main thread
+     */
+    public void createThumbnail(Context context, Uri imageUri, OnSuccessListener<Uri> onSuccess,
+                                OnFailureListener onFailure) {
+        Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            try {
+                Uri result = createThumbnailBlocking(appContext, imageUri);
+                mainHandler.post(() -> onSuccess.onSuccess(result));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Thumbnail failed for " + imageUri, e);
+                mainHandler.post(() -> onFailure.onFailure(e));
+            }
+        });
+    }
+
+    /**
+     * Generates a list thumbnail of an image on the calling thread, in whichever format is smaller.
+     *
+     * @param context  any context
+     * @param imageUri the image to shrink
+     * @return the Uri of the thumbnail file
+     * @throws IOException if the image cannot be read
+     */
+    public synchronized Uri createThumbnailBlocking(Context context, Uri imageUri) throws IOException {
+        Bitmap bitmap = decodeSubsampled(context.getContentResolver(), imageUri, THUMBNAIL_EDGE);
+        try {
+            encodeAll(bitmap, THUMBNAIL_LEVEL);
+            return writeToStaging(context, "thumbnail", ImageSizing.smallestWithin(encodedSizes, Integer.MAX_VALUE));
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Encodes the bitmap in every format at the given level in parallel, into encodeBuffers.
+     *
+     * @return the smallest encoded size
+     */
+    private int encodeAll(Bitmap bitmap, int level) throws IOException {
+        List<Future<Integer>> results = new ArrayList<>(FORMATS.length);
+        for (int i = 0; i < FORMATS.length; i++) {
+            OutputFormat format = FORMATS[i];
+            ByteArrayOutputStream buffer = encodeBuffers[i];
+            results.add(encodePool.submit(() -> {
+                buffer.reset();
+                bitmap.compress(format.compressFormat, format.qualityFor(level), buffer);
+                return buffer.size();
+            }));
+        }
+        int smallest = Integer.MAX_VALUE;
+        try {
+            for (int i = 0; i < FORMATS.length; i++) {
+                encodedSizes[i] = results.get(i).get();
+                smallest = Math.min(smallest, encodedSizes[i]);
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Encoding failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Encoding interrupted", e);
+        }
+        encodedLevel = level;
+        return smallest;
+    }
+
+    private Bitmap decodeSubsampled(ContentResolver resolver, Uri imageUri, int maxEdge) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = resolver.openInputStream(imageUri)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Not a decodable image: " + imageUri);
+        }
+
+        int orientation = readOrientation(resolver, imageUri);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = ImageSizing.calculateInSampleSize(bounds.outWidth, bounds.outHeight, maxEdge);
+        Bitmap decoded;
+        try (InputStream in = resolver.openInputStream(imageUri)) {
+            decoded = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (decoded == null) {
+            throw new IOException("Could not decode image: " + imageUri);
+        }
+
+        // inSampleSize only halves, so finish with an exact scale to maxEdge, rotating and
+        // mirroring upright in the same pass.
+        Matrix matrix = new Matrix();
+        int longEdge = Math.max(decoded.getWidth(), decoded.getHeight());
+        if (longEdge > maxEdge) {
+            float scale = maxEdge / (float) longEdge;
+            matrix.postScale(scale, scale);
+        }
+        matrix.postRotate(ImageSizing.rotationDegrees(orientation));
+        if (ImageSizing.isMirrored(orientation)) {
+            matrix.postScale(-1, 1);
+        }
+        if (matrix.isIdentity()) {
+            return decoded;
+        }
+        Bitmap transformed = Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(),
+                matrix, true);
+        if (transformed != decoded) {
+            decoded.recycle();
+        }
+        return transformed;
+    }
+
+    /**
+     * Returns whether an image displays upright without applying its EXIF orientation.
+     */
+    private boolean isUpright(ContentResolver resolver, Uri imageUri) {
+        int orientation = readOrientation(resolver, imageUri);
+        return ImageSizing.rotationDegrees(orientation) == 0 && !ImageSizing.isMirrored(orientation);
+    }
+
+    /**
+     * Reads the EXIF orientation of an image, treating images without EXIF data as upright.
+     */
+    private int readOrientation(ContentResolver resolver, Uri imageUri) {
+        try (InputStream in = resolver.openInputStream(imageUri)) {
+            if (in == null) {
+                return ExifInterface.ORIENTATION_NORMAL;
+            }
+            return new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Could not read EXIF orientation of " + imageUri, e);
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    private Uri writeToStaging(Context context, String prefix, int formatIndex) throws IOException {
+        StagingDirectory directory = staging(context);
+        File stagedFile = directory.newFile(prefix, FORMATS[formatIndex].extension);
+        try (FileOutputStream fos = new FileOutputStream(stagedFile)) {
+            encodeBuffers[formatIndex].writeTo(fos);
+        }
+        directory.trim(stagedFile);
+        return Uri.fromFile(stagedFile);
+    }
+
+    private synchronized StagingDirectory staging(Context context) {
+        if (staging == null) {
+            staging = new StagingDirectory(new File(context.getCacheDir(), STAGING_DIR), STAGING_MAX_BYTES);
+        }
+        return staging;
+    }
+
+    private static int deleteFiles(File dir, String[] prefixes) {
+        File[] files = dir != null ? dir.listFiles(File::isFile) : null;
+        if (files == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File file : files) {
+            for (String prefix : prefixes) {
+                if (file.getName().startsWith(prefix) && file.delete()) {
+                    deleted++;
+                    break;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        // Before API 30 WEBP is lossy for qualities below 100.
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+}
@@ -2,38 +2,57 @@
  * ImageHelper.java
  *
  * This utility class provides methods for compressing and uploading images.
- * The compressImage method ensures that an image from a given Uri is compressed to a size
- * under 64KB, using quality reduction and scaling if necessary. The uploadImage method uploads
- * an image to Firebase Storage and returns the download URL via callbacks.
+ * The compressImage methods ensure that an image from a given Uri is compressed to a size
+ * under 64KB, delegating to ImageCompressor, which subsamples while decoding and picks the smaller
+ * of a WebP and a JPEG encoding at the best quality that fits. The uploadImage method uploads
+ * an image and a small list thumbnail to Firebase Storage under the image's content hash,
+ * skipping the upload when the same bytes are already stored, and returns both download URLs via
+ * callbacks.
  *
  * Outstanding Issues:
  * - The compression strategy may need adjustments for different image types or desired quality.
  * - Additional error handling and support for different file formats could be implemented in the future.
+ * - Content-addressed images may be shared by several posts, so they are not deleted with a post;
+ *   StorageGcService removes them once unreferenced, up to a day later.
  */
 
 package com.example.tangry.utils;
 
 import android.content.Context;
-import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
-import android.os.ParcelFileDescriptor;
-import android.provider.MediaStore;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+import com.example.tangry.models.EmotionPost;
+import com.example.tangry.models.UploadedImage;
+import com.example.tangry.repositories.ImageStorageRepository;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.StorageReference;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.UUID;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 public class ImageHelper {
+    private static final String TAG = "ImageHelper";
+
+    private static final ExecutorService hashExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     /**
-     * Compresses an image from the provided Uri so that its size is under 64KB.
-     * The method first attempts to reduce the JPEG quality, and if necessary, scales down the image
-     * dimensions until the size requirement is met.
+     * Compresses an image from the provided Uri so that its size is under 64KB, on the calling
+     * thread. Prefer compressImageAsync from the main thread.
      *
      * @param originalUri The Uri of the original image.
      * @param context     The application context.
@@ -41,66 +60,191 @@ public class ImageHelper {
      * @throws IOException If the image cannot be compressed to under 64KB.
      */
     public static Uri compressImage(Uri originalUri, Context context) throws IOException {
-        ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(originalUri, "r");
-        long fileSize = pfd.getStatSize();
-        pfd.close();
-
-        if (fileSize <= 65536) {
-            return originalUri;
-        }
+        return ImageCompressor.getInstance().compressBlocking(context, originalUri);
+    }
 
-        Bitmap originalBitmap = MediaStore.Images.Media.getBitmap(context.getContentResolver(), originalUri);
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    /**
+     * Compresses an image from the provided Uri so that its size is under 64KB, on a background
+     * thread. The callbacks run on the main thread.
+     *
+     * @param originalUri The Uri of the original image.
+     * @param context     The application context.
+     * @param onSuccess   Callback with a Uri pointing to the compressed image file.
+     * @param onFailure   Callback for handling any errors during compression.
+     */
+    public static void compressImageAsync(Uri originalUri, Context context,
+                                          OnSuccessListener<Uri> onSuccess,
+                                          OnFailureListener onFailure) {
+        ImageCompressor.getInstance().compress(context, originalUri, onSuccess, onFailure);
+    }
 
-        int quality = 80;
-        do {
-            outputStream.reset();
-            originalBitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
-            quality -= 10;
-        } while (outputStream.size() > 65536 && quality > 0);
+    /**
+     * Uploads an image file and a generated list thumbnail to Firebase Storage and returns both
+     * download URLs via the provided callback. Objects are named by the SHA-256 of the image
+     * bytes, so an image already in Storage is found from the repository's URL cache or with an
+     * existence check instead of being uploaded again. Fresh
+     * uploads carry their own download token, so no download URL lookup follows them. If no
+     * thumbnail can be generated, only the image is uploaded and the thumbnail URL is null.
+     *
+     * @param context   The application context.
+     * @param imageUri  The Uri of the image to upload.
+     * @param onSuccess Callback with the download URLs upon successful upload, on the main thread.
+     * @param onFailure Callback for handling any errors during upload, on the main thread.
+     */
+    public static void uploadImage(Context context, Uri imageUri,
+                                   OnSuccessListener<UploadedImage> onSuccess,
+                                   OnFailureListener onFailure) {
+        Context appContext = context.getApplicationContext();
+        hashExecutor.execute(() -> {
+            String hash;
+            try (InputStream in = appContext.getContentResolver().openInputStream(imageUri)) {
+                if (in == null) {
+                    throw new IOException("Cannot open image: " + imageUri);
+                }
+                hash = ContentHash.sha256Hex(in);
+            } catch (IOException e) {
+                mainHandler.post(() -> onFailure.onFailure(e));
+                return;
+            }
+            mainHandler.post(() -> uploadByHash(appContext, imageUri, hash, onSuccess, onFailure));
+        });
+    }
 
-        if (outputStream.size() > 65536) {
-            float scale = 0.8f;
-            while (outputStream.size() > 65536 && scale > 0.1f) {
-                int newWidth = (int) (originalBitmap.getWidth() * scale);
-                int newHeight = (int) (originalBitmap.getHeight() * scale);
-                Bitmap scaledBitmap = Bitmap.createScaledBitmap(originalBitmap, newWidth, newHeight, true);
-                outputStream.reset();
-                scaledBitmap.compress(Bitmap.CompressFormat.JPEG, 70, outputStream);
-                scale -= 0.1f;
+    private static void uploadByHash(Context context, Uri imageUri, String hash,
+                                     OnSuccessListener<UploadedImage> onSuccess,
+                                     OnFailureListener onFailure) {
+        String imagePath = "images/" + hash;
+        String thumbnailPath = "thumbnails/" + hash;
+        ImageStorageRepository repository = ImageStorageRepository.getInstance(context);
+        repository.findStoredImage(imagePath, thumbnailPath, existing -> {
+            String existingImageUrl = existing.getImageUrl();
+            if (existingImageUrl != null && existing.getThumbnailUrl() != null) {
+                onSuccess.onSuccess(existing);
+                return;
             }
-        }
+            // A stored image is never uploaded again: a new upload would replace its download
+            // token and break the URLs other posts hold.
+            ImageCompressor.getInstance().createThumbnail(context, imageUri,
+                    thumbnailUri -> {
+                        Consumer<Exception> failed = e -> {
+                            new File(thumbnailUri.getPath()).delete();
+                            onFailure.onFailure(e);
+                        };
+                        if (existingImageUrl != null) {
+                            repository.uploadImage(thumbnailUri, thumbnailPath, thumbnailUrl -> {
+                                new File(thumbnailUri.getPath()).delete();
+                                onSuccess.onSuccess(new UploadedImage(existingImageUrl, thumbnailUrl));
+                            }, failed);
+                        } else {
+                            repository.uploadImageWithThumbnail(imageUri, thumbnailUri, imagePath, thumbnailPath,
+                                    uploaded -> {
+                                        new File(thumbnailUri.getPath()).delete();
+                                        onSuccess.onSuccess(uploaded);
+                                    }, failed);
+                        }
+                    },
+                    e -> {
+                        if (existingImageUrl != null) {
+                            onSuccess.onSuccess(new UploadedImage(existingImageUrl, null));
+                        } else {
+                            repository.uploadImage(imageUri, imagePath,
+                                    url -> onSuccess.onSuccess(new UploadedImage(url, null)),
+                                    onFailure::onFailure);
+                        }
+                    });
+        }, onFailure::onFailure);
+    }
 
-        if (outputStream.size() > 65536) {
-            throw new IOException("Could not compress image to under 64KB.");
+    /**
+     * Deletes an image from Firebase Storage unless other posts may share it. Content-addressed
+     * objects are kept, since another post may use the same picture, but their cached download
+     * URL is dropped. Failures are logged only.
+     *
+     * @param url    The download URL of the image; local URIs and null are ignored.
+     * @param onDone Invoked once the deletion finished or was skipped, on the main thread.
+     */
+    public static void deleteUnsharedImage(String url, Runnable onDone) {
+        if (url == null || !url.startsWith("https://firebasestorage")) {
+            onDone.run();
+            return;
+        }
+        StorageReference ref;
+        try {
+            ref = FirebaseStorage.getInstance().getReferenceFromUrl(url);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid image storage URL", e);
+            onDone.run();
+            return;
         }
+        if (ContentHash.isContentAddressed(ref.getName())) {
+            Log.d(TAG, "Keeping shared image " + ref.getPath());
+            // The collector may delete it once unreferenced; a later reuse must check it first.
+            ImageStorageRepository.getInstance().forgetImageUrl(ref.getPath().substring(1));
+            onDone.run();
+            return;
+        }
+        ref.delete()
+                .addOnSuccessListener(aVoid -> Log.d(TAG, "Image deleted successfully"))
+                .addOnFailureListener(e -> Log.e(TAG, "Error deleting image", e))
+                .addOnCompleteListener(task -> onDone.run());
+    }
 
-        File cacheDir = context.getCacheDir();
-        File tempFile = File.createTempFile("compressed_image", ".jpg", cacheDir);
-        FileOutputStream fos = new FileOutputStream(tempFile);
-        fos.write(outputStream.toByteArray());
-        fos.close();
+    /**
+     * Returns a Glide listener that, when a stored image fails to load, resolves a fresh download
+     * URL for it and hands it to the caller to load instead. A stored URL stops working when its
+     * download token is revoked, e.g. from the Firebase console. Local URIs are ignored, and the
+     * reload only happens if the fresh URL differs, so a missing image is not retried forever.
+     *
+     * @param url    The download URL being loaded.
+     * @param reload Receives the fresh URL on the main thread.
+     * @return The listener to pass to RequestBuilder.listener.
+     */
+    public static RequestListener<Drawable> refreshUrlOnFailure(String url, Consumer<String> reload) {
+        return new RequestListener<Drawable>() {
+            @Override
+            public boolean onLoadFailed(@Nullable GlideException e, @Nullable Object model,
+                                        @NonNull Target<Drawable> target, boolean isFirstResource) {
+                if (url == null || !url.startsWith("https://firebasestorage")) {
+                    return false;
+                }
+                StorageReference ref;
+                try {
+                    ref = FirebaseStorage.getInstance().getReferenceFromUrl(url);
+                } catch (IllegalArgumentException invalid) {
+                    Log.e(TAG, "Invalid image storage URL", invalid);
+                    return false;
+                }
+                ImageStorageRepository.getInstance().refreshImageUrl(ref.getPath().substring(1),
+                        fresh -> {
+                            if (!fresh.equals(url)) {
+                                reload.accept(fresh);
+                            }
+                        },
+                        refreshError -> Log.e(TAG, "Could not refresh image URL", refreshError));
+                return false;
+            }
 
-        return Uri.fromFile(tempFile);
+            @Override
+            public boolean onResourceReady(@NonNull Drawable resource, @NonNull Object model,
+                                           Target<Drawable> target, @NonNull DataSource dataSource,
+                                           boolean isFirstResource) {
+                return false;
+            }
+        };
     }
 
     /**
-     * Uploads an image file to Firebase Storage and returns its download Uri via the provided callback.
+     * Returns the URL a list row should load for a post's image: the thumbnail if the post has
+     * one, otherwise the full image.
      *
-     * @param imageUri  The Uri of the image to upload.
-     * @param onSuccess Callback with the download Uri upon successful upload.
-     * @param onFailure Callback for handling any errors during upload.
+     * @param post The post whose image is shown.
+     * @return The URL to load, or null if the post has no image.
      */
-    public static void uploadImage(Uri imageUri,
-                                   OnSuccessListener<Uri> onSuccess,
-                                   OnFailureListener onFailure) {
-        StorageReference storageRef = FirebaseStorage.getInstance().getReference();
-        StorageReference imageRef = storageRef.child("images/" + UUID.randomUUID().toString());
-        imageRef.putFile(imageUri)
-                .addOnSuccessListener(taskSnapshot ->
-                        imageRef.getDownloadUrl()
-                                .addOnSuccessListener(onSuccess)
-                                .addOnFailureListener(onFailure))
-                .addOnFailureListener(onFailure);
+    public static String listImageUrl(EmotionPost post) {
+        String thumbnail = post.getThumbnailUri();
+        if (thumbnail != null && !thumbnail.isEmpty()) {
+            return thumbnail;
+        }
+        return post.getImageUri();
     }
 }
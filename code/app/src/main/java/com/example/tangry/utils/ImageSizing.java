@@ -0,0 +1,125 @@
+/**
+ * ImageSizing.java
+ *
+ * This utility class contains the sizing decisions behind image compression, kept free of Android
+ * dependencies so they can be unit tested: how much to subsample a photo while decoding, how to
+ * turn its EXIF orientation upright, and the binary search for the highest encoder quality whose
+ * output fits a byte budget.
+ *
+ * Key features:
+ * - Power-of-two subsampling so large photos are never decoded at full resolution
+ * - Maps EXIF orientations to a rotation and mirror, applied in the same pass as the final scale
+ * - Binary search over quality, needing about log2(range) encodes instead of a linear scan
+ * - Picks the smallest of several encodings that fit the budget
+ */
+package com.example.tangry.utils;
+
+import java.io.IOException;
+
+public class ImageSizing {
+
+    /**
+     * Encodes an image at a given quality and reports the encoded size.
+     */
+    public interface QualityEncoder {
+        /**
+         * @param quality the encoder quality, 0-100
+         * @return the encoded size in bytes
+         */
+        int encode(int quality) throws IOException;
+    }
+
+    /**
+     * Returns the largest power-of-two sample size that keeps the decoded image's longest edge
+     * at or above maxLongEdge, so the decoded image is at most twice the target before scaling.
+     *
+     * @param width       the full image width
+     * @param height      the full image height
+     * @param maxLongEdge the longest edge wanted after decoding
+     * @return the value for BitmapFactory.Options.inSampleSize
+     */
+    public static int calculateInSampleSize(int width, int height, int maxLongEdge) {
+        int longEdge = Math.max(width, height);
+        int sampleSize = 1;
+        while (longEdge / (sampleSize * 2) >= maxLongEdge) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Returns the clockwise rotation that makes an image upright, applied before any mirroring.
+     *
+     * @param exifOrientation the EXIF orientation tag, 1-8; other values mean upright
+     * @return 0, 90, 180 or 270
+     */
+    public static int rotationDegrees(int exifOrientation) {
+        switch (exifOrientation) {
+            case 3: // ROTATE_180
+            case 4: // FLIP_VERTICAL
+                return 180;
+            case 5: // TRANSPOSE
+            case 6: // ROTATE_90
+                return 90;
+            case 7: // TRANSVERSE
+            case 8: // ROTATE_270
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns whether an image must be mirrored horizontally, after its rotation, to be upright.
+     *
+     * @param exifOrientation the EXIF orientation tag, 1-8; other values mean upright
+     * @return true for the flipped orientations
+     */
+    public static boolean isMirrored(int exifOrientation) {
+        return exifOrientation == 2 || exifOrientation == 4 || exifOrientation == 5 || exifOrientation == 7;
+    }
+
+    /**
+     * Finds the highest quality in [minQuality, maxQuality] whose encoding fits the budget,
+     * assuming the encoded size grows with quality.
+     *
+     * @param minQuality the lowest acceptable quality
+     * @param maxQuality the highest quality to try
+     * @param maxBytes   the byte budget
+     * @param encoder    encodes at a quality and returns the size
+     * @return the best quality, or -1 if even minQuality exceeds the budget
+     */
+    public static int highestQualityWithin(int minQuality, int maxQuality, int maxBytes,
+                                           QualityEncoder encoder) throws IOException {
+        int low = minQuality;
+        int high = maxQuality;
+        int best = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (encoder.encode(mid) <= maxBytes) {
+                best = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the index of the smallest size within the budget; ties go to the earlier index.
+     *
+     * @param sizes    encoded sizes, one per candidate
+     * @param maxBytes the byte budget
+     * @return the chosen index, or -1 if none fits
+     */
+    public static int smallestWithin(int[] sizes, int maxBytes) {
+        int best = -1;
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] <= maxBytes && (best < 0 || sizes[i] < sizes[best])) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
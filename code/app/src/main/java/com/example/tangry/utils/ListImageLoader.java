@@ -0,0 +1,106 @@
+/**
+ * ListImageLoader.java
+ *
+ * Loads the mood images shown in post lists. Binding and preloading build the same request, at a
+ * fixed size matching the mood_image view of item_mood, so an image preloaded ahead of the scroll
+ * is found in the memory cache when its row binds.
+ *
+ * Key features:
+ * - Requests are sized to the mood image up front, so decoding never waits for layout and
+ *   never decodes more pixels than the row shows
+ * - Preloads the images of the next rows in the scroll direction with RecyclerViewPreloader
+ */
+package com.example.tangry.utils;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.ListPreloader;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader;
+import com.bumptech.glide.util.FixedPreloadSizeProvider;
+import com.example.tangry.R;
+import com.example.tangry.models.EmotionPost;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+
+public class ListImageLoader {
+    // A row with an image is about half a screen tall, so this covers two screens ahead.
+    private static final int MAX_PRELOAD = 4;
+
+    private ListImageLoader() {
+    }
+
+    /**
+     * Returns the size in pixels of the mood image in item_mood.
+     *
+     * @param context any context
+     * @return the width and height
+     */
+    public static int[] moodImageSize(Context context) {
+        int screenWidth = context.getResources().getDisplayMetrics().widthPixels;
+        int inset = context.getResources().getDimensionPixelSize(R.dimen.mood_image_horizontal_inset);
+        int height = context.getResources().getDimensionPixelSize(R.dimen.mood_image_height);
+        return new int[]{Math.max(1, screenWidth - inset), height};
+    }
+
+    /**
+     * Builds the list request for a post's image.
+     *
+     * @param requestManager the request manager of the list's fragment or view
+     * @param context        any context
+     * @param post           a post with an image
+     * @return the request, sized to the mood image
+     */
+    public static RequestBuilder<Drawable> request(RequestManager requestManager, Context context,
+                                                   EmotionPost post) {
+        int[] size = moodImageSize(context);
+        return requestManager
+                .load(Uri.parse(ImageHelper.listImageUrl(post)))
+                .override(size[0], size[1])
+                .centerCrop();
+    }
+
+    /**
+     * Starts preloading the images of the rows ahead of the visible ones while the list scrolls.
+     *
+     * @param fragment     the fragment showing the list; preloads are cancelled with its lifecycle
+     * @param recyclerView the list
+     * @param postAt       returns the post at an adapter position, or null if there is none
+     */
+    public static void attachPreloader(Fragment fragment, RecyclerView recyclerView,
+                                       IntFunction<EmotionPost> postAt) {
+        Context context = fragment.requireContext();
+        RequestManager requestManager = Glide.with(fragment);
+        int[] size = moodImageSize(context);
+        ListPreloader.PreloadModelProvider<EmotionPost> models = new ListPreloader.PreloadModelProvider<EmotionPost>() {
+            @NonNull
+            @Override
+            public List<EmotionPost> getPreloadItems(int position) {
+                EmotionPost post = postAt.apply(position);
+                if (post == null || post.getImageUri() == null || post.getImageUri().isEmpty()) {
+                    return Collections.emptyList();
+                }
+                return Collections.singletonList(post);
+            }
+
+            @Nullable
+            @Override
+            public RequestBuilder<?> getPreloadRequestBuilder(@NonNull EmotionPost post) {
+                return request(requestManager, context, post);
+            }
+        };
+        recyclerView.addOnScrollListener(new RecyclerViewPreloader<>(fragment, models,
+                new FixedPreloadSizeProvider<>(size[0], size[1]), MAX_PRELOAD));
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * MoodSearchIndex.java
+ *
+ * This file contains the on-device full-text index over the current user's mood history. It wraps
+ * MoodTextIndex with a background executor and persists it to the app's private files directory,
+ * so phrase searches ("exam", "mom") never touch Firestore.
+ *
+ * Key features:
+ * - Indexes the explanation, location and social situation of each post
+ * - Loads the persisted index lazily on first use, off the main thread
+ * - Updated incrementally when posts are created, edited, deleted or synced, and reconciled
+ *   with the full history whenever it is loaded, so posts deleted elsewhere drop out
+ * - Saves changes with a short delay so bursts of updates cost a single write
+ * - Delivers ranked post ids to the caller on the main thread, or blocking to a background
+ *   thread such as PostSearchEngine's
+ */
+package com.example.tangry.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.tangry.models.EmotionPost;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class MoodSearchIndex {
+    private static final String TAG = "MoodSearchIndex";
+    private static final String INDEX_FILE = "mood_search_index.bin";
+    private static final long SAVE_DELAY_MS = 2000;
+
+    private static MoodSearchIndex instance;
+
+    /**
+     * Callback receiving ranked search results on the main thread.
+     */
+    public interface SearchCallback {
+        void onResults(List<MoodTextIndex.Result> results);
+    }
+
+    private final File indexFile;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Only touched on the executor thread.
+    private MoodTextIndex index;
+    private ScheduledFuture<?> pendingSave;
+
+    private MoodSearchIndex(Context context) {
+        this.indexFile = new File(context.getApplicationContext().getFilesDir(), INDEX_FILE);
+    }
+
+    /**
+     * Returns the singleton instance of MoodSearchIndex.
+     *
+     * @param context any context; the application context is retained
+     * @return the MoodSearchIndex instance
+     */
+    public static synchronized MoodSearchIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new MoodSearchIndex(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Adds or replaces a post in the index. Posts without an id are ignored until they are synced.
+     *
+     * @param post the post to index
+     */
+    public void indexPost(EmotionPost post) {
+        if (post == null || post.getPostId() == null) {
+            return;
+        }
+        String postId = post.getPostId();
+        String[] fields = fieldsOf(post);
+        executor.execute(() -> {
+            loadedIndex().put(postId, fields);
+            scheduleSave();
+        });
+    }
+
+    /**
+     * Adds or replaces a batch of posts, e.g. after the user's history has been loaded from Firestore.
+     *
+     * @param posts the posts to index
+     */
+    public void indexPosts(List<EmotionPost> posts) {
+        List<String> ids = new ArrayList<>();
+        List<String[]> fields = new ArrayList<>();
+        for (EmotionPost post : posts) {
+            if (post != null && post.getPostId() != null) {
+                ids.add(post.getPostId());
+                fields.add(fieldsOf(post));
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        executor.execute(() -> {
+            MoodTextIndex current = loadedIndex();
+            for (int i = 0; i < ids.size(); i++) {
+                current.put(ids.get(i), fields.get(i));
+            }
+            scheduleSave();
+        });
+    }
+
+    /**
+     * Makes the index hold exactly the given posts, e.g. after the user's complete history has been
+     * loaded from the server. Posts that are no longer in it, such as ones deleted on another
+     * device, are removed.
+     *
+     * @param posts every post of the user
+     */
+    public void syncPosts(List<EmotionPost> posts) {
+        List<String> ids = new ArrayList<>();
+        List<String[]> fields = new ArrayList<>();
+        for (EmotionPost post : posts) {
+            if (post != null && post.getPostId() != null) {
+                ids.add(post.getPostId());
+                fields.add(fieldsOf(post));
+            }
+        }
+        executor.execute(() -> {
+            MoodTextIndex current = loadedIndex();
+            int removed = current.retainAll(ids);
+            for (int i = 0; i < ids.size(); i++) {
+                current.put(ids.get(i), fields.get(i));
+            }
+            if (removed > 0) {
+                Log.d(TAG, "Removed " + removed + " deleted posts from the search index");
+            }
+            scheduleSave();
+        });
+    }
+
+    /**
+     * Removes a post from the index.
+     *
+     * @param postId the id of the deleted post
+     */
+    public void removePost(String postId) {
+        if (postId == null) {
+            return;
+        }
+        executor.execute(() -> {
+            if (loadedIndex().remove(postId)) {
+                scheduleSave();
+            }
+        });
+    }
+
+    /**
+     * Drops every indexed post and deletes the persisted index, e.g. when the user signs out.
+     */
+    public void clear() {
+        executor.execute(() -> {
+            loadedIndex().clear();
+            if (pendingSave != null) {
+                pendingSave.cancel(false);
+                pendingSave = null;
+            }
+            if (indexFile.exists() && !indexFile.delete()) {
+                Log.w(TAG, "Could not delete search index file");
+            }
+        });
+    }
+
+    /**
+     * Searches the indexed posts and delivers the ranked results on the main thread.
+     *
+     * @param query    the free-text query
+     * @param limit    the maximum number of results
+     * @param callback receives the results, highest score first
+     */
+    public void search(String query, int limit, SearchCallback callback) {
+        executor.execute(() -> {
+            List<MoodTextIndex.Result> results = loadedIndex().search(query, limit);
+            mainHandler.post(() -> callback.onResults(results));
+        });
+    }
+
+    /**
+     * Searches the indexed posts, waiting for the index thread. Must not be called on the main thread.
+     *
+     * @param query the free-text query
+     * @param limit the maximum number of results
+     * @return the results, highest score first; empty if the wait is interrupted
+     */
+    public List<MoodTextIndex.Result> searchBlocking(String query, int limit) {
+        try {
+            return executor.submit(() -> loadedIndex().search(query, limit)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Search failed", e.getCause());
+            return new ArrayList<>();
+        }
+    }
+
+    private static String[] fieldsOf(EmotionPost post) {
+        String location = post.getLocation();
+        // Posts without a location may store the literal string "null".
+        if ("null".equals(location)) {
+            location = null;
+        }
+        String social = post.getSocialSituation();
+        if ("null".equals(social)) {
+            social = null;
+        }
+        return new String[]{post.getExplanation(), location, social};
+    }
+
+    private MoodTextIndex loadedIndex() {
+        if (index == null) {
+            index = load();
+        }
+        return index;
+    }
+
+    private MoodTextIndex load() {
+        if (!indexFile.exists()) {
+            return new MoodTextIndex();
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(indexFile))) {
+            MoodTextIndex loaded = MoodTextIndex.readFrom(in);
+            Log.d(TAG, "Loaded search index with " + loaded.size() + " posts");
+            return loaded;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load search index, starting empty", e);
+            return new MoodTextIndex();
+        }
+    }
+
+    private void scheduleSave() {
+        if (pendingSave != null) {
+            pendingSave.cancel(false);
+        }
+        pendingSave = executor.schedule(this::save, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void save() {
+        pendingSave = null;
+        // Write to a temporary file first so a crash never leaves a truncated index behind.
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            loadedIndex().writeTo(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save search index", e);
+            return;
+        }
+        if (!tmp.renameTo(indexFile)) {
+            Log.e(TAG, "Failed to replace search index file");
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/**
+ * MoodTextIndex.java
+ *
+ * This file contains an in-memory inverted index with BM25 ranking used for full-text search over
+ * a user's mood history. It has no Android dependencies; MoodSearchIndex wraps it with threading
+ * and on-device persistence.
+ *
+ * Key features:
+ * - Tokenizes text on letter/digit boundaries, lowercases it and drops common stop words
+ * - Applies a light suffix-stripping stemmer so "exams" matches "exam" and "worried" matches "worry"
+ * - Supports incremental add, update and removal of documents by id
+ * - Ranks matches with Okapi BM25 and returns the top results through a bounded heap
+ * - Serializes to a compact binary format; postings are rebuilt from per-document term counts on load
+ *
+ * Outstanding Issues:
+ * - Not thread-safe; callers must confine access to a single thread.
+ */
+package com.example.tangry.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+public class MoodTextIndex {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "about", "am", "an", "and", "are", "as", "at", "be", "but", "by", "for", "from",
+            "had", "have", "i", "if", "in", "is", "it", "me", "my", "of", "on", "or", "so", "that",
+            "the", "this", "to", "was", "we", "with"));
+
+    /**
+     * A ranked search hit.
+     */
+    public static class Result {
+        private final String docId;
+        private final double score;
+
+        Result(String docId, double score) {
+            this.docId = docId;
+            this.score = score;
+        }
+
+        public String getDocId() {
+            return docId;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * Per-document term counts, kept so that a document can be removed from the postings.
+     */
+    private static class DocEntry {
+        final int length;
+        final Map<String, Integer> termFreqs;
+
+        DocEntry(int length, Map<String, Integer> termFreqs) {
+            this.length = length;
+            this.termFreqs = termFreqs;
+        }
+    }
+
+    private final Map<String, DocEntry> docs = new HashMap<>();
+    private final Map<String, Map<String, Integer>> postings = new HashMap<>();
+    private long totalLength = 0;
+
+    /**
+     * Indexes a document, replacing any previous version with the same id.
+     *
+     * @param docId  the document id
+     * @param fields the text fields to index; null fields are skipped
+     */
+    public void put(String docId, String... fields) {
+        remove(docId);
+        Map<String, Integer> termFreqs = new HashMap<>();
+        int length = 0;
+        for (String field : fields) {
+            for (String term : analyze(field)) {
+                Integer count = termFreqs.get(term);
+                termFreqs.put(term, count == null ? 1 : count + 1);
+                length++;
+            }
+        }
+        addEntry(docId, new DocEntry(length, termFreqs));
+    }
+
+    /**
+     * Removes a document from the index.
+     *
+     * @param docId the document id
+     * @return true if the document was indexed
+     */
+    public boolean remove(String docId) {
+        DocEntry entry = docs.remove(docId);
+        if (entry == null) {
+            return false;
+        }
+        totalLength -= entry.length;
+        for (String term : entry.termFreqs.keySet()) {
+            Map<String, Integer> docsForTerm = postings.get(term);
+            if (docsForTerm != null) {
+                docsForTerm.remove(docId);
+                if (docsForTerm.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes every document whose id is not in the given set.
+     *
+     * @param docIds the ids of the documents to keep
+     * @return the number of documents removed
+     */
+    public int retainAll(Collection<String> docIds) {
+        Set<String> keep = new HashSet<>(docIds);
+        List<String> stale = new ArrayList<>();
+        for (String docId : docs.keySet()) {
+            if (!keep.contains(docId)) {
+                stale.add(docId);
+            }
+        }
+        for (String docId : stale) {
+            remove(docId);
+        }
+        return stale.size();
+    }
+
+    /**
+     * Returns whether a document with the given id is indexed.
+     */
+    public boolean contains(String docId) {
+        return docs.containsKey(docId);
+    }
+
+    /**
+     * Returns the number of indexed documents.
+     */
+    public int size() {
+        return docs.size();
+    }
+
+    /**
+     * Removes every document from the index.
+     */
+    public void clear() {
+        docs.clear();
+        postings.clear();
+        totalLength = 0;
+    }
+
+    /**
+     * Finds the documents best matching the query, ranked by BM25 score.
+     * A document matches if it contains at least one query term.
+     *
+     * @param query the free-text query
+     * @param limit the maximum number of results
+     * @return the results, highest score first
+     */
+    public List<Result> search(String query, int limit) {
+        if (limit <= 0 || docs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Double> scores = new HashMap<>();
+        double avgLength = (double) totalLength / docs.size();
+        for (String term : new LinkedHashSet<>(analyze(query))) {
+            Map<String, Integer> docsForTerm = postings.get(term);
+            if (docsForTerm == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (docs.size() - docsForTerm.size() + 0.5) / (docsForTerm.size() + 0.5));
+            for (Map.Entry<String, Integer> posting : docsForTerm.entrySet()) {
+                int tf = posting.getValue();
+                int length = docs.get(posting.getKey()).length;
+                double norm = tf + K1 * (1 - B + B * length / avgLength);
+                double score = idf * tf * (K1 + 1) / norm;
+                Double previous = scores.get(posting.getKey());
+                scores.put(posting.getKey(), previous == null ? score : previous + score);
+            }
+        }
+
+        // Keep only the top results in a min-heap instead of sorting every match.
+        PriorityQueue<Result> heap = new PriorityQueue<>(limit + 1,
+                (r1, r2) -> Double.compare(r1.score, r2.score));
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            heap.offer(new Result(entry.getKey(), entry.getValue()));
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+        List<Result> results = new ArrayList<>(heap);
+        Collections.sort(results, (r1, r2) -> Double.compare(r2.score, r1.score));
+        return results;
+    }
+
+    /**
+     * Writes the index in a compact binary format.
+     *
+     * @param out the stream to write to; not closed by this method
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(docs.size());
+        for (Map.Entry<String, DocEntry> doc : docs.entrySet()) {
+            data.writeUTF(doc.getKey());
+            data.writeInt(doc.getValue().length);
+            data.writeInt(doc.getValue().termFreqs.size());
+            for (Map.Entry<String, Integer> term : doc.getValue().termFreqs.entrySet()) {
+                data.writeUTF(term.getKey());
+                data.writeInt(term.getValue());
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads an index previously written by {@link #writeTo(OutputStream)}.
+     *
+     * @param in the stream to read from; not closed by this method
+     * @return the restored index
+     * @throws IOException if reading fails or the format version is unknown
+     */
+    public static MoodTextIndex readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int version = data.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported index format version: " + version);
+        }
+        MoodTextIndex index = new MoodTextIndex();
+        int docCount = data.readInt();
+        for (int i = 0; i < docCount; i++) {
+            String docId = data.readUTF();
+            int length = data.readInt();
+            int termCount = data.readInt();
+            Map<String, Integer> termFreqs = new HashMap<>();
+            for (int j = 0; j < termCount; j++) {
+                termFreqs.put(data.readUTF(), data.readInt());
+            }
+            index.addEntry(docId, new DocEntry(length, termFreqs));
+        }
+        return index;
+    }
+
+    private void addEntry(String docId, DocEntry entry) {
+        docs.put(docId, entry);
+        totalLength += entry.length;
+        for (Map.Entry<String, Integer> term : entry.termFreqs.entrySet()) {
+            Map<String, Integer> docsForTerm = postings.get(term.getKey());
+            if (docsForTerm == null) {
+                docsForTerm = new HashMap<>();
+                postings.put(term.getKey(), docsForTerm);
+            }
+            docsForTerm.put(docId, term.getValue());
+        }
+    }
+
+    /**
+     * Splits text into lowercase, stemmed terms with stop words removed.
+     *
+     * @param text the text to analyze; null yields no terms
+     * @return the terms in order of appearance
+     */
+    public static List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String token = lower.substring(start, i);
+                if (!STOP_WORDS.contains(token)) {
+                    terms.add(stem(token));
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Strips a few common English suffixes. Deliberately conservative: a suffix is only removed
+     * when at least three characters remain.
+     *
+     * @param token a lowercase token
+     * @return the stemmed token
+     */
+    public static String stem(String token) {
+        if (token.length() <= 3) {
+            return token;
+        }
+        if (token.endsWith("ies") && token.length() > 4) {
+            return token.substring(0, token.length() - 3) + "y";
+        }
+        if (token.endsWith("ied") && token.length() > 4) {
+            return token.substring(0, token.length() - 3) + "y";
+        }
+        if (token.endsWith("sses")) {
+            return token.substring(0, token.length() - 2);
+        }
+        if (token.endsWith("ing") && token.length() >= 6) {
+            return undouble(token.substring(0, token.length() - 3));
+        }
+        if (token.endsWith("ed") && token.length() >= 5) {
+            return undouble(token.substring(0, token.length() - 2));
+        }
+        if (token.endsWith("ly") && token.length() >= 5) {
+            return token.substring(0, token.length() - 2);
+        }
+        if (token.endsWith("s") && !token.endsWith("ss") && !token.endsWith("us")) {
+            return token.substring(0, token.length() - 1);
+        }
+        return token;
+    }
+
+    // "stopped" -> "stopp" -> "stop", but leave "ll", "ss" and "zz" endings alone ("called" -> "call").
+    private static String undouble(String stem) {
+        int n = stem.length();
+        if (n >= 4 && stem.charAt(n - 1) == stem.charAt(n - 2)) {
+            char c = stem.charAt(n - 1);
+            if (c != 'l' && c != 's' && c != 'z') {
+                return stem.substring(0, n - 1);
+            }
+        }
+        return stem;
+    }
+}
@@ -11,8 +11,6 @@ import com.example.tangry.models.EmotionPost;
 import com.example.tangry.models.PendingOperation;
 import com.example.tangry.models.SyncStatus;
 import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
@@ -20,7 +18,6 @@ import java.io.File;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class OfflineSyncManager implements NetworkMonitor.NetworkChangeListener {
@@ -180,9 +177,12 @@ public class OfflineSyncManager implements NetworkMonitor.NetworkChangeListener
             AtomicInteger completed, AtomicInteger failed) {
         switch (operation.getType()) {
             case CREATE:
-                emotionPostController.createPost(operation.getPost(),
+                EmotionPost postToCreate = operation.getPost();
+                emotionPostController.createPost(postToCreate,
                         (DocumentReference docRef) -> {
                             Log.d(TAG, "Successfully synced CREATE operation");
+                            postToCreate.setPostId(docRef.getId());
+                            MoodSearchIndex.getInstance(context).indexPost(postToCreate);
                             operations.remove(operation);
                             savePendingOperations(operations);
                             checkSyncCompletion(operations, completed.incrementAndGet(), failed.get());
@@ -202,36 +202,33 @@ public class OfflineSyncManager implements NetworkMonitor.NetworkChangeListener
                     String localImagePath = postToUpdate.getImageUri();
                     Uri localUri = Uri.parse(localImagePath);
 
-                    StorageReference storageRef = FirebaseStorage.getInstance().getReference();
-                    StorageReference imageRef = storageRef.child("images/" + UUID.randomUUID().toString());
-
-                    imageRef.putFile(localUri)
-                            .addOnSuccessListener(taskSnapshot -> imageRef.getDownloadUrl()
-                                    .addOnSuccessListener(uri -> {
-                                        // Update the post with the cloud storage URL
-                                        postToUpdate.setImageUri(uri.toString());
-                                        postToUpdate.setOfflineImagePending(false);
-
-                                        // Now update the post with the cloud image URL
-                                        emotionPostController.updateEmotionPost(operation.getPostId(), postToUpdate,
-                                                () -> {
-                                                    Log.d(TAG,
-                                                            "Successfully synced UPDATE operation with offline image");
-                                                    operations.remove(operation);
-                                                    savePendingOperations(operations);
-                                                    checkSyncCompletion(operations, completed.incrementAndGet(),
-                                                            failed.get());
-
-                                                    // Clean up the local file
-                                                    new File(localUri.getPath()).delete();
-                                                },
-                                                e -> {
-                                                    Log.e(TAG, "Failed to sync UPDATE operation with offline image", e);
-                                                    failed.incrementAndGet();
-                                                    checkSyncCompletion(operations, completed.get(), failed.get());
-                                                });
-                                    }))
-                            .addOnFailureListener(e -> {
+                    ImageHelper.uploadImage(context, localUri,
+                            uploaded -> {
+                                // Update the post with the cloud storage URLs
+                                postToUpdate.setImageUri(uploaded.getImageUrl());
+                                postToUpdate.setThumbnailUri(uploaded.getThumbnailUrl());
+                                postToUpdate.setOfflineImagePending(false);
+
+                                // Now update the post with the cloud image URL
+                                emotionPostController.updateEmotionPost(operation.getPostId(), postToUpdate,
+                                        () -> {
+                                            Log.d(TAG,
+                                                    "Successfully synced UPDATE operation with offline image");
+                                            operations.remove(operation);
+                                            savePendingOperations(operations);
+                                            checkSyncCompletion(operations, completed.incrementAndGet(),
+                                                    failed.get());
+
+                                            // Clean up the local file
+                                            new File(localUri.getPath()).delete();
+                                        },
+                                        e -> {
+                                            Log.e(TAG, "Failed to sync UPDATE operation with offline image", e);
+                                            failed.incrementAndGet();
+                                            checkSyncCompletion(operations, completed.get(), failed.get());
+                                        });
+                            },
+                            e -> {
                                 Log.e(TAG, "Failed to upload offline image during sync", e);
                                 failed.incrementAndGet();
                                 checkSyncCompletion(operations, completed.get(), failed.get());
@@ -273,7 +270,7 @@ public class OfflineSyncManager implements NetworkMonitor.NetworkChangeListener
                 };
 
                 // Just perform the delete without trying to handle the image
-                // The emotionPostController will handle image deletion if needed
+                // StorageGcService removes it once no post references it
                 performDelete.run();
                 break;
         }
@@ -0,0 +1,135 @@
+/**
+ * PointGridIndex.java
+ *
+ * This file contains a uniform-grid spatial index over 2D points stored in flat float arrays,
+ * used to hit-test taps against map pins without scanning every pin. Points are bucketed with a
+ * counting sort into a single int array, so rebuilding the index after each frame allocates
+ * nothing once the arrays have grown to the largest point count seen.
+ *
+ * Key features:
+ * - Rebuilds in linear time from parallel x/y arrays
+ * - Answers rectangle queries by visiting only the grid cells the rectangle overlaps
+ * - Returns the highest matching point index, i.e. the point drawn on top
+ * - Has no Android dependencies
+ *
+ * Outstanding Issues:
+ * - Not thread-safe; callers must confine access to a single thread.
+ */
+package com.example.tangry.utils;
+
+import java.util.Arrays;
+
+public class PointGridIndex {
+
+    private final float cellSize;
+    private float originX;
+    private float originY;
+    private int columns;
+    private int rows;
+    private int count;
+    private float[] xs = new float[0];
+    private float[] ys = new float[0];
+    // cellStart[c] .. cellStart[c + 1] is the range of cellItems holding the points of cell c.
+    private int[] cellStart = new int[1];
+    private int[] cellItems = new int[0];
+    private int[] cellCursor = new int[0];
+
+    /**
+     * Creates an empty index.
+     *
+     * @param cellSize the side length of a grid cell, ideally about the size of a query rectangle
+     */
+    public PointGridIndex(float cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("cellSize must be positive");
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Replaces the indexed points. Points outside the given bounds are clamped into the border
+     * cells, so they are still found, only less efficiently.
+     *
+     * @param pointXs the x coordinates; only the first {@code pointCount} entries are read
+     * @param pointYs the y coordinates; only the first {@code pointCount} entries are read
+     * @param pointCount the number of points
+     * @param minX the left edge of the indexed area
+     * @param minY the top edge of the indexed area
+     * @param maxX the right edge of the indexed area
+     * @param maxY the bottom edge of the indexed area
+     */
+    public void build(float[] pointXs, float[] pointYs, int pointCount,
+                      float minX, float minY, float maxX, float maxY) {
+        originX = minX;
+        originY = minY;
+        columns = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize));
+        rows = Math.max(1, (int) Math.ceil((maxY - minY) / cellSize));
+        count = pointCount;
+        if (xs.length < pointCount) {
+            xs = new float[pointCount];
+            ys = new float[pointCount];
+            cellItems = new int[pointCount];
+        }
+        System.arraycopy(pointXs, 0, xs, 0, pointCount);
+        System.arraycopy(pointYs, 0, ys, 0, pointCount);
+
+        int cells = columns * rows;
+        if (cellStart.length < cells + 1) {
+            cellStart = new int[cells + 1];
+            cellCursor = new int[cells];
+        } else {
+            Arrays.fill(cellStart, 0, cells + 1, 0);
+        }
+        // Counting sort: count per cell, turn counts into start offsets, then place the points.
+        for (int i = 0; i < pointCount; i++) {
+            cellStart[cellOf(xs[i], ys[i]) + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        System.arraycopy(cellStart, 0, cellCursor, 0, cells);
+        for (int i = 0; i < pointCount; i++) {
+            cellItems[cellCursor[cellOf(xs[i], ys[i])]++] = i;
+        }
+    }
+
+    /**
+     * Returns the highest index among the points inside the given rectangle (edges inclusive).
+     *
+     * @return the point index, or -1 if no point lies inside the rectangle
+     */
+    public int findLast(float left, float top, float right, float bottom) {
+        if (count == 0) {
+            return -1;
+        }
+        int firstColumn = column(left);
+        int lastColumn = column(right);
+        int firstRow = row(top);
+        int lastRow = row(bottom);
+        int best = -1;
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                int cell = r * columns + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int i = cellItems[k];
+                    if (i > best && xs[i] >= left && xs[i] <= right && ys[i] >= top && ys[i] <= bottom) {
+                        best = i;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private int cellOf(float x, float y) {
+        return row(y) * columns + column(x);
+    }
+
+    private int column(float x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - originX) / cellSize)));
+    }
+
+    private int row(float y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - originY) / cellSize)));
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * PostCoordinateBackfill.java
+ *
+ * This file contains a one-off job that resolves coordinates for the existing posts of the users
+ * shown on the map. Posts written before coordinates were stored only carry an address string;
+ * this job geocodes each of them once, off the main thread, and writes lat/lng/geohash back to
+ * Firestore so that the map never needs to geocode at read time. Followed users' posts are
+ * backfilled too, so their legacy posts appear even if they never open the map themselves.
+ *
+ * Key features:
+ * - Runs at most once per username on this device, guarded by SharedPreferences flags
+ * - Only touches posts that have a location but no coordinates, so later runs for a user another
+ *   device already backfilled only read that user's posts
+ * - Geocodes each distinct address once and issues one small update per post
+ * - Marks the job done only when every post was either resolved or unresolvable
+ *
+ * Outstanding Issues:
+ * - Posts whose address cannot be geocoded stay without coordinates and are not shown on the map.
+ */
+package com.example.tangry.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.tangry.models.EmotionPost;
+import com.example.tangry.repositories.EmotionPostRepository;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import org.osmdroid.util.GeoPoint;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PostCoordinateBackfill {
+    private static final String TAG = "PostCoordinateBackfill";
+    private static final String PREFS_NAME = "coordinate_backfill_prefs";
+    private static final String DONE_KEY_PREFIX = "done_";
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static boolean running = false;
+
+    /**
+     * Callback invoked on the main thread once the job has finished.
+     */
+    public interface CompletionCallback {
+        void onComplete(int updatedCount);
+    }
+
+    /**
+     * Starts the backfill for those of the given users that were not backfilled on this device
+     * yet, unless a run is already in progress. Must be called on the main thread.
+     *
+     * @param context   any context; the application context is used
+     * @param usernames the users whose posts should be backfilled, e.g. the followed users and
+     *                  the current user
+     * @param callback  receives the number of posts updated; not called if the job is skipped
+     */
+    public static void runIfNeeded(Context context, Collection<String> usernames, CompletionCallback callback) {
+        if (usernames == null || running) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        List<String> doneKeys = new ArrayList<>();
+        List<Task<QuerySnapshot>> queries = new ArrayList<>();
+        EmotionPostRepository repository = EmotionPostRepository.getInstance();
+        for (String username : usernames) {
+            String doneKey = DONE_KEY_PREFIX + username;
+            if (!prefs.getBoolean(doneKey, false)) {
+                doneKeys.add(doneKey);
+                queries.add(repository.getFilteredUserPosts(username, null).get());
+            }
+        }
+        if (queries.isEmpty()) {
+            return;
+        }
+        running = true;
+
+        Tasks.whenAllSuccess(queries)
+                .addOnSuccessListener(snapshots -> {
+                    List<EmotionPost> pending = new ArrayList<>();
+                    for (Object snapshot : snapshots) {
+                        for (DocumentSnapshot document : ((QuerySnapshot) snapshot).getDocuments()) {
+                            EmotionPost post = document.toObject(EmotionPost.class);
+                            if (post != null && post.hasLocation() && !post.hasCoordinates()) {
+                                post.setPostId(document.getId());
+                                pending.add(post);
+                            }
+                        }
+                    }
+                    Log.d(TAG, pending.size() + " posts of " + doneKeys.size() + " users need coordinates");
+                    executor.execute(() -> geocodeAll(appContext, repository, pending, prefs, doneKeys, callback));
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to load posts for coordinate backfill", e);
+                    running = false;
+                });
+    }
+
+    private static void geocodeAll(Context context, EmotionPostRepository repository, List<EmotionPost> posts,
+                                   SharedPreferences prefs, List<String> doneKeys, CompletionCallback callback) {
+        // Many posts share an address, so geocode each distinct one only once.
+        Map<String, GeoPoint> resolved = new HashMap<>();
+        List<EmotionPost> updatable = new ArrayList<>();
+        for (EmotionPost post : posts) {
+            String location = post.getLocation().trim();
+            if (!resolved.containsKey(location)) {
+                resolved.put(location, GeocoderUtility.getGeoPointFromAddress(context, location));
+            }
+            GeoPoint point = resolved.get(location);
+            if (point != null) {
+                post.setCoordinates(point.getLatitude(), point.getLongitude());
+                updatable.add(post);
+            }
+        }
+        mainHandler.post(() -> writeAll(repository, updatable, prefs, doneKeys, callback));
+    }
+
+    private static void writeAll(EmotionPostRepository repository, List<EmotionPost> posts,
+                                 SharedPreferences prefs, List<String> doneKeys, CompletionCallback callback) {
+        if (posts.isEmpty()) {
+            finish(0, false, prefs, doneKeys, callback);
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(posts.size());
+        AtomicInteger updated = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean(false);
+        for (EmotionPost post : posts) {
+            repository.updatePostCoordinates(post.getPostId(), post.getLat(), post.getLng(),
+                    () -> {
+                        updated.incrementAndGet();
+                        if (remaining.decrementAndGet() == 0) {
+                            finish(updated.get(), failed.get(), prefs, doneKeys, callback);
+                        }
+                    },
+                    e -> {
+                        Log.e(TAG, "Failed to write coordinates for post " + post.getPostId(), e);
+                        failed.set(true);
+                        if (remaining.decrementAndGet() == 0) {
+                            finish(updated.get(), true, prefs, doneKeys, callback);
+                        }
+                    });
+        }
+    }
+
+    private static void finish(int updated, boolean failed, SharedPreferences prefs, List<String> doneKeys,
+                               CompletionCallback callback) {
+        running = false;
+        if (!failed) {
+            // Failed writes leave the flags unset so the next launch retries them.
+            SharedPreferences.Editor editor = prefs.edit();
+            for (String doneKey : doneKeys) {
+                editor.putBoolean(doneKey, true);
+            }
+            editor.apply();
+        }
+        Log.d(TAG, "Coordinate backfill wrote " + updated + " posts");
+        if (callback != null) {
+            callback.onComplete(updated);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/**
+ * PostSearchEngine.java
+ *
+ * This file contains the search pipeline behind the post search boxes on the home screen
+ * (YourMoodFragment and FriendMoodsFragment). It replaces per-keystroke Filterable filtering with
+ * a debounced, cancellable search that runs off the main thread.
+ *
+ * Key features:
+ * - Debounces query changes so fast typing triggers a single search
+ * - Cancels stale queries through a generation counter; only the latest search is published
+ * - Builds a lowercase search text per post once per data load instead of once per keystroke
+ * - Matches every whitespace-separated query token against the prebuilt text on a background executor
+ * - Computes a DiffUtil result in the background and publishes list and diff together on the main thread
+ * - Optionally puts the hits of a Ranker, such as the BM25 mood index, first in ranked order,
+ *   followed by the remaining substring matches
+ */
+package com.example.tangry.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.example.tangry.models.EmotionPost;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PostSearchEngine {
+
+    /**
+     * Callback receiving the results of the latest search on the main thread.
+     */
+    public interface ResultListener {
+        /**
+         * Called when a search completes and is still the most recent one.
+         *
+         * @param query   the query that produced these results
+         * @param results the matching posts, in their original order
+         * @param diff    the changes from the previously published results
+         */
+        void onResults(String query, List<EmotionPost> results, DiffUtil.DiffResult diff);
+    }
+
+    /**
+     * Ranks posts for a query; called on the search thread, so it may block.
+     */
+    public interface Ranker {
+        /**
+         * @param query the raw query text, never blank
+         * @return the ids of the matching posts, best match first
+         */
+        List<String> rank(String query);
+    }
+
+    private static final long DEFAULT_DEBOUNCE_MS = 250;
+    // Separates fields in the search text so a query cannot match across two fields.
+    private static final char FIELD_SEPARATOR = '\u0000';
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ResultListener listener;
+    private final long debounceMs;
+    private final Ranker ranker;
+
+    // Only touched on the executor thread, so searches queued after setPosts see the new index.
+    private List<IndexedPost> index = Collections.emptyList();
+
+    // All fields below are only touched on the main thread.
+    private List<EmotionPost> published = Collections.emptyList();
+    private String currentQuery = "";
+    private int generation = 0;
+    private Runnable pendingSearch;
+    private boolean shutdown = false;
+
+    /**
+     * Creates a search engine with the default debounce delay.
+     *
+     * @param listener receives published results on the main thread
+     */
+    public PostSearchEngine(@NonNull ResultListener listener) {
+        this(listener, DEFAULT_DEBOUNCE_MS, null);
+    }
+
+    /**
+     * Creates a search engine with the default debounce delay whose results start with the
+     * ranker's hits.
+     *
+     * @param listener receives published results on the main thread
+     * @param ranker   ranks posts for non-blank queries
+     */
+    public PostSearchEngine(@NonNull ResultListener listener, @NonNull Ranker ranker) {
+        this(listener, DEFAULT_DEBOUNCE_MS, ranker);
+    }
+
+    /**
+     * Creates a search engine.
+     *
+     * @param listener   receives published results on the main thread
+     * @param debounceMs delay after the last query change before a search runs
+     * @param ranker     ranks posts for non-blank queries, or null for substring matching only
+     */
+    public PostSearchEngine(@NonNull ResultListener listener, long debounceMs, Ranker ranker) {
+        this.listener = listener;
+        this.debounceMs = debounceMs;
+        this.ranker = ranker;
+    }
+
+    /**
+     * Replaces the searchable posts and immediately re-runs the current query over them.
+     * Must be called on the main thread.
+     *
+     * @param posts the posts to search; null is treated as an empty list
+     */
+    public void setPosts(List<EmotionPost> posts) {
+        if (shutdown) {
+            return;
+        }
+        List<EmotionPost> snapshot = (posts != null) ? new ArrayList<>(posts) : new ArrayList<>();
+        int token = nextGeneration();
+        List<EmotionPost> base = published;
+        String query = currentQuery;
+        executor.execute(() -> {
+            List<IndexedPost> newIndex = new ArrayList<>(snapshot.size());
+            for (EmotionPost post : snapshot) {
+                newIndex.add(new IndexedPost(post));
+            }
+            index = newIndex;
+            List<EmotionPost> results = rankAndMatch(newIndex, query);
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new PostDiffCallback(base, results));
+            mainHandler.post(() -> {
+                if (token != generation || shutdown) {
+                    return;
+                }
+                publish(query, results, diff);
+            });
+        });
+    }
+
+    /**
+     * Schedules a search for the given query after the debounce delay, replacing any pending search.
+     * Must be called on the main thread.
+     *
+     * @param query the raw query text
+     */
+    public void search(String query) {
+        currentQuery = (query != null) ? query : "";
+        if (pendingSearch != null) {
+            mainHandler.removeCallbacks(pendingSearch);
+        }
+        pendingSearch = this::runSearch;
+        mainHandler.postDelayed(pendingSearch, debounceMs);
+    }
+
+    /**
+     * Runs a search for the given query right away, skipping the debounce delay.
+     * Must be called on the main thread.
+     *
+     * @param query the raw query text
+     */
+    public void searchNow(String query) {
+        currentQuery = (query != null) ? query : "";
+        runSearch();
+    }
+
+    /**
+     * Cancels pending work and stops the background executor. Call from onDestroyView.
+     */
+    public void shutdown() {
+        shutdown = true;
+        generation++;
+        if (pendingSearch != null) {
+            mainHandler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
+        }
+        executor.shutdownNow();
+    }
+
+    private void runSearch() {
+        if (pendingSearch != null) {
+            mainHandler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
+        }
+        if (shutdown) {
+            return;
+        }
+        int token = nextGeneration();
+        List<EmotionPost> base = published;
+        String query = currentQuery;
+        executor.execute(() -> {
+            List<EmotionPost> results = rankAndMatch(index, query);
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new PostDiffCallback(base, results));
+            mainHandler.post(() -> {
+                if (token != generation || shutdown) {
+                    return;
+                }
+                publish(query, results, diff);
+            });
+        });
+    }
+
+    private int nextGeneration() {
+        return ++generation;
+    }
+
+    private void publish(String query, List<EmotionPost> results, DiffUtil.DiffResult diff) {
+        published = results;
+        listener.onResults(query, results, diff);
+    }
+
+    /**
+     * Returns the ranker's hits in ranked order, followed by the other posts whose search text
+     * contains every token of the query. The substring matches keep fields the ranker does not
+     * index, such as the emotion, and partially typed words searchable.
+     */
+    private List<EmotionPost> rankAndMatch(List<IndexedPost> searchIndex, String query) {
+        List<EmotionPost> matches = match(searchIndex, query);
+        if (ranker == null || query.trim().isEmpty()) {
+            return matches;
+        }
+        Map<String, EmotionPost> postsById = new HashMap<>();
+        for (IndexedPost entry : searchIndex) {
+            if (entry.post.getPostId() != null) {
+                postsById.put(entry.post.getPostId(), entry.post);
+            }
+        }
+        Set<EmotionPost> ranked = new LinkedHashSet<>();
+        for (String postId : ranker.rank(query)) {
+            EmotionPost post = postsById.get(postId);
+            if (post != null) {
+                ranked.add(post);
+            }
+        }
+        List<EmotionPost> results = new ArrayList<>(ranked);
+        for (EmotionPost post : matches) {
+            if (!ranked.contains(post)) {
+                results.add(post);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the posts whose search text contains every token of the query.
+     */
+    private static List<EmotionPost> match(List<IndexedPost> searchIndex, String query) {
+        String[] tokens = query.toLowerCase(Locale.getDefault()).trim().split("\\s+");
+        List<EmotionPost> results = new ArrayList<>();
+        for (IndexedPost entry : searchIndex) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            boolean matches = true;
+            for (String token : tokens) {
+                if (!token.isEmpty() && !entry.searchText.contains(token)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                results.add(entry.post);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * A post paired with its precomputed lowercase search text.
+     */
+    private static class IndexedPost {
+        final EmotionPost post;
+        final String searchText;
+
+        IndexedPost(EmotionPost post) {
+            this.post = post;
+            StringBuilder builder = new StringBuilder();
+            appendField(builder, post.getEmotion());
+            appendField(builder, post.getExplanation());
+            appendField(builder, post.getLocation());
+            appendField(builder, post.getSocialSituation());
+            appendField(builder, post.getUsername());
+            this.searchText = builder.toString().toLowerCase(Locale.getDefault());
+        }
+
+        private static void appendField(StringBuilder builder, String value) {
+            if (value != null) {
+                builder.append(value);
+            }
+            builder.append(FIELD_SEPARATOR);
+        }
+    }
+
+    /**
+     * Diff callback identifying posts by id, falling back to instance identity for unsaved posts.
+     */
+    private static class PostDiffCallback extends DiffUtil.Callback {
+        private final List<EmotionPost> oldList;
+        private final List<EmotionPost> newList;
+
+        PostDiffCallback(List<EmotionPost> oldList, List<EmotionPost> newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            EmotionPost oldPost = oldList.get(oldItemPosition);
+            EmotionPost newPost = newList.get(newItemPosition);
+            if (oldPost.getPostId() != null) {
+                return oldPost.getPostId().equals(newPost.getPostId());
+            }
+            return oldPost == newPost;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            EmotionPost oldPost = oldList.get(oldItemPosition);
+            EmotionPost newPost = newList.get(newItemPosition);
+            return oldPost == newPost
+                    || (Objects.equals(oldPost.getEmotion(), newPost.getEmotion())
+                    && Objects.equals(oldPost.getExplanation(), newPost.getExplanation())
+                    && Objects.equals(oldPost.getLocation(), newPost.getLocation())
+                    && Objects.equals(oldPost.getSocialSituation(), newPost.getSocialSituation())
+                    && Objects.equals(oldPost.getImageUri(), newPost.getImageUri())
+                    && Objects.equals(oldPost.getThumbnailUri(), newPost.getThumbnailUri())
+                    && Objects.equals(oldPost.getTimestamp(), newPost.getTimestamp())
+                    && oldPost.isPublic() == newPost.isPublic());
+        }
+    }
+}
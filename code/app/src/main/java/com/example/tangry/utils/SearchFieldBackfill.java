@@ -0,0 +1,112 @@
+/**
+ * SearchFieldBackfill.java
+ *
+ * This file contains the migration that adds the username search fields (usernameLower and
+ * searchGrams) to user documents created before they existed. The indexed user searches query
+ * those fields, so until it has run, users without them are invisible to Add User search.
+ *
+ * Key features:
+ * - Repairs the signed-in user's own document on every login, through the rename path
+ * - Migrates every user document once per project, recorded in the meta/migrations document
+ * - Marks the migration done only when every batch was written, so a failed run is retried
+ * - Caches the recorded completion in SharedPreferences so later checks need no read
+ * - Tells the search screen whether it can rely on the indexed searches yet
+ *
+ * Outstanding Issues:
+ * - Clients signing in at the same time before it is recorded may each run the migration; the
+ *   writes are idempotent, so this only costs extra reads.
+ */
+package com.example.tangry.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.tangry.repositories.UserRepository;
+import com.google.android.gms.tasks.OnSuccessListener;
+
+public class SearchFieldBackfill {
+    private static final String TAG = "SearchFieldBackfill";
+    private static final String PREFS_NAME = "search_field_backfill_prefs";
+    private static final String DONE_KEY = "done";
+
+    // Only touched on the main thread.
+    private static boolean running = false;
+
+    private SearchFieldBackfill() {
+    }
+
+    /**
+     * Repairs the user's own search fields and starts the migration unless it already completed
+     * or is running. Must be called on the main thread.
+     *
+     * @param context any context; the application context is used
+     * @param email   the signed-in user's email address
+     */
+    public static void runOnLogin(Context context, String email) {
+        UserRepository repository = UserRepository.getInstance();
+        if (email != null) {
+            repository.ensureSearchFields(email,
+                    rewritten -> Log.d(TAG, rewritten ? "Rewrote own search fields" : "Own search fields up to date"),
+                    e -> Log.e(TAG, "Failed to check own search fields", e));
+        }
+        SharedPreferences prefs = prefs(context);
+        if (running || prefs.getBoolean(DONE_KEY, false)) {
+            return;
+        }
+        running = true;
+        repository.isSearchFieldBackfillDone(
+                done -> {
+                    if (done) {
+                        running = false;
+                        prefs.edit().putBoolean(DONE_KEY, true).apply();
+                        return;
+                    }
+                    repository.backfillSearchFields(
+                            updated -> {
+                                running = false;
+                                prefs.edit().putBoolean(DONE_KEY, true).apply();
+                                Log.d(TAG, "Search field backfill wrote " + updated + " users");
+                            },
+                            e -> {
+                                running = false;
+                                Log.e(TAG, "Search field backfill failed", e);
+                            });
+                },
+                e -> {
+                    running = false;
+                    Log.e(TAG, "Failed to check search field backfill", e);
+                });
+    }
+
+    /**
+     * Reports whether every user document is known to carry the search fields, i.e. whether the
+     * migration has completed on any client. Completion is cached, so only the first check after
+     * install reads Firestore. Errors are reported as not done, since the scan is always correct.
+     *
+     * @param context  any context
+     * @param callback receives true once the migration has completed for the project
+     */
+    public static void isDone(Context context, OnSuccessListener<Boolean> callback) {
+        SharedPreferences prefs = prefs(context);
+        if (prefs.getBoolean(DONE_KEY, false)) {
+            callback.onSuccess(true);
+            return;
+        }
+        UserRepository.getInstance().isSearchFieldBackfillDone(
+                done -> {
+                    if (done) {
+                        prefs.edit().putBoolean(DONE_KEY, true).apply();
+                    }
+                    callback.onSuccess(done);
+                },
+                e -> {
+                    Log.e(TAG, "Failed to check search field backfill", e);
+                    callback.onSuccess(false);
+                });
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * SearchGrams.java
+ *
+ * This utility class builds the normalized search tokens stored on user documents so that
+ * substring username search can be answered by Firestore instead of by downloading every user.
+ *
+ * Each username is lowercased and split into overlapping trigrams ("tangry" becomes "tan", "ang",
+ * "ngr", "gry"). A query of three or more characters can then be matched with a single
+ * whereArrayContains on its rarest trigram, and the few candidates verified on the client.
+ *
+ * Outstanding Issues:
+ * - Gram rarity is estimated from English letter frequencies rather than from the real user base.
+ */
+
+package com.example.tangry.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+public class SearchGrams {
+
+    /** Length of the grams stored in the "searchGrams" field. */
+    public static final int GRAM_LENGTH = 3;
+
+    // Approximate relative frequency of a-z in English text, used to estimate gram rarity.
+    private static final double[] LETTER_FREQUENCY = {
+            8.2, 1.5, 2.8, 4.3, 12.7, 2.2, 2.0, 6.1, 7.0, 0.15, 0.77, 4.0, 2.4,
+            6.7, 7.5, 1.9, 0.095, 6.0, 6.3, 9.1, 2.8, 0.98, 2.4, 0.15, 2.0, 0.074
+    };
+
+    // Frequency assigned to digits, underscores and other characters.
+    private static final double OTHER_FREQUENCY = 1.0;
+
+    /**
+     * Normalizes a username or query for case-insensitive matching.
+     *
+     * @param value the raw string.
+     * @return the trimmed, lowercased string, or an empty string if value is null.
+     */
+    public static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the distinct trigrams of the normalized value, in order of first appearance.
+     * Values shorter than {@link #GRAM_LENGTH} produce an empty list.
+     *
+     * @param value the username or query.
+     * @return the list of distinct trigrams.
+     */
+    public static List<String> trigrams(String value) {
+        String normalized = normalize(value);
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= normalized.length(); i++) {
+            grams.add(normalized.substring(i, i + GRAM_LENGTH));
+        }
+        return new ArrayList<>(grams);
+    }
+
+    /**
+     * Picks the gram expected to match the fewest documents.
+     *
+     * @param grams the candidate grams.
+     * @return the rarest gram, or null if grams is empty.
+     */
+    public static String rarestGram(Collection<String> grams) {
+        String rarest = null;
+        double rarestScore = Double.MAX_VALUE;
+        for (String gram : grams) {
+            double score = 1.0;
+            for (int i = 0; i < gram.length(); i++) {
+                score *= frequencyOf(gram.charAt(i));
+            }
+            if (score < rarestScore) {
+                rarestScore = score;
+                rarest = gram;
+            }
+        }
+        return rarest;
+    }
+
+    private static double frequencyOf(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return LETTER_FREQUENCY[c - 'a'];
+        }
+        return OTHER_FREQUENCY;
+    }
+}
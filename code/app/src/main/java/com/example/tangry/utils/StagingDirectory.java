@@ -0,0 +1,100 @@
+/**
+ * StagingDirectory.java
+ *
+ * A size-capped directory for the short-lived image files produced between capture and upload,
+ * such as compressed images and thumbnails. Previously these were written straight into the cache
+ * directory and never deleted. It has no Android dependencies so it can be unit tested.
+ *
+ * Key features:
+ * - Evicts the least recently modified files once the directory exceeds its byte cap
+ * - Never evicts the file just written, even if it alone exceeds the cap
+ * - Can be cleared wholesale, e.g. at startup when no upload from a previous process can still
+ *   be reading it
+ */
+package com.example.tangry.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+public class StagingDirectory {
+    private final File dir;
+    private final long maxBytes;
+
+    /**
+     * @param dir      the directory; created on first use
+     * @param maxBytes the total size above which older files are evicted
+     */
+    public StagingDirectory(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Creates a new, empty file in the directory.
+     *
+     * @param prefix the file name prefix, at least three characters
+     * @param suffix the file name suffix, e.g. ".jpg"
+     * @return the new file
+     * @throws IOException if the directory or file cannot be created
+     */
+    public synchronized File newFile(String prefix, String suffix) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create staging directory " + dir);
+        }
+        return File.createTempFile(prefix, suffix, dir);
+    }
+
+    /**
+     * Deletes the least recently modified files until the directory fits its cap.
+     *
+     * @param keep a file that must not be deleted, usually the one just written; may be null
+     * @return the number of files deleted
+     */
+    public synchronized int trim(File keep) {
+        File[] files = dir.listFiles(File::isFile);
+        if (files == null) {
+            return 0;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        int deleted = 0;
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (file.equals(keep)) {
+                continue;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes every file in the directory.
+     *
+     * @return the number of files deleted
+     */
+    public synchronized int clear() {
+        File[] files = dir.listFiles(File::isFile);
+        if (files == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File file : files) {
+            if (file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+}
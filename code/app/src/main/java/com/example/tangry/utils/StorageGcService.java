@@ -0,0 +1,298 @@
+/**
+ * StorageGcService.java
+ *
+ * Background job that deletes images and thumbnails no post references any more. Post images are
+ * content addressed and may be shared between posts, so deleting or editing a post never removes
+ * its image eagerly (see ImageHelper.deleteUnsharedImage); this job reclaims them instead. The
+ * reconciliation itself lives in StorageSweeper.
+ *
+ * Key features:
+ * - Scheduled through JobScheduler once a day, on unmetered networks while the device is idle
+ * - At most one client sweeps per day: each run first takes a lease document in a transaction
+ * - Sweeps a bounded number of pages per run and keeps the pass checkpoint with the lease, so the
+ *   next run continues where the last one stopped, whichever client runs it
+ * - Looks up references per listed page with a range query on the download URLs, so a run reads
+ *   only the posts that point at the objects it lists
+ * - Deletes in rate-limited batches and keeps objects younger than a grace period
+ * - Skips runs while offline operations are pending, since they may reference uploaded images
+ *
+ * Outstanding Issues:
+ * - Any signed-in client can still delete objects and read every post; the sweep belongs in a
+ *   trusted backend once the project has one.
+ * - Posts are matched by the download URL prefix this app builds, so a reference through another
+ *   endpoint or bucket name would not be seen.
+ */
+package com.example.tangry.utils;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.tangry.repositories.ImageStorageRepository;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.storage.ListResult;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class StorageGcService extends JobService {
+    private static final String TAG = "StorageGcService";
+    private static final int JOB_ID = 3802;
+    private static final String PREFS_NAME = "storage_gc_prefs";
+    private static final String KEY_INSTALL_ID = "install_id";
+    private static final List<String> FOLDERS = Arrays.asList("images", "thumbnails");
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_PAGES_PER_RUN = 10;
+    private static final int DELETE_BATCH_SIZE = 20;
+    private static final long DELETE_BATCH_PAUSE_MS = 1000;
+    // Covers a post whose image was uploaded but whose document is not written yet.
+    private static final long GRACE_MS = TimeUnit.DAYS.toMillis(1);
+    // A lease is held for a whole scheduling period, so other clients skip that day's runs.
+    private static final long LEASE_MS = TimeUnit.DAYS.toMillis(1);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile boolean stopped = false;
+
+    /**
+     * Schedules the daily collection unless it is already scheduled.
+     *
+     * @param context any context; the application context is used
+     */
+    public static void schedule(Context context) {
+        Context appContext = context.getApplicationContext();
+        JobScheduler scheduler = appContext.getSystemService(JobScheduler.class);
+        if (scheduler == null || scheduler.getPendingJob(JOB_ID) != null) {
+            return;
+        }
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(appContext, StorageGcService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresDeviceIdle(true)
+                .setPeriodic(TimeUnit.DAYS.toMillis(1))
+                .build();
+        scheduler.schedule(job);
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        if (OfflineSyncManager.getInstance(this).hasPendingOperations()) {
+            return false;
+        }
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String installId = prefs.getString(KEY_INSTALL_ID, null);
+        if (installId == null) {
+            installId = UUID.randomUUID().toString();
+            prefs.edit().putString(KEY_INSTALL_ID, installId).apply();
+        }
+        SweepLease lease = new SweepLease(FirebaseFirestore.getInstance(), installId);
+        stopped = false;
+        executor.execute(() -> {
+            boolean retry = false;
+            try {
+                if (!lease.acquire(System.currentTimeMillis(), LEASE_MS)) {
+                    Log.d(TAG, "Another client holds the sweep lease");
+                    jobFinished(params, false);
+                    return;
+                }
+                StorageSweeper sweeper = new StorageSweeper(
+                        new FirebaseBackend(FirebaseFirestore.getInstance(), ImageStorageRepository.getInstance()),
+                        FOLDERS, PAGE_SIZE, DELETE_BATCH_SIZE, DELETE_BATCH_PAUSE_MS, GRACE_MS, Thread::sleep);
+                StorageSweeper.Result result = sweeper.sweep(lease.getCheckpoint(), MAX_PAGES_PER_RUN,
+                        System.currentTimeMillis(), () -> stopped);
+                lease.finish(result.checkpoint);
+                Log.d(TAG, "Scanned " + result.scanned + ", deleted " + result.deleted + ", kept "
+                        + result.kept + ", failed " + result.failed + ", pass complete " + result.passComplete);
+            } catch (Exception e) {
+                // The checkpoint is left as is, so the next run repeats at most the pages of this one.
+                Log.e(TAG, "Storage collection failed", e);
+                retry = true;
+                try {
+                    lease.release();
+                } catch (Exception releaseError) {
+                    Log.w(TAG, "Could not release the sweep lease", releaseError);
+                }
+            }
+            jobFinished(params, retry && !stopped);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        stopped = true;
+        return true;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        executor.shutdown();
+    }
+
+    /**
+     * The shared lease that lets one client sweep per period, stored with the pass checkpoint in
+     * a Firestore document. Blocks, so it must not be used on the main thread.
+     */
+    public static class SweepLease {
+        private static final String FIELD_HOLDER = "holder";
+        private static final String FIELD_LEASE_UNTIL = "leaseUntil";
+        private static final String FIELD_CHECKPOINT = "checkpoint";
+
+        private final FirebaseFirestore db;
+        private final DocumentReference doc;
+        private final String holder;
+        private String checkpoint;
+
+        /**
+         * @param db     the Firestore instance holding the lease
+         * @param holder identifies this client, e.g. a per-install id
+         */
+        public SweepLease(FirebaseFirestore db, String holder) {
+            this.db = db;
+            this.doc = db.collection("meta").document("storageGc");
+            this.holder = holder;
+        }
+
+        /**
+         * Takes the lease unless another client's lease has not expired yet.
+         *
+         * @param now      the current time in epoch milliseconds
+         * @param periodMs how long the lease is held
+         * @return true if this client may sweep now
+         */
+        public boolean acquire(long now, long periodMs) throws Exception {
+            return Tasks.await(db.runTransaction(transaction -> {
+                DocumentSnapshot snapshot = transaction.get(doc);
+                Long leaseUntil = snapshot.getLong(FIELD_LEASE_UNTIL);
+                if (leaseUntil != null && leaseUntil > now) {
+                    return false;
+                }
+                checkpoint = snapshot.getString(FIELD_CHECKPOINT);
+                Map<String, Object> data = new HashMap<>();
+                data.put(FIELD_HOLDER, holder);
+                data.put(FIELD_LEASE_UNTIL, now + periodMs);
+                transaction.set(doc, data, SetOptions.merge());
+                return true;
+            }));
+        }
+
+        /**
+         * @return the checkpoint stored by the previous run, or null to start a new pass
+         */
+        public String getCheckpoint() {
+            return checkpoint;
+        }
+
+        /**
+         * Stores the checkpoint for the next run. The lease is kept until it expires.
+         *
+         * @param checkpoint the checkpoint returned by the sweep
+         */
+        public void finish(String checkpoint) throws Exception {
+            Tasks.await(doc.update(FIELD_CHECKPOINT, checkpoint));
+        }
+
+        /**
+         * Gives the lease up early, e.g. after a failed run, so a retry can take it again.
+         */
+        public void release() throws Exception {
+            Tasks.await(db.runTransaction(transaction -> {
+                DocumentSnapshot snapshot = transaction.get(doc);
+                if (holder.equals(snapshot.getString(FIELD_HOLDER))) {
+                    transaction.update(doc, FIELD_LEASE_UNTIL, 0L);
+                }
+                return null;
+            }));
+        }
+    }
+
+    /**
+     * Backs the sweeper with Firestore posts and Firebase Storage. Blocks, so it must not be used
+     * on the main thread.
+     */
+    public static class FirebaseBackend implements StorageSweeper.Backend {
+        private static final List<String> URL_FIELDS = Arrays.asList("imageUri", "thumbnailUri");
+        private final FirebaseFirestore db;
+        private final ImageStorageRepository storage;
+
+        public FirebaseBackend(FirebaseFirestore db, ImageStorageRepository storage) {
+            this.db = db;
+            this.storage = storage;
+        }
+
+        @Override
+        public Set<String> loadReferencedPaths(List<String> paths) throws Exception {
+            // Every download URL of an object starts with its object URL, so one range per field
+            // spanning the smallest and largest object URL finds each post referencing the page.
+            String low = null;
+            String high = null;
+            for (String path : paths) {
+                String objectUrl = storage.objectUrl(path);
+                if (low == null || objectUrl.compareTo(low) < 0) {
+                    low = objectUrl;
+                }
+                if (high == null || objectUrl.compareTo(high) > 0) {
+                    high = objectUrl;
+                }
+            }
+            Set<String> wanted = new HashSet<>(paths);
+            Set<String> referenced = new HashSet<>();
+            for (String field : URL_FIELDS) {
+                // Always from the server: a stale cache could miss a new reference.
+                QuerySnapshot snapshot = Tasks.await(db.collection("emotions")
+                        .whereGreaterThanOrEqualTo(field, low)
+                        .whereLessThanOrEqualTo(field, high + "\uf8ff")
+                        .get(Source.SERVER));
+                for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                    String path = StorageUrls.pathFromDownloadUrl(doc.getString(field));
+                    if (path != null && wanted.contains(path)) {
+                        referenced.add(path);
+                    }
+                }
+            }
+            return referenced;
+        }
+
+        @Override
+        public StorageSweeper.Page list(String prefix, String pageToken, int maxResults) throws Exception {
+            ListResult result = Tasks.await(storage.listImages(prefix, pageToken, maxResults));
+            List<String> paths = new ArrayList<>(result.getItems().size());
+            for (StorageReference item : result.getItems()) {
+                paths.add(item.getPath().substring(1));
+            }
+            return new StorageSweeper.Page(paths, result.getPageToken());
+        }
+
+        @Override
+        public long updatedMillis(String path) throws Exception {
+            StorageMetadata metadata = Tasks.await(storage.getImageMetadata(path));
+            return metadata.getUpdatedTimeMillis();
+        }
+
+        @Override
+        public void delete(String path) throws Exception {
+            Tasks.await(storage.deleteImage(path));
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * StorageSweeper.java
+ *
+ * This file contains the reconciliation behind the storage garbage collector: it pages through the
+ * objects under a set of Storage prefixes, asks which of each page's objects posts still
+ * reference, and deletes the unreferenced ones. It has no Android or Firebase dependencies; StorageGcService
+ * supplies a Backend that talks to Firestore and Storage.
+ *
+ * Key features:
+ * - Incremental: each run covers a bounded number of pages and returns a checkpoint to resume from
+ * - A page only advances the checkpoint once it is fully processed, so an interrupted page is
+ *   simply scanned again
+ * - Looks up references per page, so a run reads only the posts pointing at the listed objects
+ * - Deletes in rate-limited batches with a pause between batches
+ * - Re-checks the references of each batch after the pause, right before its deletes, so an
+ *   object a post started using meanwhile is kept
+ * - Keeps objects younger than a grace period, which may belong to a post still being written
+ */
+package com.example.tangry.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+public class StorageSweeper {
+
+    /**
+     * Access to the stored objects and the references to them. Methods are called on a
+     * background thread and may block.
+     */
+    public interface Backend {
+        /**
+         * @param paths object paths from one listed page, all under the same prefix
+         * @return those of the paths that some post references
+         */
+        Set<String> loadReferencedPaths(List<String> paths) throws Exception;
+
+        /**
+         * @param prefix     the folder to list, e.g. "images"
+         * @param pageToken  the token of the page to list, or null for the first page
+         * @param maxResults the page size
+         * @return one page of object paths
+         */
+        Page list(String prefix, String pageToken, int maxResults) throws Exception;
+
+        /**
+         * @return the last modification time of an object in epoch milliseconds
+         */
+        long updatedMillis(String path) throws Exception;
+
+        /**
+         * Deletes an object. Deleting an object that no longer exists must succeed.
+         */
+        void delete(String path) throws Exception;
+    }
+
+    /**
+     * Pauses between delete batches.
+     */
+    public interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    /**
+     * One page of a listing.
+     */
+    public static class Page {
+        public final List<String> paths;
+        public final String nextPageToken;
+
+        /**
+         * @param paths         the object paths on this page
+         * @param nextPageToken the token of the next page, or null if this is the last one
+         */
+        public Page(List<String> paths, String nextPageToken) {
+            this.paths = paths;
+            this.nextPageToken = nextPageToken;
+        }
+    }
+
+    /**
+     * The outcome of one run.
+     */
+    public static class Result {
+        public int scanned = 0;
+        public int deleted = 0;
+        public int kept = 0;
+        public int failed = 0;
+        /** Whether the run finished a full pass over every prefix. */
+        public boolean passComplete = false;
+        /** Where the next run resumes; null to start a new pass. */
+        public String checkpoint;
+    }
+
+    private final Backend backend;
+    private final List<String> prefixes;
+    private final int pageSize;
+    private final int batchSize;
+    private final long batchPauseMs;
+    private final long graceMs;
+    private final Sleeper sleeper;
+    // Deletes since the last pause in the current run.
+    private int deletesSincePause;
+
+    /**
+     * @param backend      the stored objects and their references
+     * @param prefixes     the folders to sweep, in order
+     * @param pageSize     objects listed per page
+     * @param batchSize    deletes between pauses
+     * @param batchPauseMs the pause after each batch of deletes
+     * @param graceMs      objects modified more recently than this are kept
+     * @param sleeper      performs the pauses
+     */
+    public StorageSweeper(Backend backend, List<String> prefixes, int pageSize, int batchSize,
+                          long batchPauseMs, long graceMs, Sleeper sleeper) {
+        this.backend = backend;
+        this.prefixes = new ArrayList<>(prefixes);
+        this.pageSize = pageSize;
+        this.batchSize = batchSize;
+        this.batchPauseMs = batchPauseMs;
+        this.graceMs = graceMs;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * Sweeps up to maxPages pages, starting at a checkpoint.
+     *
+     * @param checkpoint the checkpoint returned by the previous run, or null to start a new pass
+     * @param maxPages   the most pages to list in this run
+     * @param now        the current time in epoch milliseconds
+     * @param cancelled  polled between objects; returning true ends the run early
+     * @return the outcome, including the checkpoint for the next run
+     * @throws Exception if the references cannot be loaded or a listing fails; nothing past the
+     *                   returned checkpoint of earlier runs is lost
+     */
+    public Result sweep(String checkpoint, int maxPages, long now, BooleanSupplier cancelled) throws Exception {
+        Result result = new Result();
+        result.checkpoint = checkpoint;
+
+        // A malformed checkpoint restarts the pass rather than skipping anything.
+        int prefixIndex = Math.max(0, prefixIndexOf(checkpoint));
+        String pageToken = pageTokenOf(checkpoint);
+        deletesSincePause = 0;
+        for (int pages = 0; pages < maxPages && !cancelled.getAsBoolean(); pages++) {
+            Page page = backend.list(prefixes.get(prefixIndex), pageToken, pageSize);
+            Set<String> referenced = page.paths.isEmpty()
+                    ? Collections.emptySet() : backend.loadReferencedPaths(page.paths);
+            List<String> batch = new ArrayList<>();
+            for (String path : page.paths) {
+                if (cancelled.getAsBoolean()) {
+                    return result;
+                }
+                result.scanned++;
+                if (referenced.contains(path)) {
+                    continue;
+                }
+                batch.add(path);
+                if (batch.size() == batchSize) {
+                    if (!deleteBatch(batch, now, result)) {
+                        return result;
+                    }
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty() && !deleteBatch(batch, now, result)) {
+                return result;
+            }
+
+            pageToken = page.nextPageToken;
+            if (pageToken == null) {
+                prefixIndex++;
+                if (prefixIndex == prefixes.size()) {
+                    result.passComplete = true;
+                    result.checkpoint = null;
+                    return result;
+                }
+            }
+            result.checkpoint = encodeCheckpoint(prefixIndex, pageToken);
+        }
+        return result;
+    }
+
+    /**
+     * Deletes the objects of a batch that are still unreferenced and older than the grace period,
+     * pausing first if the previous batch deleted anything.
+     *
+     * @return false if the pause was interrupted and the run must end
+     */
+    private boolean deleteBatch(List<String> batch, long now, Result result) throws Exception {
+        if (deletesSincePause > 0) {
+            try {
+                sleeper.sleep(batchPauseMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            deletesSincePause = 0;
+        }
+        // Checked after the pause, right before the deletes, so a post written meanwhile keeps its image.
+        Set<String> referenced = backend.loadReferencedPaths(batch);
+        for (String path : batch) {
+            if (referenced.contains(path)) {
+                result.kept++;
+                continue;
+            }
+            try {
+                if (now - backend.updatedMillis(path) < graceMs) {
+                    result.kept++;
+                    continue;
+                }
+                backend.delete(path);
+                deletesSincePause++;
+                result.deleted++;
+            } catch (Exception e) {
+                result.failed++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes a resume position as "prefixIndex:pageToken".
+     */
+    static String encodeCheckpoint(int prefixIndex, String pageToken) {
+        return prefixIndex + ":" + (pageToken == null ? "" : pageToken);
+    }
+
+    /**
+     * @return the prefix index of a checkpoint, or -1 if it is missing or malformed
+     */
+    private int prefixIndexOf(String checkpoint) {
+        if (checkpoint == null) {
+            return -1;
+        }
+        try {
+            int index = Integer.parseInt(checkpoint.substring(0, checkpoint.indexOf(':')));
+            return index >= 0 && index < prefixes.size() ? index : -1;
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private String pageTokenOf(String checkpoint) {
+        if (prefixIndexOf(checkpoint) < 0) {
+            return null;
+        }
+        String token = checkpoint.substring(checkpoint.indexOf(':') + 1);
+        return token.isEmpty() ? null : token;
+    }
+}
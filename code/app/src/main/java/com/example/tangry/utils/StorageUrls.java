@@ -0,0 +1,87 @@
+/**
+ * StorageUrls.java
+ *
+ * This utility class builds and parses Firebase Storage download URLs without a network round
+ * trip. Uploads attach their own download token, so the URL of a fresh upload is known as soon as
+ * the upload completes and getDownloadUrl does not have to be called.
+ *
+ * Key features:
+ * - Builds token download URLs in the format the Storage REST endpoint serves
+ * - Builds the token-free object URL every download URL of an object starts with, for range queries
+ * - Extracts the object path back out of a download URL
+ */
+package com.example.tangry.utils;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+public class StorageUrls {
+    public static final String DEFAULT_ENDPOINT = "https://firebasestorage.googleapis.com";
+    // The object metadata key Storage reads download tokens from.
+    public static final String DOWNLOAD_TOKENS_KEY = "firebaseStorageDownloadTokens";
+
+    private static final String OBJECT_SEGMENT = "/o/";
+
+    /**
+     * Builds the download URL of an object.
+     *
+     * @param endpoint the Storage endpoint, e.g. DEFAULT_ENDPOINT or an emulator's http://host:port
+     * @param bucket   the bucket name
+     * @param path     the object path, without a leading slash
+     * @param token    the download token stored in the object's metadata
+     * @return the download URL
+     */
+    public static String downloadUrl(String endpoint, String bucket, String path, String token) {
+        return objectUrl(endpoint, bucket, path) + "?alt=media&token=" + encode(token);
+    }
+
+    /**
+     * Builds the URL of an object without its query, which every download URL of the object
+     * starts with whatever its token.
+     *
+     * @param endpoint the Storage endpoint, e.g. DEFAULT_ENDPOINT or an emulator's http://host:port
+     * @param bucket   the bucket name
+     * @param path     the object path, without a leading slash
+     * @return the object URL
+     */
+    public static String objectUrl(String endpoint, String bucket, String path) {
+        return endpoint + "/v0/b/" + encode(bucket) + OBJECT_SEGMENT + encode(path);
+    }
+
+    /**
+     * Returns the object path of a download URL.
+     *
+     * @param url a download URL
+     * @return the object path, or null if the URL is not a Storage download URL
+     */
+    public static String pathFromDownloadUrl(String url) {
+        if (url == null || !url.contains("/v0/b/")) {
+            return null;
+        }
+        int start = url.indexOf(OBJECT_SEGMENT);
+        if (start < 0) {
+            return null;
+        }
+        start += OBJECT_SEGMENT.length();
+        int end = url.indexOf('?', start);
+        String encoded = end < 0 ? url.substring(start) : url.substring(start, end);
+        if (encoded.isEmpty()) {
+            return null;
+        }
+        try {
+            return URLDecoder.decode(encoded, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            // URLEncoder is form encoding; Storage expects %20 for spaces.
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is always supported", e);
+        }
+    }
+}
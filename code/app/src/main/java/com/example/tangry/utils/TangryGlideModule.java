@@ -0,0 +1,50 @@
+/**
+ * TangryGlideModule.java
+ *
+ * App-wide Glide configuration. Without it every load used Glide's defaults: ARGB_8888 bitmaps and
+ * cache budgets that do not reflect that the app's images are small, already-compressed photos.
+ *
+ * Key features:
+ * - Memory cache and bitmap pool sized in screens of pixels, so they scale with the device
+ * - A bounded disk cache of decoded, resized images in the app's cache directory
+ * - Decodes to RGB_565 by default, halving bitmap memory; Glide still uses ARGB_8888 for images
+ *   with an alpha channel, so only opaque photos are affected
+ */
+package com.example.tangry.utils;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.AppGlideModule;
+import com.bumptech.glide.request.RequestOptions;
+
+@GlideModule
+public class TangryGlideModule extends AppGlideModule {
+    // A list screen holds a handful of rows; two screens keep a scroll back and forth in memory.
+    private static final float MEMORY_CACHE_SCREENS = 2;
+    private static final float BITMAP_POOL_SCREENS = 3;
+    private static final long DISK_CACHE_BYTES = 100L * 1024 * 1024;
+    private static final String DISK_CACHE_NAME = "glide_image_cache";
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context)
+                .setMemoryCacheScreens(MEMORY_CACHE_SCREENS)
+                .setBitmapPoolScreens(BITMAP_POOL_SCREENS)
+                .build();
+        builder.setMemorySizeCalculator(calculator);
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, DISK_CACHE_NAME, DISK_CACHE_BYTES));
+        builder.setDefaultRequestOptions(new RequestOptions().format(DecodeFormat.PREFER_RGB_565));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * TileDownloader.java
+ *
+ * This file contains a minimal HTTP client for slippy-map raster tiles laid out as
+ * {baseUrl}{zoom}/{x}/{y}{extension}, the same layout osmdroid's XYTileSource requests. It is
+ * used by the offline tile prefetcher and can be pointed at a local tile server in tests.
+ *
+ * Key features:
+ * - Builds tile URLs exactly like XYTileSource
+ * - Sends a User-Agent, as tile servers' usage policies require
+ * - Distinguishes missing tiles (null) from transport or server errors (IOException)
+ * - Has no Android dependencies
+ */
+package com.example.tangry.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+public class TileDownloader {
+
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 15_000;
+
+    private final String baseUrl;
+    private final String extension;
+    private final String userAgent;
+
+    /**
+     * Creates a downloader.
+     *
+     * @param baseUrl   the tile server base URL, ending with a slash
+     * @param extension the tile file extension including the dot, e.g. ".png"
+     * @param userAgent the User-Agent header to send
+     */
+    public TileDownloader(String baseUrl, String extension, String userAgent) {
+        this.baseUrl = baseUrl;
+        this.extension = extension;
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * Returns the URL of a tile.
+     */
+    public String tileUrl(int zoom, int x, int y) {
+        return baseUrl + zoom + "/" + x + "/" + y + extension;
+    }
+
+    /**
+     * Downloads a tile. Blocks; call from a background thread.
+     *
+     * @return the tile bytes, or null if the server has no such tile
+     * @throws IOException if the request fails or the server returns an error
+     */
+    public byte[] download(int zoom, int x, int y) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(tileUrl(zoom, x, y)).openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setRequestProperty("User-Agent", userAgent);
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                return null;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + status + " for tile " + zoom + "/" + x + "/" + y);
+            }
+            try (InputStream in = connection.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                return out.toByteArray();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * TilePrefetcher.java
+ *
+ * This file contains the download loop that fills an offline tile store with every tile of a
+ * bounding box over a range of zoom levels. Tiles already in the store are skipped, so an
+ * interrupted run resumes where it stopped, and coarse zoom levels are fetched first so a partial
+ * run still leaves a usable map.
+ *
+ * Key features:
+ * - Converts bounding boxes to Web Mercator tile ranges per zoom level
+ * - Skips stored tiles and records server-side missing tiles without failing the run
+ * - Stops at a byte budget, on cancellation, or after repeated download failures
+ * - Reports whether the area is now completely stored
+ * - Has no Android dependencies; the store is an interface
+ */
+package com.example.tangry.utils;
+
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+
+public class TilePrefetcher {
+
+    private static final double MAX_MERCATOR_LAT = 85.05112878;
+    // Give up after this many failed downloads in a row, e.g. when the network went away.
+    private static final int MAX_CONSECUTIVE_FAILURES = 5;
+
+    /**
+     * Persistent storage for downloaded tiles.
+     */
+    public interface TileStore {
+        boolean contains(int zoom, int x, int y);
+
+        /**
+         * @return true if the tile was stored
+         */
+        boolean put(int zoom, int x, int y, byte[] data);
+    }
+
+    /**
+     * The outcome of a prefetch run.
+     */
+    public static class Result {
+        public final int downloaded;
+        public final int skipped;
+        public final int failed;
+        public final long bytes;
+        /** True if every tile of the area is stored or does not exist on the server. */
+        public final boolean complete;
+
+        Result(int downloaded, int skipped, int failed, long bytes, boolean complete) {
+            this.downloaded = downloaded;
+            this.skipped = skipped;
+            this.failed = failed;
+            this.bytes = bytes;
+            this.complete = complete;
+        }
+    }
+
+    private final TileDownloader downloader;
+    private final TileStore store;
+
+    public TilePrefetcher(TileDownloader downloader, TileStore store) {
+        this.downloader = downloader;
+        this.store = store;
+    }
+
+    /**
+     * Returns the tile column containing a longitude.
+     */
+    public static int tileX(double longitude, int zoom) {
+        int tiles = 1 << zoom;
+        int x = (int) Math.floor((longitude + 180) / 360 * tiles);
+        return Math.max(0, Math.min(tiles - 1, x));
+    }
+
+    /**
+     * Returns the tile row containing a latitude; rows grow southwards.
+     */
+    public static int tileY(double latitude, int zoom) {
+        int tiles = 1 << zoom;
+        double lat = Math.toRadians(Math.max(-MAX_MERCATOR_LAT, Math.min(MAX_MERCATOR_LAT, latitude)));
+        int y = (int) Math.floor((1 - Math.log(Math.tan(lat) + 1 / Math.cos(lat)) / Math.PI) / 2 * tiles);
+        return Math.max(0, Math.min(tiles - 1, y));
+    }
+
+    /**
+     * Returns the number of tiles covering a bounding box over a range of zoom levels.
+     */
+    public static long countTiles(double south, double west, double north, double east, int minZoom, int maxZoom) {
+        long total = 0;
+        for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+            long columns = tileX(east, zoom) - tileX(west, zoom) + 1;
+            long rows = tileY(south, zoom) - tileY(north, zoom) + 1;
+            total += columns * rows;
+        }
+        return total;
+    }
+
+    /**
+     * Downloads every missing tile of the bounding box, coarsest zoom first. Blocks; call from a
+     * background thread.
+     *
+     * @param maxBytes  stop once this many bytes have been downloaded in this run
+     * @param cancelled polled before each tile; the run stops as soon as it returns true
+     * @return the outcome of the run
+     */
+    public Result prefetch(double south, double west, double north, double east,
+                           int minZoom, int maxZoom, long maxBytes, BooleanSupplier cancelled) {
+        int downloaded = 0;
+        int skipped = 0;
+        int failed = 0;
+        int consecutiveFailures = 0;
+        long bytes = 0;
+        for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+            int minX = tileX(west, zoom);
+            int maxX = tileX(east, zoom);
+            int minY = tileY(north, zoom);
+            int maxY = tileY(south, zoom);
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    if (cancelled.getAsBoolean() || bytes >= maxBytes
+                            || consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+                        return new Result(downloaded, skipped, failed, bytes, false);
+                    }
+                    if (store.contains(zoom, x, y)) {
+                        skipped++;
+                        continue;
+                    }
+                    try {
+                        byte[] tile = downloader.download(zoom, x, y);
+                        consecutiveFailures = 0;
+                        if (tile == null) {
+                            // Nothing to store; the map shows an empty tile here online as well.
+                            skipped++;
+                        } else if (store.put(zoom, x, y, tile)) {
+                            downloaded++;
+                            bytes += tile.length;
+                        } else {
+                            failed++;
+                        }
+                    } catch (IOException e) {
+                        failed++;
+                        consecutiveFailures++;
+                    }
+                }
+            }
+        }
+        return new Result(downloaded, skipped, failed, bytes, failed == 0);
+    }
+}
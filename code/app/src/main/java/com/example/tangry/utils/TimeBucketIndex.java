@@ -0,0 +1,178 @@
+/**
+ * TimeBucketIndex.java
+ *
+ * This file contains an in-memory index of timestamped points bucketed by hour and, within each
+ * hour, by geohash cell. It backs the map's time-slider playback: the index is built once from
+ * the loaded posts, and moving the slider answers "the latest post of each user within this time
+ * window and area" with a binary search and a scan of the matching buckets instead of a query.
+ *
+ * Key features:
+ * - Flat primitive arrays: items sorted by hour, then cell, then time
+ * - Range lookups touch only the hour buckets in the window and the cells overlapping the area
+ * - Returns the latest item per group (e.g. per user) as a BitSet, ready for diffing
+ * - Has no Android dependencies
+ *
+ * Outstanding Issues:
+ * - Not thread-safe; callers must confine access to a single thread.
+ */
+package com.example.tangry.utils;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+public class TimeBucketIndex {
+
+    public static final long BUCKET_MS = 60L * 60 * 1000;
+
+    private final long[] times;
+    private final int[] groups;
+    // Item indices sorted by (hour, cell, time).
+    private final int[] order;
+    // Distinct hours in ascending order; bucket b owns cells bucketCellStart[b] .. bucketCellStart[b + 1].
+    private final long[] bucketHours;
+    private final int[] bucketCellStart;
+    // Cell c owns order[cellItemStart[c] .. cellItemStart[c + 1]] and has bounds cellBounds[4c .. 4c + 3].
+    private final int[] cellItemStart;
+    private final double[] cellBounds;
+    // Scratch space for lookups, one slot per group.
+    private final int[] bestItem;
+    private final long[] bestTime;
+    private final int[] touchedGroups;
+
+    /**
+     * Builds the index. All arrays must have the same length.
+     *
+     * @param timestamps    the item times in epoch milliseconds
+     * @param latitudes     the item latitudes
+     * @param longitudes    the item longitudes
+     * @param groupKeys     a small non-negative key per item, e.g. an index into a list of users
+     * @param cellPrecision the geohash length of the spatial cells
+     */
+    public TimeBucketIndex(long[] timestamps, double[] latitudes, double[] longitudes, int[] groupKeys,
+                           int cellPrecision) {
+        int size = timestamps.length;
+        times = timestamps.clone();
+        groups = groupKeys.clone();
+        long[] hours = new long[size];
+        String[] cells = new String[size];
+        int groupCount = 0;
+        for (int i = 0; i < size; i++) {
+            hours[i] = Math.floorDiv(times[i], BUCKET_MS);
+            cells[i] = GeoHash.encode(latitudes[i], longitudes[i], cellPrecision);
+            groupCount = Math.max(groupCount, groups[i] + 1);
+        }
+
+        Integer[] sorted = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, Comparator.<Integer>comparingLong(i -> hours[i])
+                .thenComparing(i -> cells[i])
+                .thenComparingLong(i -> times[i]));
+        order = new int[size];
+        for (int k = 0; k < size; k++) {
+            order[k] = sorted[k];
+        }
+
+        // Walk the sorted items once, opening a bucket at each new hour and a cell at each new cell.
+        long[] hourKeys = new long[size];
+        int[] hourStarts = new int[size + 1];
+        int[] cellStarts = new int[size + 1];
+        double[] bounds = new double[size * 4];
+        int buckets = 0;
+        int cellCount = 0;
+        for (int k = 0; k < size; k++) {
+            int i = order[k];
+            boolean newHour = k == 0 || hours[i] != hours[order[k - 1]];
+            if (newHour) {
+                hourKeys[buckets] = hours[i];
+                hourStarts[buckets] = cellCount;
+                buckets++;
+            }
+            if (newHour || !cells[i].equals(cells[order[k - 1]])) {
+                cellStarts[cellCount] = k;
+                System.arraycopy(GeoHash.decodeBounds(cells[i]), 0, bounds, cellCount * 4, 4);
+                cellCount++;
+            }
+        }
+        hourStarts[buckets] = cellCount;
+        cellStarts[cellCount] = size;
+        bucketHours = Arrays.copyOf(hourKeys, buckets);
+        bucketCellStart = Arrays.copyOf(hourStarts, buckets + 1);
+        cellItemStart = Arrays.copyOf(cellStarts, cellCount + 1);
+        cellBounds = Arrays.copyOf(bounds, cellCount * 4);
+
+        bestItem = new int[groupCount];
+        bestTime = new long[groupCount];
+        touchedGroups = new int[groupCount];
+        Arrays.fill(bestItem, -1);
+    }
+
+    /**
+     * Returns the number of indexed items.
+     */
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * Finds, for every group, its latest item inside a time window and a latitude/longitude box.
+     *
+     * @param fromMillis the start of the window, inclusive
+     * @param toMillis   the end of the window, inclusive
+     * @return the indices (as passed to the constructor) of the selected items
+     */
+    public BitSet latestPerGroup(long fromMillis, long toMillis,
+                                 double south, double west, double north, double east) {
+        BitSet result = new BitSet(times.length);
+        long lastHour = Math.floorDiv(toMillis, BUCKET_MS);
+        int touched = 0;
+        for (int b = firstBucketAtOrAfter(Math.floorDiv(fromMillis, BUCKET_MS));
+             b < bucketHours.length && bucketHours[b] <= lastHour; b++) {
+            for (int c = bucketCellStart[b]; c < bucketCellStart[b + 1]; c++) {
+                int base = c * 4;
+                // Bounds are [minLat, minLng, maxLat, maxLng].
+                if (cellBounds[base] > north || cellBounds[base + 2] < south
+                        || cellBounds[base + 1] > east || cellBounds[base + 3] < west) {
+                    continue;
+                }
+                for (int k = cellItemStart[c]; k < cellItemStart[c + 1]; k++) {
+                    int i = order[k];
+                    long time = times[i];
+                    if (time < fromMillis || time > toMillis) {
+                        continue;
+                    }
+                    int group = groups[i];
+                    if (bestItem[group] < 0) {
+                        touchedGroups[touched++] = group;
+                    } else if (time <= bestTime[group]) {
+                        continue;
+                    }
+                    bestItem[group] = i;
+                    bestTime[group] = time;
+                }
+            }
+        }
+        for (int t = 0; t < touched; t++) {
+            int group = touchedGroups[t];
+            result.set(bestItem[group]);
+            bestItem[group] = -1;
+        }
+        return result;
+    }
+
+    private int firstBucketAtOrAfter(long hour) {
+        int low = 0;
+        int high = bucketHours.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bucketHours[mid] < hour) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.tangry;
+
+import static org.junit.Assert.*;
+
+import com.example.tangry.utils.BkTree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BkTreeTest {
+
+    @Test
+    public void testDistance() {
+        assertEquals(0, BkTree.distance("tangry", "tangry", Integer.MAX_VALUE));
+        assertEquals(1, BkTree.distance("tangry", "tangy", Integer.MAX_VALUE));
+        assertEquals(3, BkTree.distance("kitten", "sitting", Integer.MAX_VALUE));
+        assertTrue(BkTree.distance("abcdef", "uvwxyz", 2) > 2);
+    }
+
+    @Test
+    public void testAddIgnoresDuplicates() {
+        BkTree tree = new BkTree();
+        assertTrue(tree.add("alice"));
+        assertFalse(tree.add("alice"));
+        assertEquals(1, tree.size());
+    }
+
+    @Test
+    public void testSearchRanksByDistanceThenAlphabetically() {
+        BkTree tree = new BkTree();
+        for (String word : new String[]{"alice", "alicia", "alex", "bob", "malice", "alise"}) {
+            tree.add(word);
+        }
+        List<String> words = new ArrayList<>();
+        for (BkTree.Match match : tree.search("alice", 2)) {
+            words.add(match.getWord() + ":" + match.getDistance());
+        }
+        assertEquals("[alice:0, alise:1, malice:1, alicia:2]", words.toString());
+    }
+
+    @Test
+    public void testSearchMatchesBruteForce() {
+        BkTree tree = new BkTree();
+        List<String> words = new ArrayList<>();
+        java.util.Random random = new java.util.Random(42);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder builder = new StringBuilder();
+            int length = 3 + random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                builder.append((char) ('a' + random.nextInt(6)));
+            }
+            if (tree.add(builder.toString())) {
+                words.add(builder.toString());
+            }
+        }
+        int expected = 0;
+        for (String word : words) {
+            if (BkTree.distance(word, "abcab", Integer.MAX_VALUE) <= 2) {
+                expected++;
+            }
+        }
+        assertEquals(expected, tree.search("abcab", 2).size());
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.tangry;
+
+import static org.junit.Assert.*;
+
+import com.example.tangry.utils.ContentHash;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+public class ContentHashTest {
+
+    @Test
+    public void testKnownDigest() throws Exception {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                ContentHash.sha256Hex(new ByteArrayInputStream("abc".getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    @Test
+    public void testInputLongerThanBufferHashesWhole() throws Exception {
+        byte[] data = new byte[20000];
+        data[19999] = 1;
+        String withTail = ContentHash.sha256Hex(new ByteArrayInputStream(data));
+        data[19999] = 0;
+        assertNotEquals(withTail, ContentHash.sha256Hex(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    public void testRecognizesContentAddressedNames() throws Exception {
+        String hash = ContentHash.sha256Hex(new ByteArrayInputStream(new byte[0]));
+        assertTrue(ContentHash.isContentAddressed(hash));
+        assertFalse(ContentHash.isContentAddressed("0b7c6f3a-5f1e-4c53-9a4e-0d6c2b1f7e21"));
+        assertFalse(ContentHash.isContentAddressed(hash.toUpperCase()));
+        assertFalse(ContentHash.isContentAddressed(null));
+    }
+}
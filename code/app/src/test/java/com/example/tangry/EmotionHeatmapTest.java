@@ -0,0 +1,91 @@
+package com.example.tangry;
+
+import static org.junit.Assert.*;
+
+import com.example.tangry.utils.EmotionHeatmap;
+import com.example.tangry.utils.GeoHash;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class EmotionHeatmapTest {
+
+    private static final int RED = 0xff0000;
+    private static final int BLUE = 0x0000ff;
+
+    @Test
+    public void testAggregatesPostsPerCell() {
+        EmotionHeatmap heatmap = new EmotionHeatmap(7);
+        heatmap.update(Arrays.asList(
+                new EmotionHeatmap.Item("a", 53.54610, -113.49380, "Anger"),
+                new EmotionHeatmap.Item("b", 53.54612, -113.49382, "Anger"),
+                new EmotionHeatmap.Item("c", 53.54611, -113.49381, "Sadness"),
+                new EmotionHeatmap.Item("d", 53.52320, -113.52630, "Fear")));
+        assertEquals(2, heatmap.cellCount());
+        Map<String, Integer> histogram = heatmap.histogram(GeoHash.encode(53.54610, -113.49380, 7));
+        assertEquals(Integer.valueOf(2), histogram.get("Anger"));
+        assertEquals(Integer.valueOf(1), histogram.get("Sadness"));
+    }
+
+    @Test
+    public void testIncrementalUpdateRecountsOnlyChanges() {
+        EmotionHeatmap heatmap = new EmotionHeatmap(7);
+        List<EmotionHeatmap.Item> items = new ArrayList<>();
+        items.add(new EmotionHeatmap.Item("a", 53.5461, -113.4938, "Anger"));
+        items.add(new EmotionHeatmap.Item("b", 53.5232, -113.5263, "Fear"));
+        assertTrue(heatmap.update(items));
+        assertFalse(heatmap.update(items));
+
+        // Post "a" is edited to a new emotion and "b" disappears from the loaded set.
+        boolean changed = heatmap.update(Collections.singletonList(
+                new EmotionHeatmap.Item("a", 53.5461, -113.4938, "Happiness")));
+        assertTrue(changed);
+        assertEquals(1, heatmap.cellCount());
+        Map<String, Integer> histogram = heatmap.histogram(GeoHash.encode(53.5461, -113.4938, 7));
+        assertNull(histogram.get("Anger"));
+        assertEquals(Integer.valueOf(1), histogram.get("Happiness"));
+    }
+
+    @Test
+    public void testRasterMixesColorsAndCoversCells() {
+        EmotionHeatmap heatmap = new EmotionHeatmap(7);
+        heatmap.update(Arrays.asList(
+                new EmotionHeatmap.Item("a", 53.5461, -113.4938, "Anger"),
+                new EmotionHeatmap.Item("b", 53.5461, -113.4938, "Sadness")));
+        Map<String, Integer> colors = new HashMap<>();
+        colors.put("Anger", RED);
+        colors.put("Sadness", BLUE);
+        EmotionHeatmap.Raster raster = heatmap.rasterize(colors, 0, 256);
+
+        // One cell plus the transparent border on each side.
+        assertEquals(3, raster.width);
+        assertEquals(3, raster.height);
+        assertEquals(0, raster.pixels[0]);
+        int center = raster.pixels[4];
+        assertEquals(200, center >>> 24);
+        assertEquals(0x80, (center >> 16) & 0xff);
+        assertEquals(0x80, center & 0xff);
+        assertTrue(raster.south < 53.5461 && raster.north > 53.5461);
+        assertTrue(raster.west < -113.4938 && raster.east > -113.4938);
+    }
+
+    @Test
+    public void testLargeAreasAreDownsampled() {
+        EmotionHeatmap heatmap = new EmotionHeatmap(7);
+        List<EmotionHeatmap.Item> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add(new EmotionHeatmap.Item("p" + i, 53.40 + i * 0.003, -113.60 + i * 0.003, "Fear"));
+        }
+        heatmap.update(items);
+        EmotionHeatmap.Raster raster = heatmap.rasterize(Collections.emptyMap(), BLUE, 64);
+        assertTrue(raster.width <= 64 && raster.height <= 64);
+        assertTrue(raster.south < 53.40 && raster.north > 53.697);
+        assertNull(new EmotionHeatmap(7).rasterize(Collections.emptyMap(), BLUE, 64));
+    }
+}
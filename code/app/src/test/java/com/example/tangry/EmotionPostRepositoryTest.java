@@ -100,6 +100,7 @@ public class EmotionPostRepositoryTest {
                 "Alone",
                 "testUser"
         );
+        post.setThumbnailUri("thumb_uri");
 
         OnSuccessListener<DocumentReference> mockSuccessListener = mock(OnSuccessListener.class);
         OnFailureListener mockFailureListener = mock(OnFailureListener.class);
@@ -112,6 +113,7 @@ public class EmotionPostRepositoryTest {
         assertEquals("Happiness", capturedMap.get("emotion"));
         assertEquals("Test", capturedMap.get("explanation"));
         assertEquals("image_uri", capturedMap.get("imageUri"));
+        assertEquals("thumb_uri", capturedMap.get("thumbnailUri"));
         assertEquals("Location", capturedMap.get("location"));
         assertEquals("Alone", capturedMap.get("socialSituation"));
         assertEquals("testUser", capturedMap.get("username"));
@@ -0,0 +1,58 @@
+package com.example.tangry;
+
+import static org.junit.Assert.*;
+
+import com.example.tangry.utils.GeoHash;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public class GeoHashTest {
+
+    @Test
+    public void testEncodeKnownValue() {
+        assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+        assertEquals("c3x29", GeoHash.encode(53.5461, -113.4938, 5));
+    }
+
+    @Test
+    public void testDecodeBoundsContainsPoint() {
+        String hash = GeoHash.encode(53.5461, -113.4938, GeoHash.POST_PRECISION);
+        double[] bounds = GeoHash.decodeBounds(hash);
+        assertTrue(bounds[0] <= 53.5461 && 53.5461 <= bounds[2]);
+        assertTrue(bounds[1] <= -113.4938 && -113.4938 <= bounds[3]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeRejectsInvalidCharacter() {
+        GeoHash.decodeBounds("u4pa");
+    }
+
+    @Test
+    public void testCellsInBoundsContainEveryPointInBox() {
+        double minLat = 53.50, maxLat = 53.59, minLng = -113.57, maxLng = -113.42;
+        List<String> cells = GeoHash.cellsInBounds(minLat, minLng, maxLat, maxLng, 9);
+        assertTrue(cells.size() <= 9);
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            double lat = minLat + random.nextDouble() * (maxLat - minLat);
+            double lng = minLng + random.nextDouble() * (maxLng - minLng);
+            String hash = GeoHash.encode(lat, lng, GeoHash.POST_PRECISION);
+            boolean covered = false;
+            for (String cell : cells) {
+                covered |= hash.startsWith(cell);
+            }
+            assertTrue("Not covered: " + lat + ", " + lng, covered);
+        }
+    }
+
+    @Test
+    public void testDistanceKm() {
+        // Edmonton to Calgary is roughly 280 km.
+        double distance = GeoHash.distanceKm(53.5461, -113.4938, 51.0447, -114.0719);
+        assertTrue(distance > 270 && distance < 290);
+        assertEquals(0.0, GeoHash.distanceKm(53.5, -113.5, 53.5, -113.5), 1e-9);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.tangry;
+
+import static org.junit.Assert.*;
+
+import com.example.tangry.utils.GridClusterer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GridClustererTest {
+
+    private GridClusterer<String> clusterer;
+
+    @Before
+    public void setUp() {
+        clusterer = new GridClusterer<>(64, 18);
+        List<GridClusterer.Item<String>> items = new ArrayList<>();
+        // Three posts a few hundred metres apart downtown, one across the river.
+        items.add(new GridClusterer.Item<>(53.5461, -113.4938, "Happiness", "alice"));
+        items.add(new GridClusterer.Item<>(53.5475, -113.4960, "Sadness", "bob"));
+        items.add(new GridClusterer.Item<>(53.5450, -113.4915, "Sadness", "carol"));
+        items.add(new GridClusterer.Item<>(53.5232, -113.5263, "Fear", "dave"));
+        clusterer.setItems(items);
+    }
+
+    @Test
+    public void testNearbyPointsClusterAtLowZoom() {
+        List<GridClusterer.Cluster<String>> clusters = clusterer.clustersAt(6);
+        assertEquals(1, clusters.size());
+        assertEquals(4, clusters.get(0).size());
+        assertEquals("Sadness", clusters.get(0).getDominantCategory());
+    }
+
+    @Test
+    public void testClustersSplitWhenZoomingIn() {
+        List<GridClusterer.Cluster<String>> clusters = clusterer.clustersAt(10);
+        assertEquals(2, clusters.size());
+        assertEquals(3, clusters.get(0).size());
+        assertEquals("alice", clusters.get(0).getPayloads().get(0));
+        assertEquals(1, clusters.get(1).size());
+        assertEquals("Fear", clusters.get(1).getDominantCategory());
+
+        assertEquals(4, clusterer.clustersAt(16).size());
+    }
+
+    @Test
+    public void testZoomIsClampedAndMemoized() {
+        assertSame(clusterer.clustersAt(18), clusterer.clustersAt(25));
+        assertSame(clusterer.clustersAt(12), clusterer.clustersAt(12));
+    }
+
+    @Test
+    public void testTieKeepsFirstCategory() {
+        List<GridClusterer.Item<String>> items = new ArrayList<>();
+        items.add(new GridClusterer.Item<>(53.5461, -113.4938, "Angry", "a"));
+        items.add(new GridClusterer.Item<>(53.5461, -113.4938, "Shame", "b"));
+        items.add(new GridClusterer.Item<>(53.5461, -113.4938, "Shame", "c"));
+        items.add(new GridClusterer.Item<>(53.5461, -113.4938, "Angry", "d"));
+        clusterer.setItems(items);
+        assertEquals("Angry", clusterer.clustersAt(5).get(0).getDominantCategory());
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.tangry;
+
+import static org.junit.Assert.*;
+
+import com.example.tangry.utils.ImageSizing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ImageSizingTest {
+
+    @Test
+    public void testSampleSizeKeepsDecodeAboveTarget() {
+        // 12 MP photo: 4000 / 2 = 2000 and 4000 / 4 = 1000, so halving once keeps it above 1280.
+        assertEquals(2, ImageSizing.calculateInSampleSize(4000, 3000, 1280));
+        assertEquals(4, ImageSizing.calculateInSampleSize(3000, 6000, 1280));
+        assertEquals(1, ImageSizing.calculateInSampleSize(1280, 960, 1280));
+        assertEquals(1, ImageSizing.calculateInSampleSize(640, 480, 1280));
+    }
+
+    @Test
+    public void testBinarySearchFindsHighestFittingQuality() throws Exception {
+        List<Integer> tried = new ArrayList<>();
+        // Size grows by 1000 bytes per quality step; 64000 bytes fits up to quality 64.
+        int quality = ImageSizing.highestQualityWithin(30, 90, 64000, q -> {
+            tried.add(q);
+            return q * 1000;
+        });
+        assertEquals(64, quality);
+        assertTrue("expected a logarithmic number of encodes, got " + tried, tried.size() <= 6);
+    }
+
+    @Test
+    public void testReturnsMinusOneWhenNothingFits() throws Exception {
+        assertEquals(-1, ImageSizing.highestQualityWithin(30, 90, 100, q -> 100 + q));
+    }
+
+    @Test
+    public void testEverythingFitsReturnsMaxQuality() throws Exception {
+        assertEquals(90, ImageSizing.highestQualityWithin(30, 90, 65536, q -> 10));
+    }
+
+    @Test
+    public void testSmallestWithinPicksSmallestFittingCandidate() {
+        assertEquals(1, ImageSizing.smallestWithin(new int[]{60000, 48000}, 65536));
+        assertEquals(0, ImageSizing.smallestWithin(new int[]{60000, 70000}, 65536));
+        assertEquals(0, ImageSizing.smallestWithin(new int[]{50000, 50000}, 65536));
+        assertEquals(-1, ImageSizing.smallestWithin(new int[]{70000, 80000}, 65536));
+    }
+
+    @Test
+    public void testExifOrientationToRotationAndMirror() {
+        int[] rotations = {0, 0, 180, 180, 90, 90, 270, 270};
+        boolean[] mirrored = {false, true, false, true, true, false, true, false};
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            assertEquals(rotations[orientation - 1], ImageSizing.rotationDegrees(orientation));
+            assertEquals(mirrored[orientation - 1], ImageSizing.isMirrored(orientation));
+        }
+        // Undefined and out-of-range tags are treated as upright.
+        assertEquals(0, ImageSizing.rotationDegrees(0));
+        assertFalse(ImageSizing.isMirrored(9));
+    }
+}
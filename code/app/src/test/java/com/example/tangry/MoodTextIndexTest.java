@@ -0,0 +1,99 @@
+package com.example.tangry;
+
+import static org.junit.Assert.*;
+
+import com.example.tangry.utils.MoodTextIndex;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+public class MoodTextIndexTest {
+
+    @Test
+    public void testAnalyzeLowercasesStemsAndDropsStopWords() {
+        assertEquals(Arrays.asList("worry", "exam", "mom"),
+                MoodTextIndex.analyze("Worried about the EXAMS, and Mom!"));
+    }
+
+    @Test
+    public void testStemLeavesShortAndDoubleSWordsAlone() {
+        assertEquals("mom", MoodTextIndex.stem("mom"));
+        assertEquals("stress", MoodTextIndex.stem("stress"));
+        assertEquals("stress", MoodTextIndex.stem("stressed"));
+        assertEquals("run", MoodTextIndex.stem("running"));
+        assertEquals("cry", MoodTextIndex.stem("cries"));
+    }
+
+    @Test
+    public void testSearchRanksMoreSpecificMatchFirst() {
+        MoodTextIndex index = new MoodTextIndex();
+        index.put("a", "Studying for my exam all night before the exam", "Library", "Alone");
+        index.put("b", "Dinner with mom after the exam", "Home", "With one other person");
+        index.put("c", "Great walk in the park", "Park", "Alone");
+
+        List<MoodTextIndex.Result> results = index.search("exam", 10);
+        assertEquals(2, results.size());
+        assertEquals("a", results.get(0).getDocId());
+        assertTrue(results.get(0).getScore() > results.get(1).getScore());
+
+        results = index.search("mom exam", 10);
+        assertEquals("b", results.get(0).getDocId());
+    }
+
+    @Test
+    public void testUpdateAndRemoveAreIncremental() {
+        MoodTextIndex index = new MoodTextIndex();
+        index.put("a", "exam stress");
+        index.put("a", "beach day");
+        assertTrue(index.search("exam", 10).isEmpty());
+        assertEquals(1, index.search("beach", 10).size());
+
+        assertTrue(index.remove("a"));
+        assertFalse(index.remove("a"));
+        assertEquals(0, index.size());
+        assertTrue(index.search("beach", 10).isEmpty());
+    }
+
+    @Test
+    public void testSearchRespectsLimit() {
+        MoodTextIndex index = new MoodTextIndex();
+        for (int i = 0; i < 50; i++) {
+            index.put("post" + i, "happy day number " + i);
+        }
+        assertEquals(5, index.search("happy", 5).size());
+    }
+
+    @Test
+    public void testRoundTripThroughBinaryFormat() throws Exception {
+        MoodTextIndex index = new MoodTextIndex();
+        index.put("a", "Worried about exams", "School", null);
+        index.put("b", "Lunch with mom", null, "With one other person");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.writeTo(out);
+        MoodTextIndex restored = MoodTextIndex.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(2, restored.size());
+        assertEquals("b", restored.search("mom", 10).get(0).getDocId());
+        assertEquals("a", restored.search("school exam", 10).get(0).getDocId());
+    }
+
+    @Test
+    public void testRetainAllDropsPostsMissingFromTheLoadedSet() {
+        MoodTextIndex index = new MoodTextIndex();
+        index.put("a", "Exam stress", "Library", "Alone");
+        index.put("b", "Exam done", "Home", "Alone");
+        index.put("c", "Walk", "Park", "Alone");
+
+        assertEquals(2, index.retainAll(Arrays.asList("a", "d")));
+        assertEquals(1, index.size());
+        assertTrue(index.contains("a"));
+        List<MoodTextIndex.Result> results = index.search("exam", 10);
+        assertEquals(1, results.size());
+        assertEquals("a", results.get(0).getDocId());
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.tangry;
+
+import static org.junit.Assert.*;
+
+import com.example.tangry.utils.PointGridIndex;
+
+import org.junit.Test;
+
+public class PointGridIndexTest {
+
+    private final float[] xs = {10f, 50f, 52f, 300f, -40f};
+    private final float[] ys = {10f, 60f, 58f, 200f, 100f};
+
+    @Test
+    public void testFindsPointInsideRectangle() {
+        PointGridIndex index = new PointGridIndex(32f);
+        index.build(xs, ys, xs.length, 0f, 0f, 320f, 240f);
+        assertEquals(0, index.findLast(0f, 0f, 20f, 20f));
+        assertEquals(3, index.findLast(290f, 190f, 310f, 210f));
+    }
+
+    @Test
+    public void testReturnsTopmostOfOverlappingPoints() {
+        PointGridIndex index = new PointGridIndex(32f);
+        index.build(xs, ys, xs.length, 0f, 0f, 320f, 240f);
+        assertEquals(2, index.findLast(40f, 50f, 60f, 70f));
+    }
+
+    @Test
+    public void testMissesAndOutOfBoundsPoints() {
+        PointGridIndex index = new PointGridIndex(32f);
+        index.build(xs, ys, xs.length, 0f, 0f, 320f, 240f);
+        assertEquals(-1, index.findLast(100f, 100f, 150f, 150f));
+        // Points left of the indexed area are clamped into the border cells and still found.
+        assertEquals(4, index.findLast(-50f, 90f, -30f, 110f));
+    }
+
+    @Test
+    public void testRebuildWithFewerPoints() {
+        PointGridIndex index = new PointGridIndex(32f);
+        index.build(xs, ys, xs.length, 0f, 0f, 320f, 240f);
+        index.build(xs, ys, 2, 0f, 0f, 64f, 64f);
+        assertEquals(-1, index.findLast(290f, 190f, 310f, 210f));
+        assertEquals(1, index.findLast(40f, 50f, 60f, 70f));
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.tangry;
+
+import static org.junit.Assert.*;
+
+import com.example.tangry.utils.SearchGrams;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SearchGramsTest {
+
+    @Test
+    public void testTrigramsAreLowercaseAndDistinct() {
+        List<String> grams = SearchGrams.trigrams("  AnAnA ");
+        assertEquals(Arrays.asList("ana", "nan"), grams);
+    }
+
+    @Test
+    public void testShortValuesProduceNoGrams() {
+        assertTrue(SearchGrams.trigrams("ab").isEmpty());
+        assertTrue(SearchGrams.trigrams(null).isEmpty());
+    }
+
+    @Test
+    public void testEveryQuerySubstringGramIsIndexed() {
+        List<String> indexed = SearchGrams.trigrams("Tangry_User42");
+        for (String gram : SearchGrams.trigrams("gry_u")) {
+            assertTrue(gram, indexed.contains(gram));
+        }
+    }
+
+    @Test
+    public void testRarestGramPrefersUncommonLetters() {
+        assertEquals("zqx", SearchGrams.rarestGram(Arrays.asList("eta", "zqx", "the")));
+        assertNull(SearchGrams.rarestGram(Collections.emptyList()));
+    }
+}
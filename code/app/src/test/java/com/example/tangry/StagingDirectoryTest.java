@@ -0,0 +1,86 @@
+package com.example.tangry;
+
+import static org.junit.Assert.*;
+
+import com.example.tangry.utils.StagingDirectory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+
+public class StagingDirectoryTest {
+    private File dir;
+    private StagingDirectory staging;
+
+    @Before
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("staging_test").toFile();
+        staging = new StagingDirectory(new File(dir, "staged"), 250);
+    }
+
+    @After
+    public void tearDown() {
+        staging.clear();
+        new File(dir, "staged").delete();
+        dir.delete();
+    }
+
+    private File write(int bytes, long modified) throws Exception {
+        File file = staging.newFile("img", ".jpg");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[bytes]);
+        }
+        assertTrue(file.setLastModified(modified));
+        return file;
+    }
+
+    @Test
+    public void testCreatesDirectoryOnFirstUse() throws Exception {
+        File file = staging.newFile("img", ".jpg");
+        assertTrue(file.exists());
+        assertEquals(new File(dir, "staged"), file.getParentFile());
+    }
+
+    @Test
+    public void testTrimEvictsLeastRecentlyModifiedFirst() throws Exception {
+        File oldest = write(100, 1_000_000);
+        File middle = write(100, 2_000_000);
+        File newest = write(100, 3_000_000);
+
+        assertEquals(1, staging.trim(newest));
+
+        assertFalse(oldest.exists());
+        assertTrue(middle.exists());
+        assertTrue(newest.exists());
+    }
+
+    @Test
+    public void testTrimKeepsFileJustWrittenEvenOverCap() throws Exception {
+        File older = write(100, 1_000_000);
+        File large = write(400, 2_000_000);
+
+        staging.trim(large);
+
+        assertFalse(older.exists());
+        assertTrue(large.exists());
+    }
+
+    @Test
+    public void testTrimUnderCapDeletesNothing() throws Exception {
+        File file = write(100, 1_000_000);
+        assertEquals(0, staging.trim(null));
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void testClearDeletesEverything() throws Exception {
+        write(10, 1_000_000);
+        write(10, 2_000_000);
+        assertEquals(2, staging.clear());
+        assertEquals(0, staging.clear());
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.tangry;
+
+import static org.junit.Assert.*;
+
+import com.example.tangry.utils.StorageSweeper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class StorageSweeperTest {
+    private static final long NOW = 10_000_000L;
+    private static final long GRACE = 1000L;
+
+    /**
+     * An in-memory bucket listed in path order, with page tokens that are indexes into the listing.
+     */
+    private static class FakeBackend implements StorageSweeper.Backend {
+        final TreeMap<String, Long> objects = new TreeMap<>();
+        final Set<String> referenced = new HashSet<>();
+        // Become referenced once the first page's references were loaded, like a post written mid-run.
+        final Set<String> referencedLater = new HashSet<>();
+        final List<List<String>> referenceLookups = new ArrayList<>();
+        final List<String> deleted = new ArrayList<>();
+        final Set<String> failing = new HashSet<>();
+
+        void add(String path, long updated) {
+            objects.put(path, updated);
+        }
+
+        @Override
+        public Set<String> loadReferencedPaths(List<String> paths) {
+            referenceLookups.add(new ArrayList<>(paths));
+            Set<String> result = new HashSet<>(paths);
+            result.retainAll(referenced);
+            referenced.addAll(referencedLater);
+            return result;
+        }
+
+        @Override
+        public StorageSweeper.Page list(String prefix, String pageToken, int maxResults) {
+            List<String> all = new ArrayList<>();
+            for (String path : objects.keySet()) {
+                if (path.startsWith(prefix + "/")) {
+                    all.add(path);
+                }
+            }
+            // Tokens are stable positions in the original listing, like a real cursor.
+            all.addAll(deletedUnder(prefix));
+            Collections.sort(all);
+            int start = pageToken == null ? 0 : Integer.parseInt(pageToken);
+            int end = Math.min(all.size(), start + maxResults);
+            List<String> page = new ArrayList<>();
+            for (String path : all.subList(start, end)) {
+                if (objects.containsKey(path)) {
+                    page.add(path);
+                }
+            }
+            return new StorageSweeper.Page(page, end < all.size() ? String.valueOf(end) : null);
+        }
+
+        private List<String> deletedUnder(String prefix) {
+            List<String> result = new ArrayList<>();
+            for (String path : deleted) {
+                if (path.startsWith(prefix + "/")) {
+                    result.add(path);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public long updatedMillis(String path) {
+            return objects.get(path);
+        }
+
+        @Override
+        public void delete(String path) throws Exception {
+            if (failing.contains(path)) {
+                throw new Exception("delete failed");
+            }
+            objects.remove(path);
+            deleted.add(path);
+        }
+    }
+
+    private final List<Long> sleeps = new ArrayList<>();
+
+    private StorageSweeper sweeper(FakeBackend backend, int pageSize, int batchSize) {
+        return new StorageSweeper(backend, Arrays.asList("images", "thumbnails"), pageSize, batchSize,
+                500, GRACE, sleeps::add);
+    }
+
+    @Test
+    public void testDeletesOnlyOldUnreferencedObjects() throws Exception {
+        FakeBackend backend = new FakeBackend();
+        backend.add("images/a", 0);
+        backend.add("images/b", 0);
+        backend.add("images/c", NOW - 10);
+        backend.add("thumbnails/a", 0);
+        backend.add("thumbnails/b", 0);
+        backend.referenced.add("images/a");
+        backend.referenced.add("thumbnails/a");
+
+        StorageSweeper.Result result = sweeper(backend, 10, 10).sweep(null, 10, NOW, () -> false);
+
+        assertEquals(Arrays.asList("images/b", "thumbnails/b"), backend.deleted);
+        assertEquals(5, result.scanned);
+        assertEquals(2, result.deleted);
+        assertEquals(1, result.kept);
+        assertTrue(result.passComplete);
+        assertNull(result.checkpoint);
+    }
+
+    @Test
+    public void testObjectReferencedBeforeItsBatchIsKept() throws Exception {
+        FakeBackend backend = new FakeBackend();
+        backend.add("images/a", 0);
+        backend.add("images/b", 0);
+        backend.referencedLater.add("images/a");
+
+        StorageSweeper.Result result = sweeper(backend, 10, 10).sweep(null, 10, NOW, () -> false);
+
+        assertEquals(Collections.singletonList("images/b"), backend.deleted);
+        assertEquals(1, result.kept);
+        assertEquals(1, result.deleted);
+    }
+
+    @Test
+    public void testLooksUpReferencesOnlyForListedObjects() throws Exception {
+        FakeBackend backend = new FakeBackend();
+        backend.add("images/a", 0);
+        backend.add("images/b", 0);
+        backend.add("thumbnails/a", 0);
+        backend.referenced.add("images/a");
+        backend.referenced.add("thumbnails/a");
+
+        sweeper(backend, 10, 10).sweep(null, 10, NOW, () -> false);
+
+        // One lookup per page, and one per delete batch right before it is deleted.
+        assertEquals(Arrays.asList(
+                Arrays.asList("images/a", "images/b"),
+                Collections.singletonList("images/b"),
+                Collections.singletonList("thumbnails/a")), backend.referenceLookups);
+        assertEquals(Collections.singletonList("images/b"), backend.deleted);
+    }
+
+    @Test
+    public void testResumesFromCheckpointAcrossRuns() throws Exception {
+        FakeBackend backend = new FakeBackend();
+        for (int i = 0; i < 5; i++) {
+            backend.add("images/" + i, 0);
+            backend.add("thumbnails/" + i, 0);
+        }
+        backend.referenced.add("images/0");
+        StorageSweeper sweeper = sweeper(backend, 2, 10);
+
+        StorageSweeper.Result first = sweeper.sweep(null, 2, NOW, () -> false);
+        assertEquals(4, first.scanned);
+        assertFalse(first.passComplete);
+        assertNotNull(first.checkpoint);
+
+        StorageSweeper.Result second = sweeper.sweep(first.checkpoint, 2, NOW, () -> false);
+        // The last images page ends the folder, so the next run starts on thumbnails.
+        assertEquals(3, second.scanned);
+        assertEquals("1:2", second.checkpoint);
+
+        StorageSweeper.Result third = sweeper.sweep(second.checkpoint, 10, NOW, () -> false);
+        assertTrue(third.passComplete);
+        assertEquals(9, backend.deleted.size());
+        assertFalse(backend.deleted.contains("images/0"));
+    }
+
+    @Test
+    public void testCancelledRunKeepsCheckpointOfLastFullPage() throws Exception {
+        FakeBackend backend = new FakeBackend();
+        for (int i = 0; i < 4; i++) {
+            backend.add("images/" + i, 0);
+        }
+        backend.referenced.add("thumbnails/x");
+        int[] polls = {0};
+
+        StorageSweeper.Result result = sweeper(backend, 2, 10).sweep(null, 10, NOW, () -> ++polls[0] > 4);
+
+        assertEquals("0:2", result.checkpoint);
+        assertFalse(result.passComplete);
+    }
+
+    @Test
+    public void testPausesBetweenDeleteBatches() throws Exception {
+        FakeBackend backend = new FakeBackend();
+        for (int i = 0; i < 7; i++) {
+            backend.add("images/" + i, 0);
+        }
+        backend.referenced.add("thumbnails/x");
+
+        sweeper(backend, 10, 3).sweep(null, 10, NOW, () -> false);
+
+        assertEquals(7, backend.deleted.size());
+        assertEquals(Arrays.asList(500L, 500L), sleeps);
+    }
+
+    @Test
+    public void testFailedDeleteIsCountedAndSweepContinues() throws Exception {
+        FakeBackend backend = new FakeBackend();
+        backend.add("images/a", 0);
+        backend.add("images/b", 0);
+        backend.referenced.add("thumbnails/x");
+        backend.failing.add("images/a");
+
+        StorageSweeper.Result result = sweeper(backend, 10, 10).sweep(null, 10, NOW, () -> false);
+
+        assertEquals(1, result.failed);
+        assertEquals(Collections.singletonList("images/b"), backend.deleted);
+        assertTrue(result.passComplete);
+    }
+
+    @Test
+    public void testMalformedCheckpointStartsNewPass() throws Exception {
+        FakeBackend backend = new FakeBackend();
+        backend.add("images/a", 0);
+        backend.referenced.add("thumbnails/x");
+
+        StorageSweeper.Result result = sweeper(backend, 10, 10).sweep("garbage", 10, NOW, () -> false);
+
+        assertEquals(1, result.deleted);
+        assertTrue(result.passComplete);
+    }
+}
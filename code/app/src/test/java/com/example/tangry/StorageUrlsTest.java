@@ -0,0 +1,45 @@
+package com.example.tangry;
+
+import static org.junit.Assert.*;
+
+import com.example.tangry.utils.StorageUrls;
+
+import org.junit.Test;
+
+public class StorageUrlsTest {
+
+    @Test
+    public void testBuildsTokenDownloadUrl() {
+        assertEquals("https://firebasestorage.googleapis.com/v0/b/tangry.appspot.com/o/images%2Fabc"
+                        + "?alt=media&token=1234-abcd",
+                StorageUrls.downloadUrl(StorageUrls.DEFAULT_ENDPOINT, "tangry.appspot.com", "images/abc",
+                        "1234-abcd"));
+    }
+
+    @Test
+    public void testEncodesSpacesAsPercentTwenty() {
+        String url = StorageUrls.downloadUrl("http://10.0.2.2:9199", "bucket", "images/my photo.jpg", "t");
+        assertEquals("http://10.0.2.2:9199/v0/b/bucket/o/images%2Fmy%20photo.jpg?alt=media&token=t", url);
+    }
+
+    @Test
+    public void testDownloadUrlStartsWithObjectUrl() {
+        String objectUrl = StorageUrls.objectUrl(StorageUrls.DEFAULT_ENDPOINT, "bucket", "images/abc");
+        assertEquals("https://firebasestorage.googleapis.com/v0/b/bucket/o/images%2Fabc", objectUrl);
+        assertTrue(StorageUrls.downloadUrl(StorageUrls.DEFAULT_ENDPOINT, "bucket", "images/abc", "t")
+                .startsWith(objectUrl + "?"));
+    }
+
+    @Test
+    public void testPathRoundTrips() {
+        String url = StorageUrls.downloadUrl(StorageUrls.DEFAULT_ENDPOINT, "bucket", "thumbnails/a b+c", "t");
+        assertEquals("thumbnails/a b+c", StorageUrls.pathFromDownloadUrl(url));
+    }
+
+    @Test
+    public void testPathOfForeignUrlIsNull() {
+        assertNull(StorageUrls.pathFromDownloadUrl("file:///data/cache/offline_image_1.jpg"));
+        assertNull(StorageUrls.pathFromDownloadUrl("https://example.com/o/images"));
+        assertNull(StorageUrls.pathFromDownloadUrl(null));
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.tangry;
+
+import static org.junit.Assert.*;
+
+import com.example.tangry.utils.TileDownloader;
+import com.example.tangry.utils.TilePrefetcher;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the prefetcher against a local HTTP server standing in for the tile server.
+ */
+public class TilePrefetcherTest {
+
+    // Roughly the 5 km box around downtown Edmonton used by the map.
+    private static final double SOUTH = 53.491;
+    private static final double WEST = -113.576;
+    private static final double NORTH = 53.581;
+    private static final double EAST = -113.425;
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Map<String, byte[]> store = new HashMap<>();
+    private TilePrefetcher prefetcher;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/tiles/", exchange -> {
+            requests.incrementAndGet();
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = path.getBytes(StandardCharsets.UTF_8);
+            // The stand-in has no tiles in column 0 of zoom 1, to exercise missing tiles.
+            int status = path.startsWith("/tiles/1/0/") ? 404 : 200;
+            exchange.sendResponseHeaders(status, status == 200 ? body.length : -1);
+            if (status == 200) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/tiles/";
+        TileDownloader downloader = new TileDownloader(baseUrl, ".png", "tangry-test");
+        prefetcher = new TilePrefetcher(downloader, new TilePrefetcher.TileStore() {
+            @Override
+            public boolean contains(int zoom, int x, int y) {
+                return store.containsKey(zoom + "/" + x + "/" + y);
+            }
+
+            @Override
+            public boolean put(int zoom, int x, int y, byte[] data) {
+                store.put(zoom + "/" + x + "/" + y, data);
+                return true;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testDownloadsEveryTileOfTheArea() {
+        long expected = TilePrefetcher.countTiles(SOUTH, WEST, NORTH, EAST, 12, 14);
+        TilePrefetcher.Result result = prefetcher.prefetch(SOUTH, WEST, NORTH, EAST, 12, 14, Long.MAX_VALUE, () -> false);
+        assertTrue(result.complete);
+        assertEquals(expected, result.downloaded);
+        assertEquals(expected, store.size());
+        int x = TilePrefetcher.tileX(-113.5, 14);
+        int y = TilePrefetcher.tileY(53.536, 14);
+        assertEquals("/tiles/14/" + x + "/" + y + ".png",
+                new String(store.get("14/" + x + "/" + y), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSecondRunSkipsStoredTiles() {
+        prefetcher.prefetch(SOUTH, WEST, NORTH, EAST, 12, 13, Long.MAX_VALUE, () -> false);
+        int firstRunRequests = requests.get();
+        TilePrefetcher.Result result = prefetcher.prefetch(SOUTH, WEST, NORTH, EAST, 12, 13, Long.MAX_VALUE, () -> false);
+        assertTrue(result.complete);
+        assertEquals(0, result.downloaded);
+        assertEquals(firstRunRequests, requests.get());
+    }
+
+    @Test
+    public void testMissingTilesDoNotFailTheRun() {
+        TilePrefetcher.Result result = prefetcher.prefetch(-80, -179, 80, 179, 1, 1, Long.MAX_VALUE, () -> false);
+        assertTrue(result.complete);
+        assertEquals(2, result.downloaded);
+        assertEquals(2, result.skipped);
+    }
+
+    @Test
+    public void testStopsWhenCancelledOrOverBudget() {
+        TilePrefetcher.Result cancelled = prefetcher.prefetch(SOUTH, WEST, NORTH, EAST, 12, 14, Long.MAX_VALUE, () -> true);
+        assertFalse(cancelled.complete);
+        assertEquals(0, requests.get());
+
+        TilePrefetcher.Result budgeted = prefetcher.prefetch(SOUTH, WEST, NORTH, EAST, 12, 14, 1, () -> false);
+        assertFalse(budgeted.complete);
+        assertEquals(1, budgeted.downloaded);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.tangry;
+
+import static org.junit.Assert.*;
+
+import com.example.tangry.utils.TimeBucketIndex;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.BitSet;
+
+public class TimeBucketIndexTest {
+
+    private static final long HOUR = TimeBucketIndex.BUCKET_MS;
+    private static final long DAY_START = 1_700_000_000_000L / HOUR * HOUR;
+
+    private TimeBucketIndex index;
+
+    @Before
+    public void setUp() {
+        // Users 0 and 1 post downtown during the morning; user 1 also posts across the river.
+        long[] times = {
+                DAY_START + 8 * HOUR, DAY_START + 9 * HOUR + 30_000, DAY_START + 9 * HOUR + 10_000,
+                DAY_START + 11 * HOUR, DAY_START + 12 * HOUR
+        };
+        double[] lats = {53.5461, 53.5470, 53.5455, 53.5232, 53.5461};
+        double[] lngs = {-113.4938, -113.4950, -113.4920, -113.5263, -113.4938};
+        int[] users = {0, 0, 1, 1, 0};
+        index = new TimeBucketIndex(times, lats, lngs, users, 6);
+    }
+
+    @Test
+    public void testLatestPostPerUserInWindow() {
+        BitSet shown = index.latestPerGroup(DAY_START + 8 * HOUR, DAY_START + 10 * HOUR, -90, -180, 90, 180);
+        assertEquals(2, shown.cardinality());
+        assertTrue(shown.get(1));
+        assertTrue(shown.get(2));
+    }
+
+    @Test
+    public void testWindowBoundsAreRespected() {
+        BitSet shown = index.latestPerGroup(DAY_START + 9 * HOUR + 20_000, DAY_START + 11 * HOUR, -90, -180, 90, 180);
+        assertEquals(2, shown.cardinality());
+        assertTrue(shown.get(1));
+        assertTrue(shown.get(3));
+        assertTrue(index.latestPerGroup(DAY_START + 13 * HOUR, DAY_START + 20 * HOUR, -90, -180, 90, 180).isEmpty());
+    }
+
+    @Test
+    public void testAreaExcludesCellsOutsideTheBox() {
+        // A box around downtown only; the post across the river falls outside.
+        BitSet shown = index.latestPerGroup(DAY_START, DAY_START + 24 * HOUR, 53.54, -113.50, 53.55, -113.48);
+        assertEquals(2, shown.cardinality());
+        assertTrue(shown.get(4));
+        assertTrue(shown.get(2));
+    }
+
+    @Test
+    public void testRepeatedLookupsDoNotLeakState() {
+        index.latestPerGroup(DAY_START, DAY_START + 24 * HOUR, -90, -180, 90, 180);
+        BitSet shown = index.latestPerGroup(DAY_START + 8 * HOUR, DAY_START + 8 * HOUR, -90, -180, 90, 180);
+        assertEquals(1, shown.cardinality());
+        assertTrue(shown.get(0));
+    }
+}